@@ -0,0 +1,63 @@
+package org.egov.demand.benchmarks;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.egov.demand.benchmarks.fixtures.BillFixtures;
+import org.egov.demand.benchmarks.fixtures.Beans;
+import org.egov.demand.model.BillV2;
+import org.egov.demand.repository.rowmapper.BillRowMapperV2;
+import org.egov.demand.util.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Maps a page of the bill search with BillRowMapperV2, one row per bill account
+ * detail
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BillRowMapperV2Benchmark {
+
+	@Param({ "100" })
+	private int bills;
+
+	@Param({ "1", "4" })
+	private int detailsPerBill;
+
+	@Param({ "4", "12" })
+	private int accountDetailsPerDetail;
+
+	private ResultSet resultSet;
+
+	private BillRowMapperV2 billRowMapper;
+
+	@Setup
+	public void setUp() {
+
+		Util util = Beans.inject(new Util(), "mapper", Beans.objectMapper());
+		billRowMapper = Beans.inject(new BillRowMapperV2(), "util", util);
+		resultSet = BillFixtures.billSearchResultSet(bills, detailsPerBill, accountDetailsPerDetail);
+	}
+
+	@Benchmark
+	public List<BillV2> extractData() throws SQLException {
+		resultSet.beforeFirst();
+		return billRowMapper.extractData(resultSet);
+	}
+}
@@ -0,0 +1,86 @@
+package org.egov.demand.benchmarks;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.egov.demand.benchmarks.baseline.NamedColumnDemandRowMapper;
+import org.egov.demand.benchmarks.fixtures.DemandFixtures;
+import org.egov.demand.model.Demand;
+import org.egov.demand.repository.rowmapper.DemandRowMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Maps a page of the demand search with DemandRowMapper and with the earlier
+ * label based mapper, on its own and followed by writing the demands as a
+ * response would.
+ *
+ * Run with the gc profiler to compare the bytes allocated per page:
+ *
+ * java -jar target/benchmarks.jar DemandRowMapperBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DemandRowMapperBenchmark {
+
+	@Param({ "100" })
+	private int demands;
+
+	@Param({ "4", "12" })
+	private int detailsPerDemand;
+
+	private ResultSet resultSet;
+
+	private final DemandRowMapper demandRowMapper = new DemandRowMapper();
+
+	private final NamedColumnDemandRowMapper namedColumnDemandRowMapper = new NamedColumnDemandRowMapper();
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Setup
+	public void setUp() {
+		resultSet = DemandFixtures.demandSearchResultSet(demands, detailsPerDemand);
+	}
+
+	@Benchmark
+	public List<Demand> indexedColumns() throws SQLException {
+		resultSet.beforeFirst();
+		return demandRowMapper.extractData(resultSet);
+	}
+
+	@Benchmark
+	public List<Demand> namedColumns() throws SQLException {
+		resultSet.beforeFirst();
+		return namedColumnDemandRowMapper.extractData(resultSet);
+	}
+
+	@Benchmark
+	public byte[] indexedColumnsWritten() throws SQLException, JsonProcessingException {
+		resultSet.beforeFirst();
+		return mapper.writeValueAsBytes(demandRowMapper.extractData(resultSet));
+	}
+
+	@Benchmark
+	public byte[] namedColumnsWritten() throws SQLException, JsonProcessingException {
+		resultSet.beforeFirst();
+		return mapper.writeValueAsBytes(namedColumnDemandRowMapper.extractData(resultSet));
+	}
+}
@@ -0,0 +1,83 @@
+package org.egov.demand.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.egov.demand.benchmarks.fixtures.Beans;
+import org.egov.demand.util.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Merges the additional details of a bill into those of its cancellation
+ * request with Util.jsonMerge, as the bill cancellation does.
+ *
+ * The merge writes into the request details, every operation merges into a
+ * copy of them. The copy is measured on its own by copyOnly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonMergeBenchmark {
+
+	/*
+	 * top level fields of the bill details, every fourth one is an object of four fields
+	 */
+	@Param({ "8", "64" })
+	private int fields;
+
+	private final ObjectMapper mapper = Beans.objectMapper();
+
+	private Util util;
+
+	private ObjectNode requestDetails;
+
+	private JsonNode billDetails;
+
+	@Setup
+	public void setUp() {
+
+		util = Beans.inject(new Util(), "mapper", mapper);
+
+		requestDetails = mapper.createObjectNode();
+		requestDetails.put("reason", "Duplicate bill");
+		requestDetails.put("description", "Bill generated twice for the same assessment");
+		requestDetails.putObject("address").put("locality", "SUN04");
+
+		ObjectNode details = mapper.createObjectNode();
+		for (int i = 0; i < fields; i++) {
+			if (i % 4 == 0) {
+				ObjectNode nested = details.putObject(0 == i ? "address" : "object" + i);
+				for (int j = 0; j < 4; j++)
+					nested.put("field" + j, "value" + j);
+			} else
+				details.put("field" + i, i % 2 == 0 ? "value" + i : String.valueOf(i * 100));
+		}
+		billDetails = details;
+	}
+
+	@Benchmark
+	public JsonNode merge() {
+		return util.jsonMerge(requestDetails.deepCopy(), billDetails);
+	}
+
+	@Benchmark
+	public JsonNode copyOnly() {
+		return requestDetails.deepCopy();
+	}
+}
@@ -0,0 +1,156 @@
+package org.egov.demand.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.egov.demand.benchmarks.fixtures.DemandFixtures;
+import org.egov.demand.model.BillAccountDetailV2;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.util.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The amount loops of the bill preparation and of the payment back-update over
+ * the details of one demand, once in BigDecimal as they were written before
+ * and once in Money as BillServicev2 and ReceiptServiceV2 run them now.
+ *
+ * billDetail* merges the balance of the details into one bill account detail
+ * per tax head and adds up their total in Money, the amounts of the account
+ * details staying BigDecimal as they are set on the model. payment*
+ * apportions a payment of half the balance over the details.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MoneyBenchmark {
+
+	@Param({ "8", "64" })
+	private int details;
+
+	private List<DemandDetail> demandDetails;
+
+	private BigDecimal amountPaid;
+
+	@Setup
+	public void setUp() {
+
+		/*
+		 * amounts with the two decimals of the amount columns, as the demand search reads them
+		 */
+		demandDetails = DemandFixtures.demands(1, details).get(0).getDemandDetails();
+		BigDecimal balance = BigDecimal.ZERO;
+		for (DemandDetail detail : demandDetails) {
+			detail.setCollectionAmount(detail.getCollectionAmount().setScale(Money.SCALE));
+			balance = balance.add(detail.getTaxAmount().subtract(detail.getCollectionAmount()));
+		}
+		amountPaid = balance.divide(BigDecimal.valueOf(2)).setScale(Money.SCALE, Money.ROUNDING_MODE);
+	}
+
+	@Benchmark
+	public BigDecimal billDetailBigDecimal() {
+
+		BigDecimal total = BigDecimal.ZERO;
+		Map<String, BillAccountDetailV2> accountDetails = new HashMap<>();
+		for (DemandDetail detail : demandDetails) {
+
+			/*
+			 * the balance is taken for the total and again for the account detail, as it was
+			 */
+			BigDecimal amount = detail.getTaxAmount().subtract(detail.getCollectionAmount());
+			BigDecimal accountDetailAmount = detail.getTaxAmount().subtract(detail.getCollectionAmount());
+			BillAccountDetailV2 accountDetail = accountDetails.get(detail.getTaxHeadMasterCode());
+			if (null != accountDetail)
+				accountDetail.setAmount(accountDetail.getAmount().add(accountDetailAmount));
+			else
+				accountDetails.put(detail.getTaxHeadMasterCode(), BillAccountDetailV2.builder()
+						.taxHeadCode(detail.getTaxHeadMasterCode()).amount(accountDetailAmount).build());
+			total = total.add(amount);
+		}
+		return total;
+	}
+
+	@Benchmark
+	public BigDecimal billDetailMoney() {
+
+		Money total = Money.ZERO;
+		Map<String, BillAccountDetailV2> accountDetails = new HashMap<>();
+		for (DemandDetail detail : demandDetails) {
+
+			BigDecimal amount = detail.getTaxAmount().subtract(detail.getCollectionAmount());
+			BillAccountDetailV2 accountDetail = accountDetails.get(detail.getTaxHeadMasterCode());
+			if (null != accountDetail)
+				accountDetail.setAmount(accountDetail.getAmount().add(amount));
+			else
+				accountDetails.put(detail.getTaxHeadMasterCode(),
+						BillAccountDetailV2.builder().taxHeadCode(detail.getTaxHeadMasterCode()).amount(amount).build());
+			total = total.plus(Money.of(amount));
+		}
+		return total.toBigDecimal();
+	}
+
+	@Benchmark
+	public BigDecimal[] paymentBigDecimal() {
+
+		BigDecimal[] collections = new BigDecimal[demandDetails.size()];
+		BigDecimal amount = amountPaid;
+		for (int i = 0; i < collections.length; i++) {
+
+			DemandDetail detail = demandDetails.get(i);
+			BigDecimal tax = detail.getTaxAmount();
+			BigDecimal collection = detail.getCollectionAmount();
+			if (tax.compareTo(collection) == 0 || tax.compareTo(BigDecimal.ZERO) == 0)
+				continue;
+
+			BigDecimal difference = tax.subtract(collection);
+			if (tax.compareTo(BigDecimal.ZERO) > 0 && difference.compareTo(amount) >= 0) {
+				collections[i] = collection.add(amount);
+				amount = BigDecimal.ZERO;
+			} else {
+				collections[i] = collection.add(difference);
+				amount = amount.subtract(difference);
+			}
+		}
+		return collections;
+	}
+
+	@Benchmark
+	public BigDecimal[] paymentMoney() {
+
+		BigDecimal[] collections = new BigDecimal[demandDetails.size()];
+		Money amount = Money.of(amountPaid);
+		for (int i = 0; i < collections.length; i++) {
+
+			DemandDetail detail = demandDetails.get(i);
+			Money tax = Money.of(detail.getTaxAmount());
+			Money collection = Money.of(detail.getCollectionAmount());
+			if (tax.compareTo(collection) == 0 || tax.isZero())
+				continue;
+
+			Money difference = tax.minus(collection);
+			if (tax.signum() > 0 && difference.compareTo(amount) >= 0) {
+				collections[i] = collection.plus(amount).toBigDecimal();
+				amount = Money.ZERO;
+			} else {
+				collections[i] = collection.plus(difference).toBigDecimal();
+				amount = amount.minus(difference);
+			}
+		}
+		return collections;
+	}
+}
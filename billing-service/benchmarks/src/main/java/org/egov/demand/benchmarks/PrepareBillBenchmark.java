@@ -0,0 +1,105 @@
+package org.egov.demand.benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.common.contract.request.User;
+import org.egov.demand.benchmarks.fixtures.Beans;
+import org.egov.demand.benchmarks.fixtures.DemandFixtures;
+import org.egov.demand.benchmarks.fixtures.Stubs;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.BillV2;
+import org.egov.demand.model.Demand;
+import org.egov.demand.service.BillServicev2;
+import org.egov.demand.service.RemoteCallExecutor;
+import org.egov.demand.util.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.ReflectionUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Builds the bills of the demands of a fetch bill call with
+ * BillServicev2.prepareBill.
+ *
+ * The master data, bill number and user search calls are answered from memory
+ * and still run on the pool of RemoteCallExecutor, so the operation holds the
+ * cost of handing them off and joining them but none of the network.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PrepareBillBenchmark {
+
+	@Param({ "1", "100" })
+	private int demands;
+
+	@Param({ "4", "12" })
+	private int detailsPerDemand;
+
+	private BillServicev2 billService;
+
+	private RemoteCallExecutor remoteCallExecutor;
+
+	private Method prepareBill;
+
+	private List<Demand> demandList;
+
+	private RequestInfo requestInfo;
+
+	@Setup
+	public void setUp() {
+
+		ObjectMapper mapper = Beans.objectMapper();
+		ApplicationProperties appProps = Beans.applicationProperties();
+		demandList = DemandFixtures.demands(demands, detailsPerDemand);
+
+		remoteCallExecutor = Beans.inject(new RemoteCallExecutor(), "appProps", appProps);
+		remoteCallExecutor.init();
+
+		billService = new BillServicev2();
+		Beans.inject(billService, "appProps", appProps);
+		Beans.inject(billService, "mapper", mapper);
+		Beans.inject(billService, "util", Beans.inject(new Util(), "mapper", mapper));
+		Beans.inject(billService, "remoteCallExecutor", remoteCallExecutor);
+		Beans.inject(billService, "billingMetrics", Beans.billingMetrics());
+		Beans.inject(billService, "masterDataService", new Stubs.StubMasterDataService(DemandFixtures.masterData()));
+		Beans.inject(billService, "billNumberPool", new Stubs.StubBillNumberPool());
+		Beans.inject(billService, "restRepository",
+				new Stubs.StubUserSearchRepository(demandList.get(0).getPayer(), mapper));
+
+		prepareBill = ReflectionUtils.findMethod(BillServicev2.class, "prepareBill", List.class, RequestInfo.class);
+		ReflectionUtils.makeAccessible(prepareBill);
+		requestInfo = RequestInfo.builder().apiId("Rainmaker").ver(".01").msgId(UUID.randomUUID().toString())
+				.userInfo(User.builder().uuid(UUID.randomUUID().toString()).tenantId("pb").type("EMPLOYEE").build())
+				.build();
+	}
+
+	@TearDown
+	public void tearDown() {
+		remoteCallExecutor.shutdown();
+	}
+
+	@Benchmark
+	@SuppressWarnings("unchecked")
+	public List<BillV2> prepareBill() {
+		return (List<BillV2>) ReflectionUtils.invokeMethod(prepareBill, billService, demandList, requestInfo);
+	}
+}
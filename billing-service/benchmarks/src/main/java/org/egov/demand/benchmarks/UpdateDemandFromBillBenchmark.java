@@ -0,0 +1,90 @@
+package org.egov.demand.benchmarks;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.benchmarks.fixtures.Beans;
+import org.egov.demand.benchmarks.fixtures.BillFixtures;
+import org.egov.demand.benchmarks.fixtures.DemandFixtures;
+import org.egov.demand.benchmarks.fixtures.Stubs;
+import org.egov.demand.model.Demand;
+import org.egov.demand.service.ReceiptServiceV2;
+import org.egov.demand.util.Util;
+import org.egov.demand.web.contract.BillRequestV2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Applies the paid bills of a payment, and their cancellation, to the demands
+ * with ReceiptServiceV2.updateDemandFromBill.
+ *
+ * The demand search is answered from memory with the demands restored to their
+ * state before the payment, the demand update is not persisted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class UpdateDemandFromBillBenchmark {
+
+	@Param({ "1", "100" })
+	private int demands;
+
+	/*
+	 * past the count of property tax heads several details share a tax head
+	 */
+	@Param({ "4", "24" })
+	private int detailsPerDemand;
+
+	private ReceiptServiceV2 receiptService;
+
+	private Stubs.StubDemandService demandService;
+
+	private BillRequestV2 billRequest;
+
+	private Set<String> demandIds;
+
+	@Setup
+	public void setUp() {
+
+		List<Demand> demandList = DemandFixtures.demands(demands, detailsPerDemand);
+		demandService = new Stubs.StubDemandService(demandList);
+		demandIds = new HashSet<>();
+		demandList.forEach(demand -> demandIds.add(demand.getId()));
+
+		receiptService = new ReceiptServiceV2();
+		Beans.inject(receiptService, "demandService", demandService);
+		Beans.inject(receiptService, "util", Beans.inject(new Util(), "mapper", Beans.objectMapper()));
+		Beans.inject(receiptService, "masterDataService", new Stubs.StubMasterDataService(DemandFixtures.masterData()));
+
+		billRequest = BillRequestV2.builder().requestInfo(RequestInfo.builder().msgId(UUID.randomUUID().toString()).build())
+				.bills(BillFixtures.paidBills(demandList, UUID.randomUUID().toString())).build();
+	}
+
+	@Benchmark
+	public void payment() {
+		demandService.setPaid(false);
+		receiptService.updateDemandFromBill(billRequest, demandIds, false);
+	}
+
+	@Benchmark
+	public void cancellation() {
+		demandService.setPaid(true);
+		receiptService.updateDemandFromBill(billRequest, demandIds, true);
+	}
+}
@@ -0,0 +1,102 @@
+package org.egov.demand.benchmarks.baseline;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.egov.demand.model.AuditDetails;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.Demand.StatusEnum;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.web.contract.User;
+import org.postgresql.util.PGobject;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The demand mapper as it was before column indices and raw jsonb, kept as the
+ * baseline of DemandRowMapperBenchmark. Columns are read by label on every row
+ * and the demand additional details are parsed into a tree for every demand.
+ */
+public class NamedColumnDemandRowMapper {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	public List<Demand> extractData(ResultSet rs) throws SQLException {
+
+		Map<String, Demand> demandMap = new LinkedHashMap<>();
+		while (rs.next()) {
+
+			String demandId = rs.getString("did");
+			Demand demand = demandMap.get(demandId);
+			if (demand == null) {
+				demand = mapDemand(rs);
+				demandMap.put(demand.getId(), demand);
+			}
+			addDemandDetail(demand, rs);
+		}
+		return new ArrayList<>(demandMap.values());
+	}
+
+	private Demand mapDemand(ResultSet rs) throws SQLException {
+
+		Demand demand = new Demand();
+		demand.setId(rs.getString("did"));
+		demand.setBusinessService(rs.getString("dbusinessservice"));
+		demand.setConsumerCode(rs.getString("dconsumerCode"));
+		demand.setConsumerType(rs.getString("dconsumerType"));
+		demand.setTaxPeriodFrom(rs.getLong("dtaxPeriodFrom"));
+		demand.setTaxPeriodTo(rs.getLong("dtaxPeriodTo"));
+		demand.setTenantId(rs.getString("dtenantid"));
+		demand.setBillExpiryTime(rs.getLong("dbillexpirytime"));
+		demand.setStatus(StatusEnum.fromValue(rs.getString("status")));
+		demand.setIsPaymentCompleted(rs.getBoolean("ispaymentcompleted"));
+		demand.setMinimumAmountPayable(rs.getBigDecimal("dminimumAmountPayable"));
+
+		PGobject adDetail = (PGobject) rs.getObject("demandadditionaldetails");
+		try {
+			demand.setAdditionalDetails(null == adDetail ? null : mapper.readTree(adDetail.getValue()));
+		} catch (IOException e) {
+			throw new SQLException(e);
+		}
+
+		String payerId = rs.getString("payer");
+		if (null != payerId)
+			demand.setPayer(User.builder().uuid(payerId).build());
+
+		AuditDetails auditDetail = new AuditDetails();
+		auditDetail.setCreatedBy(rs.getString("dcreatedby"));
+		auditDetail.setLastModifiedBy(rs.getString("dlastModifiedby"));
+		auditDetail.setCreatedTime(rs.getLong("dcreatedtime"));
+		auditDetail.setLastModifiedTime(rs.getLong("dlastModifiedtime"));
+		demand.setAuditDetails(auditDetail);
+
+		demand.setDemandDetails(new ArrayList<>());
+		return demand;
+	}
+
+	private void addDemandDetail(Demand demand, ResultSet rs) throws SQLException {
+
+		DemandDetail demandDetail = new DemandDetail();
+		demandDetail.setId(rs.getString("dlid"));
+		demandDetail.setDemandId(rs.getString("dldemandid"));
+		demandDetail.setTaxHeadMasterCode(rs.getString("dltaxheadcode"));
+		demandDetail.setTenantId(rs.getString("dltenantid"));
+		demandDetail.setTaxAmount(rs.getBigDecimal("dltaxamount"));
+		demandDetail.setCollectionAmount(rs.getBigDecimal("dlcollectionamount"));
+
+		AuditDetails dlauditDetail = new AuditDetails();
+		dlauditDetail.setCreatedBy(rs.getString("dlcreatedby"));
+		dlauditDetail.setCreatedTime(rs.getLong("dlcreatedtime"));
+		dlauditDetail.setLastModifiedBy(rs.getString("dllastModifiedby"));
+		dlauditDetail.setLastModifiedTime(rs.getLong("dllastModifiedtime"));
+		demandDetail.setAuditDetails(dlauditDetail);
+
+		if (demand.getId().equals(demandDetail.getDemandId()))
+			demand.getDemandDetails().add(demandDetail);
+	}
+}
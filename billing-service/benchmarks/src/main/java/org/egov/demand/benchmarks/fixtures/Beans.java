@@ -0,0 +1,73 @@
+package org.egov.demand.benchmarks.fixtures;
+
+import java.lang.reflect.Field;
+
+import org.egov.demand.BillingServiceApplication;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.util.BillingMetrics;
+import org.springframework.util.ReflectionUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Wires the service beans by hand, without an application context, so that a
+ * benchmark runs the service code and only the stubs it puts in place of the
+ * remote calls
+ */
+public final class Beans {
+
+	private Beans() {
+	}
+
+	/**
+	 * Sets the autowired field of the given bean
+	 *
+	 * @param bean
+	 * @param fieldName name of the field, looked up in the class and its super classes
+	 * @param value
+	 */
+	public static <T> T inject(T bean, String fieldName, Object value) {
+
+		Field field = ReflectionUtils.findField(bean.getClass(), fieldName);
+		if (null == field)
+			throw new IllegalArgumentException("No field " + fieldName + " in " + bean.getClass().getName());
+		ReflectionUtils.makeAccessible(field);
+		ReflectionUtils.setField(field, bean, value);
+		return bean;
+	}
+
+	/**
+	 * The object mapper of the application
+	 */
+	public static ObjectMapper objectMapper() {
+		return new BillingServiceApplication().getObjectMapper();
+	}
+
+	/**
+	 * Billing metrics recording into an in-memory registry
+	 */
+	public static BillingMetrics billingMetrics() {
+		return inject(new BillingMetrics(), "meterRegistry", new SimpleMeterRegistry());
+	}
+
+	/**
+	 * Application properties holding the defaults of application.properties
+	 * used by the benchmarked code
+	 */
+	public static ApplicationProperties applicationProperties() {
+
+		ApplicationProperties appProps = new ApplicationProperties();
+		inject(appProps, "billNumberFormat", "BILLNO-{module}-[SEQ_egbs_billnumber{tenantid}]");
+		inject(appProps, "moduleReplaceStirng", "{module}");
+		inject(appProps, "tenantIdReplaceString", "{tenantid}");
+		inject(appProps, "isTenantLevelBillNumberingEnabled", false);
+		inject(appProps, "userServiceHostName", "http://egov-user:8080/");
+		inject(appProps, "userServiceSearchPath", "user/_search");
+		inject(appProps, "remoteCallPoolSize", 32);
+		inject(appProps, "remoteCallQueueSize", 256);
+		inject(appProps, "remoteCallTimeout", 30000L);
+		return appProps;
+	}
+}
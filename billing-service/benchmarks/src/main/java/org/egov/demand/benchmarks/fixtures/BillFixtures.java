@@ -0,0 +1,129 @@
+package org.egov.demand.benchmarks.fixtures;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.egov.demand.model.BillAccountDetailV2;
+import org.egov.demand.model.BillDetailV2;
+import org.egov.demand.model.BillV2;
+import org.egov.demand.model.BillV2.BillStatus;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.util.Constants;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Synthetic property tax bills, as rows of the bill search with the columns of
+ * BillQueryBuilder.BILL_BASE_QUERY and as the paid bills of a payment
+ */
+public final class BillFixtures {
+
+	public static final List<String> BILL_SEARCH_COLUMNS = Collections.unmodifiableList(Arrays.asList("b_id",
+			"mobilenumber", "b_tenantid", "b_payerid", "b_payername", "b_payeraddress", "b_payeremail",
+			"b_filestoreid", "b_isactive", "b_iscancelled", "b_createdby", "b_status", "b_createddate",
+			"b_lastmodifiedby", "b_lastmodifieddate", "bd_id", "bd_billid", "bd_tenantid", "bd_businessservice",
+			"demandid", "fromperiod", "toperiod", "bd_billno", "bd_billdate", "bd_consumercode", "bd_consumertype",
+			"bd_billdescription", "bd_displaymessage", "bd_minimumamount", "bd_totalamount",
+			"bd_callbackforapportioning", "bd_expirydate", "bd_partpaymentallowed", "bd_isadvanceallowed",
+			"bd_collectionmodesnotallowed", "ad_id", "ad_tenantid", "ad_billdetail", "ad_glcode", "ad_orderno",
+			"ad_accountdescription", "ad_amount", "ad_adjustedamount", "ad_taxheadcode", "demanddetailid",
+			"ad_isactualdemand", "ad_purpose", "b_additionaldetails", "bd_additionaldetails"));
+
+	private static final String BILL_ADDITIONAL_DETAILS = "{\"propertyId\":\"PT-107-1000000\","
+			+ "\"address\":{\"locality\":\"SUN04\",\"city\":\"Amritsar\"},\"owners\":[\"Payer\"]}";
+
+	private static final String DETAIL_ADDITIONAL_DETAILS = "{\"calculationDescription\":[\"PT_TAX,1800.00\"]}";
+
+	private BillFixtures() {
+	}
+
+	/**
+	 * @param billCount bills in the result set
+	 * @param detailsPerBill bill details of every bill
+	 * @param accountDetailsPerDetail account details of every bill detail, at most the count of property tax heads
+	 */
+	public static ResultSet billSearchResultSet(int billCount, int detailsPerBill, int accountDetailsPerDetail) {
+
+		String userId = UUID.randomUUID().toString();
+		List<String[]> rows = new ArrayList<>(billCount * detailsPerBill * accountDetailsPerDetail);
+		for (int i = 0; i < billCount; i++) {
+
+			String billId = UUID.randomUUID().toString();
+			String consumerCode = "PT-107-" + (1000000 + i);
+			for (int j = 0; j < detailsPerBill; j++) {
+
+				String detailId = UUID.randomUUID().toString();
+				String demandId = UUID.randomUUID().toString();
+				for (int k = 0; k < accountDetailsPerDetail; k++) {
+					String amount = k % 4 == 3 ? "-45.00" : "1800.00";
+					rows.add(new String[] { billId, "9999999999", DemandFixtures.TENANT_ID, userId, "Payer",
+							"Sector 17, Amritsar", null, null, "t", "f", userId, "ACTIVE", "1690000000000", userId,
+							"1690000000000", detailId, billId, DemandFixtures.TENANT_ID, DemandFixtures.BUSINESS_SERVICE,
+							demandId, "1680307200000", "1711929599000", "BILLNO-PT-" + (100000 + i), "1690000000000",
+							consumerCode, "PROPERTY", null, null, "0", "5265.00", "f", "1690905599000", "t", "t", null,
+							UUID.randomUUID().toString(), DemandFixtures.TENANT_ID, detailId, null, String.valueOf(k),
+							null, amount, "0", DemandFixtures.PT_TAX_HEADS.get(k % DemandFixtures.PT_TAX_HEADS.size()),
+							UUID.randomUUID().toString(), "t", null, BILL_ADDITIONAL_DETAILS,
+							j % 2 == 0 ? DETAIL_ADDITIONAL_DETAILS : null });
+				}
+			}
+		}
+		return SyntheticResultSet.of(BILL_SEARCH_COLUMNS,
+				new HashSet<>(Arrays.asList("b_additionaldetails", "bd_additionaldetails")),
+				new HashSet<>(Arrays.asList("b_createddate", "b_lastmodifieddate")), rows);
+	}
+
+	/**
+	 * Bills of a payment settling the given demands in full, one bill per
+	 * demand with one account detail per tax head of the demand the way the
+	 * bill is generated
+	 *
+	 * @param demands unpaid demands
+	 * @param paymentId id of the payment, carried in the additional details of the bills
+	 */
+	public static List<BillV2> paidBills(List<Demand> demands, String paymentId) {
+
+		ObjectMapper mapper = Beans.objectMapper();
+		List<BillV2> bills = new ArrayList<>(demands.size());
+		for (Demand demand : demands) {
+
+			String billId = UUID.randomUUID().toString();
+			String detailId = UUID.randomUUID().toString();
+			BigDecimal billAmount = BigDecimal.ZERO;
+			Map<String, BillAccountDetailV2> accountDetails = new LinkedHashMap<>();
+			for (DemandDetail demandDetail : demand.getDemandDetails()) {
+
+				BigDecimal amount = demandDetail.getTaxAmount().subtract(demandDetail.getCollectionAmount());
+				billAmount = billAmount.add(amount);
+				BillAccountDetailV2 accountDetail = accountDetails.get(demandDetail.getTaxHeadMasterCode());
+				if (null != accountDetail) {
+					accountDetail.setAmount(accountDetail.getAmount().add(amount));
+					accountDetail.setAdjustedAmount(accountDetail.getAmount());
+					continue;
+				}
+				accountDetails.put(demandDetail.getTaxHeadMasterCode(), BillAccountDetailV2.builder()
+						.id(UUID.randomUUID().toString()).tenantId(demand.getTenantId()).billDetailId(detailId)
+						.demandDetailId(demandDetail.getId()).taxHeadCode(demandDetail.getTaxHeadMasterCode())
+						.amount(amount).adjustedAmount(amount).build());
+			}
+
+			BillDetailV2 billDetail = BillDetailV2.builder().id(detailId).tenantId(demand.getTenantId()).billId(billId)
+					.demandId(demand.getId()).fromPeriod(demand.getTaxPeriodFrom()).toPeriod(demand.getTaxPeriodTo())
+					.amount(billAmount).amountPaid(billAmount).billAccountDetails(new ArrayList<>(accountDetails.values())).build();
+			bills.add(BillV2.builder().id(billId).tenantId(demand.getTenantId()).consumerCode(demand.getConsumerCode())
+					.businessService(demand.getBusinessService()).status(BillStatus.PAID).totalAmount(billAmount)
+					.billDetails(new ArrayList<>(Collections.singletonList(billDetail)))
+					.additionalDetails(mapper.valueToTree(Map.of(Constants.PAYMENT_ID_KEY, paymentId))).build());
+		}
+		return bills;
+	}
+}
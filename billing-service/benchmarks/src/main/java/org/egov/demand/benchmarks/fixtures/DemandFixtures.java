@@ -0,0 +1,133 @@
+package org.egov.demand.benchmarks.fixtures;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import org.egov.demand.model.BillingMasterData;
+import org.egov.demand.model.BusinessServiceDetail;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.Demand.StatusEnum;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.model.TaxHeadMaster;
+import org.egov.demand.model.enums.Category;
+import org.egov.demand.web.contract.User;
+
+/**
+ * Synthetic property tax demands, as rows of the demand search with the columns
+ * of DemandQueryBuilder.BASE_DEMAND_QUERY and as demand objects along with the
+ * master data of their tenant
+ */
+public final class DemandFixtures {
+
+	public static final List<String> DEMAND_SEARCH_COLUMNS = Collections.unmodifiableList(Arrays.asList("did",
+			"dconsumercode", "dconsumertype", "dbusinessservice", "payer", "dbillexpirytime", "dfixedbillexpirydate",
+			"dtaxperiodfrom", "dtaxperiodto", "dminimumamountpayable", "dcreatedby", "dlastmodifiedby",
+			"dcreatedtime", "dlastmodifiedtime", "dtenantid", "status", "demandadditionaldetails",
+			"ispaymentcompleted", "dlid", "dldemandid", "dltaxheadcode", "dltaxamount", "dlcollectionamount",
+			"dlcreatedby", "dllastmodifiedby", "dlcreatedtime", "dllastmodifiedtime", "dltenantid",
+			"detailadditionaldetails"));
+
+	public static final List<String> PT_TAX_HEADS = Collections.unmodifiableList(Arrays.asList("PT_TAX",
+			"PT_FIRE_CESS", "PT_CANCER_CESS", "PT_TIME_REBATE", "PT_TIME_PENALTY", "PT_TIME_INTEREST",
+			"PT_OWNER_EXEMPTION", "PT_UNIT_USAGE_EXEMPTION", "PT_ADHOC_PENALTY", "PT_ADHOC_REBATE",
+			"PT_ROUNDOFF", "PT_ADVANCE_CARRYFORWARD"));
+
+	private static final String DEMAND_ADDITIONAL_DETAILS = "{\"propertyType\":\"BUILTUP.INDEPENDENTPROPERTY\","
+			+ "\"usageCategory\":\"RESIDENTIAL\",\"landArea\":1200,\"superBuiltUpArea\":950.5,\"noOfFloors\":2,"
+			+ "\"ownershipCategory\":\"INDIVIDUAL.SINGLEOWNER\",\"calculationDescription\":[\"PT_TAX,1800.00\","
+			+ "\"PT_FIRE_CESS,45.00\",\"PT_CANCER_CESS,36.00\"],\"locality\":{\"code\":\"SUN04\",\"area\":\"Area1\"}}";
+
+	private static final String DETAIL_ADDITIONAL_DETAILS = "{\"reason\":\"Assessment\",\"adjusted\":false}";
+
+	public static final String TENANT_ID = "pb.amritsar";
+
+	public static final String BUSINESS_SERVICE = "PT";
+
+	private DemandFixtures() {
+	}
+
+	/**
+	 * @param demandCount demands in the result set
+	 * @param detailsPerDemand details of every demand, at most the count of property tax heads
+	 */
+	public static ResultSet demandSearchResultSet(int demandCount, int detailsPerDemand) {
+
+		String userId = UUID.randomUUID().toString();
+		List<String[]> rows = new ArrayList<>(demandCount * detailsPerDemand);
+		for (int i = 0; i < demandCount; i++) {
+
+			String demandId = UUID.randomUUID().toString();
+			for (int j = 0; j < detailsPerDemand; j++) {
+				rows.add(new String[] { demandId, "PT-107-" + (1000000 + i), "PROPERTY", "PT", userId,
+						"864000000", null, "1680307200000", "1711929599000", "0", userId, userId, "1690000000000",
+						"1690000000000", "pb.amritsar", "ACTIVE", DEMAND_ADDITIONAL_DETAILS, "f",
+						UUID.randomUUID().toString(), demandId, PT_TAX_HEADS.get(j % PT_TAX_HEADS.size()),
+						j % 4 == 3 ? "-45.00" : "1800.00", "0", userId, userId, "1690000000000", "1690000000000",
+						"pb.amritsar", j % 3 == 0 ? DETAIL_ADDITIONAL_DETAILS : null });
+			}
+		}
+		return SyntheticResultSet.of(DEMAND_SEARCH_COLUMNS,
+				new HashSet<>(Arrays.asList("demandadditionaldetails", "detailadditionaldetails")), rows);
+	}
+
+	/**
+	 * Demands of distinct consumer codes with the same payer, every tax head
+	 * repeats once the details outnumber the property tax heads
+	 *
+	 * @param demandCount demands to build
+	 * @param detailsPerDemand details of every demand
+	 */
+	public static List<Demand> demands(int demandCount, int detailsPerDemand) {
+
+		User payer = User.builder().uuid(UUID.randomUUID().toString()).name("Payer").mobileNumber("9999999999")
+				.permanentAddress("Sector 17, Amritsar").tenantId("pb").build();
+		List<Demand> demands = new ArrayList<>(demandCount);
+		for (int i = 0; i < demandCount; i++) {
+
+			String demandId = UUID.randomUUID().toString();
+			List<DemandDetail> details = new ArrayList<>(detailsPerDemand);
+			for (int j = 0; j < detailsPerDemand; j++) {
+				details.add(DemandDetail.builder().id(UUID.randomUUID().toString()).demandId(demandId)
+						.taxHeadMasterCode(PT_TAX_HEADS.get(j % PT_TAX_HEADS.size()))
+						.taxAmount(new BigDecimal(j % 4 == 3 ? "-45.00" : "1800.00")).collectionAmount(BigDecimal.ZERO)
+						.tenantId(TENANT_ID).build());
+			}
+			demands.add(Demand.builder().id(demandId).tenantId(TENANT_ID).consumerCode("PT-107-" + (1000000 + i))
+					.consumerType("PROPERTY").businessService(BUSINESS_SERVICE).payer(payer)
+					.taxPeriodFrom(1680307200000L).taxPeriodTo(1711929599000L).billExpiryTime(864000000L)
+					.minimumAmountPayable(BigDecimal.ZERO).status(StatusEnum.ACTIVE).demandDetails(details).build());
+		}
+		return demands;
+	}
+
+	/**
+	 * Master data of the tenant with the property tax heads and business service
+	 */
+	public static BillingMasterData masterData() {
+
+		List<TaxHeadMaster> taxHeads = new ArrayList<>();
+		for (int i = 0; i < PT_TAX_HEADS.size(); i++) {
+
+			TaxHeadMaster taxHead = new TaxHeadMaster();
+			taxHead.setTenantId(TENANT_ID);
+			taxHead.setService(BUSINESS_SERVICE);
+			taxHead.setCode(PT_TAX_HEADS.get(i));
+			taxHead.setName(PT_TAX_HEADS.get(i));
+			taxHead.setOrder(i);
+			taxHead.setCategory("PT_ADVANCE_CARRYFORWARD".equals(taxHead.getCode()) ? Category.ADVANCE_COLLECTION
+					: Category.TAX);
+			taxHeads.add(taxHead);
+		}
+		BusinessServiceDetail businessService = BusinessServiceDetail.builder().id(UUID.randomUUID().toString())
+				.tenantId(TENANT_ID).businessService("Property Tax").code(BUSINESS_SERVICE).partPaymentAllowed(true)
+				.isAdvanceAllowed(true).callBackForApportioning(false).build();
+		return new BillingMasterData(TENANT_ID, taxHeads, Collections.singletonList(businessService),
+				Collections.emptyList(), System.currentTimeMillis());
+	}
+}
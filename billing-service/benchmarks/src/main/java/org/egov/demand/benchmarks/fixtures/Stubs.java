@@ -0,0 +1,145 @@
+package org.egov.demand.benchmarks.fixtures;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.model.BillingMasterData;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandCriteria;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.model.PaymentBackUpdateAudit;
+import org.egov.demand.repository.ServiceRequestRepository;
+import org.egov.demand.service.BillNumberPool;
+import org.egov.demand.service.DemandService;
+import org.egov.demand.service.MasterDataService;
+import org.egov.demand.web.contract.DemandRequest;
+import org.egov.demand.web.contract.DemandResponse;
+import org.egov.demand.web.contract.User;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Stand-ins for the services which reach mdms, idgen, the user service and the
+ * database, answering from memory without a remote call
+ */
+public final class Stubs {
+
+	private Stubs() {
+	}
+
+	/**
+	 * Master data service answering with the same master data for every tenant
+	 */
+	public static class StubMasterDataService extends MasterDataService {
+
+		private final BillingMasterData masterData;
+
+		public StubMasterDataService(BillingMasterData masterData) {
+			this.masterData = masterData;
+		}
+
+		@Override
+		public BillingMasterData getMasterData(RequestInfo requestInfo, String tenantId) {
+			return masterData;
+		}
+	}
+
+	/**
+	 * Bill number pool handing out numbers of a running sequence
+	 */
+	public static class StubBillNumberPool extends BillNumberPool {
+
+		private long sequence;
+
+		@Override
+		public synchronized List<String> getBillNumbers(RequestInfo requestInfo, String tenantId,
+				String billNumberFormat, int count) {
+
+			List<String> billNumbers = new ArrayList<>(count);
+			for (int i = 0; i < count; i++)
+				billNumbers.add(billNumberFormat.replace("[SEQ_egbs_billnumber]", String.valueOf(++sequence)));
+			return billNumbers;
+		}
+	}
+
+	/**
+	 * Rest repository answering every call with the user search response of
+	 * the given user
+	 */
+	public static class StubUserSearchRepository extends ServiceRequestRepository {
+
+		private final Map<?, ?> userResponse;
+
+		public StubUserSearchRepository(User user, ObjectMapper mapper) {
+			this.userResponse = mapper.convertValue(Collections.singletonMap("user", Collections.singletonList(user)),
+					Map.class);
+		}
+
+		@Override
+		@SuppressWarnings("rawtypes")
+		public Map fetchResult(String uri, Object request) {
+			return userResponse;
+		}
+	}
+
+	/**
+	 * Demand service whose search returns the given demands as they were
+	 * before a payment, or after it, and whose update is a no-op
+	 */
+	public static class StubDemandService extends DemandService {
+
+		private final List<Demand> demands;
+
+		private final List<List<DemandDetail>> details = new ArrayList<>();
+
+		private final List<List<BigDecimal>> taxAmounts = new ArrayList<>();
+
+		private boolean isPaid;
+
+		public StubDemandService(List<Demand> demands) {
+
+			this.demands = demands;
+			for (Demand demand : demands) {
+				details.add(new ArrayList<>(demand.getDemandDetails()));
+				List<BigDecimal> amounts = new ArrayList<>();
+				demand.getDemandDetails().forEach(detail -> amounts.add(detail.getTaxAmount()));
+				taxAmounts.add(amounts);
+			}
+		}
+
+		/**
+		 * @param isPaid whether the demands are searched fully paid
+		 */
+		public void setPaid(boolean isPaid) {
+			this.isPaid = isPaid;
+		}
+
+		/*
+		 * restores the state of the demands, the way a search would read them again
+		 */
+		@Override
+		public List<Demand> getDemands(DemandCriteria demandCriteria, RequestInfo requestInfo) {
+
+			for (int i = 0; i < demands.size(); i++) {
+
+				List<DemandDetail> demandDetails = new ArrayList<>(details.get(i));
+				for (int j = 0; j < demandDetails.size(); j++) {
+					DemandDetail detail = demandDetails.get(j);
+					detail.setTaxAmount(taxAmounts.get(i).get(j));
+					detail.setCollectionAmount(isPaid ? detail.getTaxAmount() : BigDecimal.ZERO);
+				}
+				demands.get(i).setDemandDetails(demandDetails);
+			}
+			return demands;
+		}
+
+		@Override
+		public DemandResponse updateAsync(DemandRequest demandRequest, PaymentBackUpdateAudit paymentBackUpdateAudit) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package org.egov.demand.benchmarks.fixtures;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.postgresql.util.PGobject;
+
+/**
+ * In memory result set which behaves like the postgres driver for the calls
+ * made by the row mappers.
+ *
+ * Values are held as text and converted on every read, the way the driver
+ * decodes the text protocol, so every getString returns a new string and every
+ * getBigDecimal a new BigDecimal. Column labels are looked up as given and then
+ * lower cased, getObject returns jsonb columns as a new PGobject and bigint
+ * columns as a Long.
+ *
+ * The proxy costs the same for every mapper, compare mappers on the same
+ * result set only.
+ */
+public final class SyntheticResultSet implements InvocationHandler {
+
+	private final List<String> columns;
+
+	private final Map<String, Integer> columnIndex = new HashMap<>();
+
+	private final Set<String> jsonbColumns;
+
+	private final Set<String> bigintColumns;
+
+	private final List<String[]> rows;
+
+	private int cursor = -1;
+
+	private boolean wasNull;
+
+	private SyntheticResultSet(List<String> columns, Set<String> jsonbColumns, Set<String> bigintColumns,
+			List<String[]> rows) {
+		this.columns = columns;
+		for (int i = 0; i < columns.size(); i++)
+			columnIndex.put(columns.get(i), i + 1);
+		this.jsonbColumns = jsonbColumns;
+		this.bigintColumns = bigintColumns;
+		this.rows = rows;
+	}
+
+	/**
+	 * @param columns lower case column labels
+	 * @param jsonbColumns labels of the jsonb columns
+	 * @param rows text values of every row, in the order of the columns
+	 */
+	public static ResultSet of(List<String> columns, Set<String> jsonbColumns, List<String[]> rows) {
+		return of(columns, jsonbColumns, Collections.emptySet(), rows);
+	}
+
+	/**
+	 * @param columns lower case column labels
+	 * @param jsonbColumns labels of the jsonb columns
+	 * @param bigintColumns labels of the bigint columns read with getObject
+	 * @param rows text values of every row, in the order of the columns
+	 */
+	public static ResultSet of(List<String> columns, Set<String> jsonbColumns, Set<String> bigintColumns,
+			List<String[]> rows) {
+		return (ResultSet) Proxy.newProxyInstance(SyntheticResultSet.class.getClassLoader(),
+				new Class<?>[] { ResultSet.class }, new SyntheticResultSet(columns, jsonbColumns, bigintColumns, rows));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+		switch (method.getName()) {
+		case "next":
+			return ++cursor < rows.size();
+		case "beforeFirst":
+			cursor = -1;
+			return null;
+		case "findColumn":
+			return findColumn((String) args[0]);
+		case "wasNull":
+			return wasNull;
+		case "getString":
+			return getText(args[0]);
+		case "getInt": {
+			String text = getText(args[0]);
+			return null == text ? 0 : Integer.parseInt(text);
+		}
+		case "getLong": {
+			String text = getText(args[0]);
+			return null == text ? 0L : Long.parseLong(text);
+		}
+		case "getBoolean": {
+			String text = getText(args[0]);
+			return null != text && ("t".equals(text) || "true".equals(text));
+		}
+		case "getBigDecimal": {
+			String text = getText(args[0]);
+			return null == text ? null : new BigDecimal(text);
+		}
+		case "getObject":
+			return getObject(args[0]);
+		case "close":
+			return null;
+		case "isClosed":
+			return false;
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		case "equals":
+			return proxy == args[0];
+		case "toString":
+			return "SyntheticResultSet";
+		default:
+			throw new UnsupportedOperationException(method.getName());
+		}
+	}
+
+	private int findColumn(String columnLabel) throws SQLException {
+
+		Integer index = columnIndex.get(columnLabel);
+		if (null == index)
+			index = columnIndex.get(columnLabel.toLowerCase(Locale.US));
+		if (null == index)
+			throw new SQLException("The column name " + columnLabel + " was not found in this ResultSet.");
+		return index;
+	}
+
+	private String getText(Object column) throws SQLException {
+
+		int index = column instanceof Integer ? (Integer) column : findColumn((String) column);
+		String value = rows.get(cursor)[index - 1];
+		wasNull = null == value;
+		return null == value ? null : new String(value);
+	}
+
+	private Object getObject(Object column) throws SQLException {
+
+		int index = column instanceof Integer ? (Integer) column : findColumn((String) column);
+		String text = getText(index);
+		String label = columns.get(index - 1);
+		if (null != text && bigintColumns.contains(label))
+			return Long.valueOf(text);
+		if (null == text || !jsonbColumns.contains(label))
+			return text;
+
+		PGobject pgObject = new PGobject();
+		pgObject.setType("jsonb");
+		pgObject.setValue(text);
+		return pgObject;
+	}
+}
@@ -0,0 +1,33 @@
+package org.egov.demand.amendment.model;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import org.egov.common.contract.request.RequestInfo;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AmendmentBulkUpdateRequest {
+
+	@NotNull
+	@JsonProperty("RequestInfo")
+	private RequestInfo requestInfo;
+
+	@NotEmpty
+	@JsonProperty("AmendmentUpdates")
+	@Valid
+	private List<AmendmentUpdate> amendmentUpdates;
+
+}
@@ -63,6 +63,9 @@ public class AmendmentCriteria {
 	private String tenantId;
 	
 	private String amendmentId;
+
+	@Default
+	private Set<String> amendmentIds = new HashSet<>();
 	
 	@Min(0)
 	private Integer offset;
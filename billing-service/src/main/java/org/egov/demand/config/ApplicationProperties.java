@@ -84,6 +84,18 @@ public class ApplicationProperties {
 	@Value("${istenantlevelbillnumberingenabled}")
 	private Boolean isTenantLevelBillNumberingEnabled;
 	
+	@Value("${bs.bill.billnumber.pool.enabled}")
+	private Boolean isBillNumberPoolEnabled;
+	
+	@Value("${bs.bill.billnumber.pool.block.size}")
+	private Integer billNumberPoolBlockSize;
+	
+	@Value("${bs.bill.billnumber.pool.lowwatermark}")
+	private Integer billNumberPoolLowWaterMark;
+	
+	@Value("${bs.bill.billnumber.pool.shutdown.timeout.ms}")
+	private Long billNumberPoolShutdownTimeout;
+	
 	@Value("${egov.idgen.hostname}")
 	private String idGenHost;
 	
@@ -130,6 +142,9 @@ public class ApplicationProperties {
 
     @Value("${egov.mdms.search.endpoint}")
     private String mdmsEndpoint;
+
+    @Value("${bs.masterdata.cache.ttl.ms}")
+    private Long masterDataCacheTtl;
     
 	@Value("${user.service.hostname}")
 	private String userServiceHostName;
@@ -153,9 +168,150 @@ public class ApplicationProperties {
 	
 	@Value("${kafka.topics.receipt.cancel.name.v2}")
 	private String receiptCancellationTopicV2;
+
+	@Value("${bs.payment.backupdate.batch.enabled}")
+	private Boolean isPaymentBackUpdateBatchEnabled;
+
+	@Value("${bs.payment.backupdate.batch.size}")
+	private Integer paymentBackUpdateBatchSize;
 	
     @Value("${search.pagesize.default}")
     private String commonSearchDefaultLimit;
+
+	@Value("${bs.demand.search.limit.max}")
+	private Integer demandSearchMaxLimit;
+
+	@Value("${bs.demand.stream.fetch.size}")
+	private Integer demandStreamFetchSize;
+
+	@Value("${bs.demand.stream.timeout.ms}")
+	private Long demandStreamTimeout;
+
+	@Value("${bs.demand.audit.journal.enabled}")
+	private Boolean isDemandAuditJournalEnabled;
+
+	@Value("${bs.demand.audit.journal.dir}")
+	private String demandAuditJournalDir;
+
+	@Value("${bs.demand.audit.journal.max.pending.rows}")
+	private Long demandAuditJournalMaxPendingRows;
+
+	@Value("${bs.demand.audit.journal.flush.interval.ms}")
+	private Long demandAuditJournalFlushInterval;
+
+	@Value("${bs.bulk.copy.enabled}")
+	private Boolean isBulkCopyEnabled;
+
+	@Value("${bs.bulk.copy.buffer.size}")
+	private Integer bulkCopyBufferSize;
+
+	@Value("${bs.remote.call.pool.size}")
+	private Integer remoteCallPoolSize;
+
+	@Value("${bs.remote.call.queue.size}")
+	private Integer remoteCallQueueSize;
+
+	@Value("${bs.remote.call.timeout.ms}")
+	private Long remoteCallTimeout;
+
+	@Value("${bs.demand.dues.reconciliation.enabled}")
+	private Boolean isDemandDuesReconciliationEnabled;
+
+	@Value("${bs.demand.dues.reconciliation.tenantids}")
+	private List<String> demandDuesReconciliationTenantIds;
+
+	@Value("${bs.demand.dues.reconciliation.interval.ms}")
+	private Long demandDuesReconciliationInterval;
+
+	@Value("${bs.replica.datasource.url}")
+	private String replicaDataSourceUrl;
+
+	@Value("${bs.replica.datasource.username}")
+	private String replicaDataSourceUsername;
+
+	@Value("${bs.replica.datasource.password}")
+	private String replicaDataSourcePassword;
+
+	@Value("${bs.replica.datasource.pool.size}")
+	private Integer replicaDataSourcePoolSize;
+
+	@Value("${bs.bill.bulkcancel.chunk.size}")
+	private Integer bulkCancelChunkSize;
+
+	@Value("${bs.bill.bulkcancel.max.size}")
+	private Integer bulkCancelMaxSize;
+
+	@Value("${bs.bill.bulkcancel.queue.size}")
+	private Integer bulkCancelQueueSize;
+
+	@Value("${kafka.topics.bulk.cancel.bill.topic.name}")
+	private String bulkCancelBillTopic;
+
+	@Value("${bs.bill.expiry.sweep.enabled}")
+	private Boolean isBillExpirySweepEnabled;
+
+	@Value("${bs.bill.expiry.sweep.tenantids}")
+	private List<String> billExpirySweepTenantIds;
+
+	@Value("${bs.bill.expiry.sweep.interval.ms}")
+	private Long billExpirySweepInterval;
+
+	@Value("${bs.bill.expiry.sweep.chunk.size}")
+	private Integer billExpirySweepChunkSize;
+
+	@Value("${bs.bill.expiry.sweep.user.uuid}")
+	private String billExpirySweepUserUuid;
+
+	@Value("${bs.calculator.chunk.size}")
+	private Integer calculatorChunkSize;
+
+	@Value("${bs.calculator.timeout.ms}")
+	private Long calculatorTimeout;
+
+	@Value("${bs.calculator.circuit.failure.threshold}")
+	private Integer calculatorCircuitFailureThreshold;
+
+	@Value("${bs.calculator.circuit.open.ms}")
+	private Long calculatorCircuitOpenDuration;
+
+	@Value("${bs.bulk.bill.pipeline.enabled}")
+	private Boolean isBulkBillPipelineEnabled;
+
+	@Value("${bs.bulk.bill.pipeline.workers}")
+	private Integer bulkBillPipelineWorkers;
+
+	@Value("${bs.bulk.bill.pipeline.batch.size}")
+	private Integer bulkBillPipelineBatchSize;
+
+	@Value("${bs.bulk.bill.pipeline.queue.size}")
+	private Integer bulkBillPipelineQueueSize;
+
+	@Value("${bs.bulk.bill.pipeline.poll.size}")
+	private Integer bulkBillPipelinePollSize;
+
+	@Value("${bs.payment.backupdate.filter.enabled}")
+	private Boolean isPaymentBackUpdateFilterEnabled;
+
+	@Value("${bs.payment.backupdate.filter.tenantids}")
+	private List<String> paymentBackUpdateFilterTenantIds;
+
+	@Value("${bs.payment.backupdate.filter.expected.payments}")
+	private Long paymentBackUpdateFilterExpectedPayments;
+
+	@Value("${bs.payment.backupdate.filter.false.positive.rate}")
+	private Double paymentBackUpdateFilterFalsePositiveRate;
+
+	@Value("${bs.payer.cache.enabled}")
+	private Boolean isPayerCacheEnabled;
+
+	@Value("${bs.payer.cache.max.size}")
+	private Integer payerCacheMaxSize;
+
+	@Value("${bs.payer.cache.ttl.ms}")
+	private Long payerCacheTtl;
+
+	@Value("${kafka.topics.user.update}")
+	private String userUpdateTopic;
     
 
     // Apportioning
@@ -193,6 +349,12 @@ public class ApplicationProperties {
     @Value("${amendment.id.format.name}")
     private String amendmentIdFormatName;
 
+    @Value("${bs.amendment.bulk.max.size}")
+    private Integer amendmentBulkMaxSize;
+
+    @Value("${bs.amendment.bulk.workflow.batch.size}")
+    private Integer amendmentBulkWorkflowBatchSize;
+
 	@Value("${statelevel.rolecode.excluded.list}")
 	private List<String> statelevelRolecodeExclusionList;
 	
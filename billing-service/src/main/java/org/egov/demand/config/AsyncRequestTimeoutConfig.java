@@ -0,0 +1,41 @@
+package org.egov.demand.config;
+
+import java.util.concurrent.Callable;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Lets a handler set the timeout of its own async request through a request
+ * attribute, so that a long running response like the demand stream does not
+ * raise the timeout of every async request
+ */
+@Configuration
+public class AsyncRequestTimeoutConfig implements WebMvcConfigurer {
+
+	public static final String ASYNC_REQUEST_TIMEOUT_ATTRIBUTE = AsyncRequestTimeoutConfig.class.getName() + ".timeout";
+
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		configurer.registerCallableInterceptors(new AsyncRequestTimeoutInterceptor());
+	}
+
+	/*
+	 * runs before the async processing is started, the only point where the timeout of the request can still be changed
+	 */
+	static class AsyncRequestTimeoutInterceptor implements CallableProcessingInterceptor {
+
+		@Override
+		public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+
+			Object timeout = request.getAttribute(ASYNC_REQUEST_TIMEOUT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+			if (timeout instanceof Long && request instanceof AsyncWebRequest)
+				((AsyncWebRequest) request).setTimeout((Long) timeout);
+		}
+	}
+}
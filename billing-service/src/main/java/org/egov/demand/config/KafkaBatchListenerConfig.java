@@ -0,0 +1,68 @@
+package org.egov.demand.config;
+
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.egov.demand.consumer.ConsumerMetricsInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Listener container factory for consumers which receive a batch of records per
+ * poll instead of one record per call
+ *
+ * Its consumers publish the kafka client metrics and are metered by the
+ * consumer metrics interceptor, like those of the default factory.
+ */
+@Configuration
+public class KafkaBatchListenerConfig {
+
+	public static final String PAYMENT_BATCH_LISTENER_FACTORY = "paymentBatchListenerContainerFactory";
+
+	public static final String BULK_BILL_BATCH_LISTENER_FACTORY = "bulkBillBatchListenerContainerFactory";
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	@Bean(name = PAYMENT_BATCH_LISTENER_FACTORY)
+	public ConcurrentKafkaListenerContainerFactory<Object, Object> paymentBatchListenerContainerFactory(
+			KafkaProperties kafkaProperties, MeterRegistry meterRegistry,
+			ConsumerMetricsInterceptor consumerMetricsInterceptor) {
+
+		return getBatchListenerFactory(appProps.getPaymentBackUpdateBatchSize(), kafkaProperties, meterRegistry,
+				consumerMetricsInterceptor);
+	}
+
+	@Bean(name = BULK_BILL_BATCH_LISTENER_FACTORY)
+	public ConcurrentKafkaListenerContainerFactory<Object, Object> bulkBillBatchListenerContainerFactory(
+			KafkaProperties kafkaProperties, MeterRegistry meterRegistry,
+			ConsumerMetricsInterceptor consumerMetricsInterceptor) {
+
+		return getBatchListenerFactory(appProps.getBulkBillPipelinePollSize(), kafkaProperties, meterRegistry,
+				consumerMetricsInterceptor);
+	}
+
+	private ConcurrentKafkaListenerContainerFactory<Object, Object> getBatchListenerFactory(int maxPollRecords,
+			KafkaProperties kafkaProperties, MeterRegistry meterRegistry,
+			ConsumerMetricsInterceptor consumerMetricsInterceptor) {
+
+		Map<String, Object> consumerProps = kafkaProperties.buildConsumerProperties(null);
+		consumerProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+
+		DefaultKafkaConsumerFactory<Object, Object> consumerFactory = new DefaultKafkaConsumerFactory<>(consumerProps);
+		consumerFactory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+
+		ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+		factory.setConsumerFactory(consumerFactory);
+		factory.setBatchInterceptor(consumerMetricsInterceptor);
+		factory.setBatchListener(true);
+		return factory;
+	}
+}
@@ -0,0 +1,84 @@
+package org.egov.demand.config;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.PartitionInfo;
+import org.egov.demand.consumer.ConsumerMetricsInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+import org.springframework.kafka.listener.ContainerProperties.AckMode;
+import org.springframework.util.CollectionUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Listener container factory for the user update events of the payer cache
+ *
+ * Every instance has to see every event, so the partitions of the topic are
+ * assigned to the consumer directly instead of through a consumer group. The
+ * consumer has no group and commits no offsets, it starts from the end of the
+ * partitions as the cache of a starting instance is empty, and leaves nothing
+ * behind on the broker when the instance goes away.
+ */
+@Configuration
+public class PayerCacheListenerConfig {
+
+	public static final String PAYER_CACHE_LISTENER_FACTORY = "payerCacheListenerContainerFactory";
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	@Autowired
+	private KafkaProperties kafkaProperties;
+
+	@Bean(name = PAYER_CACHE_LISTENER_FACTORY)
+	public ConcurrentKafkaListenerContainerFactory<Object, Object> payerCacheListenerContainerFactory(
+			MeterRegistry meterRegistry, ConsumerMetricsInterceptor consumerMetricsInterceptor) {
+
+		DefaultKafkaConsumerFactory<Object, Object> consumerFactory = getConsumerFactory();
+		consumerFactory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+
+		ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+		factory.setConsumerFactory(consumerFactory);
+		factory.setRecordInterceptor(consumerMetricsInterceptor);
+		/*
+		 * the listener never acknowledges, so the container never commits
+		 */
+		factory.getContainerProperties().setAckMode(AckMode.MANUAL);
+		return factory;
+	}
+
+	/**
+	 * Partitions of the topic to assign to the payer cache listener, looked up
+	 * when the listener is registered
+	 */
+	public String[] getPartitions(String topic) {
+
+		if (!Boolean.TRUE.equals(appProps.getIsPayerCacheEnabled()))
+			return new String[] { "0" };
+
+		try (Consumer<Object, Object> consumer = getConsumerFactory().createConsumer()) {
+			List<PartitionInfo> partitions = consumer.partitionsFor(topic);
+			if (CollectionUtils.isEmpty(partitions))
+				return new String[] { "0" };
+			return partitions.stream().map(partition -> String.valueOf(partition.partition())).toArray(String[]::new);
+		}
+	}
+
+	private DefaultKafkaConsumerFactory<Object, Object> getConsumerFactory() {
+
+		Map<String, Object> consumerProps = kafkaProperties.buildConsumerProperties(null);
+		consumerProps.remove(ConsumerConfig.GROUP_ID_CONFIG);
+		consumerProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+		consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+		return new DefaultKafkaConsumerFactory<>(consumerProps);
+	}
+}
@@ -0,0 +1,80 @@
+package org.egov.demand.config;
+
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Data sources of the primary and of the read replica behind a routing data
+ * source, the service otherwise runs on the single auto configured data source
+ */
+@Configuration
+@ConditionalOnProperty(name = "bs.replica.datasource.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+	public static final String PRIMARY_DATASOURCE = "primaryDataSource";
+
+	public static final String REPLICA_DATASOURCE = "replicaDataSource";
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	@Bean(name = PRIMARY_DATASOURCE)
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+		return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	}
+
+	@Bean(name = REPLICA_DATASOURCE)
+	public HikariDataSource replicaDataSource(DataSourceProperties dataSourceProperties) {
+
+		HikariDataSource replicaDataSource = new HikariDataSource();
+		replicaDataSource.setPoolName("bs-replica");
+		replicaDataSource.setDriverClassName(dataSourceProperties.determineDriverClassName());
+		replicaDataSource.setJdbcUrl(appProps.getReplicaDataSourceUrl());
+		replicaDataSource.setUsername(appProps.getReplicaDataSourceUsername());
+		replicaDataSource.setPassword(appProps.getReplicaDataSourcePassword());
+		replicaDataSource.setMaximumPoolSize(appProps.getReplicaDataSourcePoolSize());
+		replicaDataSource.setReadOnly(true);
+		return replicaDataSource;
+	}
+
+	@Bean
+	@Primary
+	public DataSource dataSource(@Qualifier(PRIMARY_DATASOURCE) DataSource primaryDataSource,
+			@Qualifier(REPLICA_DATASOURCE) DataSource replicaDataSource) {
+
+		Map<Object, Object> dataSources = new HashMap<>();
+		dataSources.put(ReplicaRoutingDataSource.PRIMARY, primaryDataSource);
+		dataSources.put(ReplicaRoutingDataSource.REPLICA, replicaDataSource);
+
+		ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource();
+		routingDataSource.setTargetDataSources(dataSources);
+		routingDataSource.setDefaultTargetDataSource(primaryDataSource);
+		routingDataSource.afterPropertiesSet();
+
+		/*
+		 * defaults are given so that the proxy does not take a connection to read them
+		 */
+		LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy();
+		dataSource.setTargetDataSource(routingDataSource);
+		dataSource.setDefaultAutoCommit(true);
+		dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+		dataSource.afterPropertiesSet();
+		return dataSource;
+	}
+}
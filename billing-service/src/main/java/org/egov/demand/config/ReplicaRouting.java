@@ -0,0 +1,83 @@
+package org.egov.demand.config;
+
+import java.util.function.Supplier;
+
+/**
+ * Marks the reads of the current thread which may be served by the read
+ * replica.
+ *
+ * Only the read only transactions started within onReplica go to the replica.
+ * Once the thread has taken a connection of the primary for anything else it
+ * is pinned to the primary, so that a request reads its own writes, until the
+ * request completes and the routing is cleared. Threads outside a request,
+ * kafka listeners, schedulers and pool threads, are pinned only until the
+ * transaction which took the connection completes.
+ */
+public final class ReplicaRouting {
+
+	private static final ThreadLocal<Boolean> replicaPreferred = new ThreadLocal<>();
+
+	private static final ThreadLocal<Boolean> pinnedToPrimary = new ThreadLocal<>();
+
+	private static final ThreadLocal<Boolean> inRequest = new ThreadLocal<>();
+
+	private ReplicaRouting() {
+	}
+
+	/**
+	 * Runs the given reads with the replica preferred
+	 *
+	 * @param reads
+	 */
+	public static <T> T onReplica(Supplier<T> reads) {
+
+		Boolean previous = replicaPreferred.get();
+		replicaPreferred.set(Boolean.TRUE);
+		try {
+			return reads.get();
+		} finally {
+			if (null == previous)
+				replicaPreferred.remove();
+			else
+				replicaPreferred.set(previous);
+		}
+	}
+
+	public static boolean isReplicaPreferred() {
+		return Boolean.TRUE.equals(replicaPreferred.get()) && !isPinnedToPrimary();
+	}
+
+	public static boolean isPinnedToPrimary() {
+		return Boolean.TRUE.equals(pinnedToPrimary.get());
+	}
+
+	public static void pinToPrimary() {
+		pinnedToPrimary.set(Boolean.TRUE);
+	}
+
+	public static void unpinFromPrimary() {
+		pinnedToPrimary.remove();
+	}
+
+	public static boolean isInRequest() {
+		return Boolean.TRUE.equals(inRequest.get());
+	}
+
+	/**
+	 * Starts the routing of a request, the thread stays pinned to the primary
+	 * across transactions until the request is cleared
+	 */
+	public static void beginRequest() {
+		clear();
+		inRequest.set(Boolean.TRUE);
+	}
+
+	/**
+	 * Clears the routing of the thread once its request has completed
+	 */
+	public static void clear() {
+		replicaPreferred.remove();
+		pinnedToPrimary.remove();
+		inRequest.remove();
+	}
+}
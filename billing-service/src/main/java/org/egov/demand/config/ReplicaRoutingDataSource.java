@@ -0,0 +1,57 @@
+package org.egov.demand.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Routes the connections of read only transactions started within
+ * ReplicaRouting.onReplica to the replica and every other connection to the
+ * primary.
+ *
+ * The key is looked up when a statement first needs a physical connection,
+ * the data source is to be wrapped in a LazyConnectionDataSourceProxy so that
+ * the read only flag of the transaction is already known by then.
+ *
+ * A connection of the primary pins the thread to the primary. Outside a
+ * request the pin is released when the transaction completes, a statement
+ * outside a transaction does not pin such a thread as nothing would release
+ * it.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+	public static final String PRIMARY = "primary";
+
+	public static final String REPLICA = "replica";
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+
+		if (ReplicaRouting.isReplicaPreferred() && TransactionSynchronizationManager.isCurrentTransactionReadOnly())
+			return REPLICA;
+
+		if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !ReplicaRouting.isPinnedToPrimary())
+			pinToPrimary();
+		return PRIMARY;
+	}
+
+	private static void pinToPrimary() {
+
+		if (ReplicaRouting.isInRequest()) {
+			ReplicaRouting.pinToPrimary();
+			return;
+		}
+
+		if (!TransactionSynchronizationManager.isSynchronizationActive())
+			return;
+
+		ReplicaRouting.pinToPrimary();
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+			@Override
+			public void afterCompletion(int status) {
+				ReplicaRouting.unpinFromPrimary();
+			}
+		});
+	}
+}
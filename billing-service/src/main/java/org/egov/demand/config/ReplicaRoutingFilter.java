@@ -0,0 +1,31 @@
+package org.egov.demand.config;
+
+import java.io.IOException;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Pins the request thread to the primary across transactions once it has
+ * written, and releases the pin once the request completes
+ */
+@Component
+public class ReplicaRoutingFilter extends OncePerRequestFilter {
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		ReplicaRouting.beginRequest();
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			ReplicaRouting.clear();
+		}
+	}
+}
@@ -1,19 +1,25 @@
 package org.egov.demand.consumer;
 
 import java.math.BigDecimal;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import org.egov.common.contract.request.RequestInfo;
 import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.config.KafkaBatchListenerConfig;
 import org.egov.demand.helper.CollectionReceiptRequest;
 import org.egov.demand.model.BillDetail.StatusEnum;
 import org.egov.demand.model.BillV2;
 import org.egov.demand.model.PaymentBackUpdateAudit;
 import org.egov.demand.repository.BillRepository;
 import org.egov.demand.repository.DemandRepository;
+import org.egov.demand.repository.PaymentBackUpdateFilter;
 import org.egov.demand.service.DemandService;
 import org.egov.demand.service.ReceiptService;
 import org.egov.demand.service.ReceiptServiceV2;
@@ -33,9 +39,8 @@ import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.jayway.jsonpath.DocumentContext;
-import com.jayway.jsonpath.JsonPath;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -67,6 +72,9 @@ public class BillingServiceConsumer {
 	@Autowired
 	private Util util;
 
+	@Autowired
+	private PaymentBackUpdateFilter paymentBackUpdateFilter;
+
 
 	@KafkaListener(topics = { "${kafka.topics.receipt.update.collecteReceipt}", "${kafka.topics.save.bill}",
 			"${kafka.topics.save.demand}", "${kafka.topics.update.demand}", "${kafka.topics.receipt.update.demand}",
@@ -136,7 +144,8 @@ public class BillingServiceConsumer {
 		}*/
 	}
 
-	@KafkaListener(topicPattern = "${kafka.topics.receipt.topic.pattern}")
+	@KafkaListener(topicPattern = "${kafka.topics.receipt.topic.pattern}",
+			autoStartup = "#{!${bs.payment.backupdate.batch.enabled}}")
 	public void processPayment(Map<String, Object> consumerRecord, @Header(KafkaHeaders.RECEIVED_TOPIC) String topic) {
 		log.debug("processPaymentkey:" + topic + ":" + "value:" + consumerRecord);
 		/*
@@ -149,7 +158,8 @@ public class BillingServiceConsumer {
 
 	}
 
-	@KafkaListener(topicPattern = "${kafka.topics.receipt.cancel.topic.pattern}")
+	@KafkaListener(topicPattern = "${kafka.topics.receipt.cancel.topic.pattern}",
+			autoStartup = "#{!${bs.payment.backupdate.batch.enabled}}")
 	public void processPaymentCancel(Map<String, Object> consumerRecord, @Header(KafkaHeaders.RECEIVED_TOPIC) String topic) {
 		log.debug("processPaymentCancelkey:" + topic + ":" + "value:" + consumerRecord);
 
@@ -165,6 +175,30 @@ public class BillingServiceConsumer {
 
 
 
+	/**
+	 * Batch mode of processPayment, enabled with bs.payment.backupdate.batch.enabled
+	 */
+	@KafkaListener(topicPattern = "${kafka.topics.receipt.topic.pattern}",
+			containerFactory = KafkaBatchListenerConfig.PAYMENT_BATCH_LISTENER_FACTORY,
+			autoStartup = "${bs.payment.backupdate.batch.enabled}")
+	public void processPayments(List<Map<String, Object>> consumerRecords) {
+
+		log.debug("processPayments batch size : " + consumerRecords.size());
+		updateDemandsFromPayments(consumerRecords, false);
+	}
+
+	/**
+	 * Batch mode of processPaymentCancel, enabled with bs.payment.backupdate.batch.enabled
+	 */
+	@KafkaListener(topicPattern = "${kafka.topics.receipt.cancel.topic.pattern}",
+			containerFactory = KafkaBatchListenerConfig.PAYMENT_BATCH_LISTENER_FACTORY,
+			autoStartup = "${bs.payment.backupdate.batch.enabled}")
+	public void processPaymentsCancel(List<Map<String, Object>> consumerRecords) {
+
+		log.debug("processPaymentsCancel batch size : " + consumerRecords.size());
+		updateDemandsFromPayments(consumerRecords, true);
+	}
+
 	private void updateDemandsFromPayment(Map<String, Object> consumerRecord, Boolean isReceiptCancellation) {
 		
 		BillRequestV2 billReq = BillRequestV2.builder().build();
@@ -173,6 +207,8 @@ public class BillingServiceConsumer {
 		try {
 
 			setBillRequestFromPayment(consumerRecord, billReq, isReceiptCancellation);
+			validatePaymentForDuplicateUpdates(billReq.getBills().get(0).getTenantId(), isReceiptCancellation,
+					getPaymentId(billReq));
 			/*
 			 * setting tenantid value in mdc for tracer to read while making http calls
 			 */
@@ -199,21 +235,124 @@ public class BillingServiceConsumer {
 	}
 
 
+	/**
+	 * Back updates the demands for a batch of payments
+	 * 
+	 * payments are grouped by tenant keeping the order in which they were received,
+	 * so payments of the same consumer code are applied in order
+	 * 
+	 * @param consumerRecords
+	 * @param isReceiptCancellation
+	 */
+	private void updateDemandsFromPayments(List<Map<String, Object>> consumerRecords, Boolean isReceiptCancellation) {
+
+		Map<String, List<BillRequestV2>> tenantIdBillRequestMap = new LinkedHashMap<>();
+
+		for (Map<String, Object> consumerRecord : consumerRecords) {
+
+			BillRequestV2 billReq = BillRequestV2.builder().build();
+			try {
+
+				setBillRequestFromPayment(consumerRecord, billReq, isReceiptCancellation);
+				tenantIdBillRequestMap.computeIfAbsent(billReq.getBills().get(0).getTenantId(), k -> new ArrayList<>())
+						.add(billReq);
+
+			} catch (Exception e) {
+
+				updatePaymentBackUpdateForFailure("", consumerRecord.toString(), UUID.randomUUID().toString() + " : " + e.getClass().getName(), isReceiptCancellation);
+				log.info("EGBS_PAYMENT_SERIALIZE_ERROR",e.getClass().getName() + " : " + e.getMessage());
+			}
+		}
+
+		tenantIdBillRequestMap.forEach((tenantId, billRequests) -> {
+
+			MDC.put(Constants.TENANTID_MDC_STRING, tenantId);
+			List<BillRequestV2> billRequestsToBeUpdated = removeDuplicatePayments(tenantId, billRequests, isReceiptCancellation);
+			if (billRequestsToBeUpdated.isEmpty())
+				return;
+
+			try {
+				receiptServiceV2.updateDemandFromBills(billRequestsToBeUpdated, isReceiptCancellation);
+			} catch (Exception e) {
+
+				/*
+				 * a single bad payment fails the whole batch, retrying one payment at a time so
+				 * that only the bad payment is recorded as failed
+				 */
+				log.error("Batch back update failed for tenantId : " + tenantId + ", updating payments one at a time", e);
+				billRequestsToBeUpdated.forEach(billReq -> updateDemandsFromBillRequest(tenantId, billReq, isReceiptCancellation));
+			}
+		});
+	}
+
+	/**
+	 * Drops the payments which are already back updated or repeated in the batch,
+	 * recording them as failed back updates
+	 */
+	private List<BillRequestV2> removeDuplicatePayments(String tenantId, List<BillRequestV2> billRequests, Boolean isReceiptCancellation) {
+
+		Set<String> paymentIds = billRequests.stream().map(this::getPaymentId)
+				.filter(paymentId -> paymentBackUpdateFilter.mightBeBackUpdated(tenantId, paymentId, isReceiptCancellation))
+				.collect(Collectors.toSet());
+		Set<String> processedPaymentIds = paymentIds.isEmpty() ? new HashSet<>()
+				: demandRepository.searchPaymentBackUpdateAudit(tenantId, paymentIds, isReceiptCancellation);
+
+		List<BillRequestV2> billRequestsToBeUpdated = new ArrayList<>();
+		for (BillRequestV2 billReq : billRequests) {
+
+			String paymentId = getPaymentId(billReq);
+			if (processedPaymentIds.add(paymentId))
+				billRequestsToBeUpdated.add(billReq);
+			else
+				updatePaymentBackUpdateForFailure(tenantId, "Duplicate Payment object received for back update with payment-id : " + paymentId
+						+ ", payment already updated to demands", paymentId, isReceiptCancellation);
+		}
+		return billRequestsToBeUpdated;
+	}
+
+	private void updateDemandsFromBillRequest(String tenantId, BillRequestV2 billReq, Boolean isReceiptCancellation) {
+
+		String paymentId = getPaymentId(billReq);
+		try {
+
+			validatePaymentForDuplicateUpdates(tenantId, isReceiptCancellation, paymentId);
+			receiptServiceV2.updateDemandFromReceipt(billReq, isReceiptCancellation);
+		} catch (Exception e) {
+
+			updatePaymentBackUpdateForFailure(tenantId, e.getMessage(), paymentId, isReceiptCancellation);
+			log.info("EGBS_PAYMENT_BACKUPDATE_ERROR",e.getClass().getName() + " : " + e.getMessage());
+		}
+	}
+
+	private String getPaymentId(BillRequestV2 billReq) {
+		return util.getValueFromAdditionalDetailsForKey(billReq.getBills().get(0).getAdditionalDetails(),
+				Constants.PAYMENT_ID_KEY);
+	}
+
 	/**
 	 * @param consumerRecord
 	 * @throws JsonProcessingException 
 	 */
 	private void setBillRequestFromPayment(Map<String, Object> consumerRecord, BillRequestV2 billReq, boolean isReceiptCancelled) throws JsonProcessingException {
 		
-		DocumentContext context = null;
-		
-		context = JsonPath.parse(objectMapper.writeValueAsString(consumerRecord));
-
-		String paymentId = objectMapper.convertValue(context.read("$.Payment.id"), String.class);
-		List<BigDecimal> amtPaidList = Arrays.asList(objectMapper.convertValue(context.read("$.Payment.paymentDetails.*.totalAmountPaid"), BigDecimal[].class));
-		List<BillV2> bills = Arrays.asList(objectMapper.convertValue(context.read("$.Payment.paymentDetails.*.bill"), BillV2[].class));
+		/*
+		 * reading the record as a tree instead of serializing it to a string for JsonPath
+		 */
+		JsonNode record = objectMapper.valueToTree(consumerRecord);
+		JsonNode paymentDetails = record.path("Payment").path("paymentDetails");
+
+		if (!paymentDetails.isArray() || paymentDetails.size() == 0)
+			throw new IllegalArgumentException("Payment record has no payment details");
+
+		String paymentId = record.path("Payment").path("id").asText(null);
+		List<BigDecimal> amtPaidList = new ArrayList<>();
+		List<BillV2> bills = new ArrayList<>();
+		for (JsonNode paymentDetail : paymentDetails) {
+			amtPaidList.add(objectMapper.treeToValue(paymentDetail.get("totalAmountPaid"), BigDecimal.class));
+			bills.add(objectMapper.treeToValue(paymentDetail.get("bill"), BillV2.class));
+		}
 		
-		RequestInfo requestInfo = objectMapper.convertValue(context.read("$.RequestInfo"), RequestInfo.class);
+		RequestInfo requestInfo = objectMapper.treeToValue(record.get("RequestInfo"), RequestInfo.class);
 		billReq.setBills(bills);
 		billReq.setRequestInfo(requestInfo);
 		
@@ -222,7 +361,6 @@ public class BillingServiceConsumer {
 		 * additionaldetail info from bill is not needed, so setting new value
 		 */
 		bills.get(0).setAdditionalDetails(util.setValuesAndGetAdditionalDetails(null, Constants.PAYMENT_ID_KEY, paymentId));
-		validatePaymentForDuplicateUpdates(bills.get(0).getTenantId(), isReceiptCancelled, paymentId);
 
 		for (int i = 0; i < bills.size(); i++) {
 			
@@ -252,6 +390,9 @@ public class BillingServiceConsumer {
 
 		log.info("Inside validatePaymentForDuplicateUpdates::BillingServiceConsumer");
 
+		if (!paymentBackUpdateFilter.mightBeBackUpdated(tenantId, paymentId, isReceiptCancelled))
+			return;
+
 		PaymentBackUpdateAudit backUpdateAuditCriteria = PaymentBackUpdateAudit.builder()
 				.isReceiptCancellation(isReceiptCancelled)
 				.paymentId(paymentId)
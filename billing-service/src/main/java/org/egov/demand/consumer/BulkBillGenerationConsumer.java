@@ -1,14 +1,18 @@
 package org.egov.demand.consumer;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.egov.demand.config.KafkaBatchListenerConfig;
 import org.egov.demand.model.BulkBillGenerator;
 import org.egov.demand.model.Demand;
 import org.egov.demand.model.GenerateBillCriteria;
 import org.egov.demand.model.MigrationCount;
 import org.egov.demand.service.BillServicev2;
+import org.egov.demand.service.BulkBillPipeline;
 import org.egov.demand.service.DemandService;
 import org.egov.demand.web.contract.DemandRequest;
 import org.egov.tracer.kafka.CustomKafkaTemplate;
@@ -39,7 +43,11 @@ public class BulkBillGenerationConsumer {
 	@Autowired
 	private CustomKafkaTemplate<String, Object> kafkaTemplate;
 	
-	@KafkaListener(topics = { "${kafka.topics.bulk.bill.generation}" })
+	@Autowired
+	private BulkBillPipeline bulkBillPipeline;
+	
+	@KafkaListener(topics = { "${kafka.topics.bulk.bill.generation}" },
+			autoStartup = "#{!${bs.bulk.bill.pipeline.enabled}}")
 	public void processMessage(Map<String, Object> consumerRecord, @Header(KafkaHeaders.RECEIVED_TOPIC) String topic) {
 
 		log.debug("key:" + topic + ":" + "value:" + consumerRecord);
@@ -54,7 +62,7 @@ public class BulkBillGenerationConsumer {
 				+ " with no of records " + billGenerator.getCreateDemands().size());
 		
 		try {
-			demandService.create(request);
+			demandService.create(request, true);
 		} catch (Exception e) {
 			logError(" Demand creation ", e.getMessage(), billGenerator.getMigrationCount());
 		}
@@ -81,7 +89,7 @@ public class BulkBillGenerationConsumer {
 				.build();
 		
 		try {
-			billService.generateBill(genBillCriteria, billGenerator.getRequestInfo());
+			billService.generateBill(genBillCriteria, billGenerator.getRequestInfo(), true);
 		} catch (Exception e) {
 			logError(" Bill Gen ", e.getMessage(), billGenerator.getMigrationCount());
 		}
@@ -92,6 +100,23 @@ public class BulkBillGenerationConsumer {
 		kafkaTemplate.send(migrationCount.getAuditTopic(), billGenerator.getMigrationCount());
 	}
 	
+	/**
+	 * Batch mode of processMessage, enabled with bs.bulk.bill.pipeline.enabled
+	 * 
+	 * The poll is committed once the pipeline has processed all of its messages
+	 */
+	@KafkaListener(topics = { "${kafka.topics.bulk.bill.generation}" },
+			containerFactory = KafkaBatchListenerConfig.BULK_BILL_BATCH_LISTENER_FACTORY,
+			autoStartup = "${bs.bulk.bill.pipeline.enabled}")
+	public void processMessages(List<Map<String, Object>> consumerRecords) {
+
+		log.debug("processMessages batch size : " + consumerRecords.size());
+		List<BulkBillGenerator> billGenerators = new ArrayList<>(consumerRecords.size());
+		for (Map<String, Object> consumerRecord : consumerRecords)
+			billGenerators.add(objectMapper.convertValue(consumerRecord, BulkBillGenerator.class));
+		bulkBillPipeline.process(billGenerators);
+	}
+	
 	private void logError(String process, String message, MigrationCount bulkBillCount) {
 		bulkBillCount.setAuditTime(System.currentTimeMillis());
 		bulkBillCount.setMessage("prcoess failed in billing service during "+ process + " with error message : " + message);
@@ -0,0 +1,40 @@
+package org.egov.demand.consumer;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.egov.demand.util.BillingMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts the records handed to the kafka listeners and records their lag
+ *
+ * Picked up by the default listener container factory as its record
+ * interceptor, the batch listener factory sets it as its batch interceptor.
+ */
+@Component
+public class ConsumerMetricsInterceptor implements RecordInterceptor<Object, Object>, BatchInterceptor<Object, Object> {
+
+	@Autowired
+	private BillingMetrics billingMetrics;
+
+	@Override
+	public ConsumerRecord<Object, Object> intercept(ConsumerRecord<Object, Object> record,
+			Consumer<Object, Object> consumer) {
+
+		billingMetrics.recordConsumed(record.topic(), record.timestamp());
+		return record;
+	}
+
+	@Override
+	public ConsumerRecords<Object, Object> intercept(ConsumerRecords<Object, Object> records,
+			Consumer<Object, Object> consumer) {
+
+		for (ConsumerRecord<Object, Object> record : records)
+			billingMetrics.recordConsumed(record.topic(), record.timestamp());
+		return records;
+	}
+}
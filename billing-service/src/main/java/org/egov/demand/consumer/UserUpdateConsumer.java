@@ -0,0 +1,58 @@
+package org.egov.demand.consumer;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.egov.demand.config.PayerCacheListenerConfig;
+import org.egov.demand.service.PayerCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drops the cached payers of the users in the user update events
+ *
+ * Every instance has to see every event, so the listener is assigned all the
+ * partitions of the topic without a consumer group, see
+ * PayerCacheListenerConfig.
+ */
+@Service
+@Slf4j
+public class UserUpdateConsumer {
+
+	@Autowired
+	private PayerCache payerCache;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@KafkaListener(topicPartitions = @TopicPartition(topic = "${kafka.topics.user.update}",
+			partitions = "#{@payerCacheListenerConfig.getPartitions('${kafka.topics.user.update}')}"),
+			containerFactory = PayerCacheListenerConfig.PAYER_CACHE_LISTENER_FACTORY,
+			autoStartup = "${bs.payer.cache.enabled}")
+	public void processUserUpdate(Map<String, Object> consumerRecord) {
+
+		JsonNode record = objectMapper.valueToTree(consumerRecord);
+		/*
+		 * the uuid of the user making the update is not one of the updated users
+		 */
+		if (record.isObject()) {
+			((ObjectNode) record).remove("RequestInfo");
+			((ObjectNode) record).remove("requestInfo");
+		}
+
+		Set<String> uuids = new LinkedHashSet<>(record.findValuesAsText("uuid"));
+		if (!uuids.isEmpty())
+			payerCache.invalidate(uuids);
+		else
+			log.debug("User update event without a user uuid : {}", consumerRecord);
+	}
+}
@@ -3,6 +3,7 @@ package org.egov.demand.consumer.notification;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -10,9 +11,12 @@ import org.apache.commons.lang3.StringUtils;
 import org.egov.common.contract.request.RequestInfo;
 import org.egov.common.utils.MultiStateInstanceUtil;
 import org.egov.demand.model.Bill;
+import org.egov.demand.model.BillCancelEvent;
 import org.egov.demand.model.BillDetail;
 import org.egov.demand.model.BillDetailV2;
+import org.egov.demand.model.BillSearchCriteria;
 import org.egov.demand.model.BillV2;
+import org.egov.demand.repository.BillRepositoryV2;
 import org.egov.demand.util.Constants;
 import org.egov.demand.web.contract.BillRequest;
 import org.egov.demand.web.contract.BillRequestV2;
@@ -23,6 +27,7 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
 import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -51,12 +56,18 @@ public class NotificationConsumer {
 
 	@Value("${kafka.topics.cancel.bill.topic.name}")
 	private String billCancelTopic;
+
+	@Value("${kafka.topics.bulk.cancel.bill.topic.name}")
+	private String bulkBillCancelTopic;
 	
 	@Value("${kafka.topics.notification.sms.key}")
 	private String smsTopickey;
 	
     @Autowired
     private ObjectMapper objectMapper;
+
+	@Autowired
+	private BillRepositoryV2 billRepository;
 		
 	@Autowired
 	private KafkaTemplate<String, Object> producer;
@@ -94,13 +105,17 @@ public class NotificationConsumer {
 	 * @param record
 	 * @param topic
 	 */
-	@KafkaListener(topics = { "${kafka.topics.billgen.topic.name}", "${kafka.topics.cancel.bill.topic.name}" })
+	@KafkaListener(topics = { "${kafka.topics.billgen.topic.name}", "${kafka.topics.cancel.bill.topic.name}",
+			"${kafka.topics.bulk.cancel.bill.topic.name}" })
 	public void listen(Map<String, Object> record, @Header(KafkaHeaders.RECEIVED_TOPIC) String topic) {
 
 		try {
 			if(topic.equals(billCancelTopic)){
 				BillRequestV2 req = objectMapper.convertValue(record, BillRequestV2.class);
 				sendNotificationForBillCancellation(req);
+			}else if (topic.equals(bulkBillCancelTopic)) {
+				BillCancelEvent event = objectMapper.convertValue(record, BillCancelEvent.class);
+				sendNotificationForBulkBillCancellation(event);
 			}else {
 				BillRequest req = objectMapper.convertValue(record, BillRequest.class);
 				sendNotification(req);
@@ -110,6 +125,24 @@ public class NotificationConsumer {
 		}
 	}
 
+	/*
+	 * the bulk cancel event only carries the ids of the cancelled bills, the bills are searched to build the messages
+	 */
+	private void sendNotificationForBulkBillCancellation(BillCancelEvent event) {
+
+		if (CollectionUtils.isEmpty(event.getBillIds()))
+			return;
+
+		BillSearchCriteria billCriteria = BillSearchCriteria.builder()
+				.tenantId(event.getTenantId())
+				.billId(new HashSet<>(event.getBillIds()))
+				.build();
+		List<BillV2> bills = billRepository.findBill(billCriteria);
+		bills.forEach(bill -> bill.setAdditionalDetails(event.getAdditionalDetails()));
+
+		sendNotificationForBillCancellation(BillRequestV2.builder().requestInfo(event.getRequestInfo()).bills(bills).build());
+	}
+
 	private void sendNotificationForBillCancellation(BillRequestV2 req) {
 		req.getBills().forEach(bill -> {
 			String phNo = bill.getMobileNumber();
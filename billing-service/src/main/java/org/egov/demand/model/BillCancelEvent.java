@@ -0,0 +1,47 @@
+package org.egov.demand.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.egov.common.contract.request.RequestInfo;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Bills cancelled by one chunk of a bulk cancel job, published with their ids
+ * and consumer codes only instead of one full bill request per consumer code
+ *
+ * Consumers needing the bills, like the cancellation notification, search them
+ * by their ids.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BillCancelEvent {
+
+	@JsonProperty("RequestInfo")
+	private RequestInfo requestInfo;
+
+	private String jobId;
+
+	private String tenantId;
+
+	private String businessService;
+
+	@Builder.Default
+	private List<String> billIds = new ArrayList<>();
+
+	@Builder.Default
+	private List<String> consumerCodes = new ArrayList<>();
+
+	private JsonNode additionalDetails;
+
+	private AuditDetails auditDetails;
+}
@@ -0,0 +1,42 @@
+package org.egov.demand.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of a bulk cancellation of bills
+ *
+ * totalCount is the count of consumer codes and bill ids of the criteria,
+ * processedCount the count of those already gone through and cancelledCount
+ * the count of bills cancelled so far.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder = true)
+public class BillCancelJob {
+
+	private String id;
+
+	private String tenantId;
+
+	private String businessService;
+
+	private JobStatus status;
+
+	private Integer totalCount;
+
+	private Integer processedCount;
+
+	private Integer cancelledCount;
+
+	private String errorMessage;
+
+	private AuditDetails auditDetails;
+
+	public enum JobStatus {
+		QUEUED, RUNNING, COMPLETED, FAILED
+	}
+}
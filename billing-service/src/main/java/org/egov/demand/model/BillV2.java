@@ -133,4 +133,17 @@ public class BillV2 {
 		return this;
 	}
 
+	/**
+	 * Earliest expiry date of the bill details, written on the bill for the expiry sweep
+	 */
+	public Long earliestExpiryDate() {
+
+		Long expiryDate = null;
+		if (null != billDetails)
+			for (BillDetailV2 billDetail : billDetails)
+				if (null != billDetail.getExpiryDate() && (null == expiryDate || billDetail.getExpiryDate() < expiryDate))
+					expiryDate = billDetail.getExpiryDate();
+		return expiryDate;
+	}
+
 }
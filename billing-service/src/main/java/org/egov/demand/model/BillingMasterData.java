@@ -0,0 +1,83 @@
+package org.egov.demand.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.egov.demand.model.enums.Category;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Immutable snapshot of the billing service masters of one tenant, indexed for
+ * lookups by code and service
+ */
+@Getter
+@ToString
+public class BillingMasterData {
+
+	private final String tenantId;
+
+	private final long loadedTime;
+
+	/* taxheads grouped by business service and then by code */
+	private final Map<String, Map<String, TaxHeadMaster>> taxHeadsByService;
+
+	private final Map<String, TaxHeadMaster> taxHeadsByCode;
+
+	private final Map<String, BusinessServiceDetail> businessServicesByCode;
+
+	private final Map<String, List<TaxPeriod>> taxPeriodsByService;
+
+	private final Map<String, String> advanceTaxHeadCodeByService;
+
+	public BillingMasterData(String tenantId, List<TaxHeadMaster> taxHeads, List<BusinessServiceDetail> businessServices,
+			List<TaxPeriod> taxPeriods, long loadedTime) {
+
+		this.tenantId = tenantId;
+		this.loadedTime = loadedTime;
+
+		this.taxHeadsByService = Collections.unmodifiableMap(taxHeads.stream().collect(Collectors.groupingBy(
+				TaxHeadMaster::getService, Collectors.toMap(TaxHeadMaster::getCode, Function.identity(), (a, b) -> a))));
+
+		this.taxHeadsByCode = Collections.unmodifiableMap(
+				taxHeads.stream().collect(Collectors.toMap(TaxHeadMaster::getCode, Function.identity(), (a, b) -> a)));
+
+		this.businessServicesByCode = Collections.unmodifiableMap(businessServices.stream()
+				.collect(Collectors.toMap(BusinessServiceDetail::getCode, Function.identity(), (a, b) -> a)));
+
+		this.taxPeriodsByService = Collections
+				.unmodifiableMap(taxPeriods.stream().collect(Collectors.groupingBy(TaxPeriod::getService)));
+
+		Map<String, String> advanceTaxHeads = new HashMap<>();
+		for (TaxHeadMaster taxHead : taxHeads) {
+			if (Category.ADVANCE_COLLECTION.equals(taxHead.getCategory()))
+				advanceTaxHeads.putIfAbsent(taxHead.getService(), taxHead.getCode());
+		}
+		this.advanceTaxHeadCodeByService = Collections.unmodifiableMap(advanceTaxHeads);
+	}
+
+	public Map<String, TaxHeadMaster> getTaxHeadsForService(String businessService) {
+		return taxHeadsByService.get(businessService);
+	}
+
+	public TaxHeadMaster getTaxHead(String code) {
+		return taxHeadsByCode.get(code);
+	}
+
+	public BusinessServiceDetail getBusinessService(String code) {
+		return businessServicesByCode.get(code);
+	}
+
+	public boolean isBusinessServicePresent(String code) {
+		return businessServicesByCode.containsKey(code);
+	}
+
+	public String getAdvanceTaxHeadCode(String businessService) {
+		return advanceTaxHeadCodeByService.get(businessService);
+	}
+}
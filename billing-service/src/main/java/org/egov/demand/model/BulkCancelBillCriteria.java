@@ -0,0 +1,39 @@
+package org.egov.demand.model;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import jakarta.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Bills to be cancelled by a bulk cancel job, the ACTIVE bills of the consumer
+ * codes and the bills of the ids given
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkCancelBillCriteria {
+
+	@NotNull
+	private String tenantId;
+
+	@NotNull
+	private String businessService;
+
+	@Builder.Default
+	private Set<String> consumerCodes = new LinkedHashSet<>();
+
+	@Builder.Default
+	private Set<String> billIds = new LinkedHashSet<>();
+
+	@NotNull
+	private JsonNode additionalDetails;
+}
@@ -0,0 +1,33 @@
+package org.egov.demand.model;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outstanding amount of a consumer code, summed over the details of its active
+ * demands
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ConsumerDues {
+
+	private String tenantId;
+
+	private String businessService;
+
+	private String consumerCode;
+
+	private BigDecimal taxAmount;
+
+	private BigDecimal collectionAmount;
+
+	private BigDecimal balanceAmount;
+
+	private Long lastModifiedTime;
+}
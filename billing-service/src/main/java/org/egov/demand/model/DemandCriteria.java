@@ -42,6 +42,7 @@ package org.egov.demand.model;
 import java.math.BigDecimal;
 import java.util.Set;
 
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 
 import org.egov.demand.model.enums.Type;
@@ -89,4 +90,14 @@ public class DemandCriteria {
 	
 	@Default
 	private Boolean receiptRequired=false;
+
+	/*
+	 * keyset paging, the page key is the taxperiodfrom and id of the last demand of the previous page
+	 */
+	@Min(1)
+	private Integer limit;
+
+	private Long pageKeyTaxPeriodFrom;
+
+	private String pageKeyDemandId;
 }
@@ -0,0 +1,25 @@
+package org.egov.demand.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Position of the last demand of a search page, to be sent back as
+ * pageKeyTaxPeriodFrom and pageKeyDemandId to fetch the next page
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DemandPageKey {
+
+	@JsonProperty("taxPeriodFrom")
+	private Long taxPeriodFrom;
+
+	@JsonProperty("demandId")
+	private String demandId;
+}
@@ -0,0 +1,26 @@
+package org.egov.demand.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * ACTIVE bill found by the expiry sweep, with only what is needed to renew it
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ExpiringBill {
+
+	private String id;
+
+	private String tenantId;
+
+	private String businessService;
+
+	private String consumerCode;
+
+	private Long expiryDate;
+}
@@ -0,0 +1,102 @@
+package org.egov.demand.model;
+
+import java.io.IOException;
+
+import org.egov.demand.util.Constants;
+import org.egov.tracer.model.CustomException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * jsonb value read from the database, kept as text until it is accessed.
+ *
+ * The text is parsed on the first call to getNode, serializing the owning
+ * object writes the text as is unless it has been parsed already or the
+ * serialization is a conversion to another type.
+ */
+public final class RawJson implements JsonSerializable {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final String json;
+
+	private volatile JsonNode node;
+
+	private RawJson(String json) {
+		this.json = json;
+	}
+
+	/**
+	 * @param json jsonb text, may be null
+	 * @return the raw value, null for a null text
+	 */
+	public static RawJson of(String json) {
+		return null == json ? null : new RawJson(json);
+	}
+
+	public String getJson() {
+		return json;
+	}
+
+	public JsonNode getNode() {
+
+		JsonNode parsedNode = node;
+		if (null == parsedNode) {
+			try {
+				parsedNode = MAPPER.readTree(json);
+			} catch (IOException e) {
+				throw new CustomException(Constants.EG_BS_JSON_EXCEPTION_KEY, Constants.EG_BS_JSON_EXCEPTION_MSG);
+			}
+			node = parsedNode;
+		}
+		return parsedNode;
+	}
+
+	public boolean isParsed() {
+		return null != node;
+	}
+
+	@Override
+	public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+
+		/*
+		 * a token buffer backs convertValue, raw text would reach the target type as an embedded object
+		 */
+		if (null != node || gen instanceof TokenBuffer)
+			serializers.defaultSerializeValue(getNode(), gen);
+		else
+			gen.writeRawValue(json);
+	}
+
+	@Override
+	public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+			throws IOException {
+		serialize(gen, serializers);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+
+		if (this == other)
+			return true;
+		if (!(other instanceof RawJson))
+			return false;
+		return json.equals(((RawJson) other).json);
+	}
+
+	@Override
+	public int hashCode() {
+		return json.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return json;
+	}
+}
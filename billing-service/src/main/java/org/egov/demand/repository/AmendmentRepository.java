@@ -19,6 +19,7 @@ import org.egov.demand.model.AuditDetails;
 import org.egov.demand.model.DemandDetail;
 import org.egov.demand.repository.querybuilder.AmendmentQueryBuilder;
 import org.egov.demand.repository.rowmapper.AmendmentRowMapper;
+import org.egov.demand.util.BillingMetrics;
 import org.egov.demand.util.Util;
 import org.egov.tracer.model.CustomException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -45,6 +46,9 @@ public class AmendmentRepository {
 	
 	@Autowired
 	private AmendmentQueryBuilder amendmentQueryBuilder;
+
+	@Autowired
+	private BillingMetrics billingMetrics;
 	
 	@Transactional
 	public void saveAmendment (AmendmentRequest amendmentRequest) {
@@ -74,6 +78,7 @@ public class AmendmentRepository {
 			throw new CustomException("EG_PT_AS_TENANTID_ERROR",
 					"TenantId length is not sufficient to replace query schema in a multi state instance");
 		}
+		billingMetrics.recordBatchSize("amendment.taxdetail.insert", sqlParameterSources.size());
 		namedJdbcTemplate.batchUpdate(sqlBill, sqlParameterSources.toArray(new MapSqlParameterSource[0]));
 	}
 	
@@ -87,6 +92,7 @@ public class AmendmentRepository {
 			throw new CustomException("EG_PT_AS_TENANTID_ERROR",
 					"TenantId length is not sufficient to replace query schema in a multi state instance");
 		}
+		billingMetrics.recordBatchSize("amendment.document.insert", sqlParameterSources.size());
 		namedJdbcTemplate.batchUpdate(sqlBill, sqlParameterSources.toArray(new MapSqlParameterSource[0]));
 
 	}
@@ -116,6 +122,7 @@ public class AmendmentRepository {
 		}
 
 		List<MapSqlParameterSource> sqlParameterSources = getSqlParameterListForAmendmentUpdate(amendmentUpdates);
+		billingMetrics.recordBatchSize("amendment.update", sqlParameterSources.size());
 		namedJdbcTemplate.batchUpdate(amenndmentUpdateQuery, sqlParameterSources.toArray(new MapSqlParameterSource[0]));
 	}
 
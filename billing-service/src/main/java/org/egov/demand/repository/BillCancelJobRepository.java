@@ -0,0 +1,87 @@
+package org.egov.demand.repository;
+
+import java.util.List;
+
+import org.egov.common.exception.InvalidTenantIdException;
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.model.AuditDetails;
+import org.egov.demand.model.BillCancelJob;
+import org.egov.demand.model.BillCancelJob.JobStatus;
+import org.egov.demand.repository.querybuilder.BillCancelJobQueryBuilder;
+import org.egov.tracer.model.CustomException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Keeps the status and the progress of the bulk bill cancel jobs, so that any
+ * instance can report the progress of a job run by another one
+ */
+@Repository
+public class BillCancelJobRepository {
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private MultiStateInstanceUtil centralInstanceUtil;
+
+	public void saveJob(BillCancelJob job) {
+
+		AuditDetails auditDetails = job.getAuditDetails();
+		jdbcTemplate.update(getQuery(BillCancelJobQueryBuilder.JOB_INSERT_QUERY, job.getTenantId()), job.getId(),
+				job.getTenantId(), job.getBusinessService(), job.getStatus().toString(), job.getTotalCount(),
+				job.getProcessedCount(), job.getCancelledCount(), job.getErrorMessage(), auditDetails.getCreatedBy(),
+				auditDetails.getCreatedTime(), auditDetails.getLastModifiedBy(), auditDetails.getLastModifiedTime());
+	}
+
+	/**
+	 * Writes the status, the counts and the error message of the job
+	 * 
+	 * @param job
+	 */
+	public void updateJob(BillCancelJob job) {
+
+		jdbcTemplate.update(getQuery(BillCancelJobQueryBuilder.JOB_UPDATE_QUERY, job.getTenantId()),
+				job.getStatus().toString(), job.getProcessedCount(), job.getCancelledCount(), job.getErrorMessage(),
+				job.getAuditDetails().getLastModifiedTime(), job.getId(), job.getTenantId());
+	}
+
+	/**
+	 * @param tenantId
+	 * @param jobId
+	 * @return the job, null if there is none of the id
+	 */
+	public BillCancelJob getJob(String tenantId, String jobId) {
+
+		List<BillCancelJob> jobs = jdbcTemplate.query(getQuery(BillCancelJobQueryBuilder.JOB_SEARCH_QUERY, tenantId),
+				(rs, rowNum) -> BillCancelJob.builder()
+						.id(rs.getString("id"))
+						.tenantId(rs.getString("tenantid"))
+						.businessService(rs.getString("businessservice"))
+						.status(JobStatus.valueOf(rs.getString("status")))
+						.totalCount(rs.getInt("totalcount"))
+						.processedCount(rs.getInt("processedcount"))
+						.cancelledCount(rs.getInt("cancelledcount"))
+						.errorMessage(rs.getString("errormessage"))
+						.auditDetails(AuditDetails.builder()
+								.createdBy(rs.getString("createdby"))
+								.createdTime(rs.getLong("createdtime"))
+								.lastModifiedBy(rs.getString("lastmodifiedby"))
+								.lastModifiedTime(rs.getLong("lastmodifiedtime"))
+								.build())
+						.build(),
+				jobId, tenantId);
+		return jobs.isEmpty() ? null : jobs.get(0);
+	}
+
+	private String getQuery(String query, String tenantId) {
+
+		try {
+			return centralInstanceUtil.replaceSchemaPlaceholder(query, tenantId);
+		} catch (InvalidTenantIdException e) {
+			throw new CustomException("EG_PT_AS_TENANTID_ERROR",
+					"TenantId length is not sufficient to replace query schema in a multi state instance");
+		}
+	}
+}
@@ -1,36 +1,47 @@
 package org.egov.demand.repository;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.egov.common.exception.InvalidTenantIdException;
 import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.config.ApplicationProperties;
 import org.egov.demand.model.AuditDetails;
 import org.egov.demand.model.BillAccountDetailV2;
 import org.egov.demand.model.BillDetailV2;
 import org.egov.demand.model.BillSearchCriteria;
 import org.egov.demand.model.BillV2;
 import org.egov.demand.model.BillV2.BillStatus;
+import org.egov.demand.model.ExpiringBill;
 import org.egov.demand.model.UpdateBillCriteria;
 import org.egov.demand.repository.querybuilder.BillQueryBuilder;
 import org.egov.demand.repository.rowmapper.BillRowMapperV2;
+import org.egov.demand.util.BillingMetrics;
 import org.egov.demand.util.Util;
 import org.egov.demand.web.contract.BillRequestV2;
 import org.egov.tracer.model.CustomException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 import lombok.extern.slf4j.Slf4j;
 
 @Repository
@@ -51,7 +62,17 @@ public class BillRepositoryV2 {
 	
 	@Autowired
 	private BillRowMapperV2 searchBillRowMapper;
+
+	@Autowired
+	private BulkCopyRepository bulkCopyRepository;
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	@Autowired
+	private BillingMetrics billingMetrics;
 	
+	@Transactional(readOnly = true)
 	public List<BillV2> findBill(BillSearchCriteria billCriteria){
 		
 		List<Object> preparedStatementValues = new ArrayList<>();
@@ -66,6 +87,24 @@ public class BillRepositoryV2 {
 		return jdbcTemplate.query(queryStr, preparedStatementValues.toArray(), searchBillRowMapper);
 	}
 	
+	/**
+	 * Saves the bills of bulk bill generation with COPY, falls back to the batch
+	 * insert of saveBill when bulk copy is disabled
+	 * 
+	 * @param billRequest new bills of one tenant
+	 */
+	public void saveBillInBulk(BillRequestV2 billRequest) {
+
+		if (CollectionUtils.isEmpty(billRequest.getBills()))
+			return;
+
+		if (!appProps.getIsBulkCopyEnabled()) {
+			saveBill(billRequest);
+			return;
+		}
+		bulkCopyRepository.copyBills(billRequest.getBills(), billRequest.getBills().get(0).getTenantId());
+	}
+
 	@Transactional
 	public void saveBill(BillRequestV2 billRequest){
 		
@@ -79,6 +118,7 @@ public class BillRepositoryV2 {
 			throw new CustomException("EG_PT_AS_TENANTID_ERROR",
 					"TenantId length is not sufficient to replace query schema in a multi state instance");
 		}
+		billingMetrics.recordBatchSize("bill.insert", bills.size());
 		jdbcTemplate.batchUpdate(sqlBill, new BatchPreparedStatementSetter() {
 			
 			@Override
@@ -90,6 +130,7 @@ public class BillRepositoryV2 {
 				ps.setString(1, bill.getId());
 				ps.setString(15, bill.getUserId());
 				ps.setString(16, bill.getConsumerCode());
+				ps.setObject(17, bill.earliestExpiryDate());
 				ps.setString(2, bill.getTenantId());
 				ps.setString(3, bill.getPayerName());
 				ps.setString(4, bill.getPayerAddress());
@@ -143,6 +184,7 @@ public class BillRepositoryV2 {
 					"TenantId length is not sufficient to replace query schema in a multi state instance");
 		}
 		
+		billingMetrics.recordBatchSize("billdetail.insert", billDetails.size());
 		jdbcTemplate.batchUpdate(sqlBillDetails, new BatchPreparedStatementSetter(){
 
 			@Override
@@ -198,6 +240,7 @@ public class BillRepositoryV2 {
 					"TenantId length is not sufficient to replace query schema in a multi state instance");
 		}
 		
+		billingMetrics.recordBatchSize("billaccountdetail.insert", billAccountDetails.size());
 		jdbcTemplate.batchUpdate(sqlBillAccount, new BatchPreparedStatementSetter() {
 
 			@Override
@@ -236,6 +279,12 @@ public class BillRepositoryV2 {
 		Set<String> consumerCodes = updateBillCriteria.getConsumerCodes();
 		if(CollectionUtils.isEmpty(consumerCodes))
 			return 0;
+
+		/*
+		 * only cancellation needs the bill itself, to report paid bills and to merge the additional details
+		 */
+		if (!BillStatus.CANCELLED.equals(updateBillCriteria.getStatusToBeUpdated()))
+			return updateActiveBillStatus(updateBillCriteria).size();
 		
 		List<BillV2> bills =  findBill(BillSearchCriteria.builder()
 				.service(updateBillCriteria.getBusinessService())
@@ -254,16 +303,9 @@ public class BillRepositoryV2 {
 				return 0;
 		}
 
-		if (BillStatus.CANCELLED.equals(updateBillCriteria.getStatusToBeUpdated())) {
-
-			updateBillCriteria.setBillIds(Stream.of(bills.get(0).getId()).collect(Collectors.toSet()));
-			updateBillCriteria.setAdditionalDetails(
-					util.jsonMerge(updateBillCriteria.getAdditionalDetails(), bills.get(0).getAdditionalDetails()));
-
-		} else {
-
-			updateBillCriteria.setBillIds(bills.stream().map(BillV2::getId).collect(Collectors.toSet()));
-		}
+		updateBillCriteria.setBillIds(Stream.of(bills.get(0).getId()).collect(Collectors.toSet()));
+		updateBillCriteria.setAdditionalDetails(
+				util.jsonMerge(updateBillCriteria.getAdditionalDetails(), bills.get(0).getAdditionalDetails()));
 		
 		List<Object> preparedStmtList = new ArrayList<>();
 		String queryStr = billQueryBuilder.getBillStatusUpdateQuery(updateBillCriteria, preparedStmtList);
@@ -275,5 +317,188 @@ public class BillRepositoryV2 {
 		}
 		return jdbcTemplate.update(queryStr, preparedStmtList.toArray());
 	}
-	
+
+	/**
+	 * Moves the ACTIVE bills of the given consumer codes to the status of the
+	 * criteria in a single statement, without reading the bills first
+	 * 
+	 * @param updateBillCriteria
+	 * @return ids of the bills updated
+	 */
+	public List<String> updateActiveBillStatus(UpdateBillCriteria updateBillCriteria) {
+
+		Set<String> consumerCodes = updateBillCriteria.getConsumerCodes();
+		if (CollectionUtils.isEmpty(consumerCodes))
+			return new ArrayList<>();
+
+		String queryStr;
+		try {
+			queryStr = centralInstanceUtil.replaceSchemaPlaceholder(BillQueryBuilder.ACTIVE_BILL_STATUS_UPDATE_QUERY,
+					updateBillCriteria.getTenantId());
+		} catch (InvalidTenantIdException e) {
+			throw new CustomException("EG_PT_AS_TENANTID_ERROR",
+					"TenantId length is not sufficient to replace query schema in a multi state instance");
+		}
+
+		return jdbcTemplate.query(queryStr, ps -> {
+			ps.setString(1, updateBillCriteria.getStatusToBeUpdated().toString());
+			ps.setString(2, updateBillCriteria.getTenantId());
+			ps.setArray(3, ps.getConnection().createArrayOf("text", consumerCodes.toArray()));
+			ps.setString(4, updateBillCriteria.getBusinessService());
+		}, (rs, rowNum) -> rs.getString(1));
+	}
+
+	/**
+	 * Expires the ACTIVE bills of the given consumer codes whose expiry date has
+	 * passed, a bill generated again in the meantime is left as it is
+	 * 
+	 * @param tenantId
+	 * @param businessService
+	 * @param consumerCodes
+	 * @param expiredBefore
+	 * @return consumer codes of the bills expired
+	 */
+	public Set<String> expirePastExpiryBills(String tenantId, String businessService, Set<String> consumerCodes,
+			long expiredBefore) {
+
+		if (CollectionUtils.isEmpty(consumerCodes))
+			return new HashSet<>();
+
+		String queryStr;
+		try {
+			queryStr = centralInstanceUtil.replaceSchemaPlaceholder(BillQueryBuilder.PAST_EXPIRY_BILL_EXPIRE_QUERY,
+					tenantId);
+		} catch (InvalidTenantIdException e) {
+			throw new CustomException("EG_PT_AS_TENANTID_ERROR",
+					"TenantId length is not sufficient to replace query schema in a multi state instance");
+		}
+
+		return new HashSet<>(jdbcTemplate.query(queryStr, ps -> {
+			ps.setString(1, tenantId);
+			ps.setArray(2, ps.getConnection().createArrayOf("text", consumerCodes.toArray()));
+			ps.setLong(3, expiredBefore);
+			ps.setString(4, businessService);
+		}, (rs, rowNum) -> rs.getString(1)));
+	}
+
+	/**
+	 * Returns the ids of the ACTIVE bills of the given consumer codes
+	 * 
+	 * @param tenantId
+	 * @param businessService
+	 * @param consumerCodes
+	 */
+	public List<String> getActiveBillIds(String tenantId, String businessService, Collection<String> consumerCodes) {
+
+		if (CollectionUtils.isEmpty(consumerCodes))
+			return new ArrayList<>();
+
+		return jdbcTemplate.query(getQuery(BillQueryBuilder.ACTIVE_BILL_IDS_QUERY, tenantId), ps -> {
+			ps.setString(1, tenantId);
+			ps.setArray(2, ps.getConnection().createArrayOf("text", consumerCodes.toArray()));
+			ps.setString(3, businessService);
+		}, (rs, rowNum) -> rs.getString(1));
+	}
+
+	/**
+	 * Cancels the given bills in a single statement, bills which are no longer
+	 * ACTIVE or belong to another business service are left as they are
+	 * 
+	 * @param tenantId
+	 * @param businessService
+	 * @param billIds
+	 * @param additionalDetails merged into the additional details of each bill
+	 * @param auditDetails
+	 * @return consumer codes of the cancelled bills by bill id
+	 */
+	public Map<String, String> cancelBills(String tenantId, String businessService, Collection<String> billIds,
+			JsonNode additionalDetails, AuditDetails auditDetails) {
+
+		Map<String, String> cancelledBills = new LinkedHashMap<>();
+		if (CollectionUtils.isEmpty(billIds))
+			return cancelledBills;
+
+		jdbcTemplate.query(getQuery(BillQueryBuilder.BILL_CANCEL_BY_ID_QUERY, tenantId), ps -> {
+			ps.setObject(1, util.getPGObject(additionalDetails));
+			ps.setString(2, auditDetails.getLastModifiedBy());
+			ps.setLong(3, auditDetails.getLastModifiedTime());
+			ps.setArray(4, ps.getConnection().createArrayOf("text", billIds.toArray()));
+			ps.setString(5, tenantId);
+			ps.setString(6, businessService);
+		}, rs -> {
+			cancelledBills.put(rs.getString(1), rs.getString(2));
+		});
+		billingMetrics.recordBatchSize("bill.cancel", cancelledBills.size());
+		return cancelledBills;
+	}
+
+	/**
+	 * Returns a page of the ACTIVE bills of the tenant expiring before the given
+	 * time, bills after the last one of the previous page only
+	 * 
+	 * @param tenantId
+	 * @param expiryBefore
+	 * @param createdBefore
+	 * @param lastBill last bill of the previous page, null for the first page
+	 * @param limit
+	 */
+	public List<ExpiringBill> getExpiringBills(String tenantId, long expiryBefore, long createdBefore,
+			ExpiringBill lastBill, int limit) {
+
+		List<Object> preparedStmtList = new ArrayList<>();
+		String query = billQueryBuilder.getExpiringBillQuery(tenantId, expiryBefore, createdBefore,
+				null == lastBill ? Long.MIN_VALUE : lastBill.getExpiryDate(), null == lastBill ? "" : lastBill.getId(),
+				limit, preparedStmtList);
+
+		return jdbcTemplate.query(getQuery(query, tenantId), (rs, rowNum) -> ExpiringBill.builder()
+				.id(rs.getString("id"))
+				.tenantId(rs.getString("tenantid"))
+				.businessService(rs.getString("businessservice"))
+				.consumerCode(rs.getString("consumercode"))
+				.expiryDate(rs.getLong("expirydate"))
+				.build(), preparedStmtList.toArray());
+	}
+
+	/**
+	 * Runs the sweep of the tenant only if no other instance is sweeping it
+	 *
+	 * The advisory lock is held on a connection kept for the length of the
+	 * sweep, it is released when the sweep ends or when the connection of a
+	 * crashed instance is closed
+	 *
+	 * @return result of the sweep, null if another instance holds the lock
+	 */
+	public <T> T runWithExpirySweepLock(String tenantId, Supplier<T> sweep) {
+
+		return jdbcTemplate.execute((ConnectionCallback<T>) connection -> {
+			try (PreparedStatement lockStatement = connection
+					.prepareStatement(BillQueryBuilder.EXPIRY_SWEEP_TRY_LOCK_QUERY)) {
+				lockStatement.setString(1, tenantId);
+				try (ResultSet rs = lockStatement.executeQuery()) {
+					if (!rs.next() || !rs.getBoolean(1))
+						return null;
+				}
+			}
+
+			try {
+				return sweep.get();
+			} finally {
+				try (PreparedStatement unlockStatement = connection
+						.prepareStatement(BillQueryBuilder.EXPIRY_SWEEP_UNLOCK_QUERY)) {
+					unlockStatement.setString(1, tenantId);
+					unlockStatement.execute();
+				}
+			}
+		});
+	}
+
+	private String getQuery(String query, String tenantId) {
+
+		try {
+			return centralInstanceUtil.replaceSchemaPlaceholder(query, tenantId);
+		} catch (InvalidTenantIdException e) {
+			throw new CustomException("EG_PT_AS_TENANTID_ERROR",
+					"TenantId length is not sufficient to replace query schema in a multi state instance");
+		}
+	}
 }
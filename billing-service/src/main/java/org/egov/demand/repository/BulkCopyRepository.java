@@ -0,0 +1,305 @@
+package org.egov.demand.repository;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.egov.common.exception.InvalidTenantIdException;
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.AuditDetails;
+import org.egov.demand.model.BillAccountDetailV2;
+import org.egov.demand.model.BillDetailV2;
+import org.egov.demand.model.BillV2;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.util.BillingMetrics;
+import org.egov.tracer.model.CustomException;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.CollectionUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes new demands and bills with COPY instead of batched inserts.
+ *
+ * Rows are streamed to the server in csv format a buffer at a time, the columns
+ * and values are the same as the insert queries of DemandQueryBuilder and
+ * BillQueryBuilder so both paths write identical rows.
+ */
+@Repository
+@Slf4j
+public class BulkCopyRepository {
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private MultiStateInstanceUtil centralInstanceUtil;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	@Autowired
+	private BillingMetrics billingMetrics;
+
+	/**
+	 * Copies the demands and their details of a tenant in one transaction
+	 *
+	 * @param demands new demands
+	 * @param demandDetails details of the new demands
+	 * @param tenantId tenant of the demands
+	 */
+	@Transactional
+	public void copyDemands(List<Demand> demands, List<DemandDetail> demandDetails, String tenantId) {
+
+		copyRows(CopyTable.DEMAND, tenantId, demands, this::getDemandValues);
+		copyRows(CopyTable.DEMAND_DETAIL, tenantId, demandDetails, this::getDemandDetailValues);
+	}
+
+	/**
+	 * Copies the bills of a tenant along with their bill details and account
+	 * details in one transaction
+	 *
+	 * @param bills new bills
+	 * @param tenantId tenant of the bills
+	 */
+	@Transactional
+	public void copyBills(List<BillV2> bills, String tenantId) {
+
+		/*
+		 * the batch insert writes the audit of the first bill on all the details, kept the same here
+		 */
+		AuditDetails auditDetails = bills.get(0).getAuditDetails();
+		List<String[]> billDetailRows = new ArrayList<>();
+		List<String[]> billAccountDetailRows = new ArrayList<>();
+
+		for (BillV2 bill : bills) {
+			for (BillDetailV2 billDetail : bill.getBillDetails()) {
+
+				billDetailRows.add(getBillDetailValues(bill, billDetail, auditDetails));
+				for (BillAccountDetailV2 billAccountDetail : billDetail.getBillAccountDetails())
+					billAccountDetailRows.add(getBillAccountDetailValues(billAccountDetail, auditDetails));
+			}
+		}
+
+		copyRows(CopyTable.BILL, tenantId, bills, this::getBillValues);
+		copyRows(CopyTable.BILL_DETAIL, tenantId, billDetailRows, Function.identity());
+		copyRows(CopyTable.BILL_ACCOUNT_DETAIL, tenantId, billAccountDetailRows, Function.identity());
+	}
+
+	/*
+	 * rows are converted while they are written so only one buffer of csv is held in memory
+	 */
+	<T> long copyRows(CopyTable table, String tenantId, List<T> rows, Function<T, String[]> rowMapper) {
+
+		if (CollectionUtils.isEmpty(rows))
+			return 0;
+
+		String copyQuery;
+		try {
+			copyQuery = centralInstanceUtil.replaceSchemaPlaceholder(table.getCopyQuery(), tenantId);
+		} catch (InvalidTenantIdException e) {
+			throw new CustomException("EG_BS_TENANTID_ERROR",
+					"TenantId length is not sufficient to replace query schema in a multi state instance");
+		}
+
+		billingMetrics.recordBatchSize(table.getTableName() + ".copy", rows.size());
+		int bufferSize = appProps.getBulkCopyBufferSize();
+		Long copiedRows = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+
+			CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copyQuery);
+			try {
+				StringBuilder csv = new StringBuilder(bufferSize + 1024);
+				for (T row : rows) {
+					appendCsvRow(csv, rowMapper.apply(row));
+					if (csv.length() >= bufferSize) {
+						writeToCopy(copyIn, csv);
+					}
+				}
+				writeToCopy(copyIn, csv);
+				return copyIn.endCopy();
+			} finally {
+				if (copyIn.isActive())
+					cancelCopy(copyIn);
+			}
+		});
+
+		log.debug("Copied {} rows into {}", copiedRows, table.getTableName());
+		return copiedRows;
+	}
+
+	private static void writeToCopy(CopyIn copyIn, StringBuilder csv) throws SQLException {
+
+		if (csv.length() == 0)
+			return;
+		byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+		copyIn.writeToCopy(bytes, 0, bytes.length);
+		csv.setLength(0);
+	}
+
+	private static void cancelCopy(CopyIn copyIn) {
+		try {
+			copyIn.cancelCopy();
+		} catch (SQLException e) {
+			log.error("Cancelling the copy failed", e);
+		}
+	}
+
+	/*
+	 * csv format of COPY reads an unquoted empty value as null and a quoted one as an empty string
+	 */
+	static void appendCsvRow(StringBuilder csv, List<String> values) {
+		appendCsvRow(csv, values.toArray(new String[0]));
+	}
+
+	static void appendCsvRow(StringBuilder csv, String[] values) {
+
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				csv.append(',');
+			String value = values[i];
+			if (null != value) {
+				csv.append('"');
+				for (int j = 0; j < value.length(); j++) {
+					char c = value.charAt(j);
+					if (c == '"')
+						csv.append('"');
+					csv.append(c);
+				}
+				csv.append('"');
+			}
+		}
+		csv.append('\n');
+	}
+
+	String[] getDemandValues(Demand demand) {
+
+		AuditDetails auditDetail = demand.getAuditDetails();
+		String payerUuid = null != demand.getPayer() ? demand.getPayer().getUuid() : null;
+		return new String[] { demand.getId(), demand.getConsumerCode(), demand.getConsumerType(),
+				demand.getBusinessService(), payerUuid, toText(demand.getTaxPeriodFrom()),
+				toText(demand.getTaxPeriodTo()), toText(demand.getMinimumAmountPayable()), auditDetail.getCreatedBy(),
+				auditDetail.getLastModifiedBy(), toText(auditDetail.getCreatedTime()),
+				toText(auditDetail.getLastModifiedTime()), demand.getTenantId(), toText(demand.getStatus()),
+				toJson(demand.getAdditionalDetails()), toText(demand.getBillExpiryTime()), null };
+	}
+
+	String[] getDemandDetailValues(DemandDetail demandDetail) {
+
+		AuditDetails auditDetail = demandDetail.getAuditDetails();
+		return new String[] { demandDetail.getId(), demandDetail.getDemandId(), demandDetail.getTaxHeadMasterCode(),
+				toText(demandDetail.getTaxAmount()), toText(demandDetail.getCollectionAmount()),
+				auditDetail.getCreatedBy(), auditDetail.getLastModifiedBy(), toText(auditDetail.getCreatedTime()),
+				toText(auditDetail.getLastModifiedTime()), demandDetail.getTenantId(),
+				toJson(demandDetail.getAdditionalDetails()) };
+	}
+
+	String[] getBillValues(BillV2 bill) {
+
+		AuditDetails auditDetails = bill.getAuditDetails();
+		return new String[] { bill.getId(), bill.getTenantId(), bill.getPayerName(), bill.getPayerAddress(),
+				bill.getPayerEmail(), null, null, auditDetails.getCreatedBy(), toText(auditDetails.getCreatedTime()),
+				auditDetails.getLastModifiedBy(), toText(auditDetails.getLastModifiedTime()), bill.getMobileNumber(),
+				toText(bill.getStatus()), toJson(bill.getAdditionalDetails()), bill.getUserId(),
+				bill.getConsumerCode(), toText(bill.earliestExpiryDate()) };
+	}
+
+	private String[] getBillDetailValues(BillV2 bill, BillDetailV2 billDetail, AuditDetails auditDetails) {
+
+		return new String[] { billDetail.getId(), billDetail.getTenantId(), billDetail.getBillId(),
+				billDetail.getDemandId(), toText(billDetail.getFromPeriod()), toText(billDetail.getToPeriod()),
+				bill.getBusinessService(), bill.getBillNumber(), toText(bill.getBillDate()), bill.getConsumerCode(),
+				null, null, null, null, toText(billDetail.getAmount()), "false", null, null,
+				auditDetails.getCreatedBy(), toText(auditDetails.getCreatedTime()), auditDetails.getLastModifiedBy(),
+				toText(auditDetails.getLastModifiedTime()), null, toText(billDetail.getExpiryDate()),
+				toJson(billDetail.getAdditionalDetails()) };
+	}
+
+	private String[] getBillAccountDetailValues(BillAccountDetailV2 billAccountDetail, AuditDetails auditDetails) {
+
+		return new String[] { billAccountDetail.getId(), billAccountDetail.getTenantId(),
+				billAccountDetail.getBillDetailId(), billAccountDetail.getDemandDetailId(),
+				toText(billAccountDetail.getOrder()), toText(billAccountDetail.getAmount()),
+				toText(billAccountDetail.getAdjustedAmount()), null, null, auditDetails.getCreatedBy(),
+				toText(auditDetails.getCreatedTime()), auditDetails.getLastModifiedBy(),
+				toText(auditDetails.getLastModifiedTime()), billAccountDetail.getTaxHeadCode() };
+	}
+
+	private static String toText(Object value) {
+
+		if (null == value)
+			return null;
+		if (value instanceof BigDecimal)
+			return ((BigDecimal) value).toPlainString();
+		return value.toString();
+	}
+
+	/*
+	 * null is left as sql null, writing it as the json text null would store a jsonb null
+	 */
+	private String toJson(Object value) {
+
+		if (null == value)
+			return null;
+		try {
+			return mapper.writeValueAsString(value);
+		} catch (JsonProcessingException e) {
+			throw new CustomException("EG_BS_JSON_EXCEPTION", "Unable to serialize the additional details");
+		}
+	}
+
+	@Getter
+	@AllArgsConstructor
+	enum CopyTable {
+
+		DEMAND("egbs_demand_v1", Arrays.asList("id", "consumercode", "consumertype", "businessservice", "payer",
+				"taxperiodfrom", "taxperiodto", "minimumamountpayable", "createdby", "lastmodifiedby", "createdtime",
+				"lastmodifiedtime", "tenantid", "status", "additionaldetails", "billexpirytime",
+				"fixedbillexpirydate")),
+
+		DEMAND_DETAIL("egbs_demanddetail_v1", Arrays.asList("id", "demandid", "taxheadcode", "taxamount",
+				"collectionamount", "createdby", "lastmodifiedby", "createdtime", "lastmodifiedtime", "tenantid",
+				"additionaldetails")),
+
+		BILL("egbs_bill_v1", Arrays.asList("id", "tenantid", "payername", "payeraddress", "payeremail", "isactive",
+				"iscancelled", "createdby", "createddate", "lastmodifiedby", "lastmodifieddate", "mobilenumber",
+				"status", "additionaldetails", "payerid", "consumercode", "expirydate")),
+
+		BILL_DETAIL("egbs_billdetail_v1", Arrays.asList("id", "tenantid", "billid", "demandid", "fromperiod",
+				"toperiod", "businessservice", "billno", "billdate", "consumercode", "consumertype", "billdescription",
+				"displaymessage", "minimumamount", "totalamount", "callbackforapportioning", "partpaymentallowed",
+				"collectionmodesnotallowed", "createdby", "createddate", "lastmodifiedby", "lastmodifieddate",
+				"isadvanceallowed", "expirydate", "additionaldetails")),
+
+		BILL_ACCOUNT_DETAIL("egbs_billaccountdetail_v1", Arrays.asList("id", "tenantid", "billdetail",
+				"demanddetailid", "orderno", "amount", "adjustedamount", "isactualdemand", "purpose", "createdby",
+				"createddate", "lastmodifiedby", "lastmodifieddate", "taxheadcode"));
+
+		private String tableName;
+
+		private List<String> columns;
+
+		String getCopyQuery() {
+			return "COPY {schema}." + tableName + " (" + String.join(",", columns) + ") FROM STDIN WITH (FORMAT csv)";
+		}
+	}
+}
@@ -0,0 +1,659 @@
+package org.egov.demand.repository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.egov.common.exception.InvalidTenantIdException;
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.AuditDetails;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.util.BillingMetrics;
+import org.egov.tracer.model.CustomException;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local journal which takes the demand audit rows off the demand write path.
+ *
+ * Rows are appended to a segment file in the journal directory and forced to
+ * disk before the demand transaction commits, a background task rotates the
+ * segment and copies the closed segments into egbs_demand_v1_audit and
+ * egbs_demanddetail_v1_audit with COPY. A segment is copied only once every
+ * transaction which wrote to it has completed, rows of a rolled back
+ * transaction are marked in the journal and skipped.
+ *
+ * Segments left behind by a crash are copied after the restart. A crash can
+ * leave rows of a transaction which never committed, so every transaction
+ * also inserts a marker row for its batch into egbs_demand_audit_journal_batch
+ * and the copy only takes the rows whose batch marker exists and whose demand
+ * or demand detail is stored with the same id and tenant. The markers are
+ * deleted in the transaction which copies their rows, the copy goes through a
+ * temporary table and skips rows already present so a segment can be replayed
+ * safely.
+ *
+ * The journal is bounded by the count of rows not yet copied, callers write
+ * the audit synchronously when it is full.
+ */
+@Repository
+@Slf4j
+public class DemandAuditJournal {
+
+	private static final String SEGMENT_PREFIX = "audit-";
+
+	private static final String SEGMENT_SUFFIX = ".journal";
+
+	private static final String BATCH_TABLE = "egbs_demand_audit_journal_batch";
+
+	private static final String BATCH_COLUMN = "journalbatchid";
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private MultiStateInstanceUtil centralInstanceUtil;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	@Autowired
+	private BillingMetrics billingMetrics;
+
+	private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "demand-audit-journal-flush");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Object segmentLock = new Object();
+
+	/*
+	 * first append time of every segment not yet copied, keyed on segment number
+	 */
+	private final ConcurrentSkipListMap<Long, Long> pendingSegments = new ConcurrentSkipListMap<>();
+
+	/*
+	 * count of the transactions not yet completed which wrote to a segment, guarded by the segment lock
+	 */
+	private final Map<Long, Integer> inFlightSegments = new HashMap<>();
+
+	private final Set<String> rolledBackBatches = ConcurrentHashMap.newKeySet();
+
+	private final AtomicLong pendingRows = new AtomicLong();
+
+	private final AtomicLong failedFlushes = new AtomicLong();
+
+	private Path journalDir;
+
+	private FileChannel activeChannel;
+
+	private long activeSegment;
+
+	private volatile long lastFlushTime;
+
+	private volatile long lastFlushRows;
+
+	private volatile boolean isShutdown;
+
+	@PostConstruct
+	public void init() {
+
+		if (!isEnabled())
+			return;
+
+		journalDir = Paths.get(appProps.getDemandAuditJournalDir());
+		try {
+			Files.createDirectories(journalDir);
+			long lastSegment = 0;
+			for (Path segment : listSegments()) {
+				long segmentNumber = getSegmentNumber(segment);
+				for (JournalEntry entry : readSegment(segment)) {
+					if (entry.isRollbackMarker())
+						rolledBackBatches.add(entry.getBatchId());
+					else
+						pendingRows.incrementAndGet();
+				}
+				pendingSegments.put(segmentNumber, Files.getLastModifiedTime(segment).toMillis());
+				lastSegment = Math.max(lastSegment, segmentNumber);
+			}
+			activeSegment = lastSegment + 1;
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to open the demand audit journal at " + journalDir, e);
+		}
+
+		log.info("Demand audit journal opened at {} with {} rows pending from earlier runs", journalDir,
+				pendingRows.get());
+
+		billingMetrics.gaugeAuditJournal(this, journal -> journal.pendingRows.get(), DemandAuditJournal::getLagMillis);
+
+		long interval = appProps.getDemandAuditJournalFlushInterval();
+		flushExecutor.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	public boolean isEnabled() {
+		return Boolean.TRUE.equals(appProps.getIsDemandAuditJournalEnabled());
+	}
+
+	/**
+	 * Journals the audit rows of the given demands and details
+	 *
+	 * When called inside a transaction the rows are journaled just before it
+	 * commits and marked as rolled back if the commit fails, so the audit is on
+	 * disk whenever the demand write is committed
+	 *
+	 * @return false if the journal is disabled or full, the caller has to write
+	 *         the audit itself in that case
+	 */
+	public boolean append(String tenantId, List<Demand> demands, List<DemandDetail> demandDetails) {
+
+		if (!isEnabled() || isShutdown)
+			return false;
+
+		List<JournalEntry> entries = new ArrayList<>(demands.size() + demandDetails.size());
+		String batchId = UUID.randomUUID().toString();
+		long time = System.currentTimeMillis();
+		demands.forEach(demand -> entries.add(getDemandEntry(batchId, tenantId, demand, time)));
+		demandDetails
+				.forEach(demandDetail -> entries.add(getDemandDetailEntry(batchId, tenantId, demandDetail, time)));
+
+		if (pendingRows.addAndGet(entries.size()) > appProps.getDemandAuditJournalMaxPendingRows()) {
+			pendingRows.addAndGet(-entries.size());
+			log.warn("Demand audit journal is full with {} pending rows, writing the audit synchronously",
+					pendingRows.get());
+			return false;
+		}
+
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager
+					.registerSynchronization(new JournalSynchronization(batchId, tenantId, entries));
+		else {
+			markBatch(tenantId, batchId);
+			write(entries, false);
+		}
+		return true;
+	}
+
+	/**
+	 * Lag of the journal, rows not yet copied to the audit tables and the age of
+	 * the oldest of them
+	 */
+	public Map<String, Object> getLag() {
+
+		Map<String, Object> lag = new LinkedHashMap<>();
+		lag.put("enabled", isEnabled());
+		lag.put("pendingRows", pendingRows.get());
+		lag.put("pendingSegments", pendingSegments.size());
+		lag.put("lagMs", getLagMillis());
+		lag.put("lastFlushTime", lastFlushTime);
+		lag.put("lastFlushRows", lastFlushRows);
+		lag.put("failedFlushes", failedFlushes.get());
+		return lag;
+	}
+
+	/**
+	 * Age of the oldest row not yet copied to the audit tables
+	 */
+	public long getLagMillis() {
+		Entry<Long, Long> oldestSegment = pendingSegments.firstEntry();
+		return null == oldestSegment ? 0 : System.currentTimeMillis() - oldestSegment.getValue();
+	}
+
+	/**
+	 * Closes the active segment and copies every closed segment to the audit
+	 * tables in the order they were written, stopping at the first failure or at
+	 * the first segment written by a transaction still in progress
+	 */
+	public void flush() {
+
+		long lastClosedSegment;
+		synchronized (segmentLock) {
+			closeActiveSegment();
+			lastClosedSegment = activeSegment - 1;
+		}
+
+		try {
+			for (Path segment : listSegments()) {
+
+				long segmentNumber = getSegmentNumber(segment);
+				if (segmentNumber > lastClosedSegment || isInFlight(segmentNumber))
+					break;
+
+				List<JournalEntry> entries = readSegment(segment);
+				List<JournalEntry> rows = entries.stream().filter(entry -> !entry.isRollbackMarker())
+						.collect(Collectors.toList());
+				List<JournalEntry> committedRows = rows.stream()
+						.filter(entry -> !rolledBackBatches.contains(entry.getBatchId())).collect(Collectors.toList());
+				if (!committedRows.isEmpty())
+					copyEntries(committedRows);
+				Files.delete(segment);
+
+				/*
+				 * a marker is always written after the rows it marks so those are copied by now
+				 */
+				entries.stream().filter(JournalEntry::isRollbackMarker)
+						.forEach(marker -> rolledBackBatches.remove(marker.getBatchId()));
+				pendingSegments.remove(segmentNumber);
+				pendingRows.addAndGet(-rows.size());
+				lastFlushTime = System.currentTimeMillis();
+				lastFlushRows = committedRows.size();
+			}
+		} catch (Exception e) {
+			failedFlushes.incrementAndGet();
+			log.error("Copying the demand audit journal failed, it will be retried on the next flush", e);
+		}
+	}
+
+	/**
+	 * Stops the flush task and copies what is left, segments which cannot be
+	 * copied stay in the journal directory for the next start
+	 */
+	@PreDestroy
+	public void shutdown() {
+
+		if (!isEnabled())
+			return;
+
+		isShutdown = true;
+		flushExecutor.shutdown();
+		try {
+			flushExecutor.awaitTermination(appProps.getDemandAuditJournalFlushInterval(), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+
+	/*
+	 * returns the segment holding the rows, null if they had to be copied directly
+	 *
+	 * inside a transaction the direct copy joins it, the segment is kept in flight
+	 * until the transaction completes
+	 */
+	private Long write(List<JournalEntry> entries, boolean isInFlight) {
+
+		synchronized (segmentLock) {
+			try {
+				long segment = appendToSegment(entries);
+				if (isInFlight)
+					inFlightSegments.merge(segment, 1, Integer::sum);
+				return segment;
+			} catch (IOException e) {
+				log.error("Writing to the demand audit journal failed, copying the audit rows directly", e);
+				closeActiveSegment();
+			}
+		}
+
+		copyEntries(entries);
+		pendingRows.addAndGet(-entries.size());
+		return null;
+	}
+
+	private long appendToSegment(List<JournalEntry> entries) throws IOException {
+
+		StringBuilder lines = new StringBuilder();
+		try {
+			for (JournalEntry entry : entries)
+				lines.append(mapper.writeValueAsString(entry)).append('\n');
+		} catch (JsonProcessingException e) {
+			throw new CustomException("EG_BS_AUDIT_JOURNAL_ERROR", "Unable to serialize the demand audit rows");
+		}
+
+		if (null == activeChannel) {
+			activeChannel = FileChannel.open(getSegmentPath(activeSegment), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			pendingSegments.put(activeSegment, System.currentTimeMillis());
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining())
+			activeChannel.write(buffer);
+		activeChannel.force(false);
+		return activeSegment;
+	}
+
+	private boolean isInFlight(long segment) {
+		synchronized (segmentLock) {
+			return inFlightSegments.containsKey(segment);
+		}
+	}
+
+	private void releaseSegment(long segment) {
+		synchronized (segmentLock) {
+			inFlightSegments.computeIfPresent(segment, (key, count) -> count > 1 ? count - 1 : null);
+		}
+	}
+
+	/*
+	 * the marker is written in the transaction of the demand write, so it exists only once that transaction commits
+	 */
+	void markBatch(String tenantId, String batchId) {
+		jdbcTemplate.update("INSERT INTO " + getTableName(BATCH_TABLE, tenantId)
+				+ " (batchid, tenantid, createdtime) VALUES (?, ?, ?)", batchId, tenantId, System.currentTimeMillis());
+	}
+
+	/*
+	 * one transaction for all the entries so a segment is either copied as a whole or retried as a whole
+	 */
+	void copyEntries(List<JournalEntry> entries) {
+
+		Map<String, List<JournalEntry>> entriesByTableAndTenant = entries.stream().collect(Collectors.groupingBy(
+				entry -> entry.getTable().name() + "|" + entry.getTenantId(), LinkedHashMap::new, Collectors.toList()));
+		Map<String, Set<String>> batchIdsByTenant = entries.stream().collect(Collectors.groupingBy(
+				JournalEntry::getTenantId, LinkedHashMap::new, Collectors.mapping(JournalEntry::getBatchId,
+						Collectors.toCollection(LinkedHashSet::new))));
+
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			int groupIndex = 0;
+			for (List<JournalEntry> group : entriesByTableAndTenant.values())
+				copyGroup(group.get(0).getTable(), group.get(0).getTenantId(), group, groupIndex++);
+
+			/*
+			 * a batch has rows in both audit tables, its marker goes only once all of them are copied
+			 */
+			batchIdsByTenant.forEach((tenantId, batchIds) -> jdbcTemplate.batchUpdate(
+					"DELETE FROM " + getTableName(BATCH_TABLE, tenantId) + " WHERE batchid = ?",
+					batchIds.stream().map(batchId -> new Object[] { batchId }).collect(Collectors.toList())));
+		});
+	}
+
+	private void copyGroup(AuditTable table, String tenantId, List<JournalEntry> entries, int groupIndex) {
+
+		String targetTable = getTableName(table.getTableName(), tenantId);
+		String sourceTable = getTableName(table.getSourceTableName(), tenantId);
+		String batchTable = getTableName(BATCH_TABLE, tenantId);
+
+		/*
+		 * the temporary tables are dropped on commit, one per group as several are created in the transaction
+		 */
+		String tempTable = "journal_" + table.getTableName() + "_" + groupIndex;
+		String columns = String.join(",", table.getColumns());
+		StringBuilder csv = new StringBuilder();
+		for (JournalEntry entry : entries) {
+			List<String> values = new ArrayList<>(entry.getValues());
+			values.add(entry.getBatchId());
+			BulkCopyRepository.appendCsvRow(csv, values);
+		}
+
+		jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+			try (Statement statement = connection.createStatement()) {
+
+				statement.execute("CREATE TEMP TABLE " + tempTable + " (LIKE " + targetTable + " INCLUDING DEFAULTS, "
+						+ BATCH_COLUMN + " CHARACTER VARYING(64)) ON COMMIT DROP");
+				connection.unwrap(PGConnection.class).getCopyAPI().copyIn("COPY " + tempTable + " (" + columns + ","
+						+ BATCH_COLUMN + ") FROM STDIN WITH (FORMAT csv)", new StringReader(csv.toString()));
+				statement.executeUpdate("INSERT INTO " + targetTable + " (" + columns + ") SELECT " + columns
+						+ " FROM " + tempTable + " journal WHERE EXISTS (SELECT 1 FROM " + batchTable
+						+ " batch WHERE batch.batchid = journal." + BATCH_COLUMN + ") AND EXISTS (SELECT 1 FROM "
+						+ sourceTable + " source WHERE source.id = journal." + table.getColumns().get(0)
+						+ " AND source.tenantid = journal.tenantid) ON CONFLICT DO NOTHING");
+			} catch (IOException e) {
+				throw new SQLException("Unable to copy the demand audit journal", e);
+			}
+			return null;
+		});
+	}
+
+	private String getTableName(String tableName, String tenantId) {
+		try {
+			return centralInstanceUtil.replaceSchemaPlaceholder("{schema}." + tableName, tenantId);
+		} catch (InvalidTenantIdException e) {
+			throw new CustomException("EG_BS_TENANTID_ERROR",
+					"TenantId length is not sufficient to replace query schema in a multi state instance");
+		}
+	}
+
+	private JournalEntry getDemandEntry(String batchId, String tenantId, Demand demand, long time) {
+
+		AuditDetails auditDetail = demand.getAuditDetails();
+		String payerUuid = null != demand.getPayer() ? demand.getPayer().getUuid() : null;
+		return new JournalEntry(batchId, AuditTable.DEMAND, tenantId, time, Arrays.asList(demand.getId(),
+				demand.getConsumerCode(), demand.getConsumerType(), demand.getBusinessService(), payerUuid,
+				toText(demand.getTaxPeriodFrom()), toText(demand.getTaxPeriodTo()),
+				toText(demand.getMinimumAmountPayable()), auditDetail.getLastModifiedBy(),
+				toText(auditDetail.getLastModifiedTime()), demand.getTenantId(), toText(demand.getStatus()),
+				toJson(demand.getAdditionalDetails()), UUID.randomUUID().toString(), toText(demand.getBillExpiryTime()),
+				toText(demand.getIsPaymentCompleted())));
+	}
+
+	private JournalEntry getDemandDetailEntry(String batchId, String tenantId, DemandDetail demandDetail,
+			long time) {
+
+		AuditDetails auditDetail = demandDetail.getAuditDetails();
+		return new JournalEntry(batchId, AuditTable.DEMAND_DETAIL, tenantId, time, Arrays.asList(demandDetail.getId(),
+				demandDetail.getDemandId(), demandDetail.getTaxHeadMasterCode(), toText(demandDetail.getTaxAmount()),
+				toText(demandDetail.getCollectionAmount()), auditDetail.getLastModifiedBy(),
+				toText(auditDetail.getLastModifiedTime()), demandDetail.getTenantId(),
+				toJson(demandDetail.getAdditionalDetails()), UUID.randomUUID().toString()));
+	}
+
+	private static String toText(Object value) {
+		return null == value ? null : value.toString();
+	}
+
+	private String toJson(Object value) {
+		if (null == value)
+			return null;
+		try {
+			return mapper.writeValueAsString(value);
+		} catch (JsonProcessingException e) {
+			throw new CustomException("EG_BS_AUDIT_JOURNAL_ERROR", "Unable to serialize the demand audit rows");
+		}
+	}
+
+	private void closeActiveSegment() {
+
+		if (null == activeChannel)
+			return;
+		try {
+			activeChannel.close();
+		} catch (IOException e) {
+			log.error("Closing demand audit journal segment {} failed", activeSegment, e);
+		}
+		activeChannel = null;
+		activeSegment++;
+	}
+
+	private List<JournalEntry> readSegment(Path segment) throws IOException {
+
+		List<JournalEntry> entries = new ArrayList<>();
+		try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+			String line;
+			while (null != (line = reader.readLine())) {
+				if (line.isEmpty())
+					continue;
+				try {
+					entries.add(mapper.readValue(line, JournalEntry.class));
+				} catch (JsonProcessingException e) {
+					/*
+					 * a line cut short by a crash was never acknowledged to the caller
+					 */
+					log.warn("Skipping incomplete line of demand audit journal segment {}", segment);
+				}
+			}
+		}
+		return entries;
+	}
+
+	private List<Path> listSegments() throws IOException {
+		try (Stream<Path> files = Files.list(journalDir)) {
+			return files.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+					&& path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+					.sorted((first, second) -> Long.compare(getSegmentNumber(first), getSegmentNumber(second)))
+					.collect(Collectors.toList());
+		}
+	}
+
+	private Path getSegmentPath(long segmentNumber) {
+		return journalDir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+	}
+
+	private static long getSegmentNumber(Path segment) {
+		String fileName = segment.getFileName().toString();
+		return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	enum AuditTable {
+
+		DEMAND("egbs_demand_v1_audit", "egbs_demand_v1", "demandid", "consumercode", "consumertype", "businessservice", "payer",
+				"taxperiodfrom", "taxperiodto", "minimumamountpayable", "createdby", "createdtime", "tenantid", "status",
+				"additionaldetails", "id", "billexpirytime", "ispaymentcompleted"),
+
+		DEMAND_DETAIL("egbs_demanddetail_v1_audit", "egbs_demanddetail_v1", "demanddetailid", "demandid", "taxheadcode", "taxamount",
+				"collectionamount", "createdby", "createdtime", "tenantid", "additionaldetails", "id");
+
+		private final String tableName;
+
+		private final String sourceTableName;
+
+		/*
+		 * the first column is the id of the audited row in the source table
+		 */
+		private final List<String> columns;
+
+		AuditTable(String tableName, String sourceTableName, String... columns) {
+			this.tableName = tableName;
+			this.sourceTableName = sourceTableName;
+			this.columns = Arrays.asList(columns);
+		}
+
+		String getTableName() {
+			return tableName;
+		}
+
+		String getSourceTableName() {
+			return sourceTableName;
+		}
+
+		List<String> getColumns() {
+			return columns;
+		}
+	}
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	static class JournalEntry {
+
+		private String batchId;
+
+		/*
+		 * null for the marker of a rolled back batch
+		 */
+		private AuditTable table;
+
+		private String tenantId;
+
+		private long time;
+
+		private List<String> values;
+
+		@JsonIgnore
+		boolean isRollbackMarker() {
+			return null == table;
+		}
+	}
+
+	/*
+	 * journals the rows before the commit so a committed write always has its
+	 * audit on disk, a failed commit marks them rolled back
+	 */
+	private class JournalSynchronization implements TransactionSynchronization {
+
+		private final String batchId;
+
+		private final String tenantId;
+
+		private final List<JournalEntry> entries;
+
+		private boolean isWritten;
+
+		private Long segment;
+
+		JournalSynchronization(String batchId, String tenantId, List<JournalEntry> entries) {
+			this.batchId = batchId;
+			this.tenantId = tenantId;
+			this.entries = entries;
+		}
+
+		@Override
+		public void beforeCommit(boolean readOnly) {
+			markBatch(tenantId, batchId);
+			segment = write(entries, true);
+			isWritten = true;
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+
+			try {
+				if (null != segment && status != STATUS_COMMITTED) {
+					rolledBackBatches.add(batchId);
+					synchronized (segmentLock) {
+						appendToSegment(Collections.singletonList(
+								new JournalEntry(batchId, null, null, System.currentTimeMillis(), null)));
+					}
+				}
+			} catch (Exception e) {
+				log.error("Marking the demand audit rows of batch {} rolled back in the journal failed", batchId, e);
+			} finally {
+				if (!isWritten)
+					pendingRows.addAndGet(-entries.size());
+				else if (null != segment)
+					releaseSegment(segment);
+			}
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package org.egov.demand.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.egov.common.exception.InvalidTenantIdException;
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.model.ConsumerDues;
+import org.egov.demand.model.Demand;
+import org.egov.demand.repository.querybuilder.DemandDuesQueryBuilder;
+import org.egov.tracer.model.CustomException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Read model of the outstanding dues per tenant, business service and consumer
+ * code.
+ *
+ * The dues of a consumer are recomputed from its demand details in the same
+ * transaction which writes its demands, the reconciliation rebuilds them for a
+ * whole tenant.
+ *
+ * A refresh first takes a transaction level advisory lock per consumer. Two
+ * transactions writing the same consumer would otherwise each sum the details
+ * without the uncommitted details of the other, and the last to commit would
+ * leave a stale total. Once the lock is held the sum reads every detail
+ * committed by the previous holder.
+ */
+@Repository
+@Slf4j
+public class DemandDuesRepository {
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private MultiStateInstanceUtil centralInstanceUtil;
+
+	@Autowired
+	private DemandDuesQueryBuilder duesQueryBuilder;
+
+	/**
+	 * Recomputes the dues of the consumers of the given demands, to be called
+	 * after the demands are written and within the same transaction
+	 *
+	 * @param demands
+	 */
+	public void refreshDues(Collection<Demand> demands) {
+
+		Map<String, Map<String, Set<String>>> consumerCodesByTenantAndService = new TreeMap<>();
+		for (Demand demand : demands) {
+			consumerCodesByTenantAndService.computeIfAbsent(demand.getTenantId(), key -> new TreeMap<>())
+					.computeIfAbsent(demand.getBusinessService(), key -> new TreeSet<>())
+					.add(demand.getConsumerCode());
+		}
+
+		for (Entry<String, Map<String, Set<String>>> tenantEntry : consumerCodesByTenantAndService.entrySet()) {
+			for (Entry<String, Set<String>> serviceEntry : tenantEntry.getValue().entrySet())
+				refreshDues(tenantEntry.getKey(), serviceEntry.getKey(), serviceEntry.getValue());
+		}
+	}
+
+	/**
+	 * Recomputes the dues of the given consumer codes from their demand details
+	 *
+	 * @param tenantId
+	 * @param businessService
+	 * @param consumerCodes
+	 */
+	@Transactional
+	public void refreshDues(String tenantId, String businessService, Collection<String> consumerCodes) {
+
+		/*
+		 * consumers are locked in sorted order so that overlapping refreshes do not deadlock
+		 */
+		Object[] sortedConsumerCodes = new TreeSet<>(consumerCodes).toArray();
+		String lockQuery = getQuery(DemandDuesQueryBuilder.DUES_LOCK_QUERY, tenantId);
+		jdbcTemplate.query(lockQuery, ps -> {
+			ps.setString(1, tenantId);
+			ps.setString(2, businessService);
+			ps.setArray(3, ps.getConnection().createArrayOf("text", sortedConsumerCodes));
+		}, rs -> {
+		});
+
+		String query = getQuery(DemandDuesQueryBuilder.DUES_REFRESH_QUERY, tenantId);
+		long lastModifiedTime = System.currentTimeMillis();
+		jdbcTemplate.update(query, ps -> {
+			ps.setLong(1, lastModifiedTime);
+			ps.setString(2, tenantId);
+			ps.setString(3, businessService);
+			ps.setArray(4, ps.getConnection().createArrayOf("text", sortedConsumerCodes));
+		});
+	}
+
+	/**
+	 * Reads the dues of the given consumer codes, consumer codes without any
+	 * demand or not refreshed yet have no dues
+	 *
+	 * @param tenantId
+	 * @param businessService
+	 * @param consumerCodes
+	 */
+	public List<ConsumerDues> getDues(String tenantId, String businessService, Collection<String> consumerCodes) {
+
+		String query = getQuery(DemandDuesQueryBuilder.DUES_SEARCH_QUERY, tenantId);
+		return jdbcTemplate.query(query, ps -> {
+			ps.setString(1, tenantId);
+			ps.setString(2, businessService);
+			ps.setArray(3, ps.getConnection().createArrayOf("text", consumerCodes.toArray()));
+		}, (rs, rowNum) -> mapDues(rs));
+	}
+
+	/**
+	 * Rebuilds the dues of every consumer of the tenant, or of all the tenants of
+	 * a state level tenant, from the demand details
+	 *
+	 * @param tenantId
+	 * @return count of dues which were missing or had drifted from the demands
+	 */
+	@Transactional
+	public long reconcileDues(String tenantId) {
+
+		List<Object> preparedStmtList = new ArrayList<>();
+		String reconcileQuery = getQuery(
+				duesQueryBuilder.getDuesReconcileQuery(tenantId, System.currentTimeMillis(), preparedStmtList), tenantId);
+		Long reconciledCount = jdbcTemplate.queryForObject(reconcileQuery, Long.class, preparedStmtList.toArray());
+
+		preparedStmtList = new ArrayList<>();
+		String deleteQuery = getQuery(duesQueryBuilder.getDuesOrphanDeleteQuery(tenantId, preparedStmtList), tenantId);
+		int deletedCount = jdbcTemplate.update(deleteQuery, preparedStmtList.toArray());
+
+		log.info("Reconciled demand dues of tenant {} : {} rows rewritten, {} rows removed", tenantId, reconciledCount,
+				deletedCount);
+		return (null == reconciledCount ? 0 : reconciledCount) + deletedCount;
+	}
+
+	private ConsumerDues mapDues(ResultSet rs) throws SQLException {
+
+		ConsumerDues dues = ConsumerDues.builder()
+				.tenantId(rs.getString("tenantid"))
+				.businessService(rs.getString("businessservice"))
+				.consumerCode(rs.getString("consumercode"))
+				.taxAmount(rs.getBigDecimal("taxamount"))
+				.collectionAmount(rs.getBigDecimal("collectionamount"))
+				.lastModifiedTime(rs.getLong("lastmodifiedtime"))
+				.build();
+		dues.setBalanceAmount(dues.getTaxAmount().subtract(dues.getCollectionAmount()));
+		return dues;
+	}
+
+	private String getQuery(String query, String tenantId) {
+		try {
+			return centralInstanceUtil.replaceSchemaPlaceholder(query, tenantId);
+		} catch (InvalidTenantIdException e) {
+			throw new CustomException("EG_BS_TENANTID_ERROR",
+					"TenantId length is not sufficient to replace query schema in a multi state instance");
+		}
+	}
+}
@@ -42,16 +42,17 @@ package org.egov.demand.repository;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.StringUtils;
 import org.egov.common.exception.InvalidTenantIdException;
 import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.config.ApplicationProperties;
 import org.egov.demand.model.AuditDetails;
 import org.egov.demand.model.Demand;
 import org.egov.demand.model.DemandCriteria;
@@ -59,6 +60,7 @@ import org.egov.demand.model.DemandDetail;
 import org.egov.demand.model.PaymentBackUpdateAudit;
 import org.egov.demand.repository.querybuilder.DemandQueryBuilder;
 import org.egov.demand.repository.rowmapper.DemandRowMapper;
+import org.egov.demand.util.BillingMetrics;
 import org.egov.demand.util.Util;
 import org.egov.demand.web.contract.DemandRequest;
 import org.egov.tracer.model.CustomException;
@@ -90,7 +92,26 @@ public class DemandRepository {
 	
 	@Autowired
 	private Util util;
+
+	@Autowired
+	private DemandAuditJournal demandAuditJournal;
+
+	@Autowired
+	private BulkCopyRepository bulkCopyRepository;
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	@Autowired
+	private DemandDuesRepository demandDuesRepository;
+
+	@Autowired
+	private PaymentBackUpdateFilter paymentBackUpdateFilter;
+
+	@Autowired
+	private BillingMetrics billingMetrics;
 	
+	@Transactional(readOnly = true)
 	public List<Demand> getDemands(DemandCriteria demandCriteria) {
 
 		List<Object> preparedStatementValues = new ArrayList<>();
@@ -105,6 +126,19 @@ public class DemandRepository {
 		return jdbcTemplate.query(searchDemandQuery, preparedStatementValues.toArray(), demandRowMapper);
 	}
 	
+	/**
+	 * Reads one keyset page of the demands matching the criteria in a read only
+	 * transaction of its own, so that the connection is given back to the pool
+	 * between the pages of a stream
+	 * 
+	 * @param demandCriteria criteria with the limit and page key of the page
+	 * @return demands of the page
+	 */
+	@Transactional(readOnly = true)
+	public List<Demand> getDemandPage(DemandCriteria demandCriteria) {
+		return getDemands(demandCriteria);
+	}
+
 	/**
 	 * Fetches demand from DB based on a map of business code and set of consumer codes
 	 * 
@@ -126,6 +160,31 @@ public class DemandRepository {
 		return jdbcTemplate.query(sql, presparedStmtList.toArray(), demandRowMapper);
 	}
 
+	/**
+	 * Fetches the demands of all business services for the given consumer codes
+	 * of a tenant in one query
+	 * 
+	 * @param tenantId
+	 * @param consumerCodes
+	 * @return
+	 */
+	public List<Demand> getDemandsByConsumerCodes(String tenantId, Collection<String> consumerCodes) {
+
+		String query;
+		try {
+			query = centralInstanceUtil.replaceSchemaPlaceholder(DemandQueryBuilder.DEMAND_CONSUMERCODES_SEARCH_QUERY,
+					tenantId);
+		} catch (InvalidTenantIdException e) {
+			throw new CustomException("EG_BS_TENANTID_ERROR",
+					"TenantId length is not sufficient to replace query schema in a multi state instance");
+		}
+
+		return jdbcTemplate.query(query, ps -> {
+			ps.setString(1, tenantId);
+			ps.setArray(2, ps.getConnection().createArrayOf("text", consumerCodes.toArray()));
+		}, demandRowMapper);
+	}
+
 	@Transactional
 	public void save(DemandRequest demandRequest) {
 
@@ -140,60 +199,77 @@ public class DemandRepository {
 		insertBatch(demands, demandDetails, demands.get(0).getTenantId());
 		log.debug("Demands saved >>>> ");
 		insertBatchForAudit(demands, demandDetails, demands.get(0).getTenantId());
+		demandDuesRepository.refreshDues(demands);
 	}
-	
+
+	/**
+	 * Saves large volumes of new demands with COPY, used by bulk bill generation
+	 * and demand migration
+	 * 
+	 * falls back to the batch insert of save when bulk copy is disabled
+	 * 
+	 * @param demandRequest new demands of one tenant
+	 */
 	@Transactional
-	public void update(DemandRequest demandRequest, PaymentBackUpdateAudit paymentBackUpdateAudit) {
+	public void saveInBulk(DemandRequest demandRequest) {
 
-		List<Demand> demands = demandRequest.getDemands();
-		List<Demand> oldDemands = new ArrayList<>();
-		List<DemandDetail> oldDemandDetails = new ArrayList<>();
-		List<Demand> newDemands = new ArrayList<>();
-		List<DemandDetail> newDemandDetails = new ArrayList<>();
-
-		DemandCriteria demandCriteria = DemandCriteria.builder()
-				.demandId(demands.stream().map(Demand::getId).collect(Collectors.toSet()))
-				.tenantId(demands.get(0).getTenantId()).build();
-		List<Demand> existingDemands = getDemands(demandCriteria);
-		
-		log.debug("repository demands "+existingDemands);
-		Map<String, String> existingDemandMap = existingDemands.stream().collect(
-						Collectors.toMap(Demand::getId, Demand::getId));
-		Map<String, String> existingDemandDetailMap = new HashMap<>();
-		for (Demand demand : existingDemands) {
-			for (DemandDetail demandDetail : demand.getDemandDetails())
-				existingDemandDetailMap.put(demandDetail.getId(), demandDetail.getId());
+		if (!appProps.getIsBulkCopyEnabled()) {
+			save(demandRequest);
+			return;
 		}
 
-		for (Demand demand : demands) {
-			if (existingDemandMap.get(demand.getId()) == null)
-				newDemands.add(demand);
-			else
-				oldDemands.add(demand);
-			for (DemandDetail demandDetail : demand.getDemandDetails()) {
-				if (existingDemandDetailMap.get(demandDetail.getId()) == null)
-					newDemandDetails.add(demandDetail);
-				else
-					oldDemandDetails.add(demandDetail);
-			}
-		}
+		List<Demand> demands = demandRequest.getDemands();
+		List<DemandDetail> demandDetails = new ArrayList<>();
+		for (Demand demand : demands)
+			demandDetails.addAll(demand.getDemandDetails());
+
 		String tenantId = demands.get(0).getTenantId();
-		if(StringUtils.isBlank(tenantId) && !existingDemands.isEmpty())
-			tenantId = existingDemands.get(0).getTenantId();
-		
-		updateBatch(oldDemands, oldDemandDetails, tenantId);
-		insertBatchForAudit(oldDemands, oldDemandDetails, tenantId);
-		
-		if (!newDemands.isEmpty() || !newDemandDetails.isEmpty()) {
-			
-			insertBatch(newDemands, newDemandDetails, tenantId);
-			insertBatchForAudit(newDemands, newDemandDetails, tenantId);
-		}
-		
+		bulkCopyRepository.copyDemands(demands, demandDetails, tenantId);
+		insertBatchForAudit(demands, demandDetails, tenantId);
+		demandDuesRepository.refreshDues(demands);
+	}
+	
+	@Transactional
+	public void update(DemandRequest demandRequest, PaymentBackUpdateAudit paymentBackUpdateAudit) {
+
+		updateDemands(demandRequest);
+
 		if (null != paymentBackUpdateAudit)
 			insertBackUpdateForPayment(paymentBackUpdateAudit);
 	}
 
+	/**
+	 * Updates the demands of several payments and records the back update audit
+	 * of all the payments in a single transaction
+	 * 
+	 * @param demandRequest demands of one tenant updated with the payments
+	 * @param paymentBackUpdateAudits one audit per payment
+	 */
+	@Transactional
+	public void updateForPayments(DemandRequest demandRequest, List<PaymentBackUpdateAudit> paymentBackUpdateAudits) {
+
+		updateDemands(demandRequest);
+		insertBackUpdateForPayments(paymentBackUpdateAudits);
+	}
+
+	/*
+	 * new and existing demands and details are written in one upsert per table
+	 * instead of reading the existing rows to split inserts from updates
+	 */
+	private void updateDemands(DemandRequest demandRequest) {
+
+		List<Demand> demands = demandRequest.getDemands();
+		List<DemandDetail> demandDetails = new ArrayList<>();
+		for (Demand demand : demands)
+			demandDetails.addAll(demand.getDemandDetails());
+
+		String tenantId = demands.get(0).getTenantId();
+
+		upsertBatch(demands, demandDetails, tenantId);
+		insertBatchForAudit(demands, demandDetails, tenantId);
+		demandDuesRepository.refreshDues(demands);
+	}
+
 	public void insertBatch(List<Demand> newDemands, List<DemandDetail> newDemandDetails, String tenantId) {
 		
 		String sqlDemand;
@@ -203,6 +279,7 @@ public class DemandRepository {
 		throw new CustomException("EG_BS_TENANTID_ERROR",
 				"TenantId length is not sufficient to replace query schema in a multi state instance");
 	}
+		billingMetrics.recordBatchSize("demand.insert", newDemands.size());
 		jdbcTemplate.batchUpdate(sqlDemand, new BatchPreparedStatementSetter()  {
 			@Override
 			public void setValues(PreparedStatement ps, int rowNum) throws SQLException {
@@ -243,6 +320,7 @@ public class DemandRepository {
 		throw new CustomException("EG_BS_TENANTID_ERROR",
 				"TenantId length is not sufficient to replace query schema in a multi state instance");
 	}
+		billingMetrics.recordBatchSize("demanddetail.insert", newDemandDetails.size());
 		jdbcTemplate.batchUpdate(sqlDemandDetail, new BatchPreparedStatementSetter()  {
 			@Override
 			public void setValues(PreparedStatement ps, int rowNum) throws SQLException {
@@ -269,79 +347,87 @@ public class DemandRepository {
 		});
 	}
 	
-	public void updateBatch(List<Demand> oldDemands, List<DemandDetail> oldDemandDetails, String tenantId) {
+	public void upsertBatch(List<Demand> demands, List<DemandDetail> demandDetails, String tenantId) {
 		
-		String sqlDemandUpdate;
+		String sqlDemandUpsert;
 		try {
-			sqlDemandUpdate = centralInstanceUtil.replaceSchemaPlaceholder(DemandQueryBuilder.DEMAND_UPDATE_QUERY,
+			sqlDemandUpsert = centralInstanceUtil.replaceSchemaPlaceholder(DemandQueryBuilder.DEMAND_UPSERT_QUERY,
 					tenantId);
 		} catch (InvalidTenantIdException e) {
 			throw new CustomException("EG_BS_TENANTID_ERROR",
 					"TenantId length is not sufficient to replace query schema in a multi state instance");
 		}
 		
-		jdbcTemplate.batchUpdate(sqlDemandUpdate, new BatchPreparedStatementSetter(){
+		billingMetrics.recordBatchSize("demand.upsert", demands.size());
+		jdbcTemplate.batchUpdate(sqlDemandUpsert, new BatchPreparedStatementSetter(){
 
 			@Override
 			public void setValues(PreparedStatement ps, int rowNum) throws SQLException {
-				Demand demand = oldDemands.get(rowNum);
+				Demand demand = demands.get(rowNum);
 
 				String status = demand.getStatus() != null ? demand.getStatus().toString() : null;
 				String payerUuid = null != demand.getPayer() ? demand.getPayer().getUuid() : null;
 				AuditDetails auditDetail = demand.getAuditDetails();
 
-				ps.setString(1, payerUuid);
-				ps.setLong(2, demand.getTaxPeriodFrom());
-				ps.setLong(3, demand.getTaxPeriodTo());
-				ps.setBigDecimal(4, demand.getMinimumAmountPayable());
-				ps.setString(5, auditDetail.getLastModifiedBy());
-				ps.setLong(6, auditDetail.getLastModifiedTime());
-				ps.setString(7, demand.getTenantId());
-				ps.setString(8, status);
-				ps.setObject(9, util.getPGObject(demand.getAdditionalDetails()));
-				ps.setObject(10, demand.getBillExpiryTime());
-				ps.setBoolean(11, demand.getIsPaymentCompleted());
-				ps.setObject(12, null);
-				ps.setString(13, demand.getId());
-				ps.setString(14, demand.getTenantId());
-				
+				ps.setString(1, demand.getId());
+				ps.setString(2, demand.getConsumerCode());
+				ps.setString(3, demand.getConsumerType());
+				ps.setString(4, demand.getBusinessService());
+				ps.setString(5, payerUuid);
+				ps.setLong(6, demand.getTaxPeriodFrom());
+				ps.setLong(7, demand.getTaxPeriodTo());
+				ps.setBigDecimal(8, demand.getMinimumAmountPayable());
+				ps.setString(9, auditDetail.getCreatedBy());
+				ps.setString(10, auditDetail.getLastModifiedBy());
+				ps.setLong(11, auditDetail.getCreatedTime());
+				ps.setLong(12, auditDetail.getLastModifiedTime());
+				ps.setString(13, demand.getTenantId());
+				ps.setString(14, status);
+				ps.setObject(15, util.getPGObject(demand.getAdditionalDetails()));
+				ps.setObject(16, demand.getBillExpiryTime());
+				ps.setObject(17, demand.getIsPaymentCompleted());
+				ps.setObject(18, null);
 			}
 
 			@Override
 			public int getBatchSize() {
-				return oldDemands.size();
+				return demands.size();
 			}
 		});
 		
-		String sqlDemandDetailUpdate;
+		String sqlDemandDetailUpsert;
 		try {
-			sqlDemandDetailUpdate = centralInstanceUtil.replaceSchemaPlaceholder(
-					DemandQueryBuilder.DEMAND_DETAIL_UPDATE_QUERY, tenantId);
+			sqlDemandDetailUpsert = centralInstanceUtil.replaceSchemaPlaceholder(
+					DemandQueryBuilder.DEMAND_DETAIL_UPSERT_QUERY, tenantId);
 		} catch (InvalidTenantIdException e) {
 			throw new CustomException("EG_BS_TENANTID_ERROR",
 					"TenantId length is not sufficient to replace query schema in a multi state instance");
 		}
 		
-		jdbcTemplate.batchUpdate(sqlDemandDetailUpdate, new BatchPreparedStatementSetter() {
+		billingMetrics.recordBatchSize("demanddetail.upsert", demandDetails.size());
+		jdbcTemplate.batchUpdate(sqlDemandDetailUpsert, new BatchPreparedStatementSetter() {
 
 			@Override
 			public void setValues(PreparedStatement ps, int rowNum) throws SQLException {
-				DemandDetail demandDetail = oldDemandDetails.get(rowNum);
+				DemandDetail demandDetail = demandDetails.get(rowNum);
 				AuditDetails auditDetail = demandDetail.getAuditDetails();
 
-				ps.setBigDecimal(1, demandDetail.getTaxAmount());
-				ps.setBigDecimal(2, demandDetail.getCollectionAmount());
-				ps.setString(3, auditDetail.getLastModifiedBy());
-				ps.setLong(4, auditDetail.getLastModifiedTime());
-				ps.setObject(5, util.getPGObject(demandDetail.getAdditionalDetails()));
-				ps.setString(6, demandDetail.getId());
-				ps.setString(7, demandDetail.getDemandId());
-				ps.setString(8, demandDetail.getTenantId());
+				ps.setString(1, demandDetail.getId());
+				ps.setString(2, demandDetail.getDemandId());
+				ps.setString(3, demandDetail.getTaxHeadMasterCode());
+				ps.setBigDecimal(4, demandDetail.getTaxAmount());
+				ps.setBigDecimal(5, demandDetail.getCollectionAmount());
+				ps.setString(6, auditDetail.getCreatedBy());
+				ps.setString(7, auditDetail.getLastModifiedBy());
+				ps.setLong(8, auditDetail.getCreatedTime());
+				ps.setLong(9, auditDetail.getLastModifiedTime());
+				ps.setString(10, demandDetail.getTenantId());
+				ps.setObject(11, util.getPGObject(demandDetail.getAdditionalDetails()));
 			}
 
 			@Override
 			public int getBatchSize() {
-				return oldDemandDetails.size();
+				return demandDetails.size();
 			}
 		});
 	}
@@ -353,6 +439,9 @@ public class DemandRepository {
 	
 	@Transactional
 	public void insertBatchForAudit(List<Demand> demands, List<DemandDetail> demandDetails, String tenantId) {
+
+		if (demandAuditJournal.append(tenantId, demands, demandDetails))
+			return;
 		
 		String sqlDemandAudit;
 		try {
@@ -362,6 +451,7 @@ public class DemandRepository {
 			throw new CustomException("EG_BS_TENANTID_ERROR",
 					"TenantId length is not sufficient to replace query schema in a multi state instance");
 		}
+		billingMetrics.recordBatchSize("demand.audit.insert", demands.size());
 		jdbcTemplate.batchUpdate(sqlDemandAudit, new BatchPreparedStatementSetter(){
 			
 			@Override
@@ -403,6 +493,7 @@ public class DemandRepository {
 			throw new CustomException("EG_BS_TENANTID_ERROR",
 					"TenantId length is not sufficient to replace query schema in a multi state instance");
 		}
+		billingMetrics.recordBatchSize("demanddetail.audit.insert", demandDetails.size());
 		jdbcTemplate.batchUpdate(sqlDemandDetailAudit,
 				new BatchPreparedStatementSetter() {
 					@Override
@@ -457,6 +548,78 @@ public class DemandRepository {
 				ps.setString(4, paymentBackUpdateAudit.getErrorMessage());
 			}
 		});
+
+		if (Boolean.TRUE.equals(paymentBackUpdateAudit.getIsBackUpdateSucces()))
+			paymentBackUpdateFilter.addBackUpdated(paymentBackUpdateAudit.getTenantId(),
+					Collections.singletonList(paymentBackUpdateAudit.getPaymentId()),
+					paymentBackUpdateAudit.getIsReceiptCancellation());
+	}
+
+	public void insertBackUpdateForPayments(List<PaymentBackUpdateAudit> paymentBackUpdateAudits) {
+
+		if (paymentBackUpdateAudits.isEmpty())
+			return;
+
+		String paymentBackUpdateQuery;
+		try {
+			paymentBackUpdateQuery = centralInstanceUtil.replaceSchemaPlaceholder(
+					DemandQueryBuilder.PAYMENT_BACKUPDATE_AUDIT_INSERT_QUERY, paymentBackUpdateAudits.get(0).getTenantId());
+		} catch (InvalidTenantIdException e) {
+			throw new CustomException("EG_BS_TENANTID_ERROR",
+					"TenantId length is not sufficient to replace query schema in a multi state instance");
+		}
+		billingMetrics.recordBatchSize("paymentbackupdate.insert", paymentBackUpdateAudits.size());
+		jdbcTemplate.batchUpdate(paymentBackUpdateQuery, new BatchPreparedStatementSetter() {
+
+			@Override
+			public void setValues(PreparedStatement ps, int rowNum) throws SQLException {
+
+				PaymentBackUpdateAudit paymentBackUpdateAudit = paymentBackUpdateAudits.get(rowNum);
+				ps.setString(1, paymentBackUpdateAudit.getPaymentId());
+				ps.setBoolean(2, paymentBackUpdateAudit.getIsBackUpdateSucces());
+				ps.setBoolean(3, paymentBackUpdateAudit.getIsReceiptCancellation());
+				ps.setString(4, paymentBackUpdateAudit.getErrorMessage());
+			}
+
+			@Override
+			public int getBatchSize() {
+				return paymentBackUpdateAudits.size();
+			}
+		});
+
+		for (PaymentBackUpdateAudit paymentBackUpdateAudit : paymentBackUpdateAudits) {
+			if (Boolean.TRUE.equals(paymentBackUpdateAudit.getIsBackUpdateSucces()))
+				paymentBackUpdateFilter.addBackUpdated(paymentBackUpdateAudit.getTenantId(),
+						Collections.singletonList(paymentBackUpdateAudit.getPaymentId()),
+						paymentBackUpdateAudit.getIsReceiptCancellation());
+		}
+	}
+
+	/**
+	 * Returns the payment ids out of the given ids which are already back updated successfully
+	 * 
+	 * @param tenantId
+	 * @param paymentIds
+	 * @param isReceiptCancellation
+	 */
+	public Set<String> searchPaymentBackUpdateAudit(String tenantId, Collection<String> paymentIds, Boolean isReceiptCancellation) {
+
+		String query;
+		try {
+			query = centralInstanceUtil.replaceSchemaPlaceholder(
+					DemandQueryBuilder.PAYMENT_BACKUPDATE_AUDIT_BATCH_SEARCH_QUERY, tenantId);
+		} catch (InvalidTenantIdException e) {
+			throw new CustomException("EG_BS_TENANTID_ERROR",
+					"TenantId length is not sufficient to replace query schema in a multi state instance");
+		}
+
+		List<String> paymentIdsFromDb = jdbcTemplate.query(query, ps -> {
+			ps.setArray(1, ps.getConnection().createArrayOf("text", paymentIds.toArray()));
+			ps.setBoolean(2, true);
+			ps.setBoolean(3, isReceiptCancellation);
+		}, (rs, rowNum) -> rs.getString(1));
+
+		return new HashSet<>(paymentIdsFromDb);
 	}
 
 	public String searchPaymentBackUpdateAudit(PaymentBackUpdateAudit backUpdateAudit) {
@@ -0,0 +1,200 @@
+package org.egov.demand.repository;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.egov.common.exception.InvalidTenantIdException;
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.repository.querybuilder.DemandQueryBuilder;
+import org.egov.demand.util.BillingMetrics;
+import org.egov.demand.util.BloomFilter;
+import org.egov.tracer.model.CustomException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In memory bloom filter of the payments back updated successfully, kept in
+ * front of egbs_payment_backupdate_audit
+ *
+ * Nearly every payment received is new, a payment the filter does not contain
+ * is known not to be back updated and the audit table is not searched for it.
+ * Only the payments the filter might contain are searched, the unique index on
+ * the successful back updates of the table stays the final check.
+ *
+ * There is a filter per state, loaded from the audit table at startup for the
+ * configured tenants and on the first payment of any other state. A state whose
+ * filter could not be loaded has all of its payments searched in the table
+ * until a load retried a minute later succeeds. A filter holding more payments
+ * than it is sized for is rebuilt from the table with twice the size, payments
+ * of back updates not yet committed at that moment are left to the unique index.
+ */
+@Repository
+@Slf4j
+public class PaymentBackUpdateFilter {
+
+	private static final long RELOAD_INTERVAL_MS = 60000;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private MultiStateInstanceUtil centralInstanceUtil;
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	@Autowired
+	private BillingMetrics billingMetrics;
+
+	private final Map<String, StateFilter> stateFilters = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void init() {
+
+		if (!appProps.getIsPaymentBackUpdateFilterEnabled())
+			return;
+
+		for (String tenantId : appProps.getPaymentBackUpdateFilterTenantIds())
+			getStateFilter(tenantId);
+	}
+
+	/**
+	 * false if the payment is certainly not back updated, true if it might be
+	 * and the audit table has to be searched
+	 *
+	 * @param tenantId
+	 * @param paymentId
+	 * @param isReceiptCancellation
+	 */
+	public boolean mightBeBackUpdated(String tenantId, String paymentId, Boolean isReceiptCancellation) {
+
+		if (!appProps.getIsPaymentBackUpdateFilterEnabled() || null == paymentId)
+			return true;
+
+		BloomFilter filter = getStateFilter(tenantId).filter;
+		boolean mightBeBackUpdated = null == filter || filter.mightContain(getKey(paymentId, isReceiptCancellation));
+		billingMetrics.countPaymentFilterChecks(mightBeBackUpdated);
+		return mightBeBackUpdated;
+	}
+
+	/**
+	 * Adds the payments back updated successfully
+	 *
+	 * Called with the audit insert before its transaction commits, so a repeated
+	 * payment is always searched in the table. A payment whose transaction rolls
+	 * back stays in the filter and is only searched needlessly.
+	 */
+	public void addBackUpdated(String tenantId, Collection<String> paymentIds, Boolean isReceiptCancellation) {
+
+		if (!appProps.getIsPaymentBackUpdateFilterEnabled())
+			return;
+
+		StateFilter stateFilter = getStateFilter(tenantId);
+		synchronized (stateFilter) {
+
+			if (null == stateFilter.filter)
+				return;
+			BloomFilter filter = stateFilter.filter;
+			for (String paymentId : paymentIds)
+				filter.put(getKey(paymentId, isReceiptCancellation));
+			if (!filter.isSaturated())
+				return;
+
+			/*
+			 * the payments of the caller are not committed yet, the rebuilt filter is missing them
+			 */
+			rebuild(stateFilter, filter.getExpectedInsertions() * 2);
+			BloomFilter rebuiltFilter = stateFilter.filter;
+			if (null != rebuiltFilter)
+				for (String paymentId : paymentIds)
+					rebuiltFilter.put(getKey(paymentId, isReceiptCancellation));
+		}
+	}
+
+	/**
+	 * Reloads the filter of the state of the tenant from the audit table
+	 */
+	public void rebuild(String tenantId) {
+
+		StateFilter stateFilter = getStateFilter(tenantId);
+		synchronized (stateFilter) {
+			rebuild(stateFilter, appProps.getPaymentBackUpdateFilterExpectedPayments());
+		}
+	}
+
+	private StateFilter getStateFilter(String tenantId) {
+
+		String stateTenantId = centralInstanceUtil.getStateLevelTenant(tenantId);
+		StateFilter stateFilter = stateFilters.computeIfAbsent(stateTenantId, StateFilter::new);
+		if (null == stateFilter.filter && isLoadDue(stateFilter)) {
+			synchronized (stateFilter) {
+				if (null == stateFilter.filter && isLoadDue(stateFilter))
+					rebuild(stateFilter, appProps.getPaymentBackUpdateFilterExpectedPayments());
+			}
+		}
+		return stateFilter;
+	}
+
+	private static boolean isLoadDue(StateFilter stateFilter) {
+		return System.currentTimeMillis() - stateFilter.lastLoadTime >= RELOAD_INTERVAL_MS;
+	}
+
+	/*
+	 * payments recorded while the table is read wait on the lock of the state
+	 * filter, so none of them is lost when the new filter replaces the old one
+	 */
+	private void rebuild(StateFilter stateFilter, long expectedPayments) {
+
+		stateFilter.lastLoadTime = System.currentTimeMillis();
+		try {
+			String countQuery = centralInstanceUtil.replaceSchemaPlaceholder(
+					DemandQueryBuilder.PAYMENT_BACKUPDATE_AUDIT_COUNT_QUERY, stateFilter.tenantId);
+			String query = centralInstanceUtil.replaceSchemaPlaceholder(
+					DemandQueryBuilder.PAYMENT_BACKUPDATE_AUDIT_FILTER_QUERY, stateFilter.tenantId);
+
+			Long paymentCount = jdbcTemplate.queryForObject(countQuery, Long.class, true);
+			BloomFilter filter = new BloomFilter(Math.max(expectedPayments, 2 * (null == paymentCount ? 0 : paymentCount)),
+					appProps.getPaymentBackUpdateFilterFalsePositiveRate());
+			jdbcTemplate.query(query, rs -> {
+				filter.put(getKey(rs.getString(1), rs.getBoolean(2)));
+			}, true);
+
+			stateFilter.filter = filter;
+			log.info("Payment back update filter of {} loaded with {} payments, sized for {}", stateFilter.tenantId,
+					filter.getInsertions(), filter.getExpectedInsertions());
+
+		} catch (InvalidTenantIdException e) {
+			throw new CustomException("EG_BS_TENANTID_ERROR",
+					"TenantId length is not sufficient to replace query schema in a multi state instance");
+		} catch (RuntimeException e) {
+			/*
+			 * payments of the state are searched in the table until a load a minute later succeeds
+			 */
+			log.error("Payment back update filter of {} could not be loaded", stateFilter.tenantId, e);
+			stateFilter.filter = null;
+		}
+	}
+
+	private static String getKey(String paymentId, Boolean isReceiptCancellation) {
+		return paymentId + (Boolean.TRUE.equals(isReceiptCancellation) ? ":C" : ":P");
+	}
+
+	private static class StateFilter {
+
+		private final String tenantId;
+
+		private volatile BloomFilter filter;
+
+		private volatile long lastLoadTime = Long.MIN_VALUE / 2;
+
+		private StateFilter(String tenantId) {
+			this.tenantId = tenantId;
+		}
+	}
+}
@@ -3,6 +3,7 @@ package org.egov.demand.repository.querybuilder;
 import org.egov.demand.amendment.model.AmendmentCriteria;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.support.SqlArrayValue;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
@@ -58,8 +59,8 @@ public class AmendmentQueryBuilder {
 		if (!CollectionUtils.isEmpty(amendmentCriteria.getConsumerCode())) {
 
 			addAndClause(whereCondition);
-			whereCondition.append(" consumercode IN (:consumercode)");
-			searchParamMap.addValue("consumercode", amendmentCriteria.getConsumerCode());
+			whereCondition.append(" consumercode = ANY(CAST(:consumercode AS text[]))");
+			searchParamMap.addValue("consumercode", new SqlArrayValue("text", amendmentCriteria.getConsumerCode().toArray()));
 		}
 		
 		if (amendmentCriteria.getBusinessService() != null) {
@@ -76,10 +77,17 @@ public class AmendmentQueryBuilder {
 			searchParamMap.addValue("amendmentid", amendmentCriteria.getAmendmentId());
 		}
 		
+		if (!CollectionUtils.isEmpty(amendmentCriteria.getAmendmentIds())) {
+
+			addAndClause(whereCondition);
+			whereCondition.append(" amendment.amendmentid = ANY(CAST(:amendmentids AS text[]))");
+			searchParamMap.addValue("amendmentids", new SqlArrayValue("text", amendmentCriteria.getAmendmentIds().toArray()));
+		}
+		
 		if (!CollectionUtils.isEmpty(amendmentCriteria.getStatus())) {
 			addAndClause(whereCondition);
-			whereCondition.append(" amendment.status IN ( :status )");
-			searchParamMap.addValue("status", amendmentCriteria.getStatus());
+			whereCondition.append(" amendment.status = ANY(CAST(:status AS text[]))");
+			searchParamMap.addValue("status", new SqlArrayValue("text", amendmentCriteria.getStatus().toArray()));
 		}
 
 		StringBuilder pageQuery = addPagingClause( searchParamMap, amendmentCriteria);
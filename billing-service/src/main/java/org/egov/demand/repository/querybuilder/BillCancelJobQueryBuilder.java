@@ -0,0 +1,24 @@
+package org.egov.demand.repository.querybuilder;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Queries of egbs_bill_cancel_job, the progress of the bulk cancellations of
+ * bills
+ */
+@Component
+public class BillCancelJobQueryBuilder {
+
+	public static final String JOB_INSERT_QUERY = "INSERT INTO {schema}.egbs_bill_cancel_job"
+			+ " (id, tenantid, businessservice, status, totalcount, processedcount, cancelledcount, errormessage,"
+			+ " createdby, createdtime, lastmodifiedby, lastmodifiedtime)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	public static final String JOB_UPDATE_QUERY = "UPDATE {schema}.egbs_bill_cancel_job SET status = ?,"
+			+ " processedcount = ?, cancelledcount = ?, errormessage = ?, lastmodifiedtime = ?"
+			+ " WHERE id = ? AND tenantid = ?";
+
+	public static final String JOB_SEARCH_QUERY = "SELECT id, tenantid, businessservice, status, totalcount,"
+			+ " processedcount, cancelledcount, errormessage, createdby, createdtime, lastmodifiedby, lastmodifiedtime"
+			+ " FROM {schema}.egbs_bill_cancel_job WHERE id = ? AND tenantid = ?";
+}
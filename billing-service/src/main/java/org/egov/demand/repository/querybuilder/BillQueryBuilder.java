@@ -10,6 +10,7 @@ import org.egov.demand.model.BillV2.BillStatus;
 import org.egov.demand.model.UpdateBillCriteria;
 import org.egov.demand.util.Util;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.support.SqlArrayValue;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
@@ -29,10 +30,50 @@ public class BillQueryBuilder {
 	
 	public static final String BILL_STATUS_UPDATE_BASE_QUERY = "UPDATE {schema}.egbs_bill_v1 SET status=? {replace} WHERE status='ACTIVE' AND tenantId = ? ";
 
+	public static final String ACTIVE_BILL_STATUS_UPDATE_QUERY = "UPDATE {schema}.egbs_bill_v1 b SET status=?"
+			+ " WHERE b.status='ACTIVE' AND b.tenantid=? AND b.consumercode = ANY(?::text[])"
+			+ " AND EXISTS (SELECT 1 FROM {schema}.egbs_billdetail_v1 bd WHERE bd.billid=b.id AND bd.tenantid=b.tenantid AND bd.businessservice=?)"
+			+ " RETURNING b.id";
+
+	public static final String PAST_EXPIRY_BILL_EXPIRE_QUERY = "UPDATE {schema}.egbs_bill_v1 b SET status='EXPIRED'"
+			+ " WHERE b.status='ACTIVE' AND b.tenantid=? AND b.consumercode = ANY(?::text[]) AND b.expirydate < ?"
+			+ " AND EXISTS (SELECT 1 FROM {schema}.egbs_billdetail_v1 bd WHERE bd.billid=b.id AND bd.tenantid=b.tenantid AND bd.businessservice=?)"
+			+ " RETURNING b.consumercode";
+
+	public static final String ACTIVE_BILL_IDS_QUERY = "SELECT b.id FROM {schema}.egbs_bill_v1 b"
+			+ " WHERE b.status='ACTIVE' AND b.tenantid=? AND b.consumercode = ANY(?::text[])"
+			+ " AND EXISTS (SELECT 1 FROM {schema}.egbs_billdetail_v1 bd WHERE bd.billid=b.id AND bd.tenantid=b.tenantid AND bd.businessservice=?)";
+
+	/*
+	 * the additional details of the bill win over those of the request, as in the jsonMerge of the single cancellation
+	 */
+	public static final String BILL_CANCEL_BY_ID_QUERY = "UPDATE {schema}.egbs_bill_v1 b SET status='CANCELLED',"
+			+ " additionaldetails = ?::jsonb || CASE WHEN jsonb_typeof(b.additionaldetails) = 'object' THEN b.additionaldetails ELSE '{}'::jsonb END,"
+			+ " lastmodifiedby=?, lastmodifieddate=?"
+			+ " WHERE b.id = ANY(?::text[]) AND b.tenantid=? AND b.status='ACTIVE'"
+			+ " AND EXISTS (SELECT 1 FROM {schema}.egbs_billdetail_v1 bd WHERE bd.billid=b.id AND bd.tenantid=b.tenantid AND bd.businessservice=?)"
+			+ " RETURNING b.id, b.consumercode";
+
+	/*
+	 * served by the (status, expirydate) index, the keyset on (expirydate, id)
+	 * moves past bills the sweep failed to renew
+	 */
+	public static final String EXPIRING_BILL_QUERY = "SELECT b.id, b.tenantid, b.consumercode, b.expirydate,"
+			+ " (SELECT bd.businessservice FROM {schema}.egbs_billdetail_v1 bd WHERE bd.billid = b.id LIMIT 1) AS businessservice"
+			+ " FROM {schema}.egbs_bill_v1 b WHERE b.status='ACTIVE' AND b.expirydate < ? AND b.createddate < ?"
+			+ " AND (b.expirydate, b.id) > (?, ?) AND {replace} ORDER BY b.expirydate, b.id LIMIT ?";
+
+	/*
+	 * session level lock per swept tenant, held on one connection across the transactions of a sweep
+	 */
+	public static final String EXPIRY_SWEEP_TRY_LOCK_QUERY = "SELECT pg_try_advisory_lock(hashtext('egbs_bill_expiry_sweep'), hashtext(?))";
+
+	public static final String EXPIRY_SWEEP_UNLOCK_QUERY = "SELECT pg_advisory_unlock(hashtext('egbs_bill_expiry_sweep'), hashtext(?))";
+
 	public static final String INSERT_BILL_QUERY = "INSERT into {schema}.egbs_bill_v1 "
 			+"(id, tenantid, payername, payeraddress, payeremail, isactive, iscancelled, createdby, createddate, lastmodifiedby, lastmodifieddate,"
-			+" mobilenumber, status, additionaldetails, payerid, consumercode)"
-			+"values(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+			+" mobilenumber, status, additionaldetails, payerid, consumercode, expirydate)"
+			+"values(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 	
 	public static final String INSERT_BILLDETAILS_QUERY = "INSERT into {schema}.egbs_billdetail_v1 "
 			+"(id, tenantid, billid, demandid, fromperiod, toperiod, businessservice, billno, billdate, consumercode, consumertype, billdescription, displaymessage, "
@@ -45,6 +86,12 @@ public class BillQueryBuilder {
 			+ "createdby, createddate, lastmodifiedby, lastmodifieddate, taxheadcode)"
 			+"values(?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 	
+	public static final String BILLNUMBER_LEASE_INSERT_QUERY = "INSERT INTO {schema}.egbs_billnumber_lease "
+			+ "(tenantid, format, billnumber, createdtime) VALUES (?,?,?,?)";
+	
+	public static final String BILLNUMBER_LEASE_RECLAIM_QUERY = "DELETE FROM {schema}.egbs_billnumber_lease "
+			+ "WHERE tenantid = ? AND format = ? RETURNING billnumber";
+	
 	
 	
 	public static final String BILL_MAX_QUERY = "WITH billresult AS ({replace}) SELECT * FROM billresult "
@@ -98,8 +145,8 @@ public class BillQueryBuilder {
 			final BillSearchCriteria searchBill) {
 		
 		if(!CollectionUtils.isEmpty(searchBill.getBillId())){
-			selectQuery.append(" AND b.id in (");
-			appendListToQuery(searchBill.getBillId(), preparedStatementValues, selectQuery);
+			selectQuery.append(" AND b.id = ANY(?::text[])");
+			preparedStatementValues.add(getArrayValue(searchBill.getBillId()));
 		}
 
 		if (!searchBill.getRetrieveOldest()) {
@@ -143,8 +190,8 @@ public class BillQueryBuilder {
 		}
 
 		if (!CollectionUtils.isEmpty(searchBill.getConsumerCode())) {
-			selectQuery.append(" AND bd.consumercode IN (");
-			appendListToQuery(searchBill.getConsumerCode(), preparedStatementValues, selectQuery);
+			selectQuery.append(" AND bd.consumercode = ANY(?::text[])");
+			preparedStatementValues.add(getArrayValue(searchBill.getConsumerCode()));
 		}
 	}
 	
@@ -194,8 +241,8 @@ public class BillQueryBuilder {
 
 		if (!CollectionUtils.isEmpty(updateBillCriteria.getBillIds())) {
 
-			builder.append(" AND id IN ( ");
-			appendListToQuery(updateBillCriteria.getBillIds(), preparedStmtList, builder);
+			builder.append(" AND id = ANY(?::text[])");
+			preparedStmtList.add(getArrayValue(updateBillCriteria.getBillIds()));
 		}
 
 
@@ -203,20 +250,44 @@ public class BillQueryBuilder {
 	}
 	
 	/**
-	 * @param billIds
+	 * Query for the ACTIVE bills of the tenant expiring before the given time,
+	 * in the order of their expiry
+	 * 
+	 * @param tenantId state level tenant ids search all their cities
+	 * @param expiryBefore
+	 * @param createdBefore bills created after it, renewed by the running sweep, are left out
+	 * @param lastExpiryDate expiry date of the last bill of the previous page
+	 * @param lastId id of the last bill of the previous page
+	 * @param limit
 	 * @param preparedStmtList
-	 * @param query
 	 */
-	private void appendListToQuery(Collection<String> values, List<Object> preparedStmtList, StringBuilder query) {
-		int length = values.size();
-		String[] valueArray = values.toArray(new String[length]);
-
-		for (int i = 0; i < length; i++) {
-			query.append(" ?");
-			if (i != length - 1)
-				query.append(",");
-			preparedStmtList.add(valueArray[i]);
+	public String getExpiringBillQuery(String tenantId, long expiryBefore, long createdBefore, long lastExpiryDate,
+			String lastId, int limit, List<Object> preparedStmtList) {
+
+		preparedStmtList.add(expiryBefore);
+		preparedStmtList.add(createdBefore);
+		preparedStmtList.add(lastExpiryDate);
+		preparedStmtList.add(lastId);
+
+		String tenantCondition;
+		if (centralInstanceUtil.isTenantIdStateLevel(tenantId)) {
+			tenantCondition = "b.tenantid LIKE ?";
+			preparedStmtList.add(tenantId + '%');
+		} else {
+			tenantCondition = "b.tenantid = ?";
+			preparedStmtList.add(tenantId);
 		}
-		query.append(")");
+		preparedStmtList.add(limit);
+		return EXPIRING_BILL_QUERY.replace(REPLACE_STRING, tenantCondition);
+	}
+
+	/**
+	 * Binds the values as a single text array, the query text stays the same for
+	 * any number of values
+	 * 
+	 * @param values
+	 */
+	private SqlArrayValue getArrayValue(Collection<String> values) {
+		return new SqlArrayValue("text", values.toArray());
 	}
 }
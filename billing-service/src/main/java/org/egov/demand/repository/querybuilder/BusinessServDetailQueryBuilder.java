@@ -43,6 +43,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.egov.demand.model.BusinessServiceDetail;
 import org.egov.demand.web.contract.BusinessServiceDetailCriteria;
+import org.springframework.jdbc.support.SqlArrayValue;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
@@ -73,12 +74,15 @@ public class BusinessServDetailQueryBuilder {
             preparedStatementValues.add(businessServiceDetailCriteria.getTenantId());
         }
 
-        if (!CollectionUtils.isEmpty(businessServiceDetailCriteria.getBusinessService()))
-            selectQuery.append(" and businessservice.businessservice IN " +
-                    getQueryForCollection(businessServiceDetailCriteria.getBusinessService()));
+        if (!CollectionUtils.isEmpty(businessServiceDetailCriteria.getBusinessService())) {
+            selectQuery.append(" and businessservice.businessservice = ANY(?::text[]) ");
+            preparedStatementValues.add(getArrayValue(businessServiceDetailCriteria.getBusinessService()));
+        }
 
-        if (businessServiceDetailCriteria.getId() != null && !businessServiceDetailCriteria.getId().isEmpty())
-            selectQuery.append(" and businessservice.id IN " + getQueryForCollection(businessServiceDetailCriteria.getId()));
+        if (businessServiceDetailCriteria.getId() != null && !businessServiceDetailCriteria.getId().isEmpty()) {
+            selectQuery.append(" and businessservice.id = ANY(?::text[]) ");
+            preparedStatementValues.add(getArrayValue(businessServiceDetailCriteria.getId()));
+        }
 
     }
 
@@ -114,14 +118,7 @@ public class BusinessServDetailQueryBuilder {
                 "WHERE tenantid = ? and id = ?;";
     }
 
-    private String getQueryForCollection(Set<String> values) {
-        StringBuilder query = new StringBuilder();
-        if (!values.isEmpty()) {
-            String[] list = values.toArray(new String[values.size()]);
-            query.append(" ('" + list[0] + "'");
-            for (int i = 1; i < values.size(); i++)
-                query.append("," + "'" + list[i] + "'");
-        }
-        return query.append(")").toString();
+    private SqlArrayValue getArrayValue(Set<String> values) {
+        return new SqlArrayValue("text", values.toArray());
     }
 }
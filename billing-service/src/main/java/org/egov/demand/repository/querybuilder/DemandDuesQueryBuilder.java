@@ -0,0 +1,96 @@
+package org.egov.demand.repository.querybuilder;
+
+import java.util.List;
+
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Queries of egbs_demand_dues, the outstanding amount of every tenant, business
+ * service and consumer code summed over the details of its active demands
+ */
+@Component
+public class DemandDuesQueryBuilder {
+
+	@Autowired
+	private MultiStateInstanceUtil centralInstanceUtil;
+
+	public static final String TENANT_CONDITION = "{tenantCondition}";
+
+	private static final String DUES_AGGREGATE_QUERY = "SELECT dmd.tenantid, dmd.businessservice, dmd.consumercode,"
+			+ " COALESCE(SUM(dmdl.taxamount) FILTER (WHERE dmd.status = 'ACTIVE'), 0) AS taxamount,"
+			+ " COALESCE(SUM(dmdl.collectionamount) FILTER (WHERE dmd.status = 'ACTIVE'), 0) AS collectionamount,"
+			+ " CAST(? AS BIGINT) AS lastmodifiedtime"
+			+ " FROM {schema}.egbs_demand_v1 dmd"
+			+ " INNER JOIN {schema}.egbs_demanddetail_v1 dmdl ON dmd.id = dmdl.demandid AND dmd.tenantid = dmdl.tenantid"
+			+ " WHERE " + TENANT_CONDITION
+			+ " GROUP BY dmd.tenantid, dmd.businessservice, dmd.consumercode"
+			+ " ORDER BY dmd.tenantid, dmd.businessservice, dmd.consumercode";
+
+	private static final String DUES_UPSERT_CLAUSE = "INSERT INTO {schema}.egbs_demand_dues AS dues"
+			+ " (tenantid, businessservice, consumercode, taxamount, collectionamount, lastmodifiedtime) ";
+
+	private static final String DUES_CONFLICT_CLAUSE = " ON CONFLICT (tenantid, businessservice, consumercode) DO UPDATE SET"
+			+ " taxamount = EXCLUDED.taxamount, collectionamount = EXCLUDED.collectionamount,"
+			+ " lastmodifiedtime = EXCLUDED.lastmodifiedtime";
+
+	/*
+	 * lock per consumer held until the transaction ends, taken in the order of the consumer codes array
+	 */
+	public static final String DUES_LOCK_QUERY = "SELECT pg_advisory_xact_lock(hashtext(? || '|' || ?), hashtext(consumercode))"
+			+ " FROM unnest(?::text[]) AS consumercode";
+
+	/*
+	 * rows are written in key order so that concurrent refreshes of overlapping consumers lock them in the same order
+	 */
+	public static final String DUES_REFRESH_QUERY = DUES_UPSERT_CLAUSE
+			+ DUES_AGGREGATE_QUERY.replace(TENANT_CONDITION,
+					"dmd.tenantid = ? AND dmd.businessservice = ? AND dmd.consumercode = ANY(?::text[])")
+			+ DUES_CONFLICT_CLAUSE;
+
+	public static final String DUES_SEARCH_QUERY = "SELECT tenantid, businessservice, consumercode, taxamount,"
+			+ " collectionamount, lastmodifiedtime FROM {schema}.egbs_demand_dues"
+			+ " WHERE tenantid = ? AND businessservice = ? AND consumercode = ANY(?::text[])";
+
+	/*
+	 * rows refreshed by a demand write after the reconciliation started are newer than its aggregate and are kept
+	 */
+	private static final String DUES_RECONCILE_QUERY = "WITH reconciled AS (" + DUES_UPSERT_CLAUSE
+			+ DUES_AGGREGATE_QUERY + DUES_CONFLICT_CLAUSE
+			+ " WHERE dues.lastmodifiedtime < EXCLUDED.lastmodifiedtime"
+			+ " AND (dues.taxamount <> EXCLUDED.taxamount OR dues.collectionamount <> EXCLUDED.collectionamount)"
+			+ " RETURNING 1) SELECT count(*) FROM reconciled";
+
+	private static final String DUES_ORPHAN_DELETE_QUERY = "DELETE FROM {schema}.egbs_demand_dues dues WHERE "
+			+ TENANT_CONDITION + " AND NOT EXISTS (SELECT 1 FROM {schema}.egbs_demand_v1 dmd"
+			+ " WHERE dmd.tenantid = dues.tenantid AND dmd.businessservice = dues.businessservice"
+			+ " AND dmd.consumercode = dues.consumercode)";
+
+	/**
+	 * Query rewriting the dues of every consumer of the tenant from the demand
+	 * details, returns the count of rows which were missing or differed
+	 */
+	public String getDuesReconcileQuery(String tenantId, long lastModifiedTime, List<Object> preparedStmtList) {
+
+		preparedStmtList.add(lastModifiedTime);
+		return DUES_RECONCILE_QUERY.replace(TENANT_CONDITION, getTenantCondition("dmd", tenantId, preparedStmtList));
+	}
+
+	/**
+	 * Query removing the dues of consumers which no longer have any demand
+	 */
+	public String getDuesOrphanDeleteQuery(String tenantId, List<Object> preparedStmtList) {
+		return DUES_ORPHAN_DELETE_QUERY.replace(TENANT_CONDITION, getTenantCondition("dues", tenantId, preparedStmtList));
+	}
+
+	private String getTenantCondition(String alias, String tenantId, List<Object> preparedStmtList) {
+
+		if (centralInstanceUtil.isTenantIdStateLevel(tenantId)) {
+			preparedStmtList.add(tenantId + '%');
+			return alias + ".tenantid LIKE ?";
+		}
+		preparedStmtList.add(tenantId);
+		return alias + ".tenantid = ?";
+	}
+}
@@ -39,6 +39,7 @@
  */
 package org.egov.demand.repository.querybuilder;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -48,6 +49,7 @@ import java.util.Set;
 import org.egov.common.utils.MultiStateInstanceUtil;
 import org.egov.demand.model.DemandCriteria;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.support.SqlArrayValue;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
@@ -66,6 +68,12 @@ public class DemandQueryBuilder {
 	
 	public static final String PAYMENT_BACKUPDATE_AUDIT_SEARCH_QUERY = "SELECT paymentid FROM {schema}.egbs_payment_backupdate_audit where paymentid=? AND isbackupdatesuccess=? AND isreceiptcancellation=?;";
 
+	public static final String PAYMENT_BACKUPDATE_AUDIT_BATCH_SEARCH_QUERY = "SELECT paymentid FROM {schema}.egbs_payment_backupdate_audit where paymentid = ANY(?::text[]) AND isbackupdatesuccess=? AND isreceiptcancellation=?;";
+
+	public static final String PAYMENT_BACKUPDATE_AUDIT_COUNT_QUERY = "SELECT count(*) FROM {schema}.egbs_payment_backupdate_audit where isbackupdatesuccess=?;";
+
+	public static final String PAYMENT_BACKUPDATE_AUDIT_FILTER_QUERY = "SELECT paymentid, isreceiptcancellation FROM {schema}.egbs_payment_backupdate_audit where isbackupdatesuccess=?;";
+
 	public static final String BASE_DEMAND_QUERY = "SELECT dmd.id AS did,dmd.consumercode AS dconsumercode,"
 			+ "dmd.consumertype AS dconsumertype,dmd.businessservice AS dbusinessservice,dmd.payer,"
 			+ "dmd.billexpirytime AS dbillexpirytime, dmd.fixedBillExpiryDate as dfixedBillExpiryDate, "
@@ -91,7 +99,14 @@ public class DemandQueryBuilder {
 					+ "INNER JOIN {schema}.egbs_demand demand ON demanddetail.demandid=demand.id AND "
 					+ "demanddetail.tenantid=demand.tenantid WHERE ";
 
-	public static final String DEMAND_QUERY_ORDER_BY_CLAUSE = "dmd.taxperiodfrom";
+	public static final String DEMAND_QUERY_ORDER_BY_CLAUSE = "dmd.taxperiodfrom, dmd.id";
+
+	public static final String DEMAND_PAGE_SUB_QUERY = "dmd.id IN (SELECT dmd.id FROM {schema}.egbs_demand_v1 dmd WHERE ";
+
+	public static final String DEMAND_PAGE_KEY_CLAUSE = "(dmd.taxperiodfrom, dmd.id) > (?, ?)";
+
+	public static final String DEMAND_CONSUMERCODES_SEARCH_QUERY = BASE_DEMAND_QUERY
+			+ "dmd.tenantid = ? AND dmd.consumercode = ANY(?::text[]) ORDER BY " + DEMAND_QUERY_ORDER_BY_CLAUSE;
 
 	public static final String BASE_DEMAND_DETAIL_QUERY_ORDER_BY_CLAUSE = "dmdl.id";
 
@@ -105,12 +120,24 @@ public class DemandQueryBuilder {
 			+ "createdby,lastModifiedby,createdtime,lastModifiedtime,tenantid,additionaldetails)" 
 			+ " VALUES (?,?,?,?,?,?,?,?,?,?,?);";
 
-	public static final String DEMAND_UPDATE_QUERY = "UPDATE {schema}.egbs_demand_v1 SET " + "payer=?,taxPeriodFrom=?,"
-			+ "taxPeriodTo=?,minimumAmountPayable=?,lastModifiedby=?," + "lastModifiedtime=?,tenantid=?,"
-			+ " status=?,additionaldetails=?,billexpirytime=?,ispaymentcompleted=?, fixedBillExpiryDate=? WHERE id=? AND tenantid=?;";
-	
-	public static final String DEMAND_DETAIL_UPDATE_QUERY = "UPDATE {schema}.egbs_demanddetail_v1 SET taxamount=?,collectionamount=?,"
-			+ "lastModifiedby=?,lastModifiedtime=?, additionaldetails=? WHERE id=? AND demandid=? AND tenantid=?;";
+	public static final String DEMAND_UPSERT_QUERY = "INSERT INTO {schema}.egbs_demand_v1 "
+			+ "(id,consumerCode,consumerType,businessService,payer,taxPeriodFrom,taxPeriodTo,"
+			+ "minimumAmountPayable,createdby,lastModifiedby,createdtime,lastModifiedtime,tenantid, status, additionaldetails,"
+			+ " billexpirytime, ispaymentcompleted, fixedBillExpiryDate) "
+			+ "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,COALESCE(?,false),?) "
+			+ "ON CONFLICT (id, tenantid) DO UPDATE SET payer=EXCLUDED.payer, taxPeriodFrom=EXCLUDED.taxPeriodFrom,"
+			+ " taxPeriodTo=EXCLUDED.taxPeriodTo, minimumAmountPayable=EXCLUDED.minimumAmountPayable,"
+			+ " lastModifiedby=EXCLUDED.lastModifiedby, lastModifiedtime=EXCLUDED.lastModifiedtime, status=EXCLUDED.status,"
+			+ " additionaldetails=EXCLUDED.additionaldetails, billexpirytime=EXCLUDED.billexpirytime,"
+			+ " ispaymentcompleted=EXCLUDED.ispaymentcompleted, fixedBillExpiryDate=EXCLUDED.fixedBillExpiryDate;";
+
+	public static final String DEMAND_DETAIL_UPSERT_QUERY = "INSERT INTO {schema}.egbs_demanddetail_v1 "
+			+ "(id,demandid,taxHeadCode,taxamount,collectionamount,"
+			+ "createdby,lastModifiedby,createdtime,lastModifiedtime,tenantid,additionaldetails)"
+			+ " VALUES (?,?,?,?,?,?,?,?,?,?,?) "
+			+ "ON CONFLICT (id, tenantid) DO UPDATE SET taxamount=EXCLUDED.taxamount, collectionamount=EXCLUDED.collectionamount,"
+			+ " lastModifiedby=EXCLUDED.lastModifiedby, lastModifiedtime=EXCLUDED.lastModifiedtime,"
+			+ " additionaldetails=EXCLUDED.additionaldetails WHERE egbs_demanddetail_v1.demandid=EXCLUDED.demandid;";
 
 	public static final String DEMAND_AUDIT_INSERT_QUERY = "INSERT INTO {schema}.egbs_demand_v1_audit "
 			+ "(demandid,consumerCode,consumerType,businessService,payer,taxPeriodFrom,taxPeriodTo,"
@@ -123,9 +150,16 @@ public class DemandQueryBuilder {
 			+ " VALUES (?,?,?,?,?,?,?,?,?,?);";
 	
 	public static final String DEMAND_UPDATE_CONSUMERCODE_QUERY="UPDATE {schema}.egbs_demand_v1 SET consumercode=?, lastmodifiedby=?, lastmodifiedtime=? "
-			+ " WHERE tenantid=? AND id IN (";
+			+ " WHERE tenantid=? AND id = ANY(?::text[])";
 	
 
+	/*
+	 * business service and consumer code pairs are bound as two parallel arrays, so
+	 * the statement is the same whatever the number of business services and codes
+	 */
+	public static final String DEMAND_BUSINESS_CONSUMERCODE_CLAUSE = "(dmd.businessservice, dmd.consumercode) IN"
+			+ " (SELECT * FROM unnest(?::text[], ?::text[]))";
+
 	public String getDemandQueryForConsumerCodes(Map<String,Set<String>> businessConsumercodeMap,List<Object> preparedStmtList, String tenantId){
 		
 		StringBuilder query = new StringBuilder(BASE_DEMAND_QUERY);
@@ -133,35 +167,56 @@ public class DemandQueryBuilder {
 		query.append("dmd.tenantid=? ");
 		preparedStmtList.add(tenantId);
 		
-		query.append("AND dmd.status='ACTIVE' ");
+		query.append("AND dmd.status='ACTIVE' AND ");
 		
-		boolean orFlag = false;
+		List<String> businessServices = new ArrayList<>();
+		List<String> consumerCodes = new ArrayList<>();
 		for (Entry<String, Set<String>> consumerCode : businessConsumercodeMap.entrySet()) {
 			
-			String businessService = consumerCode.getKey();
-			Set<String> consumerCodes = consumerCode.getValue();
+			if (CollectionUtils.isEmpty(consumerCode.getValue()))
+				continue;
 			
-			if(consumerCodes!=null && !consumerCodes.isEmpty()){
-				
-				if(orFlag)
-					query.append("OR");
-				else
-					query.append("AND");
-				
-				query.append(" dmd.businessservice='"+businessService+"' AND dmd.consumercode IN ("
-						+getIdQueryForStrings(consumerCodes)+")");
-				addToPreparedStatement(preparedStmtList, consumerCodes);
-				orFlag=true;
+			for (String code : consumerCode.getValue()) {
+				businessServices.add(consumerCode.getKey());
+				consumerCodes.add(code);
 			}
 		}
 		
+		query.append(DEMAND_BUSINESS_CONSUMERCODE_CLAUSE);
+		preparedStmtList.add(getArrayValue(businessServices));
+		preparedStmtList.add(getArrayValue(consumerCodes));
+		
 		return query.toString();
-				}
+	}
 
 	public String getDemandQuery(DemandCriteria demandCriteria, List<Object> preparedStatementValues) {
 
 		StringBuilder demandQuery = new StringBuilder(BASE_DEMAND_QUERY);
 
+		if (demandCriteria.getLimit() == null) {
+			addDemandSearchClauses(demandQuery, demandCriteria, preparedStatementValues);
+		} else {
+			/*
+			 * the page is cut on demands and not on the joined detail rows, so that
+			 * the details of a demand never get split across two pages
+			 */
+			demandQuery.append(DEMAND_PAGE_SUB_QUERY);
+			addDemandSearchClauses(demandQuery, demandCriteria, preparedStatementValues);
+			addPageKeyClause(demandQuery, demandCriteria, preparedStatementValues);
+			addOrderByClause(demandQuery, DEMAND_QUERY_ORDER_BY_CLAUSE);
+			addPagingClause(demandQuery, preparedStatementValues, demandCriteria.getLimit());
+			demandQuery.append(")");
+		}
+
+		addOrderByClause(demandQuery, DEMAND_QUERY_ORDER_BY_CLAUSE);
+
+		log.info("the query String for demand : " + demandQuery.toString());
+		return demandQuery.toString();
+	}
+
+	private void addDemandSearchClauses(StringBuilder demandQuery, DemandCriteria demandCriteria,
+			List<Object> preparedStatementValues) {
+
 		String tenantId = demandCriteria.getTenantId();
 		
 		if (centralInstaceUtil.isTenantIdStateLevel(tenantId)) {
@@ -181,13 +236,13 @@ public class DemandQueryBuilder {
 		
 		if (demandCriteria.getDemandId() != null && !demandCriteria.getDemandId().isEmpty()) {
 			addAndClause(demandQuery);
-			demandQuery.append("dmd.id IN (" + getIdQueryForStrings(demandCriteria.getDemandId()) + ")");
-			addToPreparedStatement(preparedStatementValues, demandCriteria.getDemandId());
+			demandQuery.append("dmd.id = ANY(?::text[])");
+			preparedStatementValues.add(getArrayValue(demandCriteria.getDemandId()));
 		}
 		if (!CollectionUtils.isEmpty(demandCriteria.getPayer())) {
 			addAndClause(demandQuery);
-			demandQuery.append("dmd.payer IN (" + getIdQueryForStrings(demandCriteria.getPayer()) + ")");
-			addToPreparedStatement(preparedStatementValues, demandCriteria.getPayer());
+			demandQuery.append("dmd.payer = ANY(?::text[])");
+			preparedStatementValues.add(getArrayValue(demandCriteria.getPayer()));
 		}
 		if (demandCriteria.getBusinessService() != null) {
 			addAndClause(demandQuery);
@@ -215,27 +270,34 @@ public class DemandQueryBuilder {
 		
 		if (demandCriteria.getConsumerCode() != null && !demandCriteria.getConsumerCode().isEmpty()) {
 			addAndClause(demandQuery);
-			demandQuery.append("dmd.consumercode IN ("
-			+ getIdQueryForStrings(demandCriteria.getConsumerCode()) + ")");
-			addToPreparedStatement(preparedStatementValues, demandCriteria.getConsumerCode());
+			demandQuery.append("dmd.consumercode = ANY(?::text[])");
+			preparedStatementValues.add(getArrayValue(demandCriteria.getConsumerCode()));
 		}
+	}
 
-		addOrderByClause(demandQuery, DEMAND_QUERY_ORDER_BY_CLAUSE);
-		addPagingClause(demandQuery, preparedStatementValues);
+	/*
+	 * keyset condition on (taxperiodfrom, id) which resumes right after the last demand of the previous page
+	 */
+	private static void addPageKeyClause(StringBuilder demandQuery, DemandCriteria demandCriteria,
+			List<Object> preparedStatementValues) {
 
-		log.info("the query String for demand : " + demandQuery.toString());
-		return demandQuery.toString();
+		if (demandCriteria.getPageKeyTaxPeriodFrom() == null || demandCriteria.getPageKeyDemandId() == null)
+			return;
+
+		addAndClause(demandQuery);
+		demandQuery.append(DEMAND_PAGE_KEY_CLAUSE);
+		preparedStatementValues.add(demandCriteria.getPageKeyTaxPeriodFrom());
+		preparedStatementValues.add(demandCriteria.getPageKeyDemandId());
 	}
 	
 	private static void addOrderByClause(StringBuilder demandQueryBuilder,String columnName) {
 		demandQueryBuilder.append(" ORDER BY " + columnName);
 	}
 
-	private static void addPagingClause(StringBuilder demandQueryBuilder, List<Object> preparedStatementValues) {
-//		demandQueryBuilder.append(" LIMIT ?");
-//		preparedStatementValues.add(500);
-//		demandQueryBuilder.append(" OFFSET ?");
-//		preparedStatementValues.add(0);
+	private static void addPagingClause(StringBuilder demandQueryBuilder, List<Object> preparedStatementValues,
+			Integer limit) {
+		demandQueryBuilder.append(" LIMIT ?");
+		preparedStatementValues.add(limit);
 	}
 
 	private static boolean addAndClause(StringBuilder queryString) {
@@ -243,19 +305,11 @@ public class DemandQueryBuilder {
 		return true;
 	}
 	
-	private static String getIdQueryForStrings(Set<String> idList) {
-
-		StringBuilder builder = new StringBuilder();
-		int length = idList.size();
-		for( int i = 0; i< length; i++){
-			builder.append(" ? ");
-			if(i != length -1) builder.append(",");
-		}
-		return builder.toString();
-	}
-
-	private void addToPreparedStatement(List<Object> preparedStmtList, Collection<String> ids)
-	{
-		ids.forEach(id ->{ preparedStmtList.add(id);});
+	/*
+	 * a list is bound as a single text array parameter, so that the statement text
+	 * does not depend on the size of the list and its server side plan is reused
+	 */
+	private static SqlArrayValue getArrayValue(Collection<String> values) {
+		return new SqlArrayValue("text", values.toArray());
 	}
 }
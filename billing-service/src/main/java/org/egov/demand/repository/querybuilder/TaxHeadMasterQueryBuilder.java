@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.Set;
 
 import org.egov.demand.model.TaxHeadMasterCriteria;
+import org.springframework.jdbc.support.SqlArrayValue;
 import org.springframework.stereotype.Component;
 
 import lombok.extern.slf4j.Slf4j;
@@ -61,9 +62,11 @@ public class TaxHeadMasterQueryBuilder {
 		}
 
 		if (searchTaxHead.getId() != null && !searchTaxHead.getId().isEmpty()) {
-			selectQuery.append(" AND taxhead.id IN (" + getIdQuery(searchTaxHead.getId()));
+			selectQuery.append(" AND taxhead.id = ANY(?::text[])");
+			preparedStatementValues.add(getArrayValue(searchTaxHead.getId()));
 		}else if(searchTaxHead.getCode() != null && !searchTaxHead.getCode().isEmpty()) {
-			selectQuery.append(" AND taxhead.code IN ("+ getIdQuery(searchTaxHead.getCode()));
+			selectQuery.append(" AND taxhead.code = ANY(?::text[])");
+			preparedStatementValues.add(getArrayValue(searchTaxHead.getCode()));
 		}
 		
 		if (searchTaxHead.getCategory() != null) {
@@ -105,15 +108,7 @@ public class TaxHeadMasterQueryBuilder {
 															// pageNo * pageSize
 	}
 	
-	private static String getIdQuery(Set<String> idList) {
-
-		StringBuilder query = new StringBuilder();
-		if (!idList.isEmpty()) {
-			String[] list = idList.toArray(new String[idList.size()]);
-			query.append("'"+list[0]+"'");
-			for (int i = 1; i < idList.size(); i++)
-				query.append("," + "'"+list[i]+"'");
-		}
-		return query.append(")").toString();
+	private static SqlArrayValue getArrayValue(Set<String> values) {
+		return new SqlArrayValue("text", values.toArray());
 	}
 }
@@ -50,6 +50,7 @@ import org.egov.demand.repository.TaxPeriodRepository;
 import org.egov.demand.web.contract.TaxPeriodCriteria;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.support.SqlArrayValue;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -92,7 +93,8 @@ public class TaxPeriodQueryBuilder {
 
         Set<String> service = taxPeriodCriteria.getService(); 
         if (service != null &&  !service.isEmpty()) {
-            selectQuery.append(" and taxperiod.service IN " + getQueryForCollection(service));
+            selectQuery.append(" and taxperiod.service = ANY(?::text[]) ");
+            preparedStatementValues.add(getArrayValue(service));
         }
         
         PeriodCycle periodCycle = taxPeriodCriteria.getPeriodCycle();
@@ -105,25 +107,28 @@ public class TaxPeriodQueryBuilder {
 			if (service != null && !service.isEmpty() && service.size() == 1 && periodCycle!=null) {
 				selectQuery.append(
 						" AND (fromdate >=  CASE WHEN ((SELECT fromdate FROM {schema}.egbs_taxperiod WHERE tenantId =? AND ( ? BETWEEN fromdate AND  todate)  "
-								+ " AND service IN " + getQueryForCollection(service) + " AND periodcycle=?) NOTNULL) "
+								+ " AND service = ANY(?::text[]) AND periodcycle=?) NOTNULL) "
 								+ "THEN "
 								+ "( SELECT fromdate FROM {schema}.egbs_taxperiod WHERE tenantId =? AND ( ? BETWEEN fromdate AND  todate)"
-								+ " AND service IN "+ getQueryForCollection(service) + " AND periodcycle=?) "
+								+ " AND service = ANY(?::text[]) AND periodcycle=?) "
 								+ "ELSE " 
 								+ "(SELECT min(fromdate) FROM {schema}.egbs_taxperiod WHERE tenantId =?)"
 								+ " END"
 								+ " AND todate <= ( SELECT todate FROM {schema}.egbs_taxperiod WHERE tenantId = ? AND (? BETWEEN fromdate AND  todate) "
-								+ " AND service IN " + getQueryForCollection(service) + " AND periodcycle=?))");
+								+ " AND service = ANY(?::text[]) AND periodcycle=?))");
 				
 				preparedStatementValues.add(tenantId);
 				preparedStatementValues.add(taxPeriodCriteria.getFromDate());
+				preparedStatementValues.add(getArrayValue(service));
 				preparedStatementValues.add(periodCycle.toString());
 				preparedStatementValues.add(tenantId);
 				preparedStatementValues.add(taxPeriodCriteria.getFromDate());
+				preparedStatementValues.add(getArrayValue(service));
 				preparedStatementValues.add(periodCycle.toString());
 				preparedStatementValues.add(tenantId);
 				preparedStatementValues.add(tenantId);
 				preparedStatementValues.add(taxPeriodCriteria.getToDate());
+				preparedStatementValues.add(getArrayValue(service));
 				preparedStatementValues.add(periodCycle.toString());
 			} else {
 				if (taxPeriodCriteria.getFromDate() != null) {
@@ -143,8 +148,10 @@ public class TaxPeriodQueryBuilder {
         }
 
         Set<String> ids = taxPeriodCriteria.getId();
-        if (ids != null && !ids.isEmpty())
-            selectQuery.append(" and taxperiod.id IN "+getQueryForCollection(ids));
+        if (ids != null && !ids.isEmpty()) {
+            selectQuery.append(" and taxperiod.id = ANY(?::text[]) ");
+            preparedStatementValues.add(getArrayValue(ids));
+        }
         
         if(taxPeriodCriteria.getDate()!=null){
         	selectQuery.append(" and taxperiod.fromdate <= ? and taxperiod.todate >= ? ");
@@ -188,14 +195,7 @@ public class TaxPeriodQueryBuilder {
 		return baseQuery.concat(whereClause.toString()).concat(" )");
 	}
 
-    private String getQueryForCollection(Set<String> values) {
-        StringBuilder query = new StringBuilder();
-        if (!values.isEmpty()) {
-            String[] list = values.toArray(new String[values.size()]);
-            query.append(" ('"+list[0]+"'");
-            for (int i = 1; i < values.size(); i++)
-                query.append("," + "'"+list[i]+"'");
-        }
-        return query.append(")").toString();
+    private SqlArrayValue getArrayValue(Set<String> values) {
+        return new SqlArrayValue("text", values.toArray());
     }
 }
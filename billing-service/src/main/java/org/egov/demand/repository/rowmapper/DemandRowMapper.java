@@ -42,6 +42,7 @@ package org.egov.demand.repository.rowmapper;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,90 +51,226 @@ import org.egov.demand.model.AuditDetails;
 import org.egov.demand.model.Demand;
 import org.egov.demand.model.Demand.StatusEnum;
 import org.egov.demand.model.DemandDetail;
-import org.egov.demand.util.Util;
+import org.egov.demand.model.RawJson;
 import org.egov.demand.web.contract.User;
-import org.postgresql.util.PGobject;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.stereotype.Component;
 
-import com.fasterxml.jackson.databind.JsonNode;
-
+/**
+ * Maps the rows of the demand search, one row per demand detail.
+ *
+ * Column indices are resolved once per result set, additional details are kept
+ * as raw jsonb text and the tenant, business service and tax head values are
+ * shared across the rows of a result set.
+ */
 @Component
 public class DemandRowMapper implements ResultSetExtractor<List<Demand>> {
-	
 
-	@Autowired
-	private Util util;
-	
 	@Override
 	public List<Demand> extractData(ResultSet rs) throws SQLException, DataAccessException {
 
 		Map<String, Demand> demandMap = new LinkedHashMap<>();
-		String demandIdRsName = "did";
+		DemandColumns columns = null;
 
 		while (rs.next()) {
 
-			String demandId = rs.getString(demandIdRsName);
+			if (null == columns)
+				columns = getColumns(rs);
+
+			String demandId = rs.getString(columns.demandId);
 			Demand demand = demandMap.get(demandId);
 
 			if (demand == null) {
-
-				demand = new Demand();
-				demand.setId(demandId);
-				demand.setBusinessService(rs.getString("dbusinessservice"));
-				demand.setConsumerCode(rs.getString("dconsumerCode"));
-				demand.setConsumerType(rs.getString("dconsumerType"));
-				demand.setTaxPeriodFrom(rs.getLong("dtaxPeriodFrom"));
-				demand.setTaxPeriodTo(rs.getLong("dtaxPeriodTo"));
-				demand.setTenantId(rs.getString("dtenantid"));
-				demand.setBillExpiryTime(rs.getLong("dbillexpirytime"));
-				demand.setStatus(StatusEnum.fromValue(rs.getString("status")));
-				demand.setIsPaymentCompleted(rs.getBoolean("ispaymentcompleted"));
-				demand.setMinimumAmountPayable(rs.getBigDecimal("dminimumAmountPayable"));
-				
-				PGobject adDetail = (PGobject) rs.getObject("demandadditionaldetails");	
-				JsonNode json = util.getJsonValue(adDetail);
-				demand.setAdditionalDetails(json);
-				
-				String payerId = rs.getString("payer");
-				if (null != payerId) {
-					demand.setPayer(User.builder().uuid(payerId).build());
-				}
-
-				AuditDetails auditDetail = new AuditDetails();
-				auditDetail.setCreatedBy(rs.getString("dcreatedby"));
-				auditDetail.setLastModifiedBy(rs.getString("dlastModifiedby"));
-				auditDetail.setCreatedTime(rs.getLong("dcreatedtime"));
-				auditDetail.setLastModifiedTime(rs.getLong("dlastModifiedtime"));
-				demand.setAuditDetails(auditDetail);
-
-				demand.setDemandDetails(new ArrayList<>());
+				demand = mapDemand(rs, columns);
 				demandMap.put(demand.getId(), demand);
 			}
 
-			DemandDetail demandDetail = new DemandDetail();
-			demandDetail.setId(rs.getString("dlid"));
-			demandDetail.setDemandId(rs.getString("dldemandid"));
-
-			demandDetail.setTaxHeadMasterCode(rs.getString("dltaxheadcode"));
-			;
-			demandDetail.setTenantId(rs.getString("dltenantid"));
-			demandDetail.setTaxAmount(rs.getBigDecimal("dltaxamount"));
-			demandDetail.setCollectionAmount(rs.getBigDecimal("dlcollectionamount"));
-
-			AuditDetails dlauditDetail = new AuditDetails();
-			dlauditDetail.setCreatedBy(rs.getString("dlcreatedby"));
-			dlauditDetail.setCreatedTime(rs.getLong("dlcreatedtime"));
-			dlauditDetail.setLastModifiedBy(rs.getString("dllastModifiedby"));
-			dlauditDetail.setLastModifiedTime(rs.getLong("dllastModifiedtime"));
-			demandDetail.setAuditDetails(dlauditDetail);
-
-			if (demand.getId().equals(demandDetail.getDemandId()))
-				demand.getDemandDetails().add(demandDetail);
+			addDemandDetail(demand, rs, columns);
 		}
 		return new ArrayList<>(demandMap.values());
 	}
-	
-}
\ No newline at end of file
+
+	/**
+	 * Resolves the column indices of the result set, to be reused for all its rows
+	 *
+	 * @param rs
+	 * @throws SQLException
+	 */
+	public DemandColumns getColumns(ResultSet rs) throws SQLException {
+		return new DemandColumns(rs);
+	}
+
+	/**
+	 * Maps the demand columns of the current row, with an empty list of details
+	 *
+	 * @param rs
+	 * @param columns indices of the result set
+	 * @throws SQLException
+	 */
+	public Demand mapDemand(ResultSet rs, DemandColumns columns) throws SQLException {
+
+		Demand demand = new Demand();
+		demand.setId(rs.getString(columns.demandId));
+		demand.setBusinessService(columns.share(rs.getString(columns.businessService)));
+		demand.setConsumerCode(rs.getString(columns.consumerCode));
+		demand.setConsumerType(columns.share(rs.getString(columns.consumerType)));
+		demand.setTaxPeriodFrom(rs.getLong(columns.taxPeriodFrom));
+		demand.setTaxPeriodTo(rs.getLong(columns.taxPeriodTo));
+		demand.setTenantId(columns.share(rs.getString(columns.tenantId)));
+		demand.setBillExpiryTime(rs.getLong(columns.billExpiryTime));
+		demand.setStatus(StatusEnum.fromValue(rs.getString(columns.status)));
+		demand.setMinimumAmountPayable(rs.getBigDecimal(columns.minimumAmountPayable));
+
+		if (columns.isPaymentCompleted > 0)
+			demand.setIsPaymentCompleted(rs.getBoolean(columns.isPaymentCompleted));
+		if (columns.additionalDetails > 0)
+			demand.setAdditionalDetails(RawJson.of(rs.getString(columns.additionalDetails)));
+
+		String payerId = rs.getString(columns.payer);
+		if (null != payerId) {
+			demand.setPayer(User.builder().uuid(payerId).build());
+		}
+
+		AuditDetails auditDetail = new AuditDetails();
+		auditDetail.setCreatedBy(rs.getString(columns.createdBy));
+		auditDetail.setLastModifiedBy(rs.getString(columns.lastModifiedBy));
+		auditDetail.setCreatedTime(rs.getLong(columns.createdTime));
+		auditDetail.setLastModifiedTime(rs.getLong(columns.lastModifiedTime));
+		demand.setAuditDetails(auditDetail);
+
+		demand.setDemandDetails(new ArrayList<>());
+		return demand;
+	}
+
+	/**
+	 * Maps the demand detail columns of the current row and adds the detail to the
+	 * given demand
+	 *
+	 * @param demand
+	 * @param rs
+	 * @param columns indices of the result set
+	 * @throws SQLException
+	 */
+	public void addDemandDetail(Demand demand, ResultSet rs, DemandColumns columns) throws SQLException {
+
+		DemandDetail demandDetail = new DemandDetail();
+		demandDetail.setId(rs.getString(columns.detailId));
+		demandDetail.setDemandId(rs.getString(columns.detailDemandId));
+
+		demandDetail.setTaxHeadMasterCode(columns.share(rs.getString(columns.detailTaxHeadCode)));
+		demandDetail.setTenantId(columns.share(rs.getString(columns.detailTenantId)));
+		demandDetail.setTaxAmount(rs.getBigDecimal(columns.detailTaxAmount));
+		demandDetail.setCollectionAmount(rs.getBigDecimal(columns.detailCollectionAmount));
+
+		if (columns.detailAdditionalDetails > 0)
+			demandDetail.setAdditionalDetails(RawJson.of(rs.getString(columns.detailAdditionalDetails)));
+
+		AuditDetails dlauditDetail = new AuditDetails();
+		dlauditDetail.setCreatedBy(rs.getString(columns.detailCreatedBy));
+		dlauditDetail.setCreatedTime(rs.getLong(columns.detailCreatedTime));
+		dlauditDetail.setLastModifiedBy(rs.getString(columns.detailLastModifiedBy));
+		dlauditDetail.setLastModifiedTime(rs.getLong(columns.detailLastModifiedTime));
+		demandDetail.setAuditDetails(dlauditDetail);
+
+		if (demand.getId().equals(demandDetail.getDemandId()))
+			demand.getDemandDetails().add(demandDetail);
+	}
+
+	/**
+	 * Column indices of a demand result set along with the values shared by its rows
+	 *
+	 * additional details and payment completion are optional, the migration query
+	 * over the old demand tables does not select them
+	 */
+	public static final class DemandColumns {
+
+		private final int demandId;
+		private final int businessService;
+		private final int consumerCode;
+		private final int consumerType;
+		private final int taxPeriodFrom;
+		private final int taxPeriodTo;
+		private final int tenantId;
+		private final int billExpiryTime;
+		private final int status;
+		private final int isPaymentCompleted;
+		private final int minimumAmountPayable;
+		private final int additionalDetails;
+		private final int payer;
+		private final int createdBy;
+		private final int lastModifiedBy;
+		private final int createdTime;
+		private final int lastModifiedTime;
+
+		private final int detailId;
+		private final int detailDemandId;
+		private final int detailTaxHeadCode;
+		private final int detailTenantId;
+		private final int detailTaxAmount;
+		private final int detailCollectionAmount;
+		private final int detailAdditionalDetails;
+		private final int detailCreatedBy;
+		private final int detailCreatedTime;
+		private final int detailLastModifiedBy;
+		private final int detailLastModifiedTime;
+
+		private final Map<String, String> sharedValues = new HashMap<>();
+
+		private DemandColumns(ResultSet rs) throws SQLException {
+
+			demandId = rs.findColumn("did");
+			businessService = rs.findColumn("dbusinessservice");
+			consumerCode = rs.findColumn("dconsumercode");
+			consumerType = rs.findColumn("dconsumertype");
+			taxPeriodFrom = rs.findColumn("dtaxperiodfrom");
+			taxPeriodTo = rs.findColumn("dtaxperiodto");
+			tenantId = rs.findColumn("dtenantid");
+			billExpiryTime = rs.findColumn("dbillexpirytime");
+			status = rs.findColumn("status");
+			isPaymentCompleted = findOptionalColumn(rs, "ispaymentcompleted");
+			minimumAmountPayable = rs.findColumn("dminimumamountpayable");
+			additionalDetails = findOptionalColumn(rs, "demandadditionaldetails");
+			payer = rs.findColumn("payer");
+			createdBy = rs.findColumn("dcreatedby");
+			lastModifiedBy = rs.findColumn("dlastmodifiedby");
+			createdTime = rs.findColumn("dcreatedtime");
+			lastModifiedTime = rs.findColumn("dlastmodifiedtime");
+
+			detailId = rs.findColumn("dlid");
+			detailDemandId = rs.findColumn("dldemandid");
+			detailTaxHeadCode = rs.findColumn("dltaxheadcode");
+			detailTenantId = rs.findColumn("dltenantid");
+			detailTaxAmount = rs.findColumn("dltaxamount");
+			detailCollectionAmount = rs.findColumn("dlcollectionamount");
+			detailAdditionalDetails = findOptionalColumn(rs, "detailadditionaldetails");
+			detailCreatedBy = rs.findColumn("dlcreatedby");
+			detailCreatedTime = rs.findColumn("dlcreatedtime");
+			detailLastModifiedBy = rs.findColumn("dllastmodifiedby");
+			detailLastModifiedTime = rs.findColumn("dllastmodifiedtime");
+		}
+
+		public int getDemandId() {
+			return demandId;
+		}
+
+		/*
+		 * the few distinct tenant, business service and tax head values are held once per result set
+		 */
+		private String share(String value) {
+
+			if (null == value)
+				return null;
+			String sharedValue = sharedValues.putIfAbsent(value, value);
+			return null == sharedValue ? value : sharedValue;
+		}
+
+		private static int findOptionalColumn(ResultSet rs, String columnLabel) {
+			try {
+				return rs.findColumn(columnLabel);
+			} catch (SQLException e) {
+				return 0;
+			}
+		}
+	}
+}
@@ -4,13 +4,18 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.BinaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.egov.common.contract.request.RequestInfo;
 import org.egov.demand.amendment.model.Amendment;
+import org.egov.demand.amendment.model.AmendmentBulkUpdateRequest;
 import org.egov.demand.amendment.model.AmendmentCriteria;
 import org.egov.demand.amendment.model.AmendmentRequest;
 import org.egov.demand.amendment.model.AmendmentUpdate;
@@ -25,16 +30,22 @@ import org.egov.demand.model.DemandCriteria;
 import org.egov.demand.model.UpdateBillCriteria;
 import org.egov.demand.repository.AmendmentRepository;
 import org.egov.demand.repository.BillRepositoryV2;
+import org.egov.demand.repository.DemandRepository;
 import org.egov.demand.util.Util;
 import org.egov.demand.web.contract.DemandRequest;
 import org.egov.demand.web.validator.AmendmentValidator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
+import lombok.extern.slf4j.Slf4j;
+
 @Service
+@Slf4j
 public class AmendmentService {
 	
 	@Autowired
@@ -54,6 +65,12 @@ public class AmendmentService {
 	
 	@Autowired
 	private AmendmentRepository amendmentRepository;
+
+	@Autowired
+	private DemandRepository demandRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
 	
 	/**
 	 * Search amendment based on criteria
@@ -209,4 +226,162 @@ public class AmendmentService {
 		}
 	}
 
+	/**
+	 * bulk update of amendments, used only with workflow
+	 * 
+	 * workflow transitions are sent in batches, amendments of the transitions
+	 * done are updated even when a later batch fails, the error is thrown after
+	 * 
+	 * @param amendmentBulkUpdateRequest
+	 */
+	public List<Amendment> bulkUpdateAmendments(AmendmentBulkUpdateRequest amendmentBulkUpdateRequest) {
+
+		RequestInfo requestInfo = amendmentBulkUpdateRequest.getRequestInfo();
+		List<AmendmentUpdate> amendmentUpdates = amendmentBulkUpdateRequest.getAmendmentUpdates();
+		Map<String, Amendment> amendmentsFromSearch = amendmentValidator
+				.validateAndEnrichAmendmentsForBulkUpdate(amendmentBulkUpdateRequest);
+		String tenantId = amendmentUpdates.get(0).getTenantId();
+
+		/*
+		 * Workflow update
+		 */
+		List<AmendmentUpdate> transitionedUpdates = new ArrayList<>();
+		RuntimeException workflowError = null;
+		int batchSize = props.getAmendmentBulkWorkflowBatchSize();
+		for (int from = 0; from < amendmentUpdates.size(); from += batchSize) {
+
+			List<AmendmentUpdate> batch = amendmentUpdates.subList(from, Math.min(from + batchSize, amendmentUpdates.size()));
+			try {
+				Map<String, State> resultantStates = util.callWorkFlow(
+						batch.stream().map(AmendmentUpdate::getWorkflow).collect(Collectors.toList()), requestInfo);
+				for (AmendmentUpdate amendmentUpdate : batch) {
+
+					State resultantState = resultantStates.get(amendmentUpdate.getAmendmentId());
+					amendmentUpdate.getWorkflow().setState(resultantState);
+					amendmentUpdate.setStatus(AmendmentStatus.fromValue(resultantState.getApplicationStatus()));
+				}
+				transitionedUpdates.addAll(batch);
+			} catch (RuntimeException e) {
+				log.error("Workflow transition failed after {} of {} amendments", transitionedUpdates.size(),
+						amendmentUpdates.size(), e);
+				workflowError = e;
+				break;
+			}
+		}
+
+		/*
+		 * amendment update
+		 */
+		if (!transitionedUpdates.isEmpty()) {
+
+			amendmentRepository.updateAmendment(transitionedUpdates, tenantId);
+			List<Amendment> activeAmendments = transitionedUpdates.stream()
+					.filter(amendmentUpdate -> AmendmentStatus.ACTIVE.equals(amendmentUpdate.getStatus()))
+					.map(amendmentUpdate -> amendmentsFromSearch.get(amendmentUpdate.getAmendmentId()))
+					.collect(Collectors.toList());
+			updateDemandsWithAmendmentTax(requestInfo, activeAmendments);
+		}
+
+		if (null != workflowError)
+			throw workflowError;
+
+		AmendmentCriteria criteria = AmendmentCriteria.builder()
+				.tenantId(tenantId)
+				.amendmentIds(amendmentsFromSearch.keySet())
+				.limit(amendmentsFromSearch.size())
+				.build();
+		return amendmentRepository.getAmendments(criteria);
+	}
+
+	/**
+	 * Method to update the demands of several ACTIVE amendments of a tenant
+	 * 
+	 * the demands of all the consumer codes are loaded in one query and each
+	 * amendment is added to the latest unpaid demand of its consumer code, as in
+	 * updateDemandWithAmendmentTax. Demands, amendment status and bill expiry are
+	 * then written in batches in one transaction. Amendments with no demand are
+	 * ignored
+	 * 
+	 * @param requestInfo
+	 * @param amendments
+	 */
+	public void updateDemandsWithAmendmentTax(RequestInfo requestInfo, List<Amendment> amendments) {
+
+		if (CollectionUtils.isEmpty(amendments))
+			return;
+
+		String tenantId = amendments.get(0).getTenantId();
+		Set<String> consumerCodes = amendments.stream().map(Amendment::getConsumerCode).collect(Collectors.toSet());
+
+		Comparator<Demand> taxPeriodComparator = Comparator.comparing(Demand::getTaxPeriodFrom)
+				.thenComparing(Demand::getTaxPeriodTo);
+		Map<String, Demand> latestDemands = new HashMap<>();
+		for (Demand demand : demandRepository.getDemandsByConsumerCodes(tenantId, consumerCodes)) {
+
+			if (Boolean.TRUE.equals(demand.getIsPaymentCompleted()))
+				continue;
+			latestDemands.merge(getBusinessServiceConsumerCodeKey(demand.getBusinessService(), demand.getConsumerCode()),
+					demand, BinaryOperator.maxBy(taxPeriodComparator));
+		}
+
+		AuditDetails auditDetails = util.getAuditDetail(requestInfo);
+		Map<String, Demand> amendedDemands = new LinkedHashMap<>();
+		List<AmendmentUpdate> amendmentUpdates = new ArrayList<>();
+		for (Amendment amendment : amendments) {
+
+			Demand demand = latestDemands.get(
+					getBusinessServiceConsumerCodeKey(amendment.getBusinessService(), amendment.getConsumerCode()));
+			if (null == demand) {
+				log.info("No demand found to apply the amendment {}", amendment.getAmendmentId());
+				continue;
+			}
+
+			amendment.getDemandDetails().forEach(detail -> {
+
+				detail.setAuditDetails(auditDetails);
+				detail.setDemandId(demand.getId());
+				detail.setTenantId(demand.getTenantId());
+			});
+			demand.getDemandDetails().addAll(amendment.getDemandDetails());
+			amendedDemands.put(demand.getId(), demand);
+
+			amendmentUpdates.add(AmendmentUpdate.builder()
+					.additionalDetails(amendment.getAdditionalDetails())
+					.amendmentId(amendment.getAmendmentId())
+					.tenantId(amendment.getTenantId())
+					.status(AmendmentStatus.CONSUMED)
+					.amendedDemandId(demand.getId())
+					.auditDetails(auditDetails)
+					.amendmentReason(amendment.getAmendmentReason())
+					.reasonDocumentNumber(amendment.getReasonDocumentNumber())
+					.effectiveFrom(amendment.getEffectiveFrom())
+					.effectiveTill(amendment.getEffectiveTill())
+					.build());
+		}
+
+		if (amendedDemands.isEmpty())
+			return;
+
+		Map<String, Set<String>> businessServiceConsumerCodes = amendedDemands.values().stream()
+				.collect(Collectors.groupingBy(Demand::getBusinessService,
+						Collectors.mapping(Demand::getConsumerCode, Collectors.toSet())));
+
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+
+			demandService.update(new DemandRequest(requestInfo, new ArrayList<>(amendedDemands.values())), null);
+			amendmentRepository.updateAmendment(amendmentUpdates, tenantId);
+			businessServiceConsumerCodes.forEach((businessService, codes) -> billRepositoryV2.updateBillStatus(
+					UpdateBillCriteria.builder()
+					.statusToBeUpdated(BillStatus.EXPIRED)
+					.businessService(businessService)
+					.consumerCodes(codes)
+					.tenantId(tenantId)
+					.build()));
+		});
+	}
+
+	private String getBusinessServiceConsumerCodeKey(String businessService, String consumerCode) {
+		return businessService + "|" + consumerCode;
+	}
+
 }
@@ -0,0 +1,174 @@
+package org.egov.demand.service;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.common.contract.request.User;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.ExpiringBill;
+import org.egov.demand.repository.BillRepositoryV2;
+import org.egov.demand.util.BillingMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Renews the expired bills in the background, so that a fetch of their bills
+ * finds a valid bill instead of waiting for the calculator and the bill
+ * generation
+ *
+ * The ACTIVE bills whose expiry has passed are read a chunk at a time in the
+ * order of their expiry. The calculator of a business service is called once
+ * for the consumer codes of a chunk, their bills are then expired and
+ * generated again. Bills still valid are never expired by the sweep, a payment
+ * in progress against one is not failed. Bills whose renewal fails are left to
+ * the fetch.
+ *
+ * Every replica runs the schedule, a tenant is swept by the one holding its
+ * advisory lock and skipped by the others.
+ */
+@Service
+@Slf4j
+public class BillExpirySweeper {
+
+	private static final String SYSTEM_USER_TYPE = "SYSTEM";
+
+	@Autowired
+	private BillRepositoryV2 billRepository;
+
+	@Autowired
+	private BillServicev2 billService;
+
+	@Autowired
+	private BillingMetrics billingMetrics;
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	private final ScheduledExecutorService sweepExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "bill-expiry-sweep");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@PostConstruct
+	public void init() {
+
+		if (!Boolean.TRUE.equals(appProps.getIsBillExpirySweepEnabled()))
+			return;
+
+		long interval = appProps.getBillExpirySweepInterval();
+		sweepExecutor.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		sweepExecutor.shutdownNow();
+	}
+
+	/**
+	 * Renews the ACTIVE bills of the tenant whose expiry has passed, bills
+	 * renewed by this sweep are not read again
+	 *
+	 * @param tenantId state level tenant ids sweep all their cities
+	 * @return count of bills renewed, 0 if another instance is sweeping the tenant
+	 */
+	public long sweep(String tenantId) {
+
+		Long renewedCount = billRepository.runWithExpirySweepLock(tenantId, () -> sweepTenant(tenantId));
+		if (null == renewedCount) {
+			log.info("Expiry sweep of tenant {} skipped, another instance is sweeping it", tenantId);
+			return 0;
+		}
+		return renewedCount;
+	}
+
+	private long sweepTenant(String tenantId) {
+
+		long sweepStart = System.currentTimeMillis();
+		int chunkSize = appProps.getBillExpirySweepChunkSize();
+		RequestInfo requestInfo = getRequestInfo();
+
+		long renewedCount = 0;
+		ExpiringBill lastBill = null;
+		List<ExpiringBill> bills;
+		do {
+			bills = billRepository.getExpiringBills(tenantId, sweepStart, sweepStart, lastBill, chunkSize);
+			if (bills.isEmpty())
+				break;
+
+			lastBill = bills.get(bills.size() - 1);
+			renewedCount += renew(bills, requestInfo);
+		} while (bills.size() == chunkSize);
+
+		log.info("Expiry sweep of tenant {} renewed {} bills", tenantId, renewedCount);
+		return renewedCount;
+	}
+
+	/*
+	 * periodic sweep of the configured tenants, a failing tenant does not stop the others
+	 */
+	private void sweep() {
+
+		for (String tenantId : appProps.getBillExpirySweepTenantIds()) {
+			try {
+				sweep(tenantId);
+			} catch (Exception e) {
+				log.error("Expiry sweep of bills failed for tenant {}", tenantId, e);
+			}
+		}
+	}
+
+	/*
+	 * renews the bills of a chunk one tenant and business service at a time,
+	 * returns the count of bills renewed
+	 */
+	private int renew(List<ExpiringBill> bills, RequestInfo requestInfo) {
+
+		Map<String, Map<String, Set<String>>> consumerCodesByTenant = new LinkedHashMap<>();
+		for (ExpiringBill bill : bills) {
+			if (null == bill.getBusinessService())
+				continue;
+			consumerCodesByTenant.computeIfAbsent(bill.getTenantId(), tenantId -> new LinkedHashMap<>())
+					.computeIfAbsent(bill.getBusinessService(), businessService -> new LinkedHashSet<>())
+					.add(bill.getConsumerCode());
+		}
+
+		int renewedCount = 0;
+		for (Entry<String, Map<String, Set<String>>> tenantEntry : consumerCodesByTenant.entrySet()) {
+			for (Entry<String, Set<String>> serviceEntry : tenantEntry.getValue().entrySet()) {
+
+				String tenantId = tenantEntry.getKey();
+				String businessService = serviceEntry.getKey();
+				Set<String> consumerCodes = serviceEntry.getValue();
+				try {
+					billService.renewBills(tenantId, businessService, consumerCodes, requestInfo);
+					billingMetrics.countSweptBills(tenantId, businessService, true, consumerCodes.size());
+					renewedCount += consumerCodes.size();
+				} catch (Exception e) {
+					log.error("Renewal of {} bills of {} failed for tenant {}", consumerCodes.size(), businessService,
+							tenantId, e);
+					billingMetrics.countSweptBills(tenantId, businessService, false, consumerCodes.size());
+				}
+			}
+		}
+		return renewedCount;
+	}
+
+	private RequestInfo getRequestInfo() {
+		return RequestInfo.builder()
+				.userInfo(User.builder().uuid(appProps.getBillExpirySweepUserUuid()).type(SYSTEM_USER_TYPE).build())
+				.build();
+	}
+}
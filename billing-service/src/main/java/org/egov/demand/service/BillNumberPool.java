@@ -0,0 +1,235 @@
+package org.egov.demand.service;
+
+import static org.egov.demand.util.Constants.BILL_NUMBER_ID_NAME;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.common.exception.InvalidTenantIdException;
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.repository.IdGenRepo;
+import org.egov.demand.repository.querybuilder.BillQueryBuilder;
+import org.egov.tracer.model.CustomException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hands out bill numbers from blocks leased from idgen, one pool per tenant and
+ * bill number format.
+ *
+ * A pool is refilled in the background once it drops below the configured low
+ * water mark, callers only go to idgen synchronously when the pool cannot cover
+ * the requested count. Numbers still leased when the service stops are written
+ * to egbs_billnumber_lease and are handed out first by the next pool created
+ * for the same tenant and format.
+ */
+@Service
+@Slf4j
+public class BillNumberPool {
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	@Autowired
+	private IdGenRepo idGenRepo;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private MultiStateInstanceUtil centralInstanceUtil;
+
+	private final ConcurrentMap<String, Lease> leases = new ConcurrentHashMap<>();
+
+	private final ExecutorService refillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "billnumber-pool-refill");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private volatile boolean isShutdown;
+
+	/**
+	 * Returns the requested count of bill numbers for the given tenant and format
+	 *
+	 * @param requestInfo
+	 * @param tenantId
+	 * @param billNumberFormat format with module and tenant placeholders already replaced
+	 * @param count
+	 * @return list of bill numbers of size count
+	 */
+	public List<String> getBillNumbers(RequestInfo requestInfo, String tenantId, String billNumberFormat, int count) {
+
+		if (!appProps.getIsBillNumberPoolEnabled() || isShutdown)
+			return idGenRepo.getId(requestInfo, tenantId, BILL_NUMBER_ID_NAME, billNumberFormat, count);
+
+		Lease lease = leases.computeIfAbsent(tenantId.concat("|").concat(billNumberFormat),
+				key -> new Lease(tenantId, billNumberFormat));
+		lease.requestInfo = requestInfo;
+
+		List<String> billNumbers = new ArrayList<>(count);
+		synchronized (lease) {
+			if (!lease.isReclaimed) {
+				lease.numbers.addAll(reclaimUnusedNumbers(tenantId, billNumberFormat));
+				lease.isReclaimed = true;
+			}
+			lease.poll(billNumbers, count);
+		}
+
+		/*
+		 * Pool could not cover the request, leasing the shortfall along with a new
+		 * block in the same idgen call
+		 */
+		int shortfall = count - billNumbers.size();
+		if (shortfall > 0) {
+			List<String> block = idGenRepo.getId(requestInfo, tenantId, BILL_NUMBER_ID_NAME, billNumberFormat,
+					shortfall + appProps.getBillNumberPoolBlockSize());
+			billNumbers.addAll(block.subList(0, shortfall));
+			synchronized (lease) {
+				lease.numbers.addAll(block.subList(shortfall, block.size()));
+			}
+		}
+
+		refillIfBelowLowWaterMark(lease);
+		return billNumbers;
+	}
+
+	/**
+	 * Stops background refills and persists every number still held in the pools
+	 */
+	@PreDestroy
+	public void shutdown() {
+
+		isShutdown = true;
+		refillExecutor.shutdown();
+		try {
+			if (!refillExecutor.awaitTermination(appProps.getBillNumberPoolShutdownTimeout(), TimeUnit.MILLISECONDS))
+				log.warn("Bill number pool refill did not complete before shutdown");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		for (Lease lease : leases.values()) {
+			List<String> unused;
+			synchronized (lease) {
+				unused = new ArrayList<>(lease.numbers);
+				lease.numbers.clear();
+			}
+			if (!unused.isEmpty())
+				persistUnusedNumbers(lease.tenantId, lease.billNumberFormat, unused);
+		}
+	}
+
+	private void refillIfBelowLowWaterMark(Lease lease) {
+
+		if (isShutdown || lease.size() >= appProps.getBillNumberPoolLowWaterMark()
+				|| !lease.isRefilling.compareAndSet(false, true))
+			return;
+
+		try {
+			refillExecutor.execute(() -> {
+				try {
+					List<String> block = idGenRepo.getId(lease.requestInfo, lease.tenantId, BILL_NUMBER_ID_NAME,
+							lease.billNumberFormat, appProps.getBillNumberPoolBlockSize());
+					synchronized (lease) {
+						lease.numbers.addAll(block);
+					}
+				} catch (Exception e) {
+					log.error("Bill number pool refill failed for tenantId : " + lease.tenantId, e);
+				} finally {
+					lease.isRefilling.set(false);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			lease.isRefilling.set(false);
+		}
+	}
+
+	private List<String> reclaimUnusedNumbers(String tenantId, String billNumberFormat) {
+
+		try {
+			String query = centralInstanceUtil.replaceSchemaPlaceholder(BillQueryBuilder.BILLNUMBER_LEASE_RECLAIM_QUERY,
+					tenantId);
+			return jdbcTemplate.queryForList(query, String.class, tenantId, billNumberFormat);
+		} catch (InvalidTenantIdException e) {
+			throw new CustomException("EG_PT_AS_TENANTID_ERROR",
+					"TenantId length is not sufficient to replace query schema in a multi state instance");
+		}
+	}
+
+	private void persistUnusedNumbers(String tenantId, String billNumberFormat, List<String> unused) {
+
+		try {
+			String query = centralInstanceUtil.replaceSchemaPlaceholder(BillQueryBuilder.BILLNUMBER_LEASE_INSERT_QUERY,
+					tenantId);
+			long createdTime = System.currentTimeMillis();
+			jdbcTemplate.batchUpdate(query, new BatchPreparedStatementSetter() {
+
+				@Override
+				public void setValues(PreparedStatement ps, int index) throws SQLException {
+					ps.setString(1, tenantId);
+					ps.setString(2, billNumberFormat);
+					ps.setString(3, unused.get(index));
+					ps.setLong(4, createdTime);
+				}
+
+				@Override
+				public int getBatchSize() {
+					return unused.size();
+				}
+			});
+		} catch (Exception e) {
+			log.error("Failed to persist unused bill numbers for tenantId : " + tenantId + ", numbers lost : " + unused, e);
+		}
+	}
+
+	/**
+	 * Numbers leased for one tenant and bill number format
+	 */
+	private static class Lease {
+
+		private final String tenantId;
+
+		private final String billNumberFormat;
+
+		private final Deque<String> numbers = new ArrayDeque<>();
+
+		private final AtomicBoolean isRefilling = new AtomicBoolean(false);
+
+		private boolean isReclaimed;
+
+		private volatile RequestInfo requestInfo;
+
+		private Lease(String tenantId, String billNumberFormat) {
+			this.tenantId = tenantId;
+			this.billNumberFormat = billNumberFormat;
+		}
+
+		private void poll(List<String> target, int count) {
+			while (target.size() < count && !numbers.isEmpty())
+				target.add(numbers.pollFirst());
+		}
+
+		private synchronized int size() {
+			return numbers.size();
+		}
+	}
+}
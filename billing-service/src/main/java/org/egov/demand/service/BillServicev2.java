@@ -40,21 +40,13 @@
 
 package org.egov.demand.service;
 
-import static org.egov.demand.util.Constants.BUSINESS_SERVICE_URL_PARAMETER;
-import static org.egov.demand.util.Constants.CONSUMERCODES_REPLACE_TEXT;
-import static org.egov.demand.util.Constants.TENANTID_REPLACE_TEXT;
-import static org.egov.demand.util.Constants.URL_NOT_CONFIGURED_FOR_DEMAND_UPDATE_KEY;
-import static org.egov.demand.util.Constants.URL_NOT_CONFIGURED_FOR_DEMAND_UPDATE_MSG;
-import static org.egov.demand.util.Constants.URL_NOT_CONFIGURED_REPLACE_TEXT;
-import static org.egov.demand.util.Constants.URL_PARAMS_FOR_SERVICE_BASED_DEMAND_APIS;
-import static org.egov.demand.util.Constants.URL_PARAM_SEPERATOR;
-
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -71,6 +63,7 @@ import org.egov.demand.model.BillAccountDetailV2;
 import org.egov.demand.model.BillDetailV2;
 import org.egov.demand.model.BillSearchCriteria;
 import org.egov.demand.model.BillV2;
+import org.egov.demand.model.BillingMasterData;
 import org.egov.demand.model.BillV2.BillStatus;
 import org.egov.demand.model.BusinessServiceDetail;
 import org.egov.demand.model.Demand;
@@ -78,17 +71,16 @@ import org.egov.demand.model.DemandCriteria;
 import org.egov.demand.model.DemandDetail;
 import org.egov.demand.model.GenerateBillCriteria;
 import org.egov.demand.model.TaxHeadMaster;
-import org.egov.demand.model.TaxHeadMasterCriteria;
 import org.egov.demand.model.UpdateBillCriteria;
 import org.egov.demand.model.UpdateBillRequest;
 import org.egov.demand.producer.Producer;
 import org.egov.demand.repository.BillRepositoryV2;
-import org.egov.demand.repository.IdGenRepo;
 import org.egov.demand.repository.ServiceRequestRepository;
+import org.egov.demand.util.BillingMetrics;
+import org.egov.demand.util.Money;
 import org.egov.demand.util.Util;
 import org.egov.demand.web.contract.BillRequestV2;
 import org.egov.demand.web.contract.BillResponseV2;
-import org.egov.demand.web.contract.BusinessServiceDetailCriteria;
 import org.egov.demand.web.contract.RequestInfoWrapper;
 import org.egov.demand.web.contract.User;
 import org.egov.demand.web.contract.UserResponse;
@@ -129,10 +121,7 @@ public class BillServicev2 {
 	private DemandService demandService;
 
 	@Autowired
-	private BusinessServDetailService businessServDetailService;
-
-	@Autowired
-	private TaxHeadMasterService taxHeadService;
+	private MasterDataService masterDataService;
 	
 	@Autowired
 	private Util util;
@@ -141,7 +130,7 @@ public class BillServicev2 {
 	private ServiceRequestRepository restRepository;
 	
 	@Autowired
-	private IdGenRepo idGenRepo;
+	private BillNumberPool billNumberPool;
 	
 	@Autowired
 	private BillValidator billValidator;
@@ -152,6 +141,15 @@ public class BillServicev2 {
 	@Autowired
 	private ObjectMapper mapper;
 
+	@Autowired
+	private RemoteCallExecutor remoteCallExecutor;
+
+	@Autowired
+	private CalculatorClient calculatorClient;
+
+	@Autowired
+	private BillingMetrics billingMetrics;
+
 	@Value("${kafka.topics.cancel.bill.topic.name}")
 	private String billCancelTopic;
 
@@ -223,7 +221,12 @@ public class BillServicev2 {
 		billValidator.validateBillGenRequest(billCriteria, requestInfo);
 		if (CollectionUtils.isEmpty(billCriteria.getConsumerCode()))
 			billCriteria.setConsumerCode(new HashSet<>());
-		BillResponseV2 res = searchBill(billCriteria.toBillSearchCriteria(), requestInfo);
+		/*
+		 * the existing bills are read from the primary, a lagging replica could hand back a bill
+		 * already cancelled or paid, or miss one just generated and have it generated twice
+		 */
+		BillResponseV2 res = billingMetrics.timeBillStage(BillingMetrics.STAGE_SEARCH, billCriteria.getTenantId(),
+				billCriteria.getBusinessService(), () -> searchBill(billCriteria.toBillSearchCriteria(), requestInfo));
 		List<BillV2> bills = res.getBill();
 
 		/* 
@@ -283,16 +286,34 @@ public class BillServicev2 {
 			
 			billCriteria.getConsumerCode().retainAll(cosnumerCodesToBeExpired);
 			billCriteria.getConsumerCode().addAll(cosnumerCodesNotFoundInBill);
-			updateDemandsForexpiredBillDetails(billCriteria.getBusinessService(), billCriteria.getConsumerCode(), billCriteria.getTenantId(), requestInfoWrapper);
+
+			/*
+			 * master data needed by the bill generation is loaded while the calculator updates the demands
+			 * 
+			 * the calculator is called from this thread, it submits its own chunk calls to the pool and
+			 * waiting on them from a pool thread would hold that thread for nothing
+			 */
+			RemoteCallExecutor.Calls calls = remoteCallExecutor.start();
+			calls.submit(() -> masterDataService.getMasterData(requestInfo, billCriteria.getTenantId()));
+			try {
+				billingMetrics.timeBillStage(BillingMetrics.STAGE_CALCULATOR, billCriteria.getTenantId(),
+						billCriteria.getBusinessService(), () -> calculatorClient.updateDemands(billCriteria.getTenantId(),
+								billCriteria.getBusinessService(), billCriteria.getConsumerCode(), requestInfoWrapper));
+			} catch (RuntimeException e) {
+				calls.cancel();
+				throw e;
+			}
+			calls.await();
 			
-			billRepository.updateBillStatus(
+			billingMetrics.timeBillStage(BillingMetrics.STAGE_EXPIRY, billCriteria.getTenantId(),
+					billCriteria.getBusinessService(), () -> billRepository.updateBillStatus(
 					UpdateBillCriteria.builder()
 					.statusToBeUpdated(BillStatus.EXPIRED)
 					.businessService(billCriteria.getBusinessService())
 					.consumerCodes(cosnumerCodesToBeExpired)
 					.tenantId(billCriteria.getTenantId())
 					.build()
-					);
+					));
 			BillResponseV2 finalResponse = generateBill(billCriteria, requestInfo);
 			// gen bill returns immutable empty list incase of zero bills
 			billsToBeReturned.addAll(finalResponse.getBill());
@@ -302,36 +323,40 @@ public class BillServicev2 {
 	}
 
 	/**
-	 * To make calls to respective service which updates the demands belonging to
-	 * the arguments passed
+	 * Renews the expired bills of the consumer codes, the way fetchBill renews
+	 * them: the calculator of the business service updates the demands, the
+	 * ACTIVE bills past their expiry are expired and new bills are generated
+	 * 
+	 * Bills still valid, such as one generated by a fetch in the meantime, are
+	 * left alone so payments in progress against them are not failed
 	 * 
-	 * @param businessService
-	 * @param consumerCodesTobeUpdated
 	 * @param tenantId
+	 * @param businessService
+	 * @param consumerCodes
+	 * @param requestInfo
+	 * @return the new bills
 	 */
-	private void updateDemandsForexpiredBillDetails(String businessService, Set<String> consumerCodesTobeUpdated, String tenantId, RequestInfoWrapper requestInfoWrapper) {
+	public BillResponseV2 renewBills(String tenantId, String businessService, Set<String> consumerCodes,
+			RequestInfo requestInfo) {
 
-		Map<String, String> serviceUrlMap = appProps.getBusinessCodeAndDemandUpdateUrlMap();
-
-
-			String url = serviceUrlMap.get(businessService);
-			if (StringUtils.isEmpty(url)) {
-				
-				log.info(URL_NOT_CONFIGURED_FOR_DEMAND_UPDATE_KEY, URL_NOT_CONFIGURED_FOR_DEMAND_UPDATE_MSG
-						.replace(URL_NOT_CONFIGURED_REPLACE_TEXT, businessService));
-				return;
-			}
+		billingMetrics.timeBillStage(BillingMetrics.STAGE_CALCULATOR, tenantId, businessService,
+				() -> calculatorClient.updateDemands(tenantId, businessService, consumerCodes,
+						new RequestInfoWrapper(requestInfo)));
 
-			StringBuilder completeUrl = new StringBuilder(url)
-					.append(URL_PARAMS_FOR_SERVICE_BASED_DEMAND_APIS.replace(TENANTID_REPLACE_TEXT, tenantId).replace(
-							CONSUMERCODES_REPLACE_TEXT, consumerCodesTobeUpdated.toString().replace("[", "").replace("]", "")));
+		Set<String> expiredConsumerCodes = billingMetrics.timeBillStage(BillingMetrics.STAGE_EXPIRY, tenantId,
+				businessService, () -> billRepository.expirePastExpiryBills(tenantId, businessService, consumerCodes,
+						System.currentTimeMillis()));
+		if (expiredConsumerCodes.isEmpty())
+			return BillResponseV2.builder().bill(new ArrayList<>()).build();
 
-			completeUrl.append(URL_PARAM_SEPERATOR).append(BUSINESS_SERVICE_URL_PARAMETER).append(businessService);
-			log.info("the url : " + completeUrl);
-			restRepository.fetchResult(completeUrl.toString(), requestInfoWrapper);
+		GenerateBillCriteria billCriteria = GenerateBillCriteria.builder()
+				.tenantId(tenantId)
+				.businessService(businessService)
+				.consumerCode(expiredConsumerCodes)
+				.build();
+		return generateBill(billCriteria, requestInfo);
 	}
 
-
 	/**
 	 * Searches the bills from DB for given criteria and enriches them with TaxAndPayments array
 	 * 
@@ -355,6 +380,18 @@ public class BillServicev2 {
 	 * @return
 	 */
 	public BillResponseV2 generateBill(GenerateBillCriteria billCriteria, RequestInfo requestInfo) {
+		return generateBill(billCriteria, requestInfo, false);
+	}
+
+	/**
+	 * Generate bill based on the given criteria, bills of bulk loads are written with COPY
+	 * 
+	 * @param billCriteria
+	 * @param requestInfo
+	 * @param isBulkLoad true for bulk bill generation
+	 * @return
+	 */
+	public BillResponseV2 generateBill(GenerateBillCriteria billCriteria, RequestInfo requestInfo, boolean isBulkLoad) {
 
 		Set<String> demandIds = new HashSet<>();
 		Set<String> consumerCodes = new HashSet<>();
@@ -384,13 +421,20 @@ public class BillServicev2 {
 		List<BillV2> bills;
 
 		if (!demands.isEmpty())
-			bills = prepareBill(demands, requestInfo);
+			bills = billingMetrics.timeBillStage(BillingMetrics.STAGE_PREPARE, billCriteria.getTenantId(),
+					billCriteria.getBusinessService(), () -> prepareBill(demands, requestInfo));
 		else
 			return getBillResponse(Collections.emptyList());
 
 		BillRequestV2 billRequest = BillRequestV2.builder().bills(bills).requestInfo(requestInfo).build();
 		//kafkaTemplate.send(notifTopicName, null, billRequest);
-		return create(billRequest);
+		if (isBulkLoad) {
+			billingMetrics.timeBillStage(BillingMetrics.STAGE_SAVE, billCriteria.getTenantId(),
+					billCriteria.getBusinessService(), () -> billRepository.saveBillInBulk(billRequest));
+			return getBillResponse(bills);
+		}
+		return billingMetrics.timeBillStage(BillingMetrics.STAGE_SAVE, billCriteria.getTenantId(),
+				billCriteria.getBusinessService(), () -> create(billRequest));
 	}
 
 	/**
@@ -402,31 +446,36 @@ public class BillServicev2 {
 	 */
 	private User getUnmaskedUser(RequestInfo requestInfo, String uuid) {
 		
-		PlainAccessRequest apiPlainAccessRequest = requestInfo.getPlainAccessRequest();
 		List<String> plainRequestFieldsList = getOwnerFieldsPlainAccessList();
 		PlainAccessRequest plainAccessRequest = PlainAccessRequest.builder()
 				.plainRequestFields(plainRequestFieldsList)
 				.recordId(uuid)
 				.build();
-		requestInfo.setPlainAccessRequest(plainAccessRequest);
+
+		/*
+		 * the request info is shared with the mdms and idgen calls running alongside
+		 */
+		RequestInfo userRequestInfo = mapper.convertValue(requestInfo, RequestInfo.class);
+		userRequestInfo.setPlainAccessRequest(plainAccessRequest);
 		
 		UserSearchRequest  userSearchRequest= UserSearchRequest.builder()
 				.uuid(Stream.of(uuid).collect(Collectors.toSet()))
-				.requestInfo(requestInfo)
+				.requestInfo(userRequestInfo)
 				.build();
 		String userUri = appProps.getUserServiceHostName()
 				.concat(appProps.getUserServiceSearchPath());
 		List<User> payer = mapper.convertValue(restRepository.fetchResult(userUri, userSearchRequest),
 				UserResponse.class).getUser();
 		
-		requestInfo.setPlainAccessRequest(apiPlainAccessRequest);
-		
 		return payer.get(0);
 	}
 
 	/**
 	 * Prepares the bill object from the list of given demands
 	 * 
+	 * The payer, the master data and the bill numbers of every tenant are fetched
+	 * concurrently before the bills are built
+	 * 
 	 * @param demands demands for which bill should be generated
 	 * @param requestInfo 
 	 * @return
@@ -435,61 +484,87 @@ public class BillServicev2 {
 
 		
 		List<BillV2> bills = new ArrayList<>();
-		User payer = null != demands.get(0).getPayer() ? demands.get(0).getPayer() : new User();
-		if (payer.getUuid() != null)
-			payer = getUnmaskedUser(requestInfo, payer.getUuid());
+		RemoteCallExecutor.Calls calls = remoteCallExecutor.start();
+
+		User demandPayer = null != demands.get(0).getPayer() ? demands.get(0).getPayer() : new User();
+		RemoteCallExecutor.Call<User> payerCall = null;
+		if (demandPayer.getUuid() != null)
+			payerCall = calls.submit(() -> getUnmaskedUser(requestInfo, demandPayer.getUuid()));
+
+		/*
+		 * Grouping the demands by tenant and then by their consumer code, a bill is generated for each consumer code
+		 */
+		Map<String, Map<String, List<Demand>>> tenantIdAndConsumerCodeDemandsMap = demands.stream()
+				.collect(Collectors.groupingBy(Demand::getTenantId, Collectors.groupingBy(Demand::getConsumerCode)));
+		Map<String, String> tenantIdAndModuleMap = new HashMap<>();
+		demands.forEach(demand -> tenantIdAndModuleMap.putIfAbsent(demand.getTenantId(), demand.getBusinessService()));
+
+		Map<String, RemoteCallExecutor.Call<BillingMasterData>> masterDataCalls = new HashMap<>();
+		Map<String, RemoteCallExecutor.Call<List<String>>> billNumberCalls = new HashMap<>();
 
-		Map<String, List<Demand>> tenatIdDemandsList = demands.stream().collect(Collectors.groupingBy(Demand::getTenantId));
-		for (Entry<String, List<Demand>> demandTenantEntry : tenatIdDemandsList.entrySet()) {
+		for (Entry<String, Map<String, List<Demand>>> tenantEntry : tenantIdAndConsumerCodeDemandsMap.entrySet()) {
+
+			String tenantId = tenantEntry.getKey();
+			Map<String, List<Demand>> consumerCodeAndDemandsMap = tenantEntry.getValue();
+			String module = tenantIdAndModuleMap.get(tenantId);
+
+			masterDataCalls.put(tenantId, calls.submit(() -> masterDataService.getMasterData(requestInfo, tenantId)));
+			billNumberCalls.put(tenantId, calls.submit(() -> billingMetrics.timeBillStage(BillingMetrics.STAGE_IDGEN,
+					tenantId, module, () -> getBillNumbers(requestInfo, tenantId, module, consumerCodeAndDemandsMap.size()))));
+		}
+		calls.await();
+
+		User payer = null != payerCall ? payerCall.getResult() : demandPayer;
+
+		for (Entry<String, Map<String, List<Demand>>> tenantEntry : tenantIdAndConsumerCodeDemandsMap.entrySet()) {
 
 			/*
 			 * Fetching Required master data
 			 */
-			String tenantId = demandTenantEntry.getKey();
-			List<Demand> demandForOneTenant = demandTenantEntry.getValue();
+			String tenantId = tenantEntry.getKey();
+			Map<String, List<Demand>> consumerCodeAndDemandsMap = tenantEntry.getValue();
 			Set<String> businessCodes = new HashSet<>();
 			Set<String> taxHeadCodes = new HashSet<>();
 
-			for (Demand demand : demandForOneTenant) {
+			for (List<Demand> demandsForOneCode : consumerCodeAndDemandsMap.values()) {
+				for (Demand demand : demandsForOneCode) {
 
-				businessCodes.add(demand.getBusinessService());
-				demand.getDemandDetails().forEach(detail -> taxHeadCodes.add(detail.getTaxHeadMasterCode()));
+					businessCodes.add(demand.getBusinessService());
+					demand.getDemandDetails().forEach(detail -> taxHeadCodes.add(detail.getTaxHeadMasterCode()));
+				}
 			}
 			
-			Map<String, TaxHeadMaster> taxHeadMap = getTaxHeadMaster(taxHeadCodes, tenantId, requestInfo);
-			Map<String, BusinessServiceDetail> businessMap = getBusinessService(businessCodes, tenantId, requestInfo);
+			BillingMasterData masterData = masterDataCalls.get(tenantId).getResult();
+			Map<String, TaxHeadMaster> taxHeadMap = getTaxHeadMaster(taxHeadCodes, masterData);
+			Map<String, BusinessServiceDetail> businessMap = getBusinessService(businessCodes, masterData);
 			
-			
-			/*
-			 * Grouping the demands by their consumer code and generating a bill for each consumer code
-			 */
-			Map<String, List<Demand>> consumerCodeAndDemandsMap = demandForOneTenant.stream().collect(Collectors.groupingBy(Demand::getConsumerCode));
+			Iterator<String> billNumbers = billNumberCalls.get(tenantId).getResult().iterator();
 			
 			for (Entry<String, List<Demand>> consumerCodeAndDemands : consumerCodeAndDemandsMap.entrySet()) {
 				
-				BigDecimal billAmount = BigDecimal.ZERO;
+				Money billAmount = Money.ZERO;
 				List<BillDetailV2> billDetails = new ArrayList<>();
 				
 				String consumerCode = consumerCodeAndDemands.getKey();
-				BigDecimal minimumAmtPayableForBill = BigDecimal.ZERO;
+				Money minimumAmtPayableForBill = Money.ZERO;
 				List<Demand> demandsForSingleCode = consumerCodeAndDemands.getValue();
 				BusinessServiceDetail business = businessMap.get(demandsForSingleCode.get(0).getBusinessService());
 				
 				String billId = UUID.randomUUID().toString();
-				String billNumber = getBillNumbers(requestInfo, tenantId, demandForOneTenant.get(0).getBusinessService(), 1).get(0);
+				String billNumber = billNumbers.next();
 				
 				for (Demand demand : demandsForSingleCode) {
 
-					minimumAmtPayableForBill = minimumAmtPayableForBill.add(demand.getMinimumAmountPayable());
+					minimumAmtPayableForBill = minimumAmtPayableForBill.plus(Money.of(demand.getMinimumAmountPayable()));
 					String billDetailId = UUID.randomUUID().toString();
 					BillDetailV2 billDetail = getBillDetailForDemand(demand, taxHeadMap, billDetailId);
 					billDetail.setBillId(billId);
 					billDetail.setId(billDetailId);
 					billDetails.add(billDetail);
-					billAmount = billAmount.add(billDetail.getAmount());
+					billAmount = billAmount.plus(Money.of(billDetail.getAmount()));
 				}
 				
-				if (billAmount.compareTo(BigDecimal.ZERO) >= 0) {
+				if (billAmount.signum() >= 0) {
 
 					BillV2 bill = BillV2.builder()
 						.auditDetails(util.getAuditDetail(requestInfo))
@@ -501,7 +576,7 @@ public class BillServicev2 {
 						.consumerCode(consumerCode)
 						.status(BillStatus.ACTIVE)
 						.billDetails(billDetails)
-						.totalAmount(billAmount)
+						.totalAmount(billAmount.toBigDecimal())
 						.userId(payer.getUuid())
 						.billNumber(billNumber)
 						.tenantId(tenantId)
@@ -526,7 +601,7 @@ public class BillServicev2 {
 		else
 			billNumberFormat = billNumberFormat.replace(appProps.getTenantIdReplaceString(), "");
 
-		return idGenRepo.getId(requestInfo, tenantId, "billnumberid", billNumberFormat, count);
+		return billNumberPool.getBillNumbers(requestInfo, tenantId, billNumberFormat, count);
 	}
 
 
@@ -544,7 +619,7 @@ public class BillServicev2 {
 		Long endPeriod = demand.getTaxPeriodTo();
 		String tenantId = demand.getTenantId();
 
-		BigDecimal totalAmountForDemand = BigDecimal.ZERO;
+		Money totalAmountForDemand = Money.ZERO;
 		
 
 		/*
@@ -558,10 +633,11 @@ public class BillServicev2 {
 			TaxHeadMaster taxHead = taxHeadMap.get(demandDetail.getTaxHeadMasterCode());
 			BigDecimal amountForAccDeatil = demandDetail.getTaxAmount().subtract(demandDetail.getCollectionAmount());
 
-			addOrUpdateBillAccDetailInTaxCodeAccDetailMap(taxCodeAccountdetailMap, demandDetail, taxHead, billDetailId);
+			addOrUpdateBillAccDetailInTaxCodeAccDetailMap(taxCodeAccountdetailMap, demandDetail, amountForAccDeatil,
+					taxHead, billDetailId);
 
 			/* Total tax and collection for the whole demand/bill-detail */
-			totalAmountForDemand = totalAmountForDemand.add(amountForAccDeatil);
+			totalAmountForDemand = totalAmountForDemand.plus(Money.of(amountForAccDeatil));
 		}
 
 		
@@ -569,7 +645,7 @@ public class BillServicev2 {
 		
 		return BillDetailV2.builder()
 				.billAccountDetails(new ArrayList<>(taxCodeAccountdetailMap.values()))
-				.amount(totalAmountForDemand)
+				.amount(totalAmountForDemand.toBigDecimal())
 				.expiryDate(billExpiryDate)
 				.demandId(demand.getId())
 				.fromPeriod(startPeriod)
@@ -606,13 +682,13 @@ public class BillServicev2 {
 	 *
 	 * @param taxCodeAccDetailMap
 	 * @param demandDetail
+	 * @param newAmountForAccDeatil balance of the demand detail
 	 * @param taxHead
 	 * @param billDetailId
 	 */
 	private void addOrUpdateBillAccDetailInTaxCodeAccDetailMap(Map<String, BillAccountDetailV2> taxCodeAccDetailMap,
-			DemandDetail demandDetail, TaxHeadMaster taxHead, String billDetailId) {
+			DemandDetail demandDetail, BigDecimal newAmountForAccDeatil, TaxHeadMaster taxHead, String billDetailId) {
 
-		BigDecimal newAmountForAccDeatil = demandDetail.getTaxAmount().subtract(demandDetail.getCollectionAmount());
 		/*
 		 * BAD - BillAccountDetail
 		 * 
@@ -650,20 +726,23 @@ public class BillServicev2 {
 	/**
 	 * Fetches the tax-head master data for the given tax-head codes
 	 *
-	 * @param tenantId tenant-id of the request
-	 * @param info     RequestInfo object
+	 * @param taxHeadCodes tax-head codes present in the demands
+	 * @param masterData   master data of the tenant
 	 * @return returns a map of tax-head code as key and tax-head object as value
 	 */
-	private Map<String, TaxHeadMaster> getTaxHeadMaster(Set<String> taxHeadCodes, String tenantId, RequestInfo info) {
+	private Map<String, TaxHeadMaster> getTaxHeadMaster(Set<String> taxHeadCodes, BillingMasterData masterData) {
 
-		TaxHeadMasterCriteria taxHeadCriteria = TaxHeadMasterCriteria.builder().tenantId(tenantId).code(taxHeadCodes)
-				.build();
-		List<TaxHeadMaster> taxHeads = taxHeadService.getTaxHeads(taxHeadCriteria, info).getTaxHeadMasters();
+		Map<String, TaxHeadMaster> taxHeadMap = new HashMap<>();
+		for (String taxHeadCode : taxHeadCodes) {
+			TaxHeadMaster taxHead = masterData.getTaxHead(taxHeadCode);
+			if (null != taxHead)
+				taxHeadMap.put(taxHeadCode, taxHead);
+		}
 
-		if (taxHeads.isEmpty())
+		if (taxHeadMap.isEmpty())
 			throw new CustomException("EG_BS_TAXHEADCODE_EMPTY", "No taxhead masters found for the given codes");
 
-		return taxHeads.stream().collect(Collectors.toMap(TaxHeadMaster::getCode, Function.identity()));
+		return taxHeadMap;
 	}
 
 	
@@ -671,14 +750,18 @@ public class BillServicev2 {
 	 * To Fetch the businessServiceDetail master based on the business codes
 	 * 
 	 * @param businessService
-	 * @param tenantId
-	 * @param requestInfo
+	 * @param masterData master data of the tenant
 	 * @return returns a map with business code and businessDetail object
 	 */
-	private Map<String, BusinessServiceDetail> getBusinessService(Set<String> businessService, String tenantId, RequestInfo requestInfo) {
-		List<BusinessServiceDetail> businessServiceDetails = businessServDetailService.searchBusinessServiceDetails(BusinessServiceDetailCriteria.builder().businessService(businessService).tenantId(tenantId).build(), requestInfo)
-				.getBusinessServiceDetails();
-		return businessServiceDetails.stream().collect(Collectors.toMap(BusinessServiceDetail::getCode, Function.identity()));
+	private Map<String, BusinessServiceDetail> getBusinessService(Set<String> businessService, BillingMasterData masterData) {
+
+		Map<String, BusinessServiceDetail> businessMap = new HashMap<>();
+		for (String code : businessService) {
+			BusinessServiceDetail businessServiceDetail = masterData.getBusinessService(code);
+			if (null != businessServiceDetail)
+				businessMap.put(code, businessServiceDetail);
+		}
+		return businessMap;
 	}
 	
 	public BillResponseV2 getBillResponse(List<BillV2> bills) {
@@ -0,0 +1,262 @@
+package org.egov.demand.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.AuditDetails;
+import org.egov.demand.model.BillCancelEvent;
+import org.egov.demand.model.BillCancelJob;
+import org.egov.demand.model.BillCancelJob.JobStatus;
+import org.egov.demand.model.BulkCancelBillCriteria;
+import org.egov.demand.model.BulkCancelBillRequest;
+import org.egov.demand.producer.Producer;
+import org.egov.demand.repository.BillCancelJobRepository;
+import org.egov.demand.repository.BillRepositoryV2;
+import org.egov.demand.util.Util;
+import org.egov.demand.web.validator.BillValidator;
+import org.egov.tracer.model.CustomException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cancels the bills of many consumer codes or bill ids in the background
+ *
+ * The consumer codes and bill ids of a job are taken chunk by chunk, the
+ * ACTIVE bills of a chunk are cancelled by one update on their ids and one
+ * event with the ids of the cancelled bills is published for the chunk. The
+ * progress of the job is written after every chunk.
+ *
+ * Jobs run one at a time on a single thread. A job interrupted by a restart
+ * stays RUNNING, it can be submitted again as only ACTIVE bills are cancelled.
+ */
+@Service
+@Slf4j
+public class BulkBillCancelService {
+
+	private static final int MAX_ERROR_MESSAGE_LENGTH = 1024;
+
+	@Autowired
+	private BillRepositoryV2 billRepository;
+
+	@Autowired
+	private BillCancelJobRepository billCancelJobRepository;
+
+	@Autowired
+	private BillValidator billValidator;
+
+	@Autowired
+	private Producer producer;
+
+	@Autowired
+	private Util util;
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	private ThreadPoolExecutor jobExecutor;
+
+	@PostConstruct
+	public void init() {
+
+		jobExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(appProps.getBulkCancelQueueSize()), runnable -> {
+					Thread thread = new Thread(runnable, "bulk-bill-cancel");
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		jobExecutor.shutdownNow();
+	}
+
+	/**
+	 * Queues the cancellation of the bills of the criteria
+	 *
+	 * @param bulkCancelRequest
+	 * @param file consumer codes, one per line or in the first column of a csv,
+	 *             added to those of the criteria, may be null
+	 * @return the job queued
+	 */
+	public BillCancelJob submit(BulkCancelBillRequest bulkCancelRequest, InputStream file) {
+
+		RequestInfo requestInfo = bulkCancelRequest.getRequestInfo();
+		BulkCancelBillCriteria criteria = bulkCancelRequest.getBulkCancelBillCriteria();
+		criteria.setConsumerCodes(null == criteria.getConsumerCodes() ? new LinkedHashSet<>()
+				: new LinkedHashSet<>(criteria.getConsumerCodes()));
+		criteria.setBillIds(null == criteria.getBillIds() ? new LinkedHashSet<>()
+				: new LinkedHashSet<>(criteria.getBillIds()));
+		if (null != file)
+			criteria.getConsumerCodes().addAll(readConsumerCodes(file));
+
+		billValidator.validateBulkCancelRequest(criteria, requestInfo, appProps.getBulkCancelMaxSize());
+
+		BillCancelJob job = BillCancelJob.builder()
+				.id(UUID.randomUUID().toString())
+				.tenantId(criteria.getTenantId())
+				.businessService(criteria.getBusinessService())
+				.status(JobStatus.QUEUED)
+				.totalCount(criteria.getConsumerCodes().size() + criteria.getBillIds().size())
+				.processedCount(0)
+				.cancelledCount(0)
+				.auditDetails(util.getAuditDetail(requestInfo))
+				.build();
+		billCancelJobRepository.saveJob(job);
+
+		/*
+		 * the job returned is not the one updated by the job thread
+		 */
+		AuditDetails auditDetails = job.getAuditDetails();
+		BillCancelJob runningJob = job.toBuilder().auditDetails(new AuditDetails(auditDetails.getCreatedBy(),
+				auditDetails.getLastModifiedBy(), auditDetails.getCreatedTime(), auditDetails.getLastModifiedTime()))
+				.build();
+		try {
+			jobExecutor.execute(() -> run(runningJob, criteria, requestInfo));
+		} catch (RejectedExecutionException e) {
+			fail(job, "Too many bulk cancellations are queued");
+			throw new CustomException("EG_BS_BULK_CANCEL_QUEUE_FULL",
+					"Too many bulk cancellations are queued, the request can be submitted again later");
+		}
+		return job;
+	}
+
+	/**
+	 * @param tenantId
+	 * @param jobId
+	 */
+	public BillCancelJob getJob(String tenantId, String jobId) {
+
+		BillCancelJob job = billCancelJobRepository.getJob(tenantId, jobId);
+		if (null == job)
+			throw new CustomException("EG_BS_BULK_CANCEL_JOB_NOT_FOUND",
+					"No bulk cancellation of bills found for the jobId " + jobId);
+		return job;
+	}
+
+	void run(BillCancelJob job, BulkCancelBillCriteria criteria, RequestInfo requestInfo) {
+
+		try {
+			job.setStatus(JobStatus.RUNNING);
+			updateJob(job);
+
+			int chunkSize = appProps.getBulkCancelChunkSize();
+			for (List<String> consumerCodes : getChunks(criteria.getConsumerCodes(), chunkSize)) {
+				List<String> billIds = billRepository.getActiveBillIds(job.getTenantId(), job.getBusinessService(),
+						consumerCodes);
+				cancelChunk(job, criteria, requestInfo, billIds, consumerCodes.size());
+			}
+			for (List<String> billIds : getChunks(criteria.getBillIds(), chunkSize))
+				cancelChunk(job, criteria, requestInfo, billIds, billIds.size());
+
+			job.setStatus(JobStatus.COMPLETED);
+			updateJob(job);
+		} catch (Exception e) {
+			log.error("Bulk cancellation of bills failed for the job {}", job.getId(), e);
+			fail(job, e.getMessage());
+		}
+	}
+
+	private void cancelChunk(BillCancelJob job, BulkCancelBillCriteria criteria, RequestInfo requestInfo,
+			List<String> billIds, int processedCount) {
+
+		AuditDetails auditDetails = AuditDetails.builder().lastModifiedBy(job.getAuditDetails().getCreatedBy())
+				.lastModifiedTime(System.currentTimeMillis()).build();
+		Map<String, String> cancelledBills = billRepository.cancelBills(job.getTenantId(), job.getBusinessService(),
+				billIds, criteria.getAdditionalDetails(), auditDetails);
+
+		if (!cancelledBills.isEmpty()) {
+			BillCancelEvent event = BillCancelEvent.builder()
+					.requestInfo(requestInfo)
+					.jobId(job.getId())
+					.tenantId(job.getTenantId())
+					.businessService(job.getBusinessService())
+					.billIds(new ArrayList<>(cancelledBills.keySet()))
+					.consumerCodes(new ArrayList<>(new LinkedHashSet<>(cancelledBills.values())))
+					.additionalDetails(criteria.getAdditionalDetails())
+					.auditDetails(auditDetails)
+					.build();
+			producer.push(job.getTenantId(), appProps.getBulkCancelBillTopic(), event);
+		}
+
+		job.setProcessedCount(job.getProcessedCount() + processedCount);
+		job.setCancelledCount(job.getCancelledCount() + cancelledBills.size());
+		updateJob(job);
+	}
+
+	private void fail(BillCancelJob job, String errorMessage) {
+
+		job.setStatus(JobStatus.FAILED);
+		job.setErrorMessage(null != errorMessage && errorMessage.length() > MAX_ERROR_MESSAGE_LENGTH
+				? errorMessage.substring(0, MAX_ERROR_MESSAGE_LENGTH)
+				: errorMessage);
+		try {
+			updateJob(job);
+		} catch (Exception e) {
+			log.error("Failure of the bulk cancellation job {} could not be saved", job.getId(), e);
+		}
+	}
+
+	private void updateJob(BillCancelJob job) {
+
+		job.getAuditDetails().setLastModifiedTime(System.currentTimeMillis());
+		billCancelJobRepository.updateJob(job);
+	}
+
+	private static List<List<String>> getChunks(Set<String> values, int chunkSize) {
+
+		List<List<String>> chunks = new ArrayList<>();
+		List<String> chunk = new ArrayList<>(chunkSize);
+		for (String value : values) {
+			chunk.add(value);
+			if (chunk.size() == chunkSize) {
+				chunks.add(chunk);
+				chunk = new ArrayList<>(chunkSize);
+			}
+		}
+		if (!chunk.isEmpty())
+			chunks.add(chunk);
+		return chunks;
+	}
+
+	/*
+	 * the first column of every non blank line, a header line of a csv is taken
+	 * as a consumer code which has no bill
+	 */
+	private static Set<String> readConsumerCodes(InputStream file) {
+
+		Set<String> consumerCodes = new LinkedHashSet<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(file, StandardCharsets.UTF_8))) {
+			String line;
+			while (null != (line = reader.readLine())) {
+				String consumerCode = line.split(",", 2)[0].trim();
+				if (StringUtils.hasText(consumerCode))
+					consumerCodes.add(consumerCode);
+			}
+		} catch (IOException e) {
+			throw new CustomException("EG_BS_BULK_CANCEL_FILE_ERROR",
+					"The consumer codes of the bulk cancellation file could not be read");
+		}
+		return consumerCodes;
+	}
+}
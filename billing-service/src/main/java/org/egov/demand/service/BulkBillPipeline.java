@@ -0,0 +1,420 @@
+package org.egov.demand.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.BulkBillGenerator;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.GenerateBillCriteria;
+import org.egov.demand.model.MigrationCount;
+import org.egov.demand.web.contract.DemandRequest;
+import org.egov.tracer.kafka.CustomKafkaTemplate;
+import org.egov.tracer.model.CustomException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the bulk bill generation messages through a staged pipeline, one per
+ * partition of the consumer codes
+ *
+ * The demands of a message are split across the partitions by the hash of their
+ * consumer code. A partition has a demand stage, which creates and updates the
+ * demands, and a bill stage, which generates the bills, each on a thread of its
+ * own and connected by a bounded queue. A stage takes up to a batch of message
+ * parts from its queue at a time. The demand stage runs creation and update
+ * once per run of consecutive parts of one tenant and business service with no
+ * consumer code in common, the bill stage generates the bills once per run of
+ * parts of one tenant and business service. Each stage handles the parts of a
+ * consumer code in the order of the messages and the bill of a part is
+ * generated only after its demands are written, the demands of a later message
+ * may be written while the bill of an earlier one is generated.
+ *
+ * The queues are bounded, a caller handing over more messages than the stages
+ * keep up with is blocked until there is room and a full bill queue holds its
+ * demand stage back. The caller is held until all its messages are processed,
+ * so offsets of kafka are committed only for processed messages, and then
+ * sends the MigrationCount audits of the batch, one per run of contiguous
+ * messages of the same audit topic, tenant, business service and outcome.
+ */
+@Service
+@Slf4j
+public class BulkBillPipeline {
+
+	public static final String SUCCESS_MESSAGE = "prcoess succeded in billing service";
+	public static final String FAILURE_MESSAGE = "prcoess failed in billing service during {stages}";
+
+	static final String STAGE_DEMAND_CREATE = " Demand creation ";
+	static final String STAGE_DEMAND_UPDATE = " Demand update ";
+	static final String STAGE_BILL_GEN = " Bill Gen ";
+
+	@Autowired
+	private DemandService demandService;
+
+	@Autowired
+	private BillServicev2 billService;
+
+	@Autowired
+	private CustomKafkaTemplate<String, Object> kafkaTemplate;
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	/*
+	 * the demand stage queue of every partition
+	 */
+	private List<BlockingQueue<MessagePart>> queues;
+
+	private ExecutorService stageExecutor;
+
+	@PostConstruct
+	public void init() {
+
+		int partitionCount = appProps.getBulkBillPipelineWorkers();
+		int queueSize = appProps.getBulkBillPipelineQueueSize();
+		AtomicInteger threadCount = new AtomicInteger();
+		stageExecutor = Executors.newFixedThreadPool(partitionCount * 2, runnable -> {
+			Thread thread = new Thread(runnable, "bulk-bill-stage-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		queues = new ArrayList<>(partitionCount);
+		for (int i = 0; i < partitionCount; i++) {
+			BlockingQueue<MessagePart> demandQueue = new ArrayBlockingQueue<>(queueSize);
+			BlockingQueue<MessagePart> billQueue = new ArrayBlockingQueue<>(queueSize);
+			queues.add(demandQueue);
+			stageExecutor.execute(() -> work(demandQueue, this::writeDemands, billQueue));
+			stageExecutor.execute(() -> work(billQueue, this::generateBills, null));
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (null != stageExecutor)
+			stageExecutor.shutdownNow();
+	}
+
+	/**
+	 * Processes the messages and sends their audits, returns once every part of
+	 * them is processed
+	 *
+	 * @param messages bulk bill generation messages in the order they were received
+	 */
+	public void process(List<BulkBillGenerator> messages) {
+
+		List<List<MessagePart>> partsByPartition = new ArrayList<>(queues.size());
+		for (int i = 0; i < queues.size(); i++)
+			partsByPartition.add(new ArrayList<>());
+
+		List<MessageAudit> audits = new ArrayList<>(messages.size());
+		for (BulkBillGenerator message : messages)
+			audits.add(split(message, partsByPartition));
+
+		int partCount = partsByPartition.stream().mapToInt(List::size).sum();
+		CountDownLatch processed = new CountDownLatch(partCount);
+		try {
+			for (int i = 0; i < queues.size(); i++) {
+				for (MessagePart part : partsByPartition.get(i)) {
+					part.processed = processed;
+					queues.get(i).put(part);
+				}
+			}
+			processed.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CustomException("EG_BS_BULK_BILL_INTERRUPTED", "Bulk bill generation was interrupted");
+		}
+
+		sendAudits(audits);
+	}
+
+	/*
+	 * one part per partition with demands of the message
+	 */
+	private MessageAudit split(BulkBillGenerator message, List<List<MessagePart>> partsByPartition) {
+
+		MessageAudit audit = new MessageAudit(message);
+		Map<Integer, MessagePart> parts = new LinkedHashMap<>();
+		if (null != message.getCreateDemands())
+			for (Demand demand : message.getCreateDemands())
+				getPart(parts, audit, demand).createDemands.add(demand);
+		if (null != message.getUpdateDemands())
+			for (Demand demand : message.getUpdateDemands())
+				getPart(parts, audit, demand).updateDemands.add(demand);
+
+		parts.forEach((partition, part) -> partsByPartition.get(partition).add(part));
+		return audit;
+	}
+
+	private MessagePart getPart(Map<Integer, MessagePart> parts, MessageAudit audit, Demand demand) {
+
+		int partition = Math.floorMod(String.valueOf(demand.getConsumerCode()).hashCode(), queues.size());
+		return parts.computeIfAbsent(partition, key -> new MessagePart(audit, demand.getTenantId(),
+				demand.getBusinessService()));
+	}
+
+	/*
+	 * parts leave a stage in the order they were taken, to the next stage or as processed after the last one
+	 */
+	private void work(BlockingQueue<MessagePart> queue, Consumer<List<MessagePart>> stage,
+			BlockingQueue<MessagePart> nextQueue) {
+
+		int batchSize = appProps.getBulkBillPipelineBatchSize();
+		while (!Thread.currentThread().isInterrupted()) {
+
+			List<MessagePart> batch = new ArrayList<>(batchSize);
+			try {
+				batch.add(queue.take());
+				queue.drainTo(batch, batchSize - 1);
+
+				try {
+					stage.accept(batch);
+				} catch (Exception e) {
+					log.error("Bulk bill generation stage failed for a batch of {} message parts", batch.size(), e);
+				}
+
+				for (MessagePart part : batch) {
+					if (null == nextQueue)
+						part.processed.countDown();
+					else
+						nextQueue.put(part);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Demand stage, creates and updates the demands of a batch a run at a time
+	 */
+	void writeDemands(List<MessagePart> batch) {
+
+		for (List<MessagePart> run : getRuns(batch, true)) {
+
+			RequestInfo requestInfo = run.get(0).audit.message.getRequestInfo();
+			List<Demand> createDemands = new ArrayList<>();
+			List<Demand> updateDemands = new ArrayList<>();
+			for (MessagePart part : run) {
+				createDemands.addAll(part.createDemands);
+				updateDemands.addAll(part.updateDemands);
+			}
+
+			if (!createDemands.isEmpty())
+				runStage(STAGE_DEMAND_CREATE, run, () -> demandService
+						.create(DemandRequest.builder().requestInfo(requestInfo).demands(createDemands).build(), true));
+
+			if (!updateDemands.isEmpty())
+				runStage(STAGE_DEMAND_UPDATE, run, () -> demandService.updateAsync(
+						DemandRequest.builder().requestInfo(requestInfo).demands(updateDemands).build(), null));
+		}
+	}
+
+	/**
+	 * Bill stage, generates the bills of the created demands of a batch a run at a time
+	 */
+	void generateBills(List<MessagePart> batch) {
+
+		for (List<MessagePart> run : getRuns(batch, false)) {
+
+			MessagePart firstPart = run.get(0);
+			Set<String> consumerCodes = new LinkedHashSet<>();
+			run.forEach(part -> part.createDemands.forEach(demand -> consumerCodes.add(demand.getConsumerCode())));
+			if (consumerCodes.isEmpty())
+				continue;
+
+			runStage(STAGE_BILL_GEN, run, () -> billService.generateBill(GenerateBillCriteria.builder()
+					.consumerCode(consumerCodes)
+					.businessService(firstPart.businessService)
+					.tenantId(firstPart.tenantId)
+					.build(), firstPart.audit.message.getRequestInfo(), true));
+		}
+	}
+
+	/*
+	 * consecutive parts of one tenant and business service, when asked with no consumer code in common
+	 */
+	private static List<List<MessagePart>> getRuns(List<MessagePart> batch, boolean isDisjoint) {
+
+		List<List<MessagePart>> runs = new ArrayList<>();
+		List<MessagePart> run = new ArrayList<>();
+		Set<String> runConsumerCodes = new HashSet<>();
+		for (MessagePart part : batch) {
+
+			Set<String> consumerCodes = part.getConsumerCodes();
+			if (!run.isEmpty() && (!isSameService(run.get(0), part)
+					|| (isDisjoint && !Collections.disjoint(runConsumerCodes, consumerCodes)))) {
+				runs.add(run);
+				run = new ArrayList<>();
+				runConsumerCodes.clear();
+			}
+			run.add(part);
+			runConsumerCodes.addAll(consumerCodes);
+		}
+
+		if (!run.isEmpty())
+			runs.add(run);
+		return runs;
+	}
+
+	private static boolean isSameService(MessagePart first, MessagePart second) {
+		return String.valueOf(first.tenantId).equals(String.valueOf(second.tenantId))
+				&& String.valueOf(first.businessService).equals(String.valueOf(second.businessService));
+	}
+
+	private void runStage(String stage, List<MessagePart> run, Runnable stageCall) {
+
+		try {
+			stageCall.run();
+		} catch (Exception e) {
+			log.error("Bulk bill generation failed during{}", stage, e);
+			for (MessagePart part : run) {
+				synchronized (part.audit) {
+					part.audit.errors.putIfAbsent(stage, e.getMessage());
+				}
+			}
+		}
+	}
+
+	/*
+	 * a message joins the audit of the previous one when it carries on its offsets with the same outcome
+	 */
+	private void sendAudits(List<MessageAudit> audits) {
+
+		MigrationCount batchAudit = null;
+		for (MessageAudit audit : audits) {
+
+			MigrationCount migrationCount = audit.message.getMigrationCount();
+			if (null == migrationCount || null == migrationCount.getAuditTopic())
+				continue;
+
+			String message = getAuditMessage(audit);
+			if (isContinuedBy(batchAudit, migrationCount, message)) {
+				batchAudit.setLimit(batchAudit.getLimit() + migrationCount.getLimit());
+				batchAudit.setRecordCount(sum(batchAudit.getRecordCount(), migrationCount.getRecordCount()));
+				continue;
+			}
+
+			if (null != batchAudit)
+				sendAudit(batchAudit);
+			batchAudit = MigrationCount.builder()
+					.id(migrationCount.getId())
+					.offset(migrationCount.getOffset())
+					.limit(migrationCount.getLimit())
+					.createdTime(migrationCount.getCreatedTime())
+					.tenantid(migrationCount.getTenantid())
+					.recordCount(migrationCount.getRecordCount())
+					.businessService(migrationCount.getBusinessService())
+					.message(message)
+					.auditTopic(migrationCount.getAuditTopic())
+					.build();
+		}
+
+		if (null != batchAudit)
+			sendAudit(batchAudit);
+	}
+
+	private static boolean isContinuedBy(MigrationCount batchAudit, MigrationCount migrationCount, String message) {
+
+		return null != batchAudit && null != batchAudit.getOffset() && null != batchAudit.getLimit()
+				&& null != migrationCount.getOffset() && null != migrationCount.getLimit()
+				&& migrationCount.getOffset() == batchAudit.getOffset() + batchAudit.getLimit()
+				&& batchAudit.getMessage().equals(message)
+				&& batchAudit.getAuditTopic().equals(migrationCount.getAuditTopic())
+				&& Objects.equals(batchAudit.getTenantid(), migrationCount.getTenantid())
+				&& Objects.equals(batchAudit.getBusinessService(), migrationCount.getBusinessService());
+	}
+
+	private static Long sum(Long first, Long second) {
+		return null == first || null == second ? null : first + second;
+	}
+
+	private static String getAuditMessage(MessageAudit audit) {
+
+		synchronized (audit) {
+			if (audit.errors.isEmpty())
+				return SUCCESS_MESSAGE;
+			StringBuilder stages = new StringBuilder();
+			audit.errors.forEach((stage, error) -> stages.append(stages.length() > 0 ? "," : "").append(stage)
+					.append("with error message : ").append(error));
+			return FAILURE_MESSAGE.replace("{stages}", stages);
+		}
+	}
+
+	private void sendAudit(MigrationCount migrationCount) {
+
+		migrationCount.setAuditTime(System.currentTimeMillis());
+		kafkaTemplate.send(migrationCount.getAuditTopic(), migrationCount);
+	}
+
+	/**
+	 * Outcome of a message, the stages which failed for any of its parts
+	 */
+	static class MessageAudit {
+
+		private final BulkBillGenerator message;
+
+		/*
+		 * failed stages of any part with their error, guarded by the audit itself
+		 */
+		private final Map<String, String> errors = new LinkedHashMap<>();
+
+		MessageAudit(BulkBillGenerator message) {
+			this.message = message;
+		}
+	}
+
+	/**
+	 * Demands of a message handled by one partition
+	 */
+	@Getter
+	static class MessagePart {
+
+		private final MessageAudit audit;
+
+		private final String tenantId;
+
+		private final String businessService;
+
+		private final List<Demand> createDemands = new ArrayList<>();
+
+		private final List<Demand> updateDemands = new ArrayList<>();
+
+		private CountDownLatch processed;
+
+		MessagePart(MessageAudit audit, String tenantId, String businessService) {
+			this.audit = audit;
+			this.tenantId = tenantId;
+			this.businessService = businessService;
+		}
+
+		Set<String> getConsumerCodes() {
+			Set<String> consumerCodes = new HashSet<>();
+			createDemands.forEach(demand -> consumerCodes.add(demand.getConsumerCode()));
+			updateDemands.forEach(demand -> consumerCodes.add(demand.getConsumerCode()));
+			return consumerCodes;
+		}
+	}
+}
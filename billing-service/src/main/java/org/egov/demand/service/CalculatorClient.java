@@ -0,0 +1,141 @@
+package org.egov.demand.service;
+
+import static org.egov.demand.util.Constants.BUSINESS_SERVICE_URL_PARAMETER;
+import static org.egov.demand.util.Constants.CONSUMERCODES_REPLACE_TEXT;
+import static org.egov.demand.util.Constants.TENANTID_REPLACE_TEXT;
+import static org.egov.demand.util.Constants.URL_NOT_CONFIGURED_FOR_DEMAND_UPDATE_KEY;
+import static org.egov.demand.util.Constants.URL_NOT_CONFIGURED_FOR_DEMAND_UPDATE_MSG;
+import static org.egov.demand.util.Constants.URL_NOT_CONFIGURED_REPLACE_TEXT;
+import static org.egov.demand.util.Constants.URL_PARAMS_FOR_SERVICE_BASED_DEMAND_APIS;
+import static org.egov.demand.util.Constants.URL_PARAM_SEPERATOR;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.repository.ServiceRequestRepository;
+import org.egov.demand.util.CircuitBreaker;
+import org.egov.demand.web.contract.RequestInfoWrapper;
+import org.egov.tracer.model.CustomException;
+import org.egov.tracer.model.ServiceCallException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Calls the calculators which update the demands of consumer codes before
+ * their bills are generated again
+ *
+ * The consumer codes are sent in chunks of a bounded size, keeping the url of
+ * every call short, and the chunks are sent concurrently with a timeout each.
+ * The calls to the calculator of a business service go through a circuit
+ * breaker of their own, so a calculator which keeps failing or timing out is
+ * not called again until its open duration has passed and the bill fetches of
+ * that business service fail at once instead of waiting on it.
+ */
+@Service
+@Slf4j
+public class CalculatorClient {
+
+	public static final String CALCULATOR_UNAVAILABLE_KEY = "EG_BS_CALCULATOR_UNAVAILABLE";
+	public static final String CALCULATOR_UNAVAILABLE_MSG = "The calculator of {businesscode} is unavailable, bills can be fetched again later";
+
+	@Autowired
+	private ServiceRequestRepository restRepository;
+
+	@Autowired
+	private RemoteCallExecutor remoteCallExecutor;
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+	/**
+	 * Updates the demands of the consumer codes through the calculator of the
+	 * business service, nothing is done for a business service without a
+	 * calculator url
+	 *
+	 * @param tenantId
+	 * @param businessService
+	 * @param consumerCodes
+	 * @param requestInfoWrapper
+	 * @throws CustomException CALCULATOR_UNAVAILABLE_KEY while the circuit of the
+	 *                         business service is open
+	 */
+	public void updateDemands(String tenantId, String businessService, Collection<String> consumerCodes,
+			RequestInfoWrapper requestInfoWrapper) {
+
+		String url = appProps.getBusinessCodeAndDemandUpdateUrlMap().get(businessService);
+		if (!StringUtils.hasText(url)) {
+			log.info(URL_NOT_CONFIGURED_FOR_DEMAND_UPDATE_KEY,
+					URL_NOT_CONFIGURED_FOR_DEMAND_UPDATE_MSG.replace(URL_NOT_CONFIGURED_REPLACE_TEXT, businessService));
+			return;
+		}
+		if (consumerCodes.isEmpty())
+			return;
+
+		CircuitBreaker circuitBreaker = getCircuitBreaker(businessService);
+		if (!circuitBreaker.tryAcquire())
+			throw new CustomException(CALCULATOR_UNAVAILABLE_KEY,
+					CALCULATOR_UNAVAILABLE_MSG.replace(URL_NOT_CONFIGURED_REPLACE_TEXT, businessService));
+
+		boolean isSuccess = false;
+		try {
+			RemoteCallExecutor.Calls calls = remoteCallExecutor.start(appProps.getCalculatorTimeout());
+			for (List<String> chunk : getChunks(consumerCodes, appProps.getCalculatorChunkSize())) {
+
+				String completeUrl = getUrl(url, tenantId, businessService, chunk);
+				calls.submit(() -> restRepository.fetchResult(completeUrl, requestInfoWrapper));
+			}
+			calls.await();
+			isSuccess = true;
+		} catch (ServiceCallException e) {
+			/*
+			 * the calculator answered, it rejected the request
+			 */
+			isSuccess = true;
+			throw e;
+		} finally {
+			if (isSuccess)
+				circuitBreaker.recordSuccess();
+			else
+				circuitBreaker.recordFailure();
+		}
+	}
+
+	CircuitBreaker getCircuitBreaker(String businessService) {
+		return circuitBreakers.computeIfAbsent(businessService, key -> new CircuitBreaker("calculator " + key,
+				appProps.getCalculatorCircuitFailureThreshold(), appProps.getCalculatorCircuitOpenDuration()));
+	}
+
+	private static String getUrl(String url, String tenantId, String businessService, List<String> consumerCodes) {
+
+		return new StringBuilder(url)
+				.append(URL_PARAMS_FOR_SERVICE_BASED_DEMAND_APIS.replace(TENANTID_REPLACE_TEXT, tenantId)
+						.replace(CONSUMERCODES_REPLACE_TEXT, String.join(", ", consumerCodes)))
+				.append(URL_PARAM_SEPERATOR).append(BUSINESS_SERVICE_URL_PARAMETER).append(businessService)
+				.toString();
+	}
+
+	private static List<List<String>> getChunks(Collection<String> values, int chunkSize) {
+
+		List<List<String>> chunks = new ArrayList<>();
+		List<String> chunk = new ArrayList<>(chunkSize);
+		for (String value : values) {
+			chunk.add(value);
+			if (chunk.size() == chunkSize) {
+				chunks.add(chunk);
+				chunk = new ArrayList<>(chunkSize);
+			}
+		}
+		if (!chunk.isEmpty())
+			chunks.add(chunk);
+		return chunks;
+	}
+}
@@ -0,0 +1,113 @@
+package org.egov.demand.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.ConsumerDues;
+import org.egov.demand.model.DemandDueCriteria;
+import org.egov.demand.repository.DemandDuesRepository;
+import org.egov.demand.web.validator.DemandValidatorV1;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Serves the outstanding dues of consumers from the dues read model instead of
+ * aggregating their demands on every request
+ */
+@Service
+@Slf4j
+public class DemandDuesService {
+
+	@Autowired
+	private DemandDuesRepository demandDuesRepository;
+
+	@Autowired
+	private DemandValidatorV1 demandValidatorV1;
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	private final ScheduledExecutorService reconciliationExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "demand-dues-reconciliation");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@PostConstruct
+	public void init() {
+
+		if (!Boolean.TRUE.equals(appProps.getIsDemandDuesReconciliationEnabled()))
+			return;
+
+		long interval = appProps.getDemandDuesReconciliationInterval();
+		reconciliationExecutor.scheduleWithFixedDelay(this::reconcile, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		reconciliationExecutor.shutdownNow();
+	}
+
+	/**
+	 * Returns the dues of the consumer codes of the criteria
+	 *
+	 * Consumers whose demands were last written before the read model existed
+	 * have no dues yet, their dues are computed once on the first read
+	 *
+	 * @param dueCriteria
+	 * @param requestInfo
+	 */
+	public List<ConsumerDues> getDues(DemandDueCriteria dueCriteria, RequestInfo requestInfo) {
+
+		demandValidatorV1.validateDemandDueCriteria(dueCriteria, requestInfo);
+
+		String tenantId = dueCriteria.getTenantId();
+		String businessService = dueCriteria.getBusinessService();
+		List<ConsumerDues> dues = demandDuesRepository.getDues(tenantId, businessService, dueCriteria.getConsumerCode());
+
+		Set<String> missingConsumerCodes = new TreeSet<>(dueCriteria.getConsumerCode());
+		dues.forEach(due -> missingConsumerCodes.remove(due.getConsumerCode()));
+		if (missingConsumerCodes.isEmpty())
+			return dues;
+
+		demandDuesRepository.refreshDues(tenantId, businessService, missingConsumerCodes);
+		List<ConsumerDues> allDues = new ArrayList<>(dues);
+		allDues.addAll(demandDuesRepository.getDues(tenantId, businessService, missingConsumerCodes));
+		return allDues;
+	}
+
+	/**
+	 * Rebuilds the dues of the given tenant from its demands
+	 *
+	 * @param tenantId
+	 * @return count of dues corrected
+	 */
+	public long reconcile(String tenantId) {
+		return demandDuesRepository.reconcileDues(tenantId);
+	}
+
+	/*
+	 * periodic reconciliation of the configured tenants, a failing tenant does not stop the others
+	 */
+	private void reconcile() {
+
+		for (String tenantId : appProps.getDemandDuesReconciliationTenantIds()) {
+			try {
+				reconcile(tenantId);
+			} catch (Exception e) {
+				log.error("Reconciliation of demand dues failed for tenant {}", tenantId, e);
+			}
+		}
+	}
+}
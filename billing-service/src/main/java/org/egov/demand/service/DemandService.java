@@ -39,17 +39,18 @@
  */
 package org.egov.demand.service;
 
-import static org.egov.demand.util.Constants.ADVANCE_TAXHEAD_JSONPATH_CODE;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -62,16 +63,20 @@ import org.egov.demand.config.ApplicationProperties;
 import org.egov.demand.model.ApportionDemandResponse;
 import org.egov.demand.model.AuditDetails;
 import org.egov.demand.model.BillV2.BillStatus;
+import org.egov.demand.model.BillingMasterData;
+import org.egov.demand.model.BusinessServiceDetail;
 import org.egov.demand.model.Demand;
 import org.egov.demand.model.DemandApportionRequest;
 import org.egov.demand.model.DemandCriteria;
 import org.egov.demand.model.DemandDetail;
+import org.egov.demand.model.DemandPageKey;
 import org.egov.demand.model.PaymentBackUpdateAudit;
 import org.egov.demand.model.UpdateBillCriteria;
 import org.egov.demand.repository.AmendmentRepository;
 import org.egov.demand.repository.BillRepositoryV2;
 import org.egov.demand.repository.DemandRepository;
 import org.egov.demand.repository.ServiceRequestRepository;
+import org.egov.demand.util.BillingMetrics;
 import org.egov.demand.util.DemandEnrichmentUtil;
 import org.egov.demand.util.Util;
 import org.egov.demand.web.contract.DemandRequest;
@@ -90,7 +95,6 @@ import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.jayway.jsonpath.DocumentContext;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -127,6 +131,15 @@ public class DemandService {
 
 	@Autowired
 	private DemandValidatorV1 demandValidatorV1;
+
+	@Autowired
+	private PayerCache payerCache;
+
+	@Autowired
+	private MasterDataService masterDataService;
+
+	@Autowired
+	private BillingMetrics billingMetrics;
 	
 	/**
 	 * Method to create new demand 
@@ -137,11 +150,27 @@ public class DemandService {
 	 * @return
 	 */
 	public DemandResponse create(DemandRequest demandRequest) {
+		return create(demandRequest, false);
+	}
 
-		DocumentContext mdmsData = util.getMDMSData(demandRequest.getRequestInfo(),
+	/**
+	 * Method to create new demand, new demands of bulk loads are written with COPY
+	 * 
+	 * @param demandRequest
+	 * @param isBulkLoad true for bulk bill generation
+	 * @return
+	 */
+	public DemandResponse create(DemandRequest demandRequest, boolean isBulkLoad) {
+		return billingMetrics.timeDemands(BillingMetrics.DEMAND_CREATE_METRIC, demandRequest.getDemands(),
+				() -> createDemands(demandRequest, isBulkLoad));
+	}
+
+	private DemandResponse createDemands(DemandRequest demandRequest, boolean isBulkLoad) {
+
+		BillingMasterData masterData = masterDataService.getMasterData(demandRequest.getRequestInfo(),
 				demandRequest.getDemands().get(0).getTenantId());
 
-		demandValidatorV1.validatedemandForCreate(demandRequest, true, mdmsData);
+		demandValidatorV1.validatedemandForCreate(demandRequest, true, masterData);
 
 		log.info("the demand request in create async : {}", demandRequest);
 
@@ -156,16 +185,19 @@ public class DemandService {
 		List<Demand> demandToBeUpdated = new ArrayList<>();
 
 		String businessService = demandRequest.getDemands().get(0).getBusinessService();
-		Boolean isAdvanceAllowed = util.getIsAdvanceAllowed(businessService, mdmsData);
+		Boolean isAdvanceAllowed = getIsAdvanceAllowed(businessService, masterData);
 
 		if(isAdvanceAllowed){
-			apportionAdvanceIfExist(demandRequest,mdmsData,demandsToBeCreated,demandToBeUpdated);
+			apportionAdvanceIfExist(demandRequest,masterData,demandsToBeCreated,demandToBeUpdated);
 		}
 		else {
 			demandsToBeCreated.addAll(demandRequest.getDemands());
 		}
 
-		save(new DemandRequest(requestInfo,demandsToBeCreated));
+		if (isBulkLoad)
+			demandRepository.saveInBulk(new DemandRequest(requestInfo, demandsToBeCreated));
+		else
+			save(new DemandRequest(requestInfo,demandsToBeCreated));
 		if (!CollectionUtils.isEmpty(amendmentUpdates))
 			amendmentRepository.updateAmendment(amendmentUpdates, demandRequest.getDemands().get(0).getTenantId());
 
@@ -222,12 +254,87 @@ public class DemandService {
 	 * @return
 	 */
 	public DemandResponse updateAsync(DemandRequest demandRequest, PaymentBackUpdateAudit paymentBackUpdateAudit) {
+		return billingMetrics.timeDemands(BillingMetrics.DEMAND_UPDATE_METRIC, demandRequest.getDemands(),
+				() -> updateDemands(demandRequest, paymentBackUpdateAudit));
+	}
+
+	private DemandResponse updateDemands(DemandRequest demandRequest, PaymentBackUpdateAudit paymentBackUpdateAudit) {
 
 		log.debug("the demand service : " + demandRequest);
-		DocumentContext mdmsData = util.getMDMSData(demandRequest.getRequestInfo(),
+		validateAndEnrichForUpdate(demandRequest, null != paymentBackUpdateAudit);
+
+		RequestInfo requestInfo = demandRequest.getRequestInfo();
+		List<Demand> demands = demandRequest.getDemands();
+
+		update(demandRequest, paymentBackUpdateAudit);
+		String businessService = demands.get(0).getBusinessService();
+		String tenantId = demands.get(0).getTenantId();
+		
+		UpdateBillCriteria updateBillCriteria = UpdateBillCriteria.builder()
+				.consumerCodes(demands.stream().map(Demand::getConsumerCode).collect(Collectors.toSet()))
+				.businessService(businessService)
+				.tenantId(tenantId)
+				.build();
+		
+		if (ObjectUtils.isEmpty(paymentBackUpdateAudit)) {
+			
+			updateBillCriteria.setStatusToBeUpdated(BillStatus.EXPIRED);
+			billRepoV2.updateBillStatus(updateBillCriteria);
+		} else {
+			
+			updateBillCriteria.setStatusToBeUpdated(BillStatus.PAID);
+			billRepoV2.updateBillStatus(updateBillCriteria);
+		}
+		// producer.push(applicationProperties.getDemandIndexTopic(), demandRequest);
+		return new DemandResponse(responseInfoFactory.getResponseInfo(requestInfo, HttpStatus.CREATED), demands);
+	}
+
+	/**
+	 * Update method for the demands of several payments of the same tenant
+	 * 
+	 * demands and the back update audit of every payment are written in one
+	 * transaction, bills are marked paid per business service
+	 * 
+	 * @param demandRequest demands updated with the payments
+	 * @param paymentBackUpdateAudits one audit per payment
+	 */
+	public void updateAsyncForPayments(DemandRequest demandRequest, List<PaymentBackUpdateAudit> paymentBackUpdateAudits) {
+		billingMetrics.timeDemands(BillingMetrics.DEMAND_UPDATE_METRIC, demandRequest.getDemands(), () -> {
+			updateDemandsForPayments(demandRequest, paymentBackUpdateAudits);
+			return null;
+		});
+	}
+
+	private void updateDemandsForPayments(DemandRequest demandRequest, List<PaymentBackUpdateAudit> paymentBackUpdateAudits) {
+
+		validateAndEnrichForUpdate(demandRequest, true);
+		demandRepository.updateForPayments(demandRequest, paymentBackUpdateAudits);
+
+		List<Demand> demands = demandRequest.getDemands();
+		Map<String, Set<String>> businessServiceConsumerCodes = demands.stream().collect(Collectors.groupingBy(
+				Demand::getBusinessService, Collectors.mapping(Demand::getConsumerCode, Collectors.toSet())));
+
+		businessServiceConsumerCodes.forEach((businessService, consumerCodes) -> billRepoV2.updateBillStatus(
+				UpdateBillCriteria.builder()
+				.statusToBeUpdated(BillStatus.PAID)
+				.businessService(businessService)
+				.consumerCodes(consumerCodes)
+				.tenantId(demands.get(0).getTenantId())
+				.build()));
+	}
+
+	/**
+	 * Validates the demands for update and enriches ids and audit details
+	 * 
+	 * @param demandRequest
+	 * @param isUpdateFromPayment
+	 */
+	private void validateAndEnrichForUpdate(DemandRequest demandRequest, boolean isUpdateFromPayment) {
+
+		BillingMasterData masterData = masterDataService.getMasterData(demandRequest.getRequestInfo(),
 				demandRequest.getDemands().get(0).getTenantId());
 
-		demandValidatorV1.validateForUpdate(demandRequest, mdmsData);
+		demandValidatorV1.validateForUpdate(demandRequest, masterData);
 
 		RequestInfo requestInfo = demandRequest.getRequestInfo();
 		List<Demand> demands = demandRequest.getDemands();
@@ -261,35 +368,12 @@ public class DemandService {
 					detail.setTenantId(demand.getTenantId());
 				}
 			}
-			util.updateDemandPaymentStatus(demand, null != paymentBackUpdateAudit);
+			util.updateDemandPaymentStatus(demand, isUpdateFromPayment);
 		}
 
 		generateAndSetIdsForNewDemands(newDemands, auditDetail);
-
-		update(demandRequest, paymentBackUpdateAudit);
-		String businessService = demands.get(0).getBusinessService();
-		String tenantId = demands.get(0).getTenantId();
-		
-		UpdateBillCriteria updateBillCriteria = UpdateBillCriteria.builder()
-				.consumerCodes(demands.stream().map(Demand::getConsumerCode).collect(Collectors.toSet()))
-				.businessService(businessService)
-				.tenantId(tenantId)
-				.build();
-		
-		if (ObjectUtils.isEmpty(paymentBackUpdateAudit)) {
-			
-			updateBillCriteria.setStatusToBeUpdated(BillStatus.EXPIRED);
-			billRepoV2.updateBillStatus(updateBillCriteria);
-		} else {
-			
-			updateBillCriteria.setStatusToBeUpdated(BillStatus.PAID);
-			billRepoV2.updateBillStatus(updateBillCriteria);
-		}
-		// producer.push(applicationProperties.getDemandIndexTopic(), demandRequest);
-		return new DemandResponse(responseInfoFactory.getResponseInfo(requestInfo, HttpStatus.CREATED), demands);
 	}
 
-
 	/**
 	 * Search method to fetch demands from DB
 	 * 
@@ -298,37 +382,40 @@ public class DemandService {
 	 * @return
 	 */
 	public List<Demand> getDemands(DemandCriteria demandCriteria, RequestInfo requestInfo) {
+		return searchDemands(demandCriteria, requestInfo).getDemands();
+	}
+
+	/**
+	 * Searches demands, returning along with them the page key of the next page
+	 * when the criteria asks for a limited page
+	 * 
+	 * @param demandCriteria
+	 * @param requestInfo
+	 */
+	public DemandResponse searchDemands(DemandCriteria demandCriteria, RequestInfo requestInfo) {
 
 		demandValidatorV1.validateDemandCriteria(demandCriteria, requestInfo);
 
-		UserSearchRequest userSearchRequest = null;
+		Integer maxLimit = applicationProperties.getDemandSearchMaxLimit();
+		if (demandCriteria.getLimit() != null && demandCriteria.getLimit() > maxLimit)
+			demandCriteria.setLimit(maxLimit);
+
 		List<User> payers = null;
 		List<Demand> demands = null;
 		
 		String userUri = applicationProperties.getUserServiceHostName()
 				.concat(applicationProperties.getUserServiceSearchPath());
 		
-		/*
-		 * user type is CITIZEN by default because only citizen can have demand or payer can be null
-		 */
-		String citizenTenantId = demandCriteria.getTenantId().split("\\.")[0];
-		
 		/*
 		 * If payer related data is provided first then user search has to be made first followed by demand search
 		 */
 		if (demandCriteria.getEmail() != null || demandCriteria.getMobileNumber() != null) {
 			
-			userSearchRequest = UserSearchRequest.builder().requestInfo(requestInfo)
-					.tenantId(citizenTenantId).emailId(demandCriteria.getEmail())
-					.mobileNumber(demandCriteria.getMobileNumber()).build();
-			
-			payers = mapper.convertValue(serviceRequestRepository.fetchResult(userUri, userSearchRequest), UserResponse.class).getUser();
+			payers = searchPayersOfCriteria(demandCriteria, requestInfo, userUri);
 			
 			if(CollectionUtils.isEmpty(payers))
-				return new ArrayList<>();
+				return DemandResponse.builder().demands(new ArrayList<>()).build();
 			
-			Set<String> ownerIds = payers.stream().map(User::getUuid).collect(Collectors.toSet());
-			demandCriteria.setPayer(ownerIds);
 			demands = demandRepository.getDemands(demandCriteria);
 			
 		} else {
@@ -337,25 +424,132 @@ public class DemandService {
 			 * If no payer related data given then search demand first then enrich payer(user) data
 			 */
 			demands = demandRepository.getDemands(demandCriteria);
-			if (!demands.isEmpty()) {
+			payers = searchPayersOfDemands(demands, requestInfo);
+		}
 
-				Set<String> payerUuids = demands.stream().filter(demand -> null != demand.getPayer())
-						.map(demand -> demand.getPayer().getUuid()).collect(Collectors.toSet());
+		DemandPageKey nextPageKey = getNextPageKey(demandCriteria, demands);
 
-				if (!CollectionUtils.isEmpty(payerUuids)) {
+		if (!CollectionUtils.isEmpty(demands) && !CollectionUtils.isEmpty(payers))
+			demands = demandEnrichmentUtil.enrichPayer(demands, payers);
 
-					userSearchRequest = UserSearchRequest.builder().requestInfo(requestInfo).uuid(payerUuids).build();
+		return DemandResponse.builder().demands(demands).nextPageKey(nextPageKey).build();
+	}
 
-					payers = mapper.convertValue(serviceRequestRepository.fetchResult(userUri, userSearchRequest),
-							UserResponse.class).getUser();
-				}
-			}
+	/**
+	 * Streams the demands matching the criteria to the consumer, reading them in
+	 * keyset pages of the fetch size and enriching the payers one page at a time
+	 * 
+	 * The criteria is expected to be validated by the caller
+	 * 
+	 * @param demandCriteria
+	 * @param requestInfo
+	 * @param demandConsumer
+	 * @return count of demands read
+	 */
+	public long streamDemands(DemandCriteria demandCriteria, RequestInfo requestInfo, Consumer<Demand> demandConsumer) {
+
+		String userUri = applicationProperties.getUserServiceHostName()
+				.concat(applicationProperties.getUserServiceSearchPath());
+
+		List<User> criteriaPayers = null;
+		if (demandCriteria.getEmail() != null || demandCriteria.getMobileNumber() != null) {
+
+			criteriaPayers = searchPayersOfCriteria(demandCriteria, requestInfo, userUri);
+			if (CollectionUtils.isEmpty(criteriaPayers))
+				return 0;
 		}
-		
-		if (!CollectionUtils.isEmpty(demands) && !CollectionUtils.isEmpty(payers))
-			demands = demandEnrichmentUtil.enrichPayer(demands, payers);
 
-		return demands;
+		/*
+		 * every page is read in a transaction of its own, payers are resolved and the
+		 * demands written out after the connection of the page has been released
+		 */
+		int fetchSize = applicationProperties.getDemandStreamFetchSize();
+		Integer limit = demandCriteria.getLimit();
+		long count = 0;
+
+		while (null == limit || count < limit) {
+
+			demandCriteria.setLimit(null == limit ? fetchSize : (int) Math.min(fetchSize, limit - count));
+			List<Demand> demands = demandRepository.getDemandPage(demandCriteria);
+			DemandPageKey nextPageKey = getNextPageKey(demandCriteria, demands);
+			count += demands.size();
+			publishDemandPage(demands, criteriaPayers, requestInfo, demandConsumer);
+
+			if (null == nextPageKey)
+				break;
+			demandCriteria.setPageKeyTaxPeriodFrom(nextPageKey.getTaxPeriodFrom());
+			demandCriteria.setPageKeyDemandId(nextPageKey.getDemandId());
+		}
+
+		log.info("Streamed {} demands of tenant {}", count, demandCriteria.getTenantId());
+		return count;
+	}
+
+	private void publishDemandPage(List<Demand> demands, List<User> payers, RequestInfo requestInfo,
+			Consumer<Demand> demandConsumer) {
+
+		if (CollectionUtils.isEmpty(demands))
+			return;
+
+		List<User> pagePayers = null != payers ? payers : searchPayersOfDemands(demands, requestInfo);
+		if (!CollectionUtils.isEmpty(pagePayers))
+			demands = demandEnrichmentUtil.enrichPayer(demands, pagePayers);
+
+		demands.forEach(demandConsumer);
+	}
+
+	/*
+	 * user type is CITIZEN by default because only citizen can have demand or payer can be null
+	 * 
+	 * the uuids of the payers found are set on the criteria
+	 */
+	private List<User> searchPayersOfCriteria(DemandCriteria demandCriteria, RequestInfo requestInfo, String userUri) {
+
+		String citizenTenantId = demandCriteria.getTenantId().split("\\.")[0];
+
+		UserSearchRequest userSearchRequest = UserSearchRequest.builder().requestInfo(requestInfo)
+				.tenantId(citizenTenantId).emailId(demandCriteria.getEmail())
+				.mobileNumber(demandCriteria.getMobileNumber()).build();
+
+		List<User> payers = mapper.convertValue(serviceRequestRepository.fetchResult(userUri, userSearchRequest),
+				UserResponse.class).getUser();
+
+		if (!CollectionUtils.isEmpty(payers)) {
+			Set<String> ownerIds = payers.stream().map(User::getUuid).collect(Collectors.toSet());
+			demandCriteria.setPayer(ownerIds);
+			payerCache.put(payers, requestInfo);
+		}
+		return payers;
+	}
+
+	/*
+	 * payers are read through the payer cache
+	 */
+	private List<User> searchPayersOfDemands(List<Demand> demands, RequestInfo requestInfo) {
+
+		if (CollectionUtils.isEmpty(demands))
+			return null;
+
+		Set<String> payerUuids = demands.stream().filter(demand -> null != demand.getPayer())
+				.map(demand -> demand.getPayer().getUuid()).collect(Collectors.toSet());
+
+		if (CollectionUtils.isEmpty(payerUuids))
+			return null;
+
+		return payerCache.getPayers(payerUuids, requestInfo);
+	}
+
+	/*
+	 * a full page means there may be more demands, the key is taken before payer enrichment which can drop demands
+	 */
+	private DemandPageKey getNextPageKey(DemandCriteria demandCriteria, List<Demand> demands) {
+
+		if (demandCriteria.getLimit() == null || CollectionUtils.isEmpty(demands)
+				|| demands.size() < demandCriteria.getLimit())
+			return null;
+
+		Demand lastDemand = demands.get(demands.size() - 1);
+		return DemandPageKey.builder().taxPeriodFrom(lastDemand.getTaxPeriodFrom()).demandId(lastDemand.getId()).build();
 	}
 
 	public void save(DemandRequest demandRequest) {
@@ -369,81 +563,116 @@ public class DemandService {
 
 	/**
 	 * Calls the demand apportion API if any advance amoount is available for that comsumer code
+	 * 
+	 * The existing demands of all the consumer codes are searched in one query and
+	 * the demands with advance are apportioned in one call per business service and consumer code
 	 * @param demandRequest The demand request for create
-	 * @param mdmsData The master data for billing service
+	 * @param masterData The master data for billing service
 	 * @param demandToBeCreated The list which maintains the demand that has to be created in the system
 	 * @param demandToBeUpdated The list which maintains the demand that has to be updated in the system
 	 */
-	private void apportionAdvanceIfExist(DemandRequest demandRequest, DocumentContext mdmsData,List<Demand> demandToBeCreated,List<Demand> demandToBeUpdated){
+	private void apportionAdvanceIfExist(DemandRequest demandRequest, BillingMasterData masterData,List<Demand> demandToBeCreated,List<Demand> demandToBeUpdated){
 		List<Demand> demands = demandRequest.getDemands();
 		RequestInfo requestInfo = demandRequest.getRequestInfo();
 
-		for(Demand demand : demands) {
-			String businessService = demand.getBusinessService();
-			String consumerCode = demand.getConsumerCode();
-			String tenantId = demand.getTenantId();
+		Map<String, List<Demand>> tenantIdDemandsMap = demands.stream()
+				.collect(Collectors.groupingBy(Demand::getTenantId, LinkedHashMap::new, Collectors.toList()));
 
-			// Searching demands based on consumer code of the current demand (demand which has to be created)
-			DemandCriteria searchCriteria = DemandCriteria.builder().tenantId(tenantId).consumerCode(Collections.singleton(consumerCode)).businessService(businessService).build();
-			List<Demand> demandsFromSearch = demandRepository.getDemands(searchCriteria);
+		for (Entry<String, List<Demand>> tenantIdDemands : tenantIdDemandsMap.entrySet()) {
 
-			// If no demand is found means there is no advance available. The current demand is added for creation
-			if (CollectionUtils.isEmpty(demandsFromSearch)){
-				demandToBeCreated.add(demand);
-				continue;
-			}
+			String tenantId = tenantIdDemands.getKey();
+			List<Demand> demandsOfTenant = tenantIdDemands.getValue();
 
-			// Fetch the demands containing advance amount
-			List<Demand> demandsToBeApportioned = getDemandsContainingAdvance(demandsFromSearch, mdmsData);
+			// Searching demands of all the consumer codes of the current demands (demands which have to be created) at once
+			Set<String> consumerCodes = demandsOfTenant.stream().map(Demand::getConsumerCode).collect(Collectors.toSet());
+			Map<String, List<Demand>> demandsFromSearchMap = demandRepository.getDemandsByConsumerCodes(tenantId, consumerCodes)
+					.stream().collect(Collectors.groupingBy(this::getBusinessServiceConsumerCodeKey));
 
-			// If no demand is found with advance amount the code continues to next demand and adds the current demand for creation
-			if(CollectionUtils.isEmpty(demandsToBeApportioned)){
-				demandToBeCreated.add(demand);
-				continue;
+			// Apportion service expects the demands of one business service and consumer code in a request
+			Map<String, List<Demand>> demandsToBeApportioned = new LinkedHashMap<>();
+			Set<String> demandIdsToBeCreated = new HashSet<>();
+
+			for (Demand demand : demandsOfTenant) {
+
+				String key = getBusinessServiceConsumerCodeKey(demand);
+				List<Demand> demandsFromSearch = demandsFromSearchMap.get(key);
+
+				// If no demand is found means there is no advance available. The current demand is added for creation
+				if (CollectionUtils.isEmpty(demandsFromSearch)) {
+					demandToBeCreated.add(demand);
+					continue;
+				}
+
+				// Fetch the demands containing advance amount
+				List<Demand> demandsWithAdvance = getDemandsContainingAdvance(demandsFromSearch, masterData);
+
+				// If no demand is found with advance amount the current demand is added for creation
+				if (CollectionUtils.isEmpty(demandsWithAdvance)) {
+					demandToBeCreated.add(demand);
+					continue;
+				}
+
+				// The advance of a consumer code is sent once, along with all the current demands of the consumer code
+				demandsToBeApportioned.computeIfAbsent(key, k -> new ArrayList<>(demandsWithAdvance)).add(demand);
+				demandIdsToBeCreated.add(demand.getId());
 			}
 
-			// The current demand is added to get apportioned
-			demandsToBeApportioned.add(demand);
+			for (List<Demand> demandsOfKey : demandsToBeApportioned.values()) {
 
-			DemandApportionRequest apportionRequest = DemandApportionRequest.builder().requestInfo(requestInfo).demands(demandsToBeApportioned).tenantId(tenantId).build();
+				DemandApportionRequest apportionRequest = DemandApportionRequest.builder().requestInfo(requestInfo).demands(demandsOfKey).tenantId(tenantId).build();
 
-			Object response = serviceRequestRepository.fetchResult(util.getApportionURL(), apportionRequest);
-			ApportionDemandResponse apportionDemandResponse = mapper.convertValue(response, ApportionDemandResponse.class);
+				Object response = serviceRequestRepository.fetchResult(util.getApportionURL(), apportionRequest);
+				ApportionDemandResponse apportionDemandResponse = mapper.convertValue(response, ApportionDemandResponse.class);
 
-			// Only the current demand is to be created rest all are to be updated
-			apportionDemandResponse.getDemands().forEach(demandFromResponse -> {
-				if(demandFromResponse.getId().equalsIgnoreCase(demand.getId()))
-					demandToBeCreated.add(demandFromResponse);
-				else demandToBeUpdated.add(demandFromResponse);
-			});
+				// Only the current demands are to be created rest all are to be updated
+				apportionDemandResponse.getDemands().forEach(demandFromResponse -> {
+					if (demandIdsToBeCreated.contains(demandFromResponse.getId()))
+						demandToBeCreated.add(demandFromResponse);
+					else demandToBeUpdated.add(demandFromResponse);
+				});
+			}
 		}
 
 	}
 
+	private String getBusinessServiceConsumerCodeKey(Demand demand) {
+		return demand.getBusinessService() + "|" + demand.getConsumerCode();
+	}
+
+
+	/**
+	 * Fetches the isAdvanceAllowed flag for the given businessService
+	 * @param businessService
+	 * @param masterData
+	 * @return
+	 */
+	private Boolean getIsAdvanceAllowed(String businessService, BillingMasterData masterData) {
+
+		BusinessServiceDetail businessServiceDetail = masterData.getBusinessService(businessService);
+
+		if (null == businessServiceDetail || null == businessServiceDetail.getIsAdvanceAllowed())
+			throw new CustomException("BUSINESSSERVICE_ERROR","Failed to fetch isAdvanceAllowed for businessService: "+businessService);
+
+		return businessServiceDetail.getIsAdvanceAllowed();
+	}
 
 	/**
 	 * Returns demands which has advance amount avaialable for apportion
 	 * @param demands List of demands from which demands with advance has to be picked
-	 * @param mdmsData Master Data for billing service
+	 * @param masterData Master Data for billing service
 	 * @return
 	 */
-	private List<Demand> getDemandsContainingAdvance(List<Demand> demands,DocumentContext mdmsData){
+	private List<Demand> getDemandsContainingAdvance(List<Demand> demands,BillingMasterData masterData){
 
 		Set<Demand> demandsWithAdvance = new HashSet<>();
 
-		// Create the jsonPath to fetch the advance taxhead for the given businessService
+		// Fetch the advance taxhead for the given businessService from the master data
 		String businessService = demands.get(0).getBusinessService();
-		String jsonpath = ADVANCE_TAXHEAD_JSONPATH_CODE;
-		jsonpath = jsonpath.replace("{}",businessService);
+		String advanceTaxHeadCode = masterData.getAdvanceTaxHeadCode(businessService);
 
-		// Apply the jsonPath on the master Data to fetch the value. The output will be an array with single element
-		List<String> taxHeads = mdmsData.read(jsonpath);
-
-		if(CollectionUtils.isEmpty(taxHeads))
+		if(StringUtils.isEmpty(advanceTaxHeadCode))
 			throw new CustomException("NO TAXHEAD FOUND","No Advance taxHead found for businessService: "+businessService);
 
-		String advanceTaxHeadCode =  taxHeads.get(0);
-
 		/*
 		* Loop through each demand and each demandDetail to find the demandDetail for which advance amount is available
 		* */
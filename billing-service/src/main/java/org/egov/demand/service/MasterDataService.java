@@ -0,0 +1,128 @@
+package org.egov.demand.service;
+
+import static org.egov.demand.util.Constants.BUSINESSSERVICE_MODULE_PATH;
+import static org.egov.demand.util.Constants.MDMS_MASTER_NAMES;
+import static org.egov.demand.util.Constants.MODULE_NAME;
+import static org.egov.demand.util.Constants.TAXHEADMASTER_PATH_CODE;
+import static org.egov.demand.util.Constants.TAXPERIOD_PATH_CODE;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.BillingMasterData;
+import org.egov.demand.model.BusinessServiceDetail;
+import org.egov.demand.model.TaxHeadMaster;
+import org.egov.demand.model.TaxPeriod;
+import org.egov.demand.util.Util;
+import org.egov.mdms.model.MdmsCriteriaReq;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.DocumentContext;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Per-tenant in-memory store of the TaxHeadMaster, BusinessService and TaxPeriod
+ * masters.
+ *
+ * Masters are fetched from MDMS once per tenant and kept as a typed, indexed
+ * snapshot until the configured ttl expires or a refresh is requested.
+ */
+@Service
+@Slf4j
+public class MasterDataService {
+
+	@Autowired
+	private Util util;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	private final ConcurrentMap<String, BillingMasterData> masterDataByTenant = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, Object> loadLocks = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the master data of the tenant, loading it from MDMS if it is not
+	 * present or has expired
+	 *
+	 * @param requestInfo
+	 * @param tenantId
+	 */
+	public BillingMasterData getMasterData(RequestInfo requestInfo, String tenantId) {
+
+		BillingMasterData masterData = masterDataByTenant.get(tenantId);
+		if (!isExpired(masterData))
+			return masterData;
+
+		/*
+		 * only one thread loads a tenant at a time, the others wait for and reuse its result
+		 */
+		synchronized (loadLocks.computeIfAbsent(tenantId, key -> new Object())) {
+
+			masterData = masterDataByTenant.get(tenantId);
+			if (!isExpired(masterData))
+				return masterData;
+
+			masterData = load(requestInfo, tenantId);
+			masterDataByTenant.put(tenantId, masterData);
+			return masterData;
+		}
+	}
+
+	/**
+	 * Drops the cached master data of the given tenant, or of all tenants if the
+	 * tenantId is empty, so that the next read goes to MDMS
+	 *
+	 * @param tenantId
+	 */
+	public void refresh(String tenantId) {
+
+		if (StringUtils.isEmpty(tenantId)) {
+			masterDataByTenant.clear();
+			log.info("Cleared billing master data of all tenants");
+		} else {
+			masterDataByTenant.remove(tenantId);
+			log.info("Cleared billing master data of tenant : {}", tenantId);
+		}
+	}
+
+	private boolean isExpired(BillingMasterData masterData) {
+		return null == masterData
+				|| System.currentTimeMillis() - masterData.getLoadedTime() >= appProps.getMasterDataCacheTtl();
+	}
+
+	private BillingMasterData load(RequestInfo requestInfo, String tenantId) {
+
+		MdmsCriteriaReq mdmsReq = util.prepareMdMsRequest(tenantId, MODULE_NAME, MDMS_MASTER_NAMES, null, requestInfo);
+		DocumentContext mdmsData = util.getAttributeValues(mdmsReq);
+
+		List<TaxHeadMaster> taxHeads = readList(mdmsData, TAXHEADMASTER_PATH_CODE, TaxHeadMaster[].class);
+		List<BusinessServiceDetail> businessServices = readList(mdmsData, BUSINESSSERVICE_MODULE_PATH,
+				BusinessServiceDetail[].class);
+		List<TaxPeriod> taxPeriods = readList(mdmsData, TAXPERIOD_PATH_CODE, TaxPeriod[].class);
+
+		log.info("Loaded billing master data of tenant {} : {} taxheads, {} business services, {} tax periods", tenantId,
+				taxHeads.size(), businessServices.size(), taxPeriods.size());
+		return new BillingMasterData(tenantId, taxHeads, businessServices, taxPeriods, System.currentTimeMillis());
+	}
+
+	private <T> List<T> readList(DocumentContext mdmsData, String path, Class<T[]> type) {
+
+		Object values = mdmsData.read(path);
+		if (null == values)
+			return Collections.emptyList();
+		return Arrays.asList(mapper.convertValue(values, type));
+	}
+}
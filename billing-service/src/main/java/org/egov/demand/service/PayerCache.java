@@ -0,0 +1,312 @@
+package org.egov.demand.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.egov.common.contract.request.PlainAccessRequest;
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.repository.ServiceRequestRepository;
+import org.egov.demand.util.BillingMetrics;
+import org.egov.demand.web.contract.User;
+import org.egov.demand.web.contract.UserResponse;
+import org.egov.demand.web.contract.UserSearchRequest;
+import org.egov.tracer.model.CustomException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded cache of the payers of demands, keyed on the uuid of the user
+ *
+ * User service masks the personal fields of a user depending on the roles and
+ * the plain access request of the caller, so a payer is cached once per
+ * masking context and a lookup is only served what was searched with the same
+ * context. A user searching its own record sees it unmasked, that record is
+ * searched on every lookup and never cached.
+ *
+ * Payers missing from the cache or expired are searched in user service with a
+ * single call per lookup. A lookup needing a payer already being searched by
+ * another lookup waits for that search instead of searching it again. Payers
+ * are dropped on the user update events, a search running when a payer is
+ * dropped is not cached so the update is not overwritten by the older search.
+ * Once the cache is full the least recently used payers are evicted.
+ */
+@Service
+@Slf4j
+public class PayerCache {
+
+	@Autowired
+	private ServiceRequestRepository serviceRequestRepository;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	@Autowired
+	private BillingMetrics billingMetrics;
+
+	/*
+	 * payers of a uuid keyed on the masking context they were searched with
+	 */
+	private Map<String, Map<String, CachedPayer>> payers;
+
+	/*
+	 * searches running, completed with null for a uuid which has no user
+	 */
+	private final Map<PayerKey, CompletableFuture<User>> pendingSearches = new ConcurrentHashMap<>();
+
+	private final AtomicLong invalidations = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	@PostConstruct
+	public void init() {
+
+		int maxSize = appProps.getPayerCacheMaxSize();
+		payers = new LinkedHashMap<String, Map<String, CachedPayer>>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Map<String, CachedPayer>> eldest) {
+				return size() > maxSize;
+			}
+		};
+		billingMetrics.gaugePayerCacheHitRatio(this, PayerCache::getHitRatio);
+	}
+
+	/**
+	 * Returns the users of the uuids found in user service, from the cache where present
+	 *
+	 * @param uuids
+	 * @param requestInfo request info of the user service search of the missing payers
+	 */
+	public List<User> getPayers(Collection<String> uuids, RequestInfo requestInfo) {
+
+		if (!appProps.getIsPayerCacheEnabled())
+			return search(new LinkedHashSet<>(uuids), requestInfo);
+
+		String maskingContext = getMaskingContext(requestInfo);
+		String callerUuid = getCallerUuid(requestInfo);
+		List<User> users = new ArrayList<>();
+		Set<String> missingUuids = new LinkedHashSet<>();
+		long now = System.currentTimeMillis();
+		synchronized (payers) {
+			for (String uuid : new LinkedHashSet<>(uuids)) {
+				if (uuid.equals(callerUuid))
+					continue;
+				CachedPayer cachedPayer = payers.getOrDefault(uuid, Collections.emptyMap()).get(maskingContext);
+				if (null != cachedPayer && now - cachedPayer.loadedTime < appProps.getPayerCacheTtl())
+					users.add(cachedPayer.user);
+				else
+					missingUuids.add(uuid);
+			}
+		}
+		Set<String> uncachedUuids = null != callerUuid && uuids.contains(callerUuid)
+				? Collections.singleton(callerUuid)
+				: Collections.emptySet();
+		hits.addAndGet(users.size());
+		misses.addAndGet(missingUuids.size() + uncachedUuids.size());
+		billingMetrics.countPayerCacheLookups(users.size(), missingUuids.size() + uncachedUuids.size());
+		if (missingUuids.isEmpty() && uncachedUuids.isEmpty())
+			return users;
+
+		/*
+		 * the uuids not being searched already with the same masking context are searched by this lookup
+		 */
+		Map<PayerKey, CompletableFuture<User>> ownSearches = new HashMap<>();
+		Map<PayerKey, CompletableFuture<User>> otherSearches = new HashMap<>();
+		for (String uuid : missingUuids) {
+			PayerKey key = new PayerKey(uuid, maskingContext);
+			CompletableFuture<User> search = new CompletableFuture<>();
+			CompletableFuture<User> runningSearch = pendingSearches.putIfAbsent(key, search);
+			if (null == runningSearch)
+				ownSearches.put(key, search);
+			else
+				otherSearches.put(key, runningSearch);
+		}
+
+		if (!ownSearches.isEmpty() || !uncachedUuids.isEmpty())
+			users.addAll(searchAndCache(ownSearches, uncachedUuids, maskingContext, requestInfo));
+
+		for (CompletableFuture<User> search : otherSearches.values()) {
+			User user = await(search);
+			if (null != user)
+				users.add(user);
+		}
+		return users;
+	}
+
+	/**
+	 * Adds the users found by a search other than by uuid
+	 *
+	 * @param users
+	 * @param requestInfo request info the users were searched with
+	 */
+	public void put(Collection<User> users, RequestInfo requestInfo) {
+
+		if (!appProps.getIsPayerCacheEnabled())
+			return;
+
+		put(users, getMaskingContext(requestInfo), getCallerUuid(requestInfo));
+	}
+
+	/**
+	 * Drops the payers of the uuids, the next lookup searches them in user service
+	 */
+	public void invalidate(Collection<String> uuids) {
+
+		invalidations.incrementAndGet();
+		synchronized (payers) {
+			uuids.forEach(payers::remove);
+		}
+		/*
+		 * later lookups search again instead of waiting for a search started before the update
+		 */
+		pendingSearches.keySet().removeIf(key -> uuids.contains(key.getUuid()));
+		log.debug("Dropped cached payers : {}", uuids);
+	}
+
+	double getHitRatio() {
+		long lookups = hits.get() + misses.get();
+		return 0 == lookups ? 0 : (double) hits.get() / lookups;
+	}
+
+	private void put(Collection<User> users, String maskingContext, String callerUuid) {
+
+		long now = System.currentTimeMillis();
+		synchronized (payers) {
+			for (User user : users)
+				if (null != user.getUuid() && !user.getUuid().equals(callerUuid))
+					payers.computeIfAbsent(user.getUuid(), uuid -> new HashMap<>()).put(maskingContext,
+							new CachedPayer(user, now));
+		}
+	}
+
+	private List<User> searchAndCache(Map<PayerKey, CompletableFuture<User>> ownSearches, Set<String> uncachedUuids,
+			String maskingContext, RequestInfo requestInfo) {
+
+		Set<String> uuids = new LinkedHashSet<>(uncachedUuids);
+		ownSearches.keySet().forEach(key -> uuids.add(key.getUuid()));
+
+		long invalidationsAtSearch = invalidations.get();
+		List<User> users;
+		try {
+			users = search(uuids, requestInfo);
+		} catch (RuntimeException e) {
+			ownSearches.forEach((uuid, search) -> {
+				pendingSearches.remove(uuid, search);
+				search.completeExceptionally(e);
+			});
+			throw e;
+		}
+
+		/*
+		 * payers are cached before the searches are completed, so a lookup
+		 * starting after the completion finds them in the cache
+		 */
+		if (invalidationsAtSearch == invalidations.get())
+			put(users, maskingContext, getCallerUuid(requestInfo));
+
+		Map<String, User> usersByUuid = new HashMap<>();
+		users.forEach(user -> usersByUuid.put(user.getUuid(), user));
+		ownSearches.forEach((key, search) -> {
+			pendingSearches.remove(key, search);
+			search.complete(usersByUuid.get(key.getUuid()));
+		});
+		return users;
+	}
+
+	/*
+	 * roles and plain access request of the caller, what user service masks the search on
+	 */
+	static String getMaskingContext(RequestInfo requestInfo) {
+
+		if (null == requestInfo)
+			return "";
+
+		StringBuilder context = new StringBuilder();
+		if (null != requestInfo.getUserInfo() && null != requestInfo.getUserInfo().getRoles())
+			context.append(requestInfo.getUserInfo().getRoles().stream()
+					.map(role -> role.getCode() + ":" + role.getTenantId()).distinct().sorted()
+					.collect(Collectors.joining(",")));
+
+		PlainAccessRequest plainAccessRequest = requestInfo.getPlainAccessRequest();
+		if (null != plainAccessRequest) {
+			context.append('|').append(plainAccessRequest.getRecordId());
+			if (null != plainAccessRequest.getPlainRequestFields())
+				context.append('|').append(plainAccessRequest.getPlainRequestFields().stream().sorted()
+						.collect(Collectors.joining(",")));
+		}
+		return context.toString();
+	}
+
+	private static String getCallerUuid(RequestInfo requestInfo) {
+		return null == requestInfo || null == requestInfo.getUserInfo() ? null : requestInfo.getUserInfo().getUuid();
+	}
+
+	private List<User> search(Set<String> uuids, RequestInfo requestInfo) {
+
+		String userUri = appProps.getUserServiceHostName().concat(appProps.getUserServiceSearchPath());
+		UserSearchRequest userSearchRequest = UserSearchRequest.builder().requestInfo(requestInfo).uuid(uuids).build();
+		List<User> users = mapper.convertValue(serviceRequestRepository.fetchResult(userUri, userSearchRequest),
+				UserResponse.class).getUser();
+		return null == users ? new ArrayList<>() : users;
+	}
+
+	private static User await(CompletableFuture<User> search) {
+
+		try {
+			return search.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CustomException("EG_BS_PAYER_SEARCH_ERROR", "Payer search was interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new CustomException("EG_BS_PAYER_SEARCH_ERROR", "Payer search failed : " + e.getCause().getMessage());
+		}
+	}
+
+	@Value
+	private static class PayerKey {
+
+		private final String uuid;
+
+		private final String maskingContext;
+	}
+
+	private static class CachedPayer {
+
+		private final User user;
+
+		private final long loadedTime;
+
+		private CachedPayer(User user, long loadedTime) {
+			this.user = user;
+			this.loadedTime = loadedTime;
+		}
+	}
+}
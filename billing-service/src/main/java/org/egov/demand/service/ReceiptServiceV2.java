@@ -1,14 +1,9 @@
 package org.egov.demand.service;
 
-import static org.egov.demand.util.Constants.ADVANCE_TAXHEAD_JSONPATH_CODE;
-import static org.egov.demand.util.Constants.MDMS_CODE_FILTER;
-import static org.egov.demand.util.Constants.MODULE_NAME;
-import static org.egov.demand.util.Constants.TAXHEAD_MASTERNAME;
-
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -20,21 +15,21 @@ import org.egov.common.contract.request.RequestInfo;
 import org.egov.demand.model.BillAccountDetailV2;
 import org.egov.demand.model.BillDetailV2;
 import org.egov.demand.model.BillV2;
+import org.egov.demand.model.BillingMasterData;
 import org.egov.demand.model.Demand;
 import org.egov.demand.model.DemandCriteria;
 import org.egov.demand.model.DemandDetail;
 import org.egov.demand.model.PaymentBackUpdateAudit;
 import org.egov.demand.util.Constants;
+import org.egov.demand.util.Money;
 import org.egov.demand.util.Util;
 import org.egov.demand.web.contract.BillRequestV2;
 import org.egov.demand.web.contract.DemandRequest;
 import org.egov.demand.web.validator.DemandValidatorV1;
-import org.egov.mdms.model.MdmsCriteriaReq;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
-import com.jayway.jsonpath.DocumentContext;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -51,6 +46,9 @@ public class ReceiptServiceV2 {
 	@Autowired
 	private Util util;
 
+	@Autowired
+	private MasterDataService masterDataService;
+
 
 	public void updateDemandFromReceipt(BillRequestV2 billReq, Boolean isReceiptCancellation) {
 
@@ -85,37 +83,83 @@ public class ReceiptServiceV2 {
 		List<BillV2> bills = billRequest.getBills();
 		String tenantId = bills.get(0).getTenantId();
 		RequestInfo requestInfo = billRequest.getRequestInfo();
-		Map<String, String> mapOfBillIdAndStatus = new HashMap<>();
 
 		DemandCriteria demandCriteria = DemandCriteria.builder().demandId(demandIds).tenantId(tenantId).build();
 		List<Demand> demandsToBeUpdated = demandService.getDemands(demandCriteria, requestInfo);
 		Map<String, Demand> demandIdMap = demandsToBeUpdated.stream().collect(Collectors.toMap(Demand::getId, Function.identity()));
-		DocumentContext mdmsData = getTaxHeadMaster(tenantId,billRequest.getRequestInfo());
+		BillingMasterData masterData = masterDataService.getMasterData(requestInfo, tenantId);
+
+		updateDemandsFromBills(bills, demandIdMap, isReceiptCancellation, masterData);
+
+		DemandRequest demandRequest = DemandRequest.builder()
+				.requestInfo(billRequest.getRequestInfo())
+				.demands(demandsToBeUpdated)
+				.build();
+		
+		demandService.updateAsync(demandRequest, getPaymentBackUpdateAudit(bills, tenantId, isReceiptCancellation));
+
+	}
+
+	/**
+	 * Update the demand collection details for the payments of one tenant
+	 * 
+	 * all the affected demands are fetched once and the payments are applied in
+	 * the given order, so that payments of the same consumer code are applied in
+	 * the order in which they were received
+	 * 
+	 * @param billRequests bills of each payment, all belonging to the same tenant
+	 * @param isReceiptCancellation
+	 */
+	public void updateDemandFromBills(List<BillRequestV2> billRequests, Boolean isReceiptCancellation) {
+
+		String tenantId = billRequests.get(0).getBills().get(0).getTenantId();
+		RequestInfo requestInfo = billRequests.get(0).getRequestInfo();
+
+		Set<String> demandIds = new HashSet<>();
+		billRequests.forEach(billRequest -> billRequest.getBills().forEach(bill -> bill.getBillDetails()
+				.forEach(billDetail -> demandIds.add(billDetail.getDemandId()))));
+
+		DemandCriteria demandCriteria = DemandCriteria.builder().demandId(demandIds).tenantId(tenantId).build();
+		List<Demand> demandsToBeUpdated = demandService.getDemands(demandCriteria, requestInfo);
+		Map<String, Demand> demandIdMap = demandsToBeUpdated.stream().collect(Collectors.toMap(Demand::getId, Function.identity()));
+		BillingMasterData masterData = masterDataService.getMasterData(requestInfo, tenantId);
+
+		List<PaymentBackUpdateAudit> paymentBackUpdateAudits = new ArrayList<>();
+		for (BillRequestV2 billRequest : billRequests) {
+
+			updateDemandsFromBills(billRequest.getBills(), demandIdMap, isReceiptCancellation, masterData);
+			paymentBackUpdateAudits.add(getPaymentBackUpdateAudit(billRequest.getBills(), tenantId, isReceiptCancellation));
+		}
+
+		DemandRequest demandRequest = DemandRequest.builder()
+				.requestInfo(requestInfo)
+				.demands(demandsToBeUpdated)
+				.build();
+
+		demandService.updateAsyncForPayments(demandRequest, paymentBackUpdateAudits);
+	}
+
+	private void updateDemandsFromBills(List<BillV2> bills, Map<String, Demand> demandIdMap,
+			Boolean isReceiptCancellation, BillingMasterData masterData) {
 
 		for (BillV2 bill : bills) {
-			String advanceTaxhead = getAdvanceTaxhead(bill.getBusinessService(), mdmsData);
-			mapOfBillIdAndStatus.put(bill.getId(), bill.getStatus().toString());
+			String advanceTaxhead = masterData.getAdvanceTaxHeadCode(bill.getBusinessService());
 			for (BillDetailV2 billDetail : bill.getBillDetails())
 				updateDemandFromBillDetail(billDetail, demandIdMap.get(billDetail.getDemandId()), isReceiptCancellation,advanceTaxhead);
 		}
+	}
+
+	private PaymentBackUpdateAudit getPaymentBackUpdateAudit(List<BillV2> bills, String tenantId, Boolean isReceiptCancellation) {
 
 		String paymentId = util.getValueFromAdditionalDetailsForKey(bills.get(0).getAdditionalDetails(),
 				Constants.PAYMENT_ID_KEY);
 
-		PaymentBackUpdateAudit paymentBackUpdateAudit = PaymentBackUpdateAudit.builder()
+		return PaymentBackUpdateAudit.builder()
 				.isReceiptCancellation(isReceiptCancellation)
 				.isBackUpdateSucces(true)
 				.paymentId(paymentId)
 				.tenantId(tenantId)
 				.build();
-		
-		DemandRequest demandRequest = DemandRequest.builder()
-				.requestInfo(billRequest.getRequestInfo())
-				.demands(demandsToBeUpdated)
-				.build();
-		
-		demandService.updateAsync(demandRequest, paymentBackUpdateAudit);
-
 	}
 
 	/**
@@ -237,32 +281,30 @@ public class ReceiptServiceV2 {
 	 */
 	private void updateDetailsForCancellation(List<DemandDetail> demandDetails, BigDecimal amtPaid) {
 		
-		if (amtPaid.compareTo(BigDecimal.ZERO) == 0)
+		Money amountToBeAdjusted = Money.of(amtPaid);
+		if (amountToBeAdjusted.isZero())
 			return;
 
 		for (DemandDetail detail : demandDetails) {
 
-			if(detail.getTaxAmount().compareTo(BigDecimal.ZERO) == 0)
+			Money currentDetailTax = Money.of(detail.getTaxAmount());
+			if(currentDetailTax.isZero())
 				continue;
 			/*
-			 * amount to be set in collectionAmount field of demandDetail after adjustments
+			 * the collectionAmount of the demandDetail after adjustments is set in either branch
 			 */
-			BigDecimal resultantCollectionAmt;
+			Money currentDetailCollectionAmt = Money.of(detail.getCollectionAmount());
+			Boolean isTaxPositive = currentDetailTax.signum() > 0;
 
-			BigDecimal currentDetailCollectionAmt = detail.getCollectionAmount();
-			Boolean isTaxPositive = detail.getTaxAmount().compareTo(BigDecimal.ZERO) > 0;
+			if (isTaxPositive && currentDetailCollectionAmt.compareTo(amountToBeAdjusted) >= 0) {
 
-			if (isTaxPositive && currentDetailCollectionAmt.compareTo(amtPaid) >= 0) {
-
-				resultantCollectionAmt = currentDetailCollectionAmt.subtract(amtPaid);
-				amtPaid = BigDecimal.ZERO;
+				detail.setCollectionAmount(currentDetailCollectionAmt.minus(amountToBeAdjusted).toBigDecimal());
+				amountToBeAdjusted = Money.ZERO;
 			} else {
 
-				resultantCollectionAmt = BigDecimal.ZERO;
-				amtPaid = amtPaid.subtract(currentDetailCollectionAmt);
+				detail.setCollectionAmount(BigDecimal.ZERO);
+				amountToBeAdjusted = amountToBeAdjusted.minus(currentDetailCollectionAmt);
 			}
-
-			detail.setCollectionAmount(resultantCollectionAmt);
 		}
 	}
 
@@ -278,20 +320,19 @@ public class ReceiptServiceV2 {
 	 */
 	private void updateDetailsForPayment(List<DemandDetail> demandDetails, BigDecimal amountPaid) {
 
+		Money amountToBeAdjusted = Money.of(amountPaid);
 		for (DemandDetail detail : demandDetails) {
 
-			if(detail.getTaxAmount().compareTo(detail.getCollectionAmount()) == 0 || detail.getTaxAmount().compareTo(BigDecimal.ZERO) == 0)
+			Money currentDetailTax = Money.of(detail.getTaxAmount());
+			Money currentDetailCollection = Money.of(detail.getCollectionAmount());
+
+			if(currentDetailTax.compareTo(currentDetailCollection) == 0 || currentDetailTax.isZero())
 				continue;
 			/*
-			 * amount to be set in collectionAmount field of demandDetail after adjustments
+			 * the collectionAmount of the demandDetail after adjustments is set in either branch
 			 */
-			BigDecimal resultantCollectionAmt;
-
-			BigDecimal currentDetailTax = detail.getTaxAmount();
-			BigDecimal currentDetailCollection = detail.getCollectionAmount();
-
-			BigDecimal currentDetailTaxCollectionDifference = currentDetailTax.subtract(currentDetailCollection);
-			Boolean isTaxPositive = detail.getTaxAmount().compareTo(BigDecimal.ZERO) > 0;
+			Money currentDetailTaxCollectionDifference = currentDetailTax.minus(currentDetailCollection);
+			Boolean isTaxPositive = currentDetailTax.signum() > 0;
 			/*
 			 * if current demandDetail  i sPositive AND difference is lesser than incoming amount of
 			 * 
@@ -299,54 +340,20 @@ public class ReceiptServiceV2 {
 			 * 
 			 * In case of negative value the exact tax will be adjusted.
 			 */
-			if (isTaxPositive && currentDetailTaxCollectionDifference.compareTo(amountPaid) >= 0) {
+			if (isTaxPositive && currentDetailTaxCollectionDifference.compareTo(amountToBeAdjusted) >= 0) {
 
-				resultantCollectionAmt = currentDetailCollection.add(amountPaid);
-				amountPaid = BigDecimal.ZERO;
+				detail.setCollectionAmount(currentDetailCollection.plus(amountToBeAdjusted).toBigDecimal());
+				amountToBeAdjusted = Money.ZERO;
 			} else {
 				/*
 				 * if difference of demandDetail is lesser than Incoming amount, then add the
 				 * 
 				 * difference to resulantAmount and subtract the same from incoming amount
 				 */
-				resultantCollectionAmt = currentDetailCollection.add(currentDetailTaxCollectionDifference);
-				amountPaid = amountPaid.subtract(currentDetailTaxCollectionDifference);
+				detail.setCollectionAmount(currentDetailCollection.plus(currentDetailTaxCollectionDifference).toBigDecimal());
+				amountToBeAdjusted = amountToBeAdjusted.minus(currentDetailTaxCollectionDifference);
 			}
-
-			detail.setCollectionAmount(resultantCollectionAmt);
 		}
 	}
 
-
-	/**
-	 * Fetches the required master data from MDMS service
-	 * @return
-	 */
-	private DocumentContext getTaxHeadMaster(String tenantId, RequestInfo requestInfo){
-		/*
-		 * Preparing the mdms request with billing service master and calling the mdms search API
-		 */
-		MdmsCriteriaReq mdmsReq = util.prepareMdMsRequest(tenantId, MODULE_NAME, Collections.singletonList(TAXHEAD_MASTERNAME), MDMS_CODE_FILTER,
-				requestInfo);
-		DocumentContext mdmsData = util.getAttributeValues(mdmsReq);
-
-		return mdmsData;
-	}
-
-
-	private String getAdvanceTaxhead(String businessService, DocumentContext mdmsData){
-		// Create the jsonPath to fetch the advance taxhead for the given businessService
-		String jsonpath = ADVANCE_TAXHEAD_JSONPATH_CODE;
-		jsonpath = jsonpath.replace("{}",businessService);
-
-		List<String> taxHeads = mdmsData.read(jsonpath);
-
-		if(CollectionUtils.isEmpty(taxHeads))
-			return null;
-
-		String advanceTaxHeadCode =  taxHeads.get(0);
-
-		return advanceTaxHeadCode;
-	}
-
 }
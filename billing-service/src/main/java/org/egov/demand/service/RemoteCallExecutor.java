@@ -0,0 +1,243 @@
+package org.egov.demand.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.tracer.model.CustomException;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the independent remote calls of a request concurrently on a bounded pool.
+ *
+ * Calls are submitted to a scope obtained from start and joined with await.
+ * Every call has a deadline of the configured timeout from its submission, the
+ * first call to fail or run past its deadline cancels the remaining calls of
+ * the scope. Once the pool and its queue are full the submitting thread runs
+ * the call itself.
+ */
+@Service
+@Slf4j
+public class RemoteCallExecutor {
+
+	public static final String REMOTE_CALL_TIMEOUT_KEY = "EG_BS_REMOTE_CALL_TIMEOUT";
+	public static final String REMOTE_CALL_TIMEOUT_MSG = "Remote call did not complete within {timeout} ms";
+
+	public static final String REMOTE_CALL_ERROR_KEY = "EG_BS_REMOTE_CALL_ERROR";
+	public static final String REMOTE_CALL_ERROR_MSG = "Remote call failed : ";
+
+	@Autowired
+	private ApplicationProperties appProps;
+
+	private ThreadPoolExecutor executor;
+
+	@PostConstruct
+	public void init() {
+
+		int poolSize = appProps.getRemoteCallPoolSize();
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(appProps.getRemoteCallQueueSize()), runnable -> {
+					Thread thread = new Thread(runnable, "bs-remote-call-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Opens a scope for the remote calls of one request, a scope is used by a
+	 * single thread
+	 */
+	public Calls start() {
+		return start(appProps.getRemoteCallTimeout());
+	}
+
+	/**
+	 * Opens a scope whose calls have the given timeout instead of the configured one
+	 *
+	 * @param timeoutMillis deadline of every call from its submission
+	 */
+	public Calls start(long timeoutMillis) {
+		return new Calls(TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (null != executor)
+			executor.shutdownNow();
+	}
+
+	/**
+	 * Remote calls submitted together and awaited together
+	 */
+	public final class Calls {
+
+		private final long timeoutNanos;
+
+		private final List<Call<?>> calls = new ArrayList<>();
+
+		private final BlockingQueue<Call<?>> completedCalls = new LinkedBlockingQueue<>();
+
+		private int pendingCount;
+
+		private Calls(long timeoutNanos) {
+			this.timeoutNanos = timeoutNanos;
+		}
+
+		/**
+		 * Starts the given call, the caller's MDC is carried over to the pool thread
+		 *
+		 * @param callable remote call
+		 * @return handle to read the result of the call once the scope is awaited
+		 */
+		public <T> Call<T> submit(Callable<T> callable) {
+
+			Map<String, String> context = MDC.getCopyOfContextMap();
+			Call<T> call = new Call<>(() -> {
+				/*
+				 * the caller itself runs the call when the pool is saturated
+				 */
+				Map<String, String> threadContext = MDC.getCopyOfContextMap();
+				setContext(context);
+				try {
+					return callable.call();
+				} finally {
+					setContext(threadContext);
+				}
+			}, completedCalls, System.nanoTime() + timeoutNanos);
+
+			calls.add(call);
+			pendingCount++;
+			executor.execute(call);
+			return call;
+		}
+
+		/**
+		 * Waits for every submitted call to complete
+		 *
+		 * The exception of the first call to fail is rethrown as is, checked
+		 * exceptions are wrapped in a CustomException
+		 */
+		public void await() {
+
+			try {
+				while (pendingCount > 0) {
+
+					Call<?> call = pollCompletedCall();
+					if (null == call)
+						throw new CustomException(REMOTE_CALL_TIMEOUT_KEY, REMOTE_CALL_TIMEOUT_MSG
+								.replace("{timeout}", String.valueOf(TimeUnit.NANOSECONDS.toMillis(timeoutNanos))));
+
+					pendingCount--;
+					call.getResult();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				cancel();
+				throw new CustomException(REMOTE_CALL_ERROR_KEY, REMOTE_CALL_ERROR_MSG + "interrupted");
+			} catch (RuntimeException | Error e) {
+				cancel();
+				throw e;
+			}
+		}
+
+		/**
+		 * Cancels the calls which have not completed yet
+		 */
+		public void cancel() {
+
+			for (Call<?> call : calls) {
+				if (call.cancel(true))
+					log.debug("Cancelled pending remote call");
+			}
+		}
+
+		private void setContext(Map<String, String> context) {
+			if (null == context)
+				MDC.clear();
+			else
+				MDC.setContextMap(context);
+		}
+
+		/*
+		 * waits up to the nearest deadline of the calls still running, null once it has passed
+		 */
+		private Call<?> pollCompletedCall() throws InterruptedException {
+
+			long deadline = Long.MAX_VALUE;
+			for (Call<?> call : calls) {
+				if (!call.isDone())
+					deadline = Math.min(deadline, call.deadline);
+			}
+			/*
+			 * every call is done, its completion is being queued
+			 */
+			if (Long.MAX_VALUE == deadline)
+				return completedCalls.take();
+			return completedCalls.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Result handle of a remote call
+	 */
+	public static final class Call<T> extends FutureTask<T> {
+
+		private final BlockingQueue<Call<?>> completedCalls;
+
+		private final long deadline;
+
+		private Call(Callable<T> callable, BlockingQueue<Call<?>> completedCalls, long deadline) {
+			super(callable);
+			this.completedCalls = completedCalls;
+			this.deadline = deadline;
+		}
+
+		@Override
+		protected void done() {
+			completedCalls.add(this);
+		}
+
+		/**
+		 * Result of the completed call, rethrowing its exception
+		 */
+		public T getResult() {
+
+			if (!isDone())
+				throw new IllegalStateException("Remote call has not completed, await its scope first");
+			try {
+				return get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new CustomException(REMOTE_CALL_ERROR_KEY, REMOTE_CALL_ERROR_MSG + cause.getMessage());
+			} catch (CancellationException e) {
+				throw new CustomException(REMOTE_CALL_ERROR_KEY, REMOTE_CALL_ERROR_MSG + "cancelled");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CustomException(REMOTE_CALL_ERROR_KEY, REMOTE_CALL_ERROR_MSG + "interrupted");
+			}
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package org.egov.demand.util;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+import org.egov.demand.model.Demand;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters of the bill fetch, the demand writes, the kafka consumers and the jdbc
+ * batches, published on the actuator prometheus endpoint
+ *
+ * Meters of the bills and demands are tagged with the tenant and the business
+ * service of the request.
+ */
+@Component
+public class BillingMetrics {
+
+	public static final String BILL_STAGE_METRIC = "bs.bill.stage";
+	public static final String DEMAND_CREATE_METRIC = "bs.demand.create";
+	public static final String DEMAND_UPDATE_METRIC = "bs.demand.update";
+	public static final String DEMAND_COUNT_METRIC = "bs.demand.count";
+	public static final String CONSUMER_LAG_METRIC = "bs.consumer.lag";
+	public static final String CONSUMER_RECORDS_METRIC = "bs.consumer.records";
+	public static final String JDBC_BATCH_SIZE_METRIC = "bs.jdbc.batch.size";
+	public static final String BILL_SWEEP_METRIC = "bs.bill.expiry.sweep";
+	public static final String PAYMENT_FILTER_METRIC = "bs.payment.backupdate.filter";
+	public static final String PAYER_CACHE_METRIC = "bs.payer.cache";
+	public static final String PAYER_CACHE_HIT_RATIO_METRIC = "bs.payer.cache.hit.ratio";
+	public static final String AUDIT_JOURNAL_PENDING_METRIC = "bs.demand.audit.journal.pending";
+	public static final String AUDIT_JOURNAL_LAG_METRIC = "bs.demand.audit.journal.lag";
+
+	public static final String STAGE_SEARCH = "search";
+	public static final String STAGE_EXPIRY = "expiry";
+	public static final String STAGE_CALCULATOR = "calculator";
+	public static final String STAGE_PREPARE = "prepare";
+	public static final String STAGE_IDGEN = "idgen";
+	public static final String STAGE_SAVE = "save";
+
+	public static final String STAGE_TAG = "stage";
+	public static final String TENANTID_TAG = "tenantId";
+	public static final String BUSINESS_SERVICE_TAG = "businessService";
+	public static final String OPERATION_TAG = "operation";
+	public static final String TOPIC_TAG = "topic";
+	public static final String STATEMENT_TAG = "statement";
+	public static final String OUTCOME_TAG = "outcome";
+
+	public static final String NOT_AVAILABLE_TAG_VALUE = "NA";
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	/**
+	 * Times a stage of the bill fetch
+	 *
+	 * @param stage one of the stage constants
+	 * @param tenantId
+	 * @param businessService
+	 * @param stageCall
+	 */
+	public <T> T timeBillStage(String stage, String tenantId, String businessService, Supplier<T> stageCall) {
+		return Timer.builder(BILL_STAGE_METRIC).description("Time taken by each stage of the bill fetch")
+				.tags(getTags(tenantId, businessService).and(STAGE_TAG, stage)).register(meterRegistry)
+				.record(stageCall);
+	}
+
+	public void timeBillStage(String stage, String tenantId, String businessService, Runnable stageCall) {
+		timeBillStage(stage, tenantId, businessService, () -> {
+			stageCall.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Times a write of demands and counts the demands written
+	 *
+	 * @param metric DEMAND_CREATE_METRIC or DEMAND_UPDATE_METRIC
+	 * @param demands demands of the request
+	 * @param demandCall
+	 */
+	public <T> T timeDemands(String metric, List<Demand> demands, Supplier<T> demandCall) {
+
+		Tags tags = CollectionUtils.isEmpty(demands) ? getTags(null, null)
+				: getTags(demands.get(0).getTenantId(), demands.get(0).getBusinessService());
+		T result = Timer.builder(metric).description("Time taken to write the demands of a request").tags(tags)
+				.register(meterRegistry).record(demandCall);
+
+		meterRegistry.counter(DEMAND_COUNT_METRIC, tags.and(OPERATION_TAG, metric))
+				.increment(null == demands ? 0 : demands.size());
+		return result;
+	}
+
+	/**
+	 * Counts a record received by a kafka listener and records its lag, the
+	 * time since the record was produced
+	 *
+	 * @param topic
+	 * @param timestamp produce time of the record in epoch millis
+	 */
+	public void recordConsumed(String topic, long timestamp) {
+
+		meterRegistry.counter(CONSUMER_RECORDS_METRIC, TOPIC_TAG, topic).increment();
+		if (timestamp > 0)
+			Timer.builder(CONSUMER_LAG_METRIC).description("Time from the produce of a record to its consumption")
+					.tag(TOPIC_TAG, topic).register(meterRegistry)
+					.record(Math.max(0, System.currentTimeMillis() - timestamp), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Records the row count of a jdbc batch
+	 *
+	 * @param statement name of the batched statement
+	 * @param size rows in the batch
+	 */
+	public void recordBatchSize(String statement, int size) {
+		DistributionSummary.builder(JDBC_BATCH_SIZE_METRIC).description("Rows written by a jdbc batch")
+				.baseUnit("rows").tag(STATEMENT_TAG, statement).register(meterRegistry).record(size);
+	}
+
+	/**
+	 * Counts the bills handled by the expiry sweep
+	 *
+	 * @param tenantId
+	 * @param businessService
+	 * @param isRenewed false for bills whose renewal failed
+	 * @param count
+	 */
+	public void countSweptBills(String tenantId, String businessService, boolean isRenewed, int count) {
+		meterRegistry.counter(BILL_SWEEP_METRIC,
+				getTags(tenantId, businessService).and(OUTCOME_TAG, isRenewed ? "renewed" : "failed")).increment(count);
+	}
+
+	/**
+	 * Counts the duplicate checks of payments, those the filter might contain are searched in the audit table
+	 */
+	public void countPaymentFilterChecks(boolean isSearched) {
+		meterRegistry.counter(PAYMENT_FILTER_METRIC, OUTCOME_TAG, isSearched ? "searched" : "skipped").increment();
+	}
+
+	/**
+	 * Counts the payers of a lookup found in the payer cache and those searched in user service
+	 */
+	public void countPayerCacheLookups(int hits, int misses) {
+		meterRegistry.counter(PAYER_CACHE_METRIC, OUTCOME_TAG, "hit").increment(hits);
+		meterRegistry.counter(PAYER_CACHE_METRIC, OUTCOME_TAG, "miss").increment(misses);
+	}
+
+	/**
+	 * Publishes the share of the payer lookups served by the cache since startup
+	 */
+	public <T> void gaugePayerCacheHitRatio(T cache, ToDoubleFunction<T> hitRatio) {
+		Gauge.builder(PAYER_CACHE_HIT_RATIO_METRIC, cache, hitRatio)
+				.description("Share of the payer lookups served by the payer cache").register(meterRegistry);
+	}
+
+	/**
+	 * Publishes the rows of the demand audit journal not yet copied to the audit
+	 * tables and the age of the oldest of them
+	 */
+	public <T> void gaugeAuditJournal(T journal, ToDoubleFunction<T> pendingRows, ToDoubleFunction<T> lagMillis) {
+		Gauge.builder(AUDIT_JOURNAL_PENDING_METRIC, journal, pendingRows)
+				.description("Rows of the demand audit journal not yet copied to the audit tables").baseUnit("rows")
+				.register(meterRegistry);
+		Gauge.builder(AUDIT_JOURNAL_LAG_METRIC, journal, lagMillis)
+				.description("Age of the oldest row of the demand audit journal not yet copied")
+				.baseUnit("milliseconds").register(meterRegistry);
+	}
+
+	private Tags getTags(String tenantId, String businessService) {
+		return Tags.of(TENANTID_TAG, null == tenantId ? NOT_AVAILABLE_TAG_VALUE : tenantId, BUSINESS_SERVICE_TAG,
+				null == businessService ? NOT_AVAILABLE_TAG_VALUE : businessService);
+	}
+}
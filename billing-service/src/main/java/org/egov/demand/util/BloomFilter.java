@@ -0,0 +1,117 @@
+package org.egov.demand.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Probabilistic set of strings, a value which was put is always reported as
+ * contained while a value which was not is reported with the false positive
+ * probability it was sized for
+ *
+ * The bit array is sized for the expected number of values, once more values
+ * are put the false positive rate grows and the filter has to be rebuilt with a
+ * larger size. Puts and lookups are safe from concurrent threads.
+ */
+public class BloomFilter {
+
+	private final AtomicLongArray bits;
+
+	private final long bitCount;
+
+	private final int hashCount;
+
+	private final long expectedInsertions;
+
+	private final AtomicLong insertions = new AtomicLong();
+
+	/**
+	 * @param expectedInsertions number of values the filter is sized for
+	 * @param falsePositiveRate  probability of a value which was not put being reported as contained
+	 */
+	public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+
+		this.expectedInsertions = Math.max(1, expectedInsertions);
+		long optimalBits = (long) Math.ceil(-this.expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) / 64));
+		this.bits = new AtomicLongArray(words);
+		this.bitCount = (long) words * 64;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / this.expectedInsertions * Math.log(2)));
+	}
+
+	public void put(String value) {
+
+		long hash = hash(value);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++)
+			setBit(index(hash1, hash2, i));
+		insertions.incrementAndGet();
+	}
+
+	public boolean mightContain(String value) {
+
+		long hash = hash(value);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++) {
+			long index = index(hash1, hash2, i);
+			if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * true once more values were put than the filter is sized for
+	 */
+	public boolean isSaturated() {
+		return insertions.get() > expectedInsertions;
+	}
+
+	public long getInsertions() {
+		return insertions.get();
+	}
+
+	public long getExpectedInsertions() {
+		return expectedInsertions;
+	}
+
+	/*
+	 * i-th index by double hashing of the two halves of the hash
+	 */
+	private long index(int hash1, int hash2, int i) {
+		long combinedHash = hash1 + (long) i * hash2;
+		return (combinedHash & Long.MAX_VALUE) % bitCount;
+	}
+
+	private void setBit(long index) {
+
+		int word = (int) (index >>> 6);
+		long mask = 1L << index;
+		long current;
+		do {
+			current = bits.get(word);
+			if ((current & mask) != 0)
+				return;
+		} while (!bits.compareAndSet(word, current, current | mask));
+	}
+
+	/*
+	 * 64 bit FNV-1a of the utf-8 bytes, mixed with the murmur3 finalizer
+	 */
+	private static long hash(String value) {
+
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,104 @@
+package org.egov.demand.util;
+
+import java.util.function.LongSupplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stops the calls to a remote service after consecutive failures
+ *
+ * The breaker opens once the failure threshold is reached and rejects every
+ * call for the open duration. The first call after it is let through as a
+ * trial while the others are still rejected, its success closes the breaker
+ * and its failure opens it again.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String name;
+
+	private final int failureThreshold;
+
+	private final long openDurationMillis;
+
+	private final LongSupplier clock;
+
+	private State state = State.CLOSED;
+
+	private int failureCount;
+
+	private long openedAt;
+
+	private boolean isTrialRunning;
+
+	/**
+	 * @param name name of the remote service, for the logs
+	 * @param failureThreshold consecutive failures opening the breaker
+	 * @param openDurationMillis time calls are rejected for before a trial
+	 * @param clock current time in millis
+	 */
+	public CircuitBreaker(String name, int failureThreshold, long openDurationMillis, LongSupplier clock) {
+		this.name = name;
+		this.failureThreshold = failureThreshold;
+		this.openDurationMillis = openDurationMillis;
+		this.clock = clock;
+	}
+
+	public CircuitBreaker(String name, int failureThreshold, long openDurationMillis) {
+		this(name, failureThreshold, openDurationMillis, System::currentTimeMillis);
+	}
+
+	/**
+	 * Permits a call, every permitted call has to be followed by recordSuccess
+	 * or recordFailure
+	 *
+	 * @return false if the call is rejected
+	 */
+	public synchronized boolean tryAcquire() {
+
+		if (State.OPEN == state && clock.getAsLong() - openedAt >= openDurationMillis) {
+			state = State.HALF_OPEN;
+			isTrialRunning = false;
+		}
+
+		switch (state) {
+		case CLOSED:
+			return true;
+		case HALF_OPEN:
+			if (isTrialRunning)
+				return false;
+			isTrialRunning = true;
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	public synchronized void recordSuccess() {
+
+		if (State.CLOSED != state)
+			log.info("Circuit of {} closed", name);
+		state = State.CLOSED;
+		failureCount = 0;
+		isTrialRunning = false;
+	}
+
+	public synchronized void recordFailure() {
+
+		failureCount++;
+		if (State.HALF_OPEN == state || (State.CLOSED == state && failureCount >= failureThreshold)) {
+			log.warn("Circuit of {} opened after {} consecutive failures", name, failureCount);
+			state = State.OPEN;
+			openedAt = clock.getAsLong();
+		}
+		isTrialRunning = false;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+}
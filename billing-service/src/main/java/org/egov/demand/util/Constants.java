@@ -174,6 +174,12 @@ public class Constants {
 	
 	public static final String COUNT_REPLACE_CANCEL_BILL_MSG = "{count}";
 	
+	public static final String MASTERDATA_REFRESH_MSG = "Billing master data will be reloaded from MDMS on next use";
+	
+	public static final String AUDIT_JOURNAL_LAG_KEY = "AuditJournalLag";
+	
+	public static final String DUES_RECONCILED_KEY = "ReconciledCount";
+	
 	// Bill cancel 
 	
 	public static final String CANCELLATION_REASON_MSG= "reasonMessage";
@@ -192,4 +198,6 @@ public class Constants {
 
 	public static final String TENANTID_MDC_STRING = "TENANTID";
 
+	public static final String BILL_NUMBER_ID_NAME = "billnumberid";
+
 }
\ No newline at end of file
@@ -0,0 +1,128 @@
+package org.egov.demand.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Amount held as a long count of minor units, the paise of the amount columns
+ * which are all numeric(x,2), used in place of BigDecimal inside the loops
+ * adding up or apportioning the amounts of demand details
+ *
+ * Add and subtract are exact and throw an ArithmeticException on overflow.
+ * Amounts with more than two decimals are rounded half up on the way in, the
+ * way postgres rounds them into the amount columns.
+ *
+ * The scale of the amount, at most two, is carried along the way BigDecimal
+ * carries it, so that an amount converted back with toBigDecimal equals the
+ * BigDecimal the same arithmetic would have given, scale included.
+ */
+public final class Money implements Comparable<Money> {
+
+	public static final int SCALE = 2;
+
+	public static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+
+	public static final Money ZERO = new Money(0, 0);
+
+	private static final long[] POWERS_OF_TEN = { 1, 10, 100 };
+
+	private static final double EXACT_DOUBLE_LIMIT = 1e11;
+
+	private final long minorUnits;
+
+	private final int scale;
+
+	private Money(long minorUnits, int scale) {
+		this.minorUnits = minorUnits;
+		this.scale = scale;
+	}
+
+	/**
+	 * @param amount amount of the model, rounded half up to two decimals
+	 * @throws ArithmeticException if the amount does not fit a long of minor units
+	 */
+	public static Money of(BigDecimal amount) {
+
+		int scale = Math.max(0, Math.min(SCALE, amount.scale()));
+		double value = SCALE == amount.scale() ? amount.doubleValue() : EXACT_DOUBLE_LIMIT;
+
+		/*
+		 * amounts of two decimals, as read from the amount columns, are read through
+		 * doubleValue which creates no object, unlike the unscaled value. Below
+		 * EXACT_DOUBLE_LIMIT the double is off by far less than half a paisa
+		 * 
+		 * a single new Money lets the JIT keep it off the heap
+		 */
+		long minorUnits = Math.abs(value) < EXACT_DOUBLE_LIMIT ? Math.round(value * POWERS_OF_TEN[SCALE])
+				: getMinorUnits(amount, scale);
+		return new Money(minorUnits, scale);
+	}
+
+	private static long getMinorUnits(BigDecimal amount, int scale) {
+
+		if (0 == amount.scale())
+			return Math.multiplyExact(amount.longValueExact(), POWERS_OF_TEN[SCALE]);
+		else if (scale == amount.scale())
+			return Math.multiplyExact(amount.scaleByPowerOfTen(scale).longValueExact(), POWERS_OF_TEN[SCALE - scale]);
+		return amount.setScale(SCALE, ROUNDING_MODE).scaleByPowerOfTen(SCALE).longValueExact();
+	}
+
+	public Money plus(Money other) {
+		return new Money(Math.addExact(minorUnits, other.minorUnits), Math.max(scale, other.scale));
+	}
+
+	public Money minus(Money other) {
+		return new Money(Math.subtractExact(minorUnits, other.minorUnits), Math.max(scale, other.scale));
+	}
+
+	public int signum() {
+		return Long.signum(minorUnits);
+	}
+
+	public boolean isZero() {
+		return minorUnits == 0;
+	}
+
+	public long getMinorUnits() {
+		return minorUnits;
+	}
+
+	/**
+	 * Converts the amount back for the model
+	 */
+	public BigDecimal toBigDecimal() {
+		return BigDecimal.valueOf(minorUnits / POWERS_OF_TEN[SCALE - scale], scale);
+	}
+
+	/**
+	 * Compares the amounts, ignoring the scale like BigDecimal.compareTo
+	 */
+	@Override
+	public int compareTo(Money other) {
+		return Long.compare(minorUnits, other.minorUnits);
+	}
+
+	/**
+	 * Equal if both the amount and the scale are, like BigDecimal.equals
+	 */
+	@Override
+	public boolean equals(Object other) {
+
+		if (this == other)
+			return true;
+		if (!(other instanceof Money))
+			return false;
+		Money money = (Money) other;
+		return minorUnits == money.minorUnits && scale == money.scale;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Long.hashCode(minorUnits) + scale;
+	}
+
+	@Override
+	public String toString() {
+		return toBigDecimal().toString();
+	}
+}
@@ -307,7 +307,35 @@ public class Util {
 		response = mapper.convertValue(objectResponse, ProcessInstanceResponse.class);
 		return response.getProcessInstances().get(0).getState();
 	}
-	
+
+	/**
+	 * Transitions several process instances in one workflow call
+	 *
+	 * @param workflows process instances, one per business id
+	 * @param requestInfo
+	 * @return resultant state of each process instance mapped by its business id
+	 */
+	public Map<String, State> callWorkFlow(List<ProcessInstance> workflows, RequestInfo requestInfo) {
+
+		ProcessInstanceRequest workflowReq = ProcessInstanceRequest.builder()
+				.processInstances(workflows)
+				.requestInfo(requestInfo)
+				.build();
+
+		String url = appProps.getWfHost().concat(appProps.getWfTransitionPath());
+		Object objectResponse = serviceRequestRepository.fetchResult(url, workflowReq);
+		ProcessInstanceResponse response = mapper.convertValue(objectResponse, ProcessInstanceResponse.class);
+
+		Map<String, State> states = new HashMap<>();
+		response.getProcessInstances().forEach(instance -> states.put(instance.getBusinessId(), instance.getState()));
+		for (ProcessInstance workflow : workflows) {
+			if (null == states.get(workflow.getBusinessId()))
+				throw new CustomException("EG_BS_WORKFLOW_ERROR",
+						"No workflow state returned for the business id : " + workflow.getBusinessId());
+		}
+		return states;
+	}
+
 	/*
 	 * 
 	 * Json merge utils
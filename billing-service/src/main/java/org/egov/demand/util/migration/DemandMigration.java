@@ -1,30 +1,55 @@
 package org.egov.demand.util.migration;
 
 import java.math.BigDecimal;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
-import jakarta.annotation.PostConstruct;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.egov.demand.model.Demand;
 import org.egov.demand.model.DemandDetail;
 import org.egov.demand.repository.DemandRepository;
 import org.egov.demand.repository.rowmapper.DemandRowMapper;
 import org.egov.demand.web.contract.DemandRequest;
+import org.egov.tracer.model.CustomException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Migrates the demands of the legacy egbs_demand tables to the v1 tables
+ *
+ * The legacy demands are split by their primary key (id, tenantid) into key
+ * ranges of about the same count of demands, migrated in parallel. Each range
+ * is paged through on its key and its checkpoint, the key of the last demand
+ * migrated, is written in the transaction saving the page, so that a migration
+ * run again resumes every range where it stopped.
+ *
+ * The ranges are planned on the first run, a run after all of them are
+ * completed only reports them.
+ */
 @Slf4j
 @Component
 public class DemandMigration {
-	
+
+	private static final String LEGACY_DEMAND_CONDITION = " d.businessservice IN ('TL','PT') AND d.tenantid ilike 'pb%' ";
+
 	public static final String SELECT_QUERY = "select d.id as did,dl.id as dlid,dl.demandid as dldemandid,"
 			+ "d.consumercode as dconsumercode,d.consumertype as dconsumertype,d.taxperiodfrom as dtaxperiodfrom,"
 			+ "d.taxperiodto as dtaxperiodto,U.uuid as payer,null as dbillexpirytime,"
@@ -37,12 +62,69 @@ public class DemandMigration {
 			+ " d.lastmodifiedby as dlastmodifiedby,d.lastmodifiedtime as dlastmodifiedtime,d.tenantid as dtenantid "
 			+ " from egbs_demand d inner join egbs_demanddetail dl ON d.id=dl.demandid AND d.tenantid=dl.tenantid "
 			+ " LEFT OUTER JOIN eg_user U ON U.id::CHARACTER VARYING=d.owner"
-			+ " WHERE d.businessservice IN ('TL','PT') AND d.tenantid ilike 'pb%' "
-			+ " AND d.id IN (select id from egbs_demand order by id offset ? limit ?);";
-	
-	public static final String COUNT_QUERY = "select count(*) from egbs_demand where businessservice IN ('TL','PT') AND tenantid ilike 'pb%';";
-	
-	private Comparator<DemandDetail> demandDetailOrdercomparator;
+			+ " WHERE" + LEGACY_DEMAND_CONDITION
+			+ " AND (d.id, d.tenantid) > (?, ?) AND (d.id, d.tenantid) <= (?, ?)";
+
+	/*
+	 * keys of the next page of a range, read from the primary key index
+	 */
+	public static final String KEY_PAGE_QUERY = "SELECT d.id, d.tenantid FROM egbs_demand d WHERE" + LEGACY_DEMAND_CONDITION
+			+ " AND (d.id, d.tenantid) > (?, ?) AND (d.id, d.tenantid) <= (?, ?) ORDER BY d.id, d.tenantid LIMIT ?";
+
+	/*
+	 * last key of each of the ranges of about the same count of demands
+	 */
+	public static final String RANGE_QUERY = "SELECT DISTINCT ON (range) id, tenantid FROM"
+			+ " (SELECT d.id, d.tenantid, ntile(?) OVER (ORDER BY d.id, d.tenantid) AS range FROM egbs_demand d"
+			+ " WHERE" + LEGACY_DEMAND_CONDITION + ") ranges"
+			+ " ORDER BY range, id DESC, tenantid DESC";
+
+	public static final String CHECKPOINT_SEARCH_QUERY = "SELECT rangeno, upperid, uppertenantid, lastid, lasttenantid,"
+			+ " migratedcount, iscompleted FROM egbs_demand_migration_checkpoint ORDER BY rangeno";
+
+	public static final String CHECKPOINT_INSERT_QUERY = "INSERT INTO egbs_demand_migration_checkpoint (rangeno, upperid,"
+			+ " uppertenantid, lastid, lasttenantid, migratedcount, iscompleted, lastmodifiedtime)"
+			+ " VALUES (?, ?, ?, ?, ?, 0, false, ?)";
+
+	public static final String CHECKPOINT_UPDATE_QUERY = "UPDATE egbs_demand_migration_checkpoint SET lastid = ?,"
+			+ " lasttenantid = ?, migratedcount = ?, iscompleted = ?, lastmodifiedtime = ? WHERE rangeno = ?";
+
+	/*
+	 * lower bound of the first range, below every key
+	 */
+	private static final String FIRST_KEY = "";
+
+	/*
+	 * rank of the tax heads in the order of apportioning, the details of a demand
+	 * are put in rank order by a single pass over them
+	 */
+	private static final Map<String, Integer> TAX_HEAD_RANKS = new HashMap<>();
+
+	private static final int RANK_COUNT = 6;
+
+	static {
+		TAX_HEAD_RANKS.put("TL_TAX", 5);
+		TAX_HEAD_RANKS.put("TL_ROUNDOFF", 1);
+		TAX_HEAD_RANKS.put("TL_ADHOC_REBATE", 0);
+		TAX_HEAD_RANKS.put("TL_ADHOC_PENALTY", 3);
+
+		TAX_HEAD_RANKS.put("PT_TIME_REBATE", 0);
+		TAX_HEAD_RANKS.put("PT_ADHOC_REBATE", 0);
+		TAX_HEAD_RANKS.put("PT_OWNER_EXEMPTION", 0);
+		TAX_HEAD_RANKS.put("PT_ADVANCE_CARRYFORWARD", 0);
+		TAX_HEAD_RANKS.put("PT_UNIT_USAGE_EXEMPTION", 0);
+
+		TAX_HEAD_RANKS.put("PT_ROUNDOFF", 1);
+
+		TAX_HEAD_RANKS.put("PT_TIME_INTEREST", 2);
+		TAX_HEAD_RANKS.put("PT_TIME_PENALTY", 3);
+		TAX_HEAD_RANKS.put("PT_ADHOC_PENALTY", 3);
+
+		TAX_HEAD_RANKS.put("PT_FIRE_CESS", 4);
+		TAX_HEAD_RANKS.put("PT_CANCER_CESS", 4);
+
+		TAX_HEAD_RANKS.put("PT_TAX", 5);
+	}
 
 	@Autowired
 	private JdbcTemplate jdbcTemplate;
@@ -52,95 +134,181 @@ public class DemandMigration {
 	
 	@Autowired
 	private DemandRepository demandRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
 	
 	@Value("${migration.batch.value}")
 	private Integer batchSize;
-	
-	@PostConstruct
-	public void createDemadDetailComparator() {
-		
-		Map<String, Integer> taxHeadOrderMap = new HashMap<>();
-		taxHeadOrderMap.put("TL_TAX", 5);
-		taxHeadOrderMap.put("TL_ROUNDOFF", 1);
-		taxHeadOrderMap.put("TL_ADHOC_REBATE", 0);
-		taxHeadOrderMap.put("TL_ADHOC_PENALTY", 3);
-		
-		taxHeadOrderMap.put("PT_TIME_REBATE", 0);
-		taxHeadOrderMap.put("PT_ADHOC_REBATE", 0);
-		taxHeadOrderMap.put("PT_OWNER_EXEMPTION", 0);
-		taxHeadOrderMap.put("PT_ADVANCE_CARRYFORWARD", 0);
-		taxHeadOrderMap.put("PT_UNIT_USAGE_EXEMPTION", 0);
-		
-		taxHeadOrderMap.put("PT_ROUNDOFF", 1);
-		
-		taxHeadOrderMap.put("PT_TIME_INTEREST", 2);
-		taxHeadOrderMap.put("PT_TIME_PENALTY", 3);
-		taxHeadOrderMap.put("PT_ADHOC_PENALTY", 3);
-		
-		taxHeadOrderMap.put("PT_FIRE_CESS", 4);
-		taxHeadOrderMap.put("PT_CANCER_CESS", 4);
-		
-		taxHeadOrderMap.put("PT_TAX", 5);
-		
-		
-		demandDetailOrdercomparator = new Comparator<DemandDetail>() {
 
-			private Map<String, Integer> orderMap = taxHeadOrderMap;
+	@Value("${migration.thread.count}")
+	private Integer threadCount;
 
-			@Override
-			public int compare(DemandDetail dD1, DemandDetail dD2) {
+	private final AtomicBoolean running = new AtomicBoolean();
 
-				Integer int1 = orderMap.get(dD1.getTaxHeadMasterCode());
-				Integer int2 = orderMap.get(dD2.getTaxHeadMasterCode());
-				return int1.compareTo(int2);
-			}
-		};
+	/**
+	 * Migrates the ranges which are not completed yet, in parallel
+	 *
+	 * @param threadCountInput count of ranges the demands are split into on the
+	 *                         first run and of threads migrating them
+	 * @param batchSizeInput   demands of a page
+	 * @return the outcome of every range
+	 */
+	public Map<String, String> migrateToV1(Integer threadCountInput, Integer batchSizeInput) {
+
+		if (!running.compareAndSet(false, true))
+			throw new CustomException("EG_BS_MIGRATION_RUNNING", "The demand migration is already running");
+		try {
+			return migrate(null != threadCountInput && threadCountInput > 0 ? threadCountInput : threadCount,
+					null != batchSizeInput && batchSizeInput > 0 ? batchSizeInput : batchSize);
+		} finally {
+			running.set(false);
+		}
 	}
-	
-	public Map<String, String> migrateToV1(Integer startBatch, Integer batchSizeInput) {
-		
-		Map<String, String> responseMap = new HashMap<>();
-		
-		int count = jdbcTemplate.queryForObject(COUNT_QUERY, Integer.class);
-		int i = 0;
-		if (null != startBatch && startBatch > 0)
-			i = startBatch;
-		
-		if(null != batchSizeInput && batchSizeInput > 0)
-			batchSize = batchSizeInput;
-		
-		for( ; i<count;i = i+batchSize) {
 
-			List<Demand> demands = jdbcTemplate.query(SELECT_QUERY, new Object[] { i, batchSize }, demandRowMapper);
-			try {
+	private Map<String, String> migrate(int threads, int pageSize) {
+
+		Map<String, String> responseMap = new LinkedHashMap<>();
+		List<MigrationRange> pendingRanges = new ArrayList<>();
+		for (MigrationRange range : getRanges(threads)) {
+			if (range.isCompleted())
+				responseMap.put(getRangeName(range), getCompletedMessage(range));
+			else
+				pendingRanges.add(range);
+		}
+		if (pendingRanges.isEmpty())
+			return responseMap;
+
+		AtomicInteger threadNumber = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, pendingRanges.size()), runnable -> {
+			Thread thread = new Thread(runnable, "demand-migration-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
 
-				apportionDemands(demands);
-				postDemands(demands);
-			} catch (Exception e) {
+		Map<MigrationRange, Future<String>> results = new LinkedHashMap<>();
+		try {
+			for (MigrationRange range : pendingRanges)
+				results.put(range, executor.submit(() -> migrateRange(range, pageSize)));
 
-				log.error("Migration failed at batch count of : " + i);
-				responseMap.put( "Migration failed at batch count : " + i, e.getMessage());
-				return responseMap;
+			for (Entry<MigrationRange, Future<String>> result : results.entrySet()) {
+				MigrationRange range = result.getKey();
+				try {
+					responseMap.put(getRangeName(range), result.getValue().get());
+				} catch (ExecutionException e) {
+					log.error("Migration of range {} failed after the demand {}", range.getRangeNo(), range.getLastId(),
+							e.getCause());
+					responseMap.put(getRangeName(range), "FAILED after the demand " + range.getLastId() + " of "
+							+ range.getLastTenantId() + " : " + e.getCause().getMessage());
+				}
 			}
-			addResponseToMap(demands,responseMap,"SUCCESS");
-			log.info(" count completed : " + i);
-		} 
-		
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CustomException("EG_BS_MIGRATION_INTERRUPTED", "The demand migration was interrupted");
+		} finally {
+			executor.shutdownNow();
+		}
 		return responseMap;
 	}
-	
-	private void addResponseToMap(List<Demand> demands, Map<String, String> responseMap, String message) {
 
-		demands.forEach(demand -> {
-			
-			responseMap.put(demand.getId(), message);
-			log.info("the demand id : " + demand.getId() + " message : " + message);
+	/**
+	 * Returns the ranges of the checkpoint table, planning them when there are
+	 * none
+	 *
+	 * @param rangeCount
+	 */
+	List<MigrationRange> getRanges(int rangeCount) {
+
+		List<MigrationRange> ranges = jdbcTemplate.query(CHECKPOINT_SEARCH_QUERY,
+				(rs, rowNum) -> new MigrationRange(rs.getInt("rangeno"), rs.getString("upperid"),
+						rs.getString("uppertenantid"), rs.getString("lastid"), rs.getString("lasttenantid"),
+						rs.getLong("migratedcount"), rs.getBoolean("iscompleted")));
+		if (!ranges.isEmpty())
+			return ranges;
+
+		List<String[]> upperKeys = jdbcTemplate.query(RANGE_QUERY,
+				(rs, rowNum) -> new String[] { rs.getString("id"), rs.getString("tenantid") }, rangeCount);
+
+		List<MigrationRange> plannedRanges = new ArrayList<>();
+		String[] lowerKey = { FIRST_KEY, FIRST_KEY };
+		for (int i = 0; i < upperKeys.size(); i++) {
+			String[] upperKey = upperKeys.get(i);
+			plannedRanges.add(new MigrationRange(i, upperKey[0], upperKey[1], lowerKey[0], lowerKey[1], 0, false));
+			lowerKey = upperKey;
+		}
+
+		/*
+		 * the plan is written as a whole, a partial plan would be taken as complete by the next run
+		 */
+		long currentTime = System.currentTimeMillis();
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			for (MigrationRange range : plannedRanges)
+				jdbcTemplate.update(CHECKPOINT_INSERT_QUERY, range.getRangeNo(), range.getUpperId(),
+						range.getUpperTenantId(), range.getLastId(), range.getLastTenantId(), currentTime);
 		});
+		log.info("Demand migration planned in {} ranges", plannedRanges.size());
+		return plannedRanges;
+	}
+
+	/**
+	 * Migrates a range page by page from its checkpoint
+	 *
+	 * @param range
+	 * @param pageSize
+	 */
+	String migrateRange(MigrationRange range, int pageSize) {
+
+		while (!range.isCompleted()) {
+
+			List<String[]> keys = jdbcTemplate.query(KEY_PAGE_QUERY,
+					(rs, rowNum) -> new String[] { rs.getString(1), rs.getString(2) }, range.getLastId(),
+					range.getLastTenantId(), range.getUpperId(), range.getUpperTenantId(), pageSize);
+
+			if (keys.isEmpty()) {
+				saveCheckpoint(range.getLastId(), range.getLastTenantId(), range.getMigratedCount(), true, range);
+				range.setCompleted(true);
+				break;
+			}
+
+			String[] pageEnd = keys.get(keys.size() - 1);
+			List<Demand> demands = jdbcTemplate.query(SELECT_QUERY, demandRowMapper, range.getLastId(),
+					range.getLastTenantId(), pageEnd[0], pageEnd[1]);
+			apportionDemands(demands);
+
+			long migratedCount = range.getMigratedCount() + demands.size();
+			new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+				if (!demands.isEmpty())
+					postDemands(demands);
+				saveCheckpoint(pageEnd[0], pageEnd[1], migratedCount, false, range);
+			});
+
+			range.setLastId(pageEnd[0]);
+			range.setLastTenantId(pageEnd[1]);
+			range.setMigratedCount(migratedCount);
+			log.info("Demand migration of range {} at the demand {}, {} demands migrated", range.getRangeNo(),
+					pageEnd[0], migratedCount);
+		}
+		return getCompletedMessage(range);
+	}
+
+	private void saveCheckpoint(String lastId, String lastTenantId, long migratedCount, boolean isCompleted,
+			MigrationRange range) {
+
+		jdbcTemplate.update(CHECKPOINT_UPDATE_QUERY, lastId, lastTenantId, migratedCount, isCompleted,
+				System.currentTimeMillis(), range.getRangeNo());
+	}
+
+	private static String getRangeName(MigrationRange range) {
+		return "range " + range.getRangeNo();
+	}
+
+	private static String getCompletedMessage(MigrationRange range) {
+		return "SUCCESS, " + range.getMigratedCount() + " demands migrated";
 	}
 
 	private void postDemands(List<Demand> demands) {
 		
-		demandRepository.save(DemandRequest.builder().demands(demands).requestInfo(null).build());
+		demandRepository.saveInBulk(DemandRequest.builder().demands(demands).requestInfo(null).build());
 	}
 
 	/**
@@ -152,8 +320,8 @@ public class DemandMigration {
 	
 		for(Demand demand : demands) {
 			
-			List<DemandDetail> details = demand.getDemandDetails();
-			Collections.sort(details, demandDetailOrdercomparator);
+			List<DemandDetail> details = sortByTaxHeadRank(demand.getDemandDetails());
+			demand.setDemandDetails(details);
 			
 			BigDecimal collectionAmount = BigDecimal.ZERO;
 			for (DemandDetail detail : details) {
@@ -163,6 +331,31 @@ public class DemandMigration {
 		}
 	}
 
+	/**
+	 * Puts the details in the rank order of their tax heads, keeping the order of
+	 * the details of the same rank
+	 *
+	 * @param details
+	 */
+	static List<DemandDetail> sortByTaxHeadRank(List<DemandDetail> details) {
+
+		List<List<DemandDetail>> rankedDetails = new ArrayList<>(RANK_COUNT);
+		for (int rank = 0; rank < RANK_COUNT; rank++)
+			rankedDetails.add(new ArrayList<>(2));
+
+		for (DemandDetail detail : details) {
+			Integer rank = TAX_HEAD_RANKS.get(detail.getTaxHeadMasterCode());
+			if (null == rank)
+				throw new CustomException("EG_BS_MIGRATION_TAXHEAD_ERROR",
+						"No apportion order for the tax head " + detail.getTaxHeadMasterCode());
+			rankedDetails.get(rank).add(detail);
+		}
+
+		List<DemandDetail> sortedDetails = new ArrayList<>(details.size());
+		rankedDetails.forEach(sortedDetails::addAll);
+		return sortedDetails;
+	}
+
 	/**
 	 * Method to apportion the DemandDetail object 
 	 * 
@@ -198,5 +391,28 @@ public class DemandMigration {
 		 */
 		return totalCollectionAmount;
 	}
-	
+
+	/**
+	 * Key range of the legacy demands, from the key of the last demand migrated,
+	 * excluded, to the upper key, included
+	 */
+	@Getter
+	@Setter
+	@AllArgsConstructor
+	static class MigrationRange {
+
+		private int rangeNo;
+
+		private String upperId;
+
+		private String upperTenantId;
+
+		private String lastId;
+
+		private String lastTenantId;
+
+		private long migratedCount;
+
+		private boolean completed;
+	}
 }
@@ -0,0 +1,24 @@
+package org.egov.demand.web.contract;
+
+import org.egov.common.contract.response.ResponseInfo;
+import org.egov.demand.model.BillCancelJob;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BillCancelJobResponse {
+
+	@JsonProperty("ResponseInfo")
+	private ResponseInfo responseInfo;
+
+	@JsonProperty("BillCancelJob")
+	private BillCancelJob billCancelJob;
+}
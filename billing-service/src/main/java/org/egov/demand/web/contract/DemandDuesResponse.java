@@ -0,0 +1,28 @@
+package org.egov.demand.web.contract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.egov.common.contract.response.ResponseInfo;
+import org.egov.demand.model.ConsumerDues;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DemandDuesResponse {
+
+	@JsonProperty("ResponseInfo")
+	private ResponseInfo responseInfo;
+
+	@Builder.Default
+	@JsonProperty("Dues")
+	private List<ConsumerDues> dues = new ArrayList<>();
+}
@@ -45,7 +45,9 @@ import java.util.List;
 import org.egov.common.contract.response.ResponseInfo;
 import org.egov.demand.model.CollectedReceipt;
 import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandPageKey;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import lombok.AllArgsConstructor;
@@ -67,6 +69,10 @@ public class DemandResponse {
 
 	@JsonProperty("CollectedReceipt")
 	private List<CollectedReceipt> collectedReceipts;
+
+	@JsonProperty("NextPageKey")
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private DemandPageKey nextPageKey;
 	
 	public DemandResponse(ResponseInfo responseInfo,List<Demand> demands){
 		this.responseInfo=responseInfo;
@@ -46,6 +46,7 @@ import jakarta.validation.Valid;
 
 import org.egov.common.contract.response.ResponseInfo;
 import org.egov.demand.amendment.model.Amendment;
+import org.egov.demand.amendment.model.AmendmentBulkUpdateRequest;
 import org.egov.demand.amendment.model.AmendmentCriteria;
 import org.egov.demand.amendment.model.AmendmentRequest;
 import org.egov.demand.amendment.model.AmendmentResponse;
@@ -122,5 +123,24 @@ public class AmendmentController {
 		return new ResponseEntity<>(amendmentResponse, HttpStatus.OK);
 	}
 
+	/**
+	 * API to update Amendments in bulk, used only with workflow
+	 *
+	 * @return ResponseEntity<?>
+	 */
+	@PostMapping("_bulkupdate")
+	public ResponseEntity<?> bulkUpdate(@RequestBody @Valid AmendmentBulkUpdateRequest amendmentBulkUpdateRequest) {
+
+		List<Amendment> amendments = amendmentService.bulkUpdateAmendments(amendmentBulkUpdateRequest);
+
+		ResponseInfo responseInfo = responseFactory.getResponseInfo(amendmentBulkUpdateRequest.getRequestInfo(), HttpStatus.OK);
+		AmendmentResponse amendmentResponse = AmendmentResponse.builder()
+				.amendments(amendments)
+				.responseInfo(responseInfo)
+				.build();
+
+		return new ResponseEntity<>(amendmentResponse, HttpStatus.OK);
+	}
+
 
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package org.egov.demand.web.controller;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import jakarta.validation.Valid;
+
+import org.egov.common.contract.response.ResponseInfo;
+import org.egov.demand.repository.DemandAuditJournal;
+import org.egov.demand.util.Constants;
+import org.egov.demand.web.contract.RequestInfoWrapper;
+import org.egov.demand.web.contract.factory.ResponseFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/audit/journal")
+public class AuditJournalController {
+
+	@Autowired
+	private DemandAuditJournal demandAuditJournal;
+
+	@Autowired
+	private ResponseFactory responseFactory;
+
+	@PostMapping("_lag")
+	@ResponseBody
+	public ResponseEntity<?> lag(@RequestBody @Valid final RequestInfoWrapper requestInfoWrapper) {
+
+		ResponseInfo responseInfo = responseFactory.getResponseInfo(requestInfoWrapper.getRequestInfo(), HttpStatus.OK);
+		Map<String, Object> responseMap = new HashMap<>();
+		responseMap.put(Constants.RESPONSEINFO_STRING, responseInfo);
+		responseMap.put(Constants.AUDIT_JOURNAL_LAG_KEY, demandAuditJournal.getLag());
+		return new ResponseEntity<>(responseMap, HttpStatus.OK);
+	}
+}
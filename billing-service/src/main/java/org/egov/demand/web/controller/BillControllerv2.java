@@ -1,5 +1,7 @@
 package org.egov.demand.web.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -7,12 +9,17 @@ import jakarta.validation.Valid;
 
 import org.egov.common.contract.request.RequestInfo;
 import org.egov.common.contract.response.ResponseInfo;
+import org.egov.demand.config.ReplicaRouting;
 import org.egov.demand.helper.BillHelperV2;
+import org.egov.demand.model.BillCancelJob;
 import org.egov.demand.model.BillSearchCriteria;
+import org.egov.demand.model.BulkCancelBillRequest;
 import org.egov.demand.model.GenerateBillCriteria;
 import org.egov.demand.model.UpdateBillRequest;
 import org.egov.demand.service.BillServicev2;
+import org.egov.demand.service.BulkBillCancelService;
 import org.egov.demand.util.Constants;
+import org.egov.demand.web.contract.BillCancelJobResponse;
 import org.egov.demand.web.contract.BillRequestV2;
 import org.egov.demand.web.contract.BillResponseV2;
 import org.egov.demand.web.contract.RequestInfoWrapper;
@@ -21,14 +28,18 @@ import org.egov.demand.web.validator.BillValidator;
 import org.egov.tracer.model.CustomException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
 
 @RestController
 @RequestMapping("bill/v2/")
@@ -45,6 +56,9 @@ public class BillControllerv2 {
 	
 	@Autowired
 	private BillHelperV2 billHelper;
+
+	@Autowired
+	private BulkBillCancelService bulkBillCancelService;
 	
 	@PostMapping("_search")
 	@ResponseBody
@@ -53,7 +67,8 @@ public class BillControllerv2 {
 
 		RequestInfo requestInfo = requestInfoWrapper.getRequestInfo();
 		billValidator.validateBillSearchCriteria(billCriteria, requestInfo);
-		return new ResponseEntity<>(billService.searchBill(billCriteria,requestInfo), HttpStatus.OK);
+		return new ResponseEntity<>(ReplicaRouting.onReplica(() -> billService.searchBill(billCriteria, requestInfo)),
+				HttpStatus.OK);
 	}
 
 
@@ -108,4 +123,52 @@ public class BillControllerv2 {
 		responseMap.put(Constants.MESSAGE_STRING, responseMsg);
 		return new ResponseEntity<>(responseMap, status);
 	}
+
+	/**
+	 * API to cancel the bills of many consumer codes or bill ids in the
+	 * background, the job returned reports the progress on _bulkcancel/_status
+	 */
+	@PostMapping(value = "_bulkcancel", consumes = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public ResponseEntity<?> bulkCancelBill(@RequestBody @Valid BulkCancelBillRequest bulkCancelRequest) {
+
+		BillCancelJob job = bulkBillCancelService.submit(bulkCancelRequest, null);
+		return getBillCancelJobResponse(bulkCancelRequest.getRequestInfo(), job, HttpStatus.ACCEPTED);
+	}
+
+	/**
+	 * API to cancel the bills of the consumer codes of a file, one per line or in
+	 * the first column of a csv, with the criteria in the BulkCancelBillRequest part
+	 */
+	@PostMapping(value = "_bulkcancel", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+	@ResponseBody
+	public ResponseEntity<?> bulkCancelBillFile(
+			@RequestPart("BulkCancelBillRequest") @Valid BulkCancelBillRequest bulkCancelRequest,
+			@RequestPart("file") MultipartFile file) throws IOException {
+
+		BillCancelJob job;
+		try (InputStream inputStream = file.getInputStream()) {
+			job = bulkBillCancelService.submit(bulkCancelRequest, inputStream);
+		}
+		return getBillCancelJobResponse(bulkCancelRequest.getRequestInfo(), job, HttpStatus.ACCEPTED);
+	}
+
+	@PostMapping("_bulkcancel/_status")
+	@ResponseBody
+	public ResponseEntity<?> bulkCancelStatus(@RequestBody @Valid RequestInfoWrapper requestInfoWrapper,
+			@RequestParam String tenantId, @RequestParam String jobId) {
+
+		BillCancelJob job = bulkBillCancelService.getJob(tenantId, jobId);
+		return getBillCancelJobResponse(requestInfoWrapper.getRequestInfo(), job, HttpStatus.OK);
+	}
+
+	private ResponseEntity<BillCancelJobResponse> getBillCancelJobResponse(RequestInfo requestInfo, BillCancelJob job,
+			HttpStatus status) {
+
+		BillCancelJobResponse response = BillCancelJobResponse.builder()
+				.responseInfo(responseFactory.getResponseInfo(requestInfo, status))
+				.billCancelJob(job)
+				.build();
+		return new ResponseEntity<>(response, status);
+	}
 }
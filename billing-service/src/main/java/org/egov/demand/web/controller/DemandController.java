@@ -39,23 +39,36 @@
  */
 package org.egov.demand.web.controller;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
 import java.util.Map;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 
 import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.config.AsyncRequestTimeoutConfig;
+import org.egov.demand.config.ReplicaRouting;
 import org.egov.demand.model.Demand;
 import org.egov.demand.model.DemandCriteria;
+import org.egov.demand.model.DemandDueCriteria;
+import org.egov.demand.service.DemandDuesService;
 import org.egov.demand.service.DemandService;
+import org.egov.demand.util.Constants;
 import org.egov.demand.util.migration.DemandMigration;
+import org.egov.demand.web.contract.DemandDuesResponse;
 import org.egov.demand.web.contract.DemandRequest;
 import org.egov.demand.web.contract.DemandResponse;
 import org.egov.demand.web.contract.RequestInfoWrapper;
 import org.egov.demand.web.contract.factory.ResponseFactory;
+import org.egov.demand.web.validator.DemandValidatorV1;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -65,6 +78,9 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -82,6 +98,18 @@ public class DemandController {
 	@Autowired
 	private DemandMigration migrationService;
 
+	@Autowired
+	private DemandValidatorV1 demandValidatorV1;
+
+	@Autowired
+	private DemandDuesService demandDuesService;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	@Autowired
+	private ApplicationProperties appProps;
+
 	/**
 	 * API to create demands
 	 *
@@ -112,11 +140,66 @@ public class DemandController {
 
 		RequestInfo requestInfo = requestInfoWrapper.getRequestInfo();
 
-		List<Demand> demands = demandService.getDemands(demandCriteria, requestInfo);
-		DemandResponse response = DemandResponse.builder().demands(demands)
-				.responseInfo(responseFactory.getResponseInfo(requestInfo, HttpStatus.OK)).build();
+		DemandResponse response = ReplicaRouting.onReplica(() -> demandService.searchDemands(demandCriteria, requestInfo));
+		response.setResponseInfo(responseFactory.getResponseInfo(requestInfo, HttpStatus.OK));
+		return new ResponseEntity<>(response, HttpStatus.OK);
+	}
+
+	/**
+	 * API to stream the demands of a search as newline delimited json, one demand
+	 * per line, without holding the whole result in memory
+	 */
+	@PostMapping(value = "_stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> stream(@RequestBody RequestInfoWrapper requestInfoWrapper,
+			@ModelAttribute @Valid DemandCriteria demandCriteria, HttpServletRequest request) {
+
+		RequestInfo requestInfo = requestInfoWrapper.getRequestInfo();
+		demandValidatorV1.validateDemandCriteria(demandCriteria, requestInfo);
+		request.setAttribute(AsyncRequestTimeoutConfig.ASYNC_REQUEST_TIMEOUT_ATTRIBUTE, appProps.getDemandStreamTimeout());
+
+		StreamingResponseBody responseBody = outputStream -> ReplicaRouting.onReplica(() -> demandService
+				.streamDemands(demandCriteria, requestInfo, demand -> writeLine(outputStream, demand)));
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(responseBody);
+	}
+
+	/**
+	 * API to fetch the outstanding dues of consumer codes from the dues read model
+	 */
+	@PostMapping("_dues")
+	public ResponseEntity<?> dues(@RequestBody RequestInfoWrapper requestInfoWrapper,
+			@ModelAttribute @Valid DemandDueCriteria dueCriteria) {
+
+		RequestInfo requestInfo = requestInfoWrapper.getRequestInfo();
+
+		DemandDuesResponse response = DemandDuesResponse.builder()
+				.dues(demandDuesService.getDues(dueCriteria, requestInfo))
+				.responseInfo(responseFactory.getResponseInfo(requestInfo, HttpStatus.OK))
+				.build();
 		return new ResponseEntity<>(response, HttpStatus.OK);
 	}
+
+	/**
+	 * API to rebuild the dues read model of a tenant from its demands
+	 */
+	@PostMapping("dues/_reconcile")
+	public ResponseEntity<?> reconcileDues(@RequestBody @Valid RequestInfoWrapper requestInfoWrapper,
+			@RequestParam(required = true) String tenantId) {
+
+		Map<String, Object> responseMap = new HashMap<>();
+		responseMap.put(Constants.RESPONSEINFO_STRING,
+				responseFactory.getResponseInfo(requestInfoWrapper.getRequestInfo(), HttpStatus.OK));
+		responseMap.put(Constants.DUES_RECONCILED_KEY, demandDuesService.reconcile(tenantId));
+		return new ResponseEntity<>(responseMap, HttpStatus.OK);
+	}
+
+	private void writeLine(OutputStream outputStream, Demand demand) {
+		try {
+			outputStream.write(mapper.writeValueAsBytes(demand));
+			outputStream.write('\n');
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
 	
 	/*
 	 * migration api
@@ -125,9 +208,9 @@ public class DemandController {
     @PostMapping(value = "/_migratetov1")
     @ResponseBody
 	public ResponseEntity<?> migrate(@RequestBody @Valid RequestInfoWrapper wrapper,
-			@RequestParam(required=false) Integer batchStart, @RequestParam(required=true) Integer batchSizeInput) {
+			@RequestParam(required=false) Integer threadCount, @RequestParam(required=true) Integer batchSizeInput) {
 
-		Map<String, String> resultMap = migrationService.migrateToV1(batchStart, batchSizeInput);
+		Map<String, String> resultMap = migrationService.migrateToV1(threadCount, batchSizeInput);
 		return new ResponseEntity<>(resultMap, HttpStatus.OK);
 	}
     
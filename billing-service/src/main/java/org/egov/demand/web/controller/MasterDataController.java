@@ -0,0 +1,46 @@
+package org.egov.demand.web.controller;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import jakarta.validation.Valid;
+
+import org.egov.common.contract.response.ResponseInfo;
+import org.egov.demand.service.MasterDataService;
+import org.egov.demand.util.Constants;
+import org.egov.demand.web.contract.RequestInfoWrapper;
+import org.egov.demand.web.contract.factory.ResponseFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/masterdata")
+public class MasterDataController {
+
+	@Autowired
+	private MasterDataService masterDataService;
+
+	@Autowired
+	private ResponseFactory responseFactory;
+
+	@PostMapping("_refresh")
+	@ResponseBody
+	public ResponseEntity<?> refresh(@RequestBody @Valid final RequestInfoWrapper requestInfoWrapper,
+			@RequestParam(required = false) String tenantId) {
+
+		masterDataService.refresh(tenantId);
+
+		ResponseInfo responseInfo = responseFactory.getResponseInfo(requestInfoWrapper.getRequestInfo(), HttpStatus.OK);
+		Map<String, Object> responseMap = new HashMap<>();
+		responseMap.put(Constants.RESPONSEINFO_STRING, responseInfo);
+		responseMap.put(Constants.MESSAGE_STRING, Constants.MASTERDATA_REFRESH_MSG);
+		return new ResponseEntity<>(responseMap, HttpStatus.OK);
+	}
+}
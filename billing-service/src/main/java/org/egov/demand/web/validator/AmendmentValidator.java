@@ -19,6 +19,7 @@ import jakarta.validation.Valid;
 
 import org.egov.common.contract.request.RequestInfo;
 import org.egov.demand.amendment.model.Amendment;
+import org.egov.demand.amendment.model.AmendmentBulkUpdateRequest;
 import org.egov.demand.amendment.model.AmendmentCriteria;
 import org.egov.demand.amendment.model.AmendmentRequest;
 import org.egov.demand.amendment.model.AmendmentUpdate;
@@ -26,6 +27,7 @@ import org.egov.demand.amendment.model.AmendmentUpdateRequest;
 import org.egov.demand.amendment.model.ProcessInstance;
 import org.egov.demand.amendment.model.enums.AmendmentStatus;
 import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.AuditDetails;
 import org.egov.demand.model.BusinessServiceDetail;
 import org.egov.demand.model.Demand;
 import org.egov.demand.model.DemandCriteria;
@@ -290,5 +292,91 @@ public class AmendmentValidator {
 		amendmentUpdate.setAuditDetails(util.getAuditDetail(amendmentUpdateRequest.getRequestInfo()));
 		return amendments.get(0);
 	}
-	
+
+	/**
+	 * Validating for bulk update, the amendments of all the updates are searched in one query
+	 *
+	 * @param amendmentBulkUpdateRequest
+	 * @return amendments from search mapped by amendment id
+	 */
+	public Map<String, Amendment> validateAndEnrichAmendmentsForBulkUpdate(AmendmentBulkUpdateRequest amendmentBulkUpdateRequest) {
+
+		if (!props.getIsAmendmentworkflowEnabed()) {
+			throw new CustomException("EG_BS_AMENDMENT_UPDATE_WF_ERROR",
+					"Amendment update is not allowed when workflow is disabled");
+		}
+
+		List<AmendmentUpdate> amendmentUpdates = amendmentBulkUpdateRequest.getAmendmentUpdates();
+		if (amendmentUpdates.size() > props.getAmendmentBulkMaxSize())
+			throw new CustomException("EG_BS_AMENDMENT_BULK_UPDATE_ERROR",
+					"A bulk update can not have more than " + props.getAmendmentBulkMaxSize() + " amendments");
+
+		Set<String> tenantIds = amendmentUpdates.stream().map(AmendmentUpdate::getTenantId).collect(Collectors.toSet());
+		if (tenantIds.size() > 1)
+			throw new CustomException("EG_BS_AMENDMENT_BULK_UPDATE_ERROR",
+					"All the amendments of a bulk update should belong to the same tenant");
+
+		Set<String> amendmentIds = new HashSet<>();
+		Set<String> duplicateIds = new HashSet<>();
+		for (AmendmentUpdate amendmentUpdate : amendmentUpdates) {
+			if (!amendmentIds.add(amendmentUpdate.getAmendmentId()))
+				duplicateIds.add(amendmentUpdate.getAmendmentId());
+		}
+		if (!duplicateIds.isEmpty())
+			throw new CustomException("EG_BS_AMENDMENT_BULK_UPDATE_ERROR",
+					"Amendments can be updated only once in a bulk update, repeated amendmentIds : " + duplicateIds);
+
+		Map<String, String> errorMap = new HashMap<>();
+
+		/*
+		 * checking for amendments in system
+		 */
+		AmendmentCriteria criteria = AmendmentCriteria.builder()
+				.tenantId(tenantIds.iterator().next())
+				.amendmentIds(amendmentIds)
+				.limit(amendmentIds.size())
+				.build();
+		Map<String, Amendment> amendmentsFromSearch = amendmentRepository.getAmendments(criteria).stream()
+				.collect(Collectors.toMap(Amendment::getAmendmentId, Function.identity()));
+
+		Set<String> missingIds = new HashSet<>(amendmentIds);
+		missingIds.removeAll(amendmentsFromSearch.keySet());
+		if (!missingIds.isEmpty())
+			errorMap.put("EG_BS_AMENDMENT_UPDATE_ERROR",
+					"No Amendment found in the system for the amendmentIds : " + missingIds + ", Please provide valid ids for update");
+
+		/*
+		 * validating workflow fields
+		 */
+		Set<String> idsWithInvalidWorkflow = new HashSet<>();
+		for (AmendmentUpdate amendmentUpdate : amendmentUpdates) {
+
+			ProcessInstance workflow = amendmentUpdate.getWorkflow();
+			if (workflow.getAction() == null || workflow.getBusinessId() == null
+					|| workflow.getBusinessService() == null || workflow.getModuleName() == null)
+				idsWithInvalidWorkflow.add(amendmentUpdate.getAmendmentId());
+			else
+				workflow.setBusinessId(amendmentUpdate.getAmendmentId());
+		}
+		if (!idsWithInvalidWorkflow.isEmpty())
+			errorMap.put("EG_BS_AMENDMENT_UPDATE_WF_ERROR",
+					"Mandatory workflow fileds missing in the update of the amendmentIds : " + idsWithInvalidWorkflow
+							+ ", Please add all the following fields module, businessservice, businessid and action");
+
+		if (!CollectionUtils.isEmpty(errorMap))
+			throw new CustomException(errorMap);
+
+		/*
+		 * enriching the update objects
+		 */
+		AuditDetails auditDetails = util.getAuditDetail(amendmentBulkUpdateRequest.getRequestInfo());
+		for (AmendmentUpdate amendmentUpdate : amendmentUpdates) {
+
+			Amendment amendmentFromSearch = amendmentsFromSearch.get(amendmentUpdate.getAmendmentId());
+			amendmentUpdate.setAdditionalDetails(util.jsonMerge(amendmentFromSearch.getAdditionalDetails(), amendmentUpdate.getAdditionalDetails()));
+			amendmentUpdate.setAuditDetails(auditDetails);
+		}
+		return amendmentsFromSearch;
+	}
+
 }
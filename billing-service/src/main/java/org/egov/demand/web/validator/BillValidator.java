@@ -8,6 +8,7 @@ import java.util.Map;
 
 import org.egov.common.contract.request.RequestInfo;
 import org.egov.demand.model.BillSearchCriteria;
+import org.egov.demand.model.BulkCancelBillCriteria;
 import org.egov.demand.model.BillV2.BillStatus;
 import org.egov.demand.model.GenerateBillCriteria;
 import org.egov.demand.model.UpdateBillCriteria;
@@ -68,8 +69,43 @@ public class BillValidator {
 	public void validateBillSearchRequest(UpdateBillCriteria cancelBillCriteria) {
 
 		cancelBillCriteria.setStatusToBeUpdated(BillStatus.CANCELLED);
-		JsonNode additionalDetails = cancelBillCriteria.getAdditionalDetails();
 		Map<String, String> errorMap = new HashMap<>();
+		validateCancellationReason(cancelBillCriteria.getAdditionalDetails(), errorMap);
+
+		if (!CollectionUtils.isEmpty(errorMap)) {
+			throw new CustomException(errorMap);
+		}
+	}
+
+	/**
+	 * validates the criteria of a bulk cancellation, which needs the reason of the
+	 * single cancellation and at least one consumer code or bill id
+	 * 
+	 * @param bulkCancelCriteria
+	 * @param requestInfo
+	 * @param maxSize maximum count of consumer codes and bill ids of a job
+	 */
+	public void validateBulkCancelRequest(BulkCancelBillCriteria bulkCancelCriteria, RequestInfo requestInfo,
+			int maxSize) {
+
+		util.validateTenantIdForUserType(bulkCancelCriteria.getTenantId(), requestInfo);
+		Map<String, String> errorMap = new HashMap<>();
+		validateCancellationReason(bulkCancelCriteria.getAdditionalDetails(), errorMap);
+
+		int size = bulkCancelCriteria.getConsumerCodes().size() + bulkCancelCriteria.getBillIds().size();
+		if (0 == size)
+			errorMap.put("EG_BS_BULK_CANCEL_CRITERIA_EMPTY",
+					"Either consumerCodes or billIds have to be given for the bulk cancellation of bills");
+		else if (size > maxSize)
+			errorMap.put("EG_BS_BULK_CANCEL_CRITERIA_SIZE",
+					"A bulk cancellation can have at most " + maxSize + " consumer codes and bill ids");
+
+		if (!CollectionUtils.isEmpty(errorMap)) {
+			throw new CustomException(errorMap);
+		}
+	}
+
+	private void validateCancellationReason(JsonNode additionalDetails, Map<String, String> errorMap) {
 
 		JsonNode reasonMsg = additionalDetails.get(Constants.CANCELLATION_REASON_MSG);
 		JsonNode reasonCode = additionalDetails.get(Constants.CANCELLATION_REASON_CODE);
@@ -87,10 +123,6 @@ public class BillValidator {
 		} else {
 			errorMap.put(Constants.CANCELL_REASON_MSG_NOT_FOUND, Constants.CANCELL_REASON_MSG_NOT_FOUND_MSG);
 		}
-
-		if (!CollectionUtils.isEmpty(errorMap)) {
-			throw new CustomException(errorMap);
-		}
 	}
 
 }
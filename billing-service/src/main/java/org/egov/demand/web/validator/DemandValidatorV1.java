@@ -3,7 +3,6 @@ package org.egov.demand.web.validator;
 import static org.egov.demand.util.Constants.BUSINESSSERVICE_NOT_FOUND_KEY;
 import static org.egov.demand.util.Constants.BUSINESSSERVICE_NOT_FOUND_MSG;
 import static org.egov.demand.util.Constants.BUSINESSSERVICE_NOT_FOUND_REPLACETEXT;
-import static org.egov.demand.util.Constants.BUSINESSSERVICE_PATH_CODE;
 import static org.egov.demand.util.Constants.CONSUMER_CODE_DUPLICATE_CONSUMERCODE_TEXT;
 import static org.egov.demand.util.Constants.CONSUMER_CODE_DUPLICATE_KEY;
 import static org.egov.demand.util.Constants.CONSUMER_CODE_DUPLICATE_MSG;
@@ -27,7 +26,6 @@ import static org.egov.demand.util.Constants.INVALID_DEMAND_DETAIL_KEY;
 import static org.egov.demand.util.Constants.INVALID_DEMAND_DETAIL_MSG;
 import static org.egov.demand.util.Constants.INVALID_DEMAND_DETAIL_REPLACETEXT;
 import static org.egov.demand.util.Constants.INVALID_DEMAND_DETAIL_TAX_TEXT;
-import static org.egov.demand.util.Constants.TAXHEADMASTER_PATH_CODE;
 import static org.egov.demand.util.Constants.TAXHEADS_NOT_FOUND_KEY;
 import static org.egov.demand.util.Constants.TAXHEADS_NOT_FOUND_MSG;
 import static org.egov.demand.util.Constants.TAXHEADS_NOT_FOUND_REPLACETEXT;
@@ -35,14 +33,12 @@ import static org.egov.demand.util.Constants.TAXPERIOD_NOT_FOUND_FROMDATE;
 import static org.egov.demand.util.Constants.TAXPERIOD_NOT_FOUND_KEY;
 import static org.egov.demand.util.Constants.TAXPERIOD_NOT_FOUND_MSG;
 import static org.egov.demand.util.Constants.TAXPERIOD_NOT_FOUND_TODATE;
-import static org.egov.demand.util.Constants.TAXPERIOD_PATH_CODE;
 import static org.egov.demand.util.Constants.USER_UUID_NOT_FOUND_KEY;
 import static org.egov.demand.util.Constants.USER_UUID_NOT_FOUND_MSG;
 import static org.egov.demand.util.Constants.USER_UUID_NOT_FOUND_REPLACETEXT;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -53,9 +49,11 @@ import java.util.stream.Collectors;
 
 import org.egov.common.contract.request.RequestInfo;
 import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.BillingMasterData;
 import org.egov.demand.model.Demand;
 import org.egov.demand.model.Demand.StatusEnum;
 import org.egov.demand.model.DemandCriteria;
+import org.egov.demand.model.DemandDueCriteria;
 import org.egov.demand.model.DemandDetail;
 import org.egov.demand.model.TaxHeadMaster;
 import org.egov.demand.model.TaxPeriod;
@@ -74,7 +72,6 @@ import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.jayway.jsonpath.DocumentContext;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -105,33 +102,15 @@ public class DemandValidatorV1 {
 	 * 
 	 * @param demandRequest 
 	 */
-	public void validatedemandForCreate(DemandRequest demandRequest, Boolean isCreate, DocumentContext mdmsData) {
+	public void validatedemandForCreate(DemandRequest demandRequest, Boolean isCreate, BillingMasterData masterData) {
 
 		RequestInfo requestInfo = demandRequest.getRequestInfo();
 		List<Demand> demands = demandRequest.getDemands();
 
 		/*
-		 * Extracting the respective masters from DocumentContext 
+		 * taxheads and tax periods are already indexed by business service in the master data
 		 */
-		List<String> businessServiceCodes = mdmsData.read(BUSINESSSERVICE_PATH_CODE);
-		List<TaxHeadMaster> taxHeads = Arrays.asList(mapper.convertValue(mdmsData.read(TAXHEADMASTER_PATH_CODE), TaxHeadMaster[].class));
-		
-		/*
-		 * grouping by the list of taxHeads to a map of businessService and List of taxHead codes
-		 */
-		Map<String, Map<String,TaxHeadMaster>> businessTaxCodeMap = taxHeads.stream().collect(Collectors.groupingBy(
-				TaxHeadMaster::getService, Collectors.toMap(TaxHeadMaster::getCode, Function.identity())));
-		
-		/*
-		 * mdms-data read returns a list of hashMap which is converted to array of tax-period and then to list
-		 */
-		List<TaxPeriod> taxPeriods = Arrays.asList(mapper.convertValue(mdmsData.read(TAXPERIOD_PATH_CODE), TaxPeriod[].class));
-
-		/*
-		 * Grouping by the list periods on business services
-		 */
-		Map<String, List<TaxPeriod>> taxPeriodBusinessMap = taxPeriods.stream()
-				.collect(Collectors.groupingBy(TaxPeriod::getService));
+		Map<String, List<TaxPeriod>> taxPeriodBusinessMap = masterData.getTaxPeriodsByService();
 		Set<String> payerIds = new HashSet<>();
 		
 		/* demand details list for validation */
@@ -149,7 +128,7 @@ public class DemandValidatorV1 {
 		for (Demand demand : demands) {
 
 			List<DemandDetail> details = demand.getDemandDetails();
-			Map<String, TaxHeadMaster> taxHeadMap = businessTaxCodeMap.get(demand.getBusinessService());
+			Map<String, TaxHeadMaster> taxHeadMap = masterData.getTaxHeadsForService(demand.getBusinessService());
 			log.info(" the taxhead map : " + taxHeadMap);
 			detailsForValidation.addAll(details);
 
@@ -161,7 +140,7 @@ public class DemandValidatorV1 {
 			if (null != demand.getPayer() && !StringUtils.isEmpty(demand.getPayer().getUuid()))
 				payerIds.add(demand.getPayer().getUuid());
 
-			if (!businessServiceCodes.contains(demand.getBusinessService()))
+			if (!masterData.isBusinessServicePresent(demand.getBusinessService()))
 				businessServicesNotFound.add(demand.getBusinessService());
 
 			if (!CollectionUtils.isEmpty(taxHeadMap))
@@ -451,7 +430,7 @@ public class DemandValidatorV1 {
 	 * internally calls the create method to validate the new demands
 	 * @param demandRequest
 	 */
-	public void validateForUpdate(DemandRequest demandRequest, DocumentContext mdmsData) {
+	public void validateForUpdate(DemandRequest demandRequest, BillingMasterData masterData) {
 
 		Map<String, String> errorMap = new HashMap<>();
 		List<Demand> demands = demandRequest.getDemands();
@@ -492,7 +471,7 @@ public class DemandValidatorV1 {
 		 * 
 		 * error map will be thrown in the create method itself
 		 */
-		validatedemandForCreate(demandRequest, false,mdmsData);
+		validatedemandForCreate(demandRequest, false, masterData);
 	}
 	
 	/**
@@ -579,10 +558,35 @@ public class DemandValidatorV1 {
 				&& demandCriteria.getDemandTo() == null && demandCriteria.getType() == null)
 			errorMap.put("businessService", " Any one of the fields additional to tenantId is mandatory");
 
+		if ((demandCriteria.getPageKeyTaxPeriodFrom() == null) != (demandCriteria.getPageKeyDemandId() == null))
+			errorMap.put("EG_BS_DEMAND_PAGEKEY_ERROR",
+					"pageKeyTaxPeriodFrom and pageKeyDemandId have to be given together");
+
+		if (demandCriteria.getPageKeyDemandId() != null && demandCriteria.getLimit() == null)
+			errorMap.put("EG_BS_DEMAND_PAGEKEY_ERROR", "limit is mandatory when the page key is given");
+
 		if (!CollectionUtils.isEmpty(errorMap))
 			throw new CustomException(errorMap);
 	}
-	
+
+	/**
+	 * Method to validate the consumer dues request
+	 *
+	 * @param dueCriteria
+	 */
+	public void validateDemandDueCriteria(DemandDueCriteria dueCriteria, RequestInfo requestInfo) {
+
+		util.validateTenantIdForUserType(dueCriteria.getTenantId(), requestInfo);
+
+		if (CollectionUtils.isEmpty(dueCriteria.getConsumerCode()))
+			throw new CustomException("EG_BS_DUES_CONSUMERCODE_ERROR", "consumerCode is mandatory to search the dues");
+
+		Integer maxLimit = applicationProperties.getDemandSearchMaxLimit();
+		if (dueCriteria.getConsumerCode().size() > maxLimit)
+			throw new CustomException("EG_BS_DUES_CONSUMERCODE_ERROR",
+					"The dues of at most " + maxLimit + " consumer codes can be searched at once");
+	}
+
 	/**
 	 * If Citizen is paying then the id of the logged in user becomes payer id.
 	 * If Employee is paying
@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS egbs_billnumber_lease (
+  tenantid CHARACTER VARYING(256) NOT NULL,
+  format CHARACTER VARYING(256) NOT NULL,
+  billnumber CHARACTER VARYING(256) NOT NULL,
+  createdtime BIGINT NOT NULL,
+  CONSTRAINT pk_egbs_billnumber_lease PRIMARY KEY (billnumber, tenantid)
+);
+
+CREATE INDEX IF NOT EXISTS index_egbs_billnumber_lease_tenantid_format ON egbs_billnumber_lease (tenantid, format);
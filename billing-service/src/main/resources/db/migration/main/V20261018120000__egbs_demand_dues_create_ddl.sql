@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS egbs_demand_dues (
+  tenantid CHARACTER VARYING(250) NOT NULL,
+  businessservice CHARACTER VARYING(250) NOT NULL,
+  consumercode CHARACTER VARYING(250) NOT NULL,
+  taxamount NUMERIC(14,2) NOT NULL,
+  collectionamount NUMERIC(14,2) NOT NULL,
+  lastmodifiedtime BIGINT NOT NULL,
+  CONSTRAINT pk_egbs_demand_dues PRIMARY KEY (tenantid, businessservice, consumercode)
+);
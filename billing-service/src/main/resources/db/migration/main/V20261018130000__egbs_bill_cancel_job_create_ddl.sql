@@ -0,0 +1,15 @@
+CREATE TABLE IF NOT EXISTS egbs_bill_cancel_job (
+  id CHARACTER VARYING(64) NOT NULL,
+  tenantid CHARACTER VARYING(250) NOT NULL,
+  businessservice CHARACTER VARYING(250) NOT NULL,
+  status CHARACTER VARYING(64) NOT NULL,
+  totalcount INTEGER NOT NULL,
+  processedcount INTEGER NOT NULL,
+  cancelledcount INTEGER NOT NULL,
+  errormessage CHARACTER VARYING(1024),
+  createdby CHARACTER VARYING(256) NOT NULL,
+  createdtime BIGINT NOT NULL,
+  lastmodifiedby CHARACTER VARYING(256),
+  lastmodifiedtime BIGINT,
+  CONSTRAINT pk_egbs_bill_cancel_job PRIMARY KEY (id, tenantid)
+);
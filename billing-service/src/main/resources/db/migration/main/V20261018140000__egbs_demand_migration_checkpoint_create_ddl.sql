@@ -0,0 +1,11 @@
+CREATE TABLE IF NOT EXISTS egbs_demand_migration_checkpoint (
+  rangeno INTEGER NOT NULL,
+  upperid CHARACTER VARYING(64) NOT NULL,
+  uppertenantid CHARACTER VARYING(250) NOT NULL,
+  lastid CHARACTER VARYING(64) NOT NULL,
+  lasttenantid CHARACTER VARYING(250) NOT NULL,
+  migratedcount BIGINT NOT NULL,
+  iscompleted BOOLEAN NOT NULL,
+  lastmodifiedtime BIGINT NOT NULL,
+  CONSTRAINT pk_egbs_demand_migration_checkpoint PRIMARY KEY (rangeno)
+);
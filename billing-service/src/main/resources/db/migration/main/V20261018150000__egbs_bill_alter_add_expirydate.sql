@@ -0,0 +1 @@
+ALTER TABLE egbs_bill_v1 ADD COLUMN IF NOT EXISTS expirydate BIGINT;
@@ -0,0 +1,19 @@
+-- ACTIVE bills are backfilled a range of ids at a time, each range committed on its own so the bills are never locked all at once
+DO $$
+DECLARE
+	lastid CHARACTER VARYING(64) := '';
+	rangeendid CHARACTER VARYING(64);
+BEGIN
+	LOOP
+		SELECT max(id) INTO rangeendid FROM (SELECT id FROM egbs_bill_v1 WHERE id > lastid ORDER BY id LIMIT 10000) bills;
+		EXIT WHEN rangeendid IS NULL;
+
+		UPDATE egbs_bill_v1 b SET expirydate = bd.expirydate
+		FROM (SELECT billid, min(expirydate) AS expirydate FROM egbs_billdetail_v1
+			WHERE billid > lastid AND billid <= rangeendid GROUP BY billid) bd
+		WHERE bd.billid = b.id AND b.id > lastid AND b.id <= rangeendid AND b.status = 'ACTIVE' AND b.expirydate IS NULL;
+
+		lastid := rangeendid;
+		COMMIT;
+	END LOOP;
+END $$;
@@ -0,0 +1 @@
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_egbs_bill_v1_status_expirydate ON egbs_bill_v1 (status, expirydate);
@@ -0,0 +1,6 @@
+CREATE TABLE IF NOT EXISTS egbs_demand_audit_journal_batch (
+  batchid CHARACTER VARYING(64) NOT NULL,
+  tenantid CHARACTER VARYING(250) NOT NULL,
+  createdtime BIGINT NOT NULL,
+  CONSTRAINT pk_egbs_demand_audit_journal_batch PRIMARY KEY (batchid)
+);
@@ -0,0 +1,39 @@
+package org.egov.demand.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.egov.demand.config.AsyncRequestTimeoutConfig.AsyncRequestTimeoutInterceptor;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+
+class AsyncRequestTimeoutConfigTest {
+
+    @Test
+    void testTimeoutOfTheRequestAttributeIsApplied() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        request.setAttribute(AsyncRequestTimeoutConfig.ASYNC_REQUEST_TIMEOUT_ATTRIBUTE, 600000L);
+
+        assertEquals(600000L, startAsync(request));
+    }
+
+    @Test
+    void testOtherRequestsKeepTheDefaultTimeout() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+
+        assertEquals(30000L, startAsync(request));
+    }
+
+    private long startAsync(MockHttpServletRequest request) throws Exception {
+        StandardServletAsyncWebRequest asyncWebRequest = new StandardServletAsyncWebRequest(request,
+                new MockHttpServletResponse());
+        asyncWebRequest.setTimeout(30000L);
+
+        new AsyncRequestTimeoutInterceptor().beforeConcurrentHandling(asyncWebRequest, () -> null);
+        asyncWebRequest.startAsync();
+        return request.getAsyncContext().getTimeout();
+    }
+}
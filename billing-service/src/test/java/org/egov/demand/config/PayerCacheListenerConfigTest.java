@@ -0,0 +1,57 @@
+package org.egov.demand.config;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.egov.demand.consumer.ConsumerMetricsInterceptor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.listener.ContainerProperties.AckMode;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PayerCacheListenerConfigTest {
+
+    private ApplicationProperties appProps;
+
+    private PayerCacheListenerConfig payerCacheListenerConfig;
+
+    @BeforeEach
+    void setUp() {
+        KafkaProperties kafkaProperties = new KafkaProperties();
+        kafkaProperties.getConsumer().setGroupId("bs-persist");
+
+        appProps = mock(ApplicationProperties.class);
+        payerCacheListenerConfig = new PayerCacheListenerConfig();
+        ReflectionTestUtils.setField(payerCacheListenerConfig, "appProps", appProps);
+        ReflectionTestUtils.setField(payerCacheListenerConfig, "kafkaProperties", kafkaProperties);
+    }
+
+    @Test
+    void testConsumerHasNoGroupAndCommitsNoOffsets() {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = payerCacheListenerConfig
+                .payerCacheListenerContainerFactory(new SimpleMeterRegistry(), new ConsumerMetricsInterceptor());
+
+        Map<String, Object> consumerProps = factory.getConsumerFactory().getConfigurationProperties();
+        assertFalse(consumerProps.containsKey(ConsumerConfig.GROUP_ID_CONFIG));
+        assertEquals(false, consumerProps.get(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG));
+        assertEquals("latest", consumerProps.get(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG));
+        assertEquals(AckMode.MANUAL, factory.getContainerProperties().getAckMode());
+    }
+
+    @Test
+    void testPartitionsAreNotLookedUpWhenTheCacheIsDisabled() {
+        when(appProps.getIsPayerCacheEnabled()).thenReturn(false);
+
+        assertArrayEquals(new String[] { "0" }, payerCacheListenerConfig.getPartitions("egov.user.update"));
+    }
+}
@@ -0,0 +1,129 @@
+package org.egov.demand.config;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class ReplicaRoutingDataSourceTest {
+
+    private DataSource primaryDataSource;
+
+    private DataSource replicaDataSource;
+
+    private DataSource dataSource;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private TransactionTemplate readWriteTransaction;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        primaryDataSource = mockDataSource();
+        replicaDataSource = mockDataSource();
+        dataSource = new ReplicaDataSourceConfig().dataSource(primaryDataSource, replicaDataSource);
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        readWriteTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReplicaRouting.clear();
+    }
+
+    @Test
+    void testReadOnlyTransactionOnReplicaGoesToReplica() throws SQLException {
+        ReplicaRouting.onReplica(() -> readOnlyTransaction.execute(status -> query()));
+
+        verify(replicaDataSource).getConnection();
+        verify(primaryDataSource, never()).getConnection();
+    }
+
+    @Test
+    void testReadsOutsideOnReplicaStayOnPrimary() throws SQLException {
+        readOnlyTransaction.execute(status -> query());
+
+        verify(primaryDataSource).getConnection();
+        verify(replicaDataSource, never()).getConnection();
+    }
+
+    @Test
+    void testWritePinsTheRequestThreadToPrimaryUntilCleared() throws SQLException {
+        ReplicaRouting.beginRequest();
+        readWriteTransaction.execute(status -> query());
+        ReplicaRouting.onReplica(() -> readOnlyTransaction.execute(status -> query()));
+
+        verify(replicaDataSource, never()).getConnection();
+
+        ReplicaRouting.clear();
+        ReplicaRouting.onReplica(() -> readOnlyTransaction.execute(status -> query()));
+
+        verify(replicaDataSource).getConnection();
+    }
+
+    @Test
+    void testWriteOutsideARequestPinsTheThreadUntilTheTransactionCompletes() throws SQLException {
+        readWriteTransaction.execute(status -> {
+            query();
+            ReplicaRouting.onReplica(() -> readOnlyTransaction.execute(readOnlyStatus -> query()));
+            return null;
+        });
+
+        verify(replicaDataSource, never()).getConnection();
+        assertFalse(ReplicaRouting.isPinnedToPrimary());
+
+        ReplicaRouting.onReplica(() -> readOnlyTransaction.execute(status -> query()));
+
+        verify(replicaDataSource).getConnection();
+    }
+
+    @Test
+    void testStatementWithoutTransactionOutsideARequestDoesNotPin() {
+        query();
+
+        assertFalse(ReplicaRouting.isPinnedToPrimary());
+    }
+
+    @Test
+    void testStatementWithoutTransactionOnReplicaGoesToPrimary() throws SQLException {
+        ReplicaRouting.onReplica(() -> query());
+
+        verify(primaryDataSource).getConnection();
+        verify(replicaDataSource, never()).getConnection();
+    }
+
+    private Object query() {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            return connection.createStatement();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    private DataSource mockDataSource() throws SQLException {
+        DataSource mockDataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(mockDataSource.getConnection()).thenReturn(connection);
+        return mockDataSource;
+    }
+}
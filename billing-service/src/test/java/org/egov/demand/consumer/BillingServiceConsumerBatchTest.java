@@ -0,0 +1,188 @@
+package org.egov.demand.consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.egov.demand.model.PaymentBackUpdateAudit;
+import org.egov.demand.repository.DemandRepository;
+import org.egov.demand.repository.PaymentBackUpdateFilter;
+import org.egov.demand.service.ReceiptServiceV2;
+import org.egov.demand.util.Constants;
+import org.egov.demand.util.Util;
+import org.egov.demand.web.contract.BillRequestV2;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class BillingServiceConsumerBatchTest {
+
+    @Mock
+    private DemandRepository demandRepository;
+
+    @Mock
+    private ReceiptServiceV2 receiptServiceV2;
+
+    @Mock
+    private PaymentBackUpdateFilter paymentBackUpdateFilter;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Spy
+    private Util util = new Util();
+
+    @InjectMocks
+    private BillingServiceConsumer billingServiceConsumer;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(util, "mapper", objectMapper);
+        when(demandRepository.searchPaymentBackUpdateAudit(anyString(), anyCollection(), anyBoolean()))
+                .thenReturn(new HashSet<>());
+        when(paymentBackUpdateFilter.mightBeBackUpdated(anyString(), anyString(), anyBoolean())).thenReturn(true);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPaymentsAreGroupedByTenantInArrivalOrder() {
+        List<Map<String, Object>> records = Arrays.asList(
+                getPayment("PAY-1", "pb.amritsar", "CC-1"),
+                getPayment("PAY-2", "pb.jalandhar", "CC-2"),
+                getPayment("PAY-3", "pb.amritsar", "CC-1"));
+
+        billingServiceConsumer.processPayments(records);
+
+        ArgumentCaptor<List<BillRequestV2>> captor = ArgumentCaptor.forClass(List.class);
+        verify(receiptServiceV2, times(2)).updateDemandFromBills(captor.capture(), eq(false));
+
+        List<BillRequestV2> amritsarPayments = captor.getAllValues().get(0);
+        assertEquals(2, amritsarPayments.size());
+        assertEquals("PAY-1", getPaymentId(amritsarPayments.get(0)));
+        assertEquals("PAY-3", getPaymentId(amritsarPayments.get(1)));
+        assertEquals("pb.jalandhar", captor.getAllValues().get(1).get(0).getBills().get(0).getTenantId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDuplicatePaymentsAreRecordedAsFailures() {
+        when(demandRepository.searchPaymentBackUpdateAudit(eq("pb.amritsar"), anyCollection(), eq(false)))
+                .thenReturn(new HashSet<>(Collections.singleton("PAY-1")));
+
+        billingServiceConsumer.processPayments(Arrays.asList(
+                getPayment("PAY-1", "pb.amritsar", "CC-1"),
+                getPayment("PAY-2", "pb.amritsar", "CC-2"),
+                getPayment("PAY-2", "pb.amritsar", "CC-2")));
+
+        ArgumentCaptor<List<BillRequestV2>> captor = ArgumentCaptor.forClass(List.class);
+        verify(receiptServiceV2).updateDemandFromBills(captor.capture(), eq(false));
+        assertEquals(1, captor.getValue().size());
+        assertEquals("PAY-2", getPaymentId(captor.getValue().get(0)));
+        verify(demandRepository, times(2)).insertBackUpdateForPayment(any(PaymentBackUpdateAudit.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPaymentsNotInTheFilterAreNotSearched() {
+        when(paymentBackUpdateFilter.mightBeBackUpdated(anyString(), anyString(), anyBoolean())).thenReturn(false);
+        when(paymentBackUpdateFilter.mightBeBackUpdated("pb.amritsar", "PAY-2", false)).thenReturn(true);
+
+        billingServiceConsumer.processPayments(Arrays.asList(
+                getPayment("PAY-1", "pb.amritsar", "CC-1"),
+                getPayment("PAY-2", "pb.amritsar", "CC-2"),
+                getPayment("PAY-3", "pb.jalandhar", "CC-3")));
+
+        ArgumentCaptor<Collection<String>> searchCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(demandRepository).searchPaymentBackUpdateAudit(eq("pb.amritsar"), searchCaptor.capture(), eq(false));
+        assertEquals(Collections.singleton("PAY-2"), new HashSet<>(searchCaptor.getValue()));
+        verify(demandRepository, never()).searchPaymentBackUpdateAudit(eq("pb.jalandhar"), anyCollection(), anyBoolean());
+        verify(receiptServiceV2, times(2)).updateDemandFromBills(any(), eq(false));
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedOnePaymentAtATime() {
+        doThrow(new RuntimeException("demand not found")).when(receiptServiceV2).updateDemandFromBills(any(), anyBoolean());
+        doThrow(new RuntimeException("demand not found")).when(receiptServiceV2)
+                .updateDemandFromReceipt(any(BillRequestV2.class), anyBoolean());
+
+        billingServiceConsumer.processPaymentsCancel(Arrays.asList(
+                getPayment("PAY-1", "pb.amritsar", "CC-1"),
+                getPayment("PAY-2", "pb.amritsar", "CC-2")));
+
+        verify(receiptServiceV2, times(2)).updateDemandFromReceipt(any(BillRequestV2.class), eq(true));
+        ArgumentCaptor<PaymentBackUpdateAudit> captor = ArgumentCaptor.forClass(PaymentBackUpdateAudit.class);
+        verify(demandRepository, times(2)).insertBackUpdateForPayment(captor.capture());
+        assertEquals("PAY-1", captor.getAllValues().get(0).getPaymentId());
+        assertEquals(false, captor.getAllValues().get(0).getIsBackUpdateSucces());
+    }
+
+    @Test
+    public void testMalformedPaymentDoesNotFailTheBatch() {
+        Map<String, Object> malformed = new HashMap<>();
+        malformed.put("Payment", new HashMap<>());
+
+        billingServiceConsumer.processPayments(Arrays.asList(malformed, getPayment("PAY-1", "pb.amritsar", "CC-1")));
+
+        verify(demandRepository).insertBackUpdateForPayment(any(PaymentBackUpdateAudit.class));
+        verify(receiptServiceV2).updateDemandFromBills(any(), eq(false));
+    }
+
+    private String getPaymentId(BillRequestV2 billRequest) {
+        return util.getValueFromAdditionalDetailsForKey(billRequest.getBills().get(0).getAdditionalDetails(),
+                Constants.PAYMENT_ID_KEY);
+    }
+
+    private Map<String, Object> getPayment(String paymentId, String tenantId, String consumerCode) {
+
+        Map<String, Object> billDetail = new HashMap<>();
+        billDetail.put("demandId", "DMD-" + consumerCode);
+        billDetail.put("amount", 100);
+        billDetail.put("amountPaid", 100);
+
+        Map<String, Object> bill = new HashMap<>();
+        bill.put("id", "BILL-" + paymentId);
+        bill.put("tenantId", tenantId);
+        bill.put("consumerCode", consumerCode);
+        bill.put("businessService", "PT");
+        bill.put("totalAmount", 100);
+        bill.put("billDetails", Collections.singletonList(billDetail));
+
+        Map<String, Object> paymentDetail = new HashMap<>();
+        paymentDetail.put("totalAmountPaid", 100);
+        paymentDetail.put("bill", bill);
+
+        Map<String, Object> payment = new HashMap<>();
+        payment.put("id", paymentId);
+        payment.put("paymentDetails", new ArrayList<>(Collections.singletonList(paymentDetail)));
+
+        Map<String, Object> record = new HashMap<>();
+        record.put("Payment", payment);
+        record.put("RequestInfo", new HashMap<>());
+        return record;
+    }
+}
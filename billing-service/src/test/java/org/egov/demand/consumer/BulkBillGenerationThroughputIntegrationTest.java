@@ -0,0 +1,299 @@
+package org.egov.demand.consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.AuditDetails;
+import org.egov.demand.model.BulkBillGenerator;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.model.GenerateBillCriteria;
+import org.egov.demand.model.MigrationCount;
+import org.egov.demand.repository.DemandRepository;
+import org.egov.demand.service.BillServicev2;
+import org.egov.demand.service.BulkBillPipeline;
+import org.egov.demand.service.DemandService;
+import org.egov.demand.util.BillingMetrics;
+import org.egov.demand.util.Util;
+import org.egov.demand.web.contract.DemandRequest;
+import org.egov.tracer.kafka.CustomKafkaTemplate;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compares the throughput of the serial bulk bill generation listener with the
+ * pipeline, both reading the same messages from a topic of a local kafka and
+ * writing the demands to a local postgres database migrated with the service's
+ * flyway scripts, e.g.
+ *
+ * mvn test -Dtest=BulkBillGenerationThroughputIntegrationTest -Dbs.it.db.url=jdbc:postgresql://localhost:5432/egbs_it
+ *   -Dbs.it.db.username=postgres -Dbs.it.db.password=postgres -Dbs.it.kafka.bootstrap=localhost:9092
+ *   -Dbs.it.bench.messages=500
+ *
+ * demand creation writes through DemandRepository and bill generation reads the
+ * demands of its consumer codes back, the messages per second of both paths are logged
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "bs.it.db.url", matches = ".+")
+@EnabledIfSystemProperty(named = "bs.it.kafka.bootstrap", matches = ".+")
+class BulkBillGenerationThroughputIntegrationTest {
+
+    private static final String TENANT_ID = "pb.pipelineit";
+
+    private static final int DEMANDS_PER_MESSAGE = 20;
+
+    private static final int POLL_SIZE = 50;
+
+    private static JdbcTemplate jdbcTemplate;
+
+    private static String bootstrapServers;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private BulkBillGenerationConsumer bulkBillGenerationConsumer;
+
+    private BulkBillPipeline bulkBillPipeline;
+
+    private String topic;
+
+    @BeforeAll
+    static void migrate() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(System.getProperty("bs.it.db.url"),
+                System.getProperty("bs.it.db.username", "postgres"), System.getProperty("bs.it.db.password", "postgres"));
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/main").load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        bootstrapServers = System.getProperty("bs.it.kafka.bootstrap");
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        MultiStateInstanceUtil centralInstanceUtil = mock(MultiStateInstanceUtil.class);
+        when(centralInstanceUtil.replaceSchemaPlaceholder(anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0, String.class).replace("{schema}.", ""));
+
+        Util util = new Util();
+        ReflectionTestUtils.setField(util, "mapper", mapper);
+
+        BillingMetrics billingMetrics = new BillingMetrics();
+        ReflectionTestUtils.setField(billingMetrics, "meterRegistry", new SimpleMeterRegistry());
+
+        DemandRepository demandRepository = new DemandRepository();
+        ReflectionTestUtils.setField(demandRepository, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(demandRepository, "centralInstanceUtil", centralInstanceUtil);
+        ReflectionTestUtils.setField(demandRepository, "util", util);
+        ReflectionTestUtils.setField(demandRepository, "billingMetrics", billingMetrics);
+
+        DemandService demandService = mock(DemandService.class);
+        doAnswer(invocation -> {
+            List<Demand> demands = invocation.getArgument(0, DemandRequest.class).getDemands();
+            List<DemandDetail> details = new ArrayList<>();
+            demands.forEach(demand -> details.addAll(demand.getDemandDetails()));
+            demandRepository.insertBatch(demands, details, TENANT_ID);
+            return null;
+        }).when(demandService).create(any(DemandRequest.class), anyBoolean());
+
+        NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        BillServicev2 billService = mock(BillServicev2.class);
+        doAnswer(invocation -> {
+            GenerateBillCriteria criteria = invocation.getArgument(0);
+            namedJdbcTemplate.queryForList("SELECT d.id, dd.taxamount FROM egbs_demand_v1 d"
+                    + " JOIN egbs_demanddetail_v1 dd ON dd.demandid = d.id AND dd.tenantid = d.tenantid"
+                    + " WHERE d.tenantid = :tenantId AND d.consumercode IN (:consumerCodes)",
+                    new MapSqlParameterSource("tenantId", criteria.getTenantId())
+                            .addValue("consumerCodes", criteria.getConsumerCode()));
+            return null;
+        }).when(billService).generateBill(any(GenerateBillCriteria.class), any(RequestInfo.class), anyBoolean());
+
+        ApplicationProperties appProps = mock(ApplicationProperties.class);
+        when(appProps.getBulkBillPipelineWorkers()).thenReturn(Integer.getInteger("bs.it.bench.workers", 4));
+        when(appProps.getBulkBillPipelineBatchSize()).thenReturn(20);
+        when(appProps.getBulkBillPipelineQueueSize()).thenReturn(100);
+
+        CustomKafkaTemplate<String, Object> kafkaTemplate = mock(CustomKafkaTemplate.class);
+
+        bulkBillPipeline = new BulkBillPipeline();
+        ReflectionTestUtils.setField(bulkBillPipeline, "demandService", demandService);
+        ReflectionTestUtils.setField(bulkBillPipeline, "billService", billService);
+        ReflectionTestUtils.setField(bulkBillPipeline, "kafkaTemplate", kafkaTemplate);
+        ReflectionTestUtils.setField(bulkBillPipeline, "appProps", appProps);
+        bulkBillPipeline.init();
+
+        bulkBillGenerationConsumer = new BulkBillGenerationConsumer();
+        ReflectionTestUtils.setField(bulkBillGenerationConsumer, "demandService", demandService);
+        ReflectionTestUtils.setField(bulkBillGenerationConsumer, "billService", billService);
+        ReflectionTestUtils.setField(bulkBillGenerationConsumer, "kafkaTemplate", kafkaTemplate);
+        ReflectionTestUtils.setField(bulkBillGenerationConsumer, "objectMapper", mapper);
+        ReflectionTestUtils.setField(bulkBillGenerationConsumer, "bulkBillPipeline", bulkBillPipeline);
+
+        topic = "bulk-bill-generator-it-" + UUID.randomUUID();
+        try (AdminClient adminClient = AdminClient.create(
+                Collections.singletonMap(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers))) {
+            adminClient.createTopics(Collections.singletonList(new NewTopic(topic, 4, (short) 1))).all().get();
+        }
+        clear();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        bulkBillPipeline.shutdown();
+        clear();
+        try (AdminClient adminClient = AdminClient.create(
+                Collections.singletonMap(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers))) {
+            adminClient.deleteTopics(Collections.singletonList(topic)).all().get();
+        }
+    }
+
+    @Test
+    void testPipelineAgainstSerialListener() throws Exception {
+        int messageCount = Integer.getInteger("bs.it.bench.messages", 500);
+
+        produce(messageCount);
+        long serialNanos = consume("serial", messageCount, records -> records
+                .forEach(record -> bulkBillGenerationConsumer.processMessage(record, topic)));
+        assertRowCount(messageCount);
+        clear();
+
+        produce(messageCount);
+        long pipelineNanos = consume("pipeline", messageCount, bulkBillGenerationConsumer::processMessages);
+        assertRowCount(messageCount);
+
+        log.info("serial listener: {} messages/s, pipeline: {} messages/s over {} messages of {} demands",
+                messageCount * 1_000_000_000L / serialNanos, messageCount * 1_000_000_000L / pipelineNanos,
+                messageCount, DEMANDS_PER_MESSAGE);
+    }
+
+    private void produce(int messageCount) throws Exception {
+
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        try (KafkaProducer<String, String> producer = new KafkaProducer<>(props)) {
+            for (int i = 0; i < messageCount; i++)
+                producer.send(new ProducerRecord<>(topic, mapper.writeValueAsString(getMessage(i))));
+            producer.flush();
+        }
+    }
+
+    /*
+     * polls the topic from its start with a group of its own, handing every poll to the listener
+     */
+    private long consume(String groupId, int messageCount, Consumer<List<Map<String, Object>>> listener)
+            throws Exception {
+
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, topic + "-" + groupId);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, POLL_SIZE);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+
+        TypeReference<Map<String, Object>> recordType = new TypeReference<Map<String, Object>>() {};
+        long nanos = 0;
+        int consumed = 0;
+        try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(props)) {
+            consumer.subscribe(Collections.singletonList(topic));
+            while (consumed < messageCount) {
+
+                List<Map<String, Object>> records = new ArrayList<>();
+                for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofSeconds(1)))
+                    records.add(mapper.readValue(record.value(), recordType));
+                if (records.isEmpty())
+                    continue;
+
+                long start = System.nanoTime();
+                listener.accept(records);
+                nanos += System.nanoTime() - start;
+                consumer.commitSync();
+                consumed += records.size();
+            }
+        }
+        return nanos;
+    }
+
+    private void assertRowCount(int messageCount) {
+        assertEquals(messageCount * DEMANDS_PER_MESSAGE, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM egbs_demand_v1 WHERE tenantid = ?", Integer.class, TENANT_ID));
+    }
+
+    private void clear() {
+        jdbcTemplate.update("DELETE FROM egbs_demanddetail_v1 WHERE tenantid = ?", TENANT_ID);
+        jdbcTemplate.update("DELETE FROM egbs_demand_v1 WHERE tenantid = ?", TENANT_ID);
+    }
+
+    private BulkBillGenerator getMessage(int index) {
+
+        AuditDetails auditDetails = AuditDetails.builder().createdBy("bench").lastModifiedBy("bench")
+                .createdTime(System.currentTimeMillis()).lastModifiedTime(System.currentTimeMillis()).build();
+        List<Demand> demands = new ArrayList<>(DEMANDS_PER_MESSAGE);
+        for (int i = 0; i < DEMANDS_PER_MESSAGE; i++) {
+
+            String demandId = UUID.randomUUID().toString();
+            List<DemandDetail> details = new ArrayList<>();
+            for (String taxHead : Arrays.asList("PT_TAX", "PT_CESS"))
+                details.add(DemandDetail.builder().id(UUID.randomUUID().toString()).demandId(demandId)
+                        .taxHeadMasterCode(taxHead).taxAmount(new BigDecimal("120.25"))
+                        .collectionAmount(BigDecimal.ZERO).tenantId(TENANT_ID).auditDetails(auditDetails).build());
+
+            demands.add(Demand.builder().id(demandId).tenantId(TENANT_ID)
+                    .consumerCode("PT-" + (index * DEMANDS_PER_MESSAGE + i)).consumerType("PROPERTY")
+                    .businessService("PT").taxPeriodFrom(1554076800000L).taxPeriodTo(1585699199000L)
+                    .minimumAmountPayable(BigDecimal.ZERO).status(Demand.StatusEnum.ACTIVE)
+                    .billExpiryTime(864000000L).auditDetails(auditDetails).demandDetails(details).build());
+        }
+
+        MigrationCount migrationCount = MigrationCount.builder().id(UUID.randomUUID().toString())
+                .offset((long) index * DEMANDS_PER_MESSAGE).limit((long) DEMANDS_PER_MESSAGE)
+                .createdTime(System.currentTimeMillis()).tenantid(TENANT_ID).businessService("PT")
+                .recordCount((long) DEMANDS_PER_MESSAGE).auditTopic("bulk-bill-generation-audit").build();
+        return new BulkBillGenerator(new RequestInfo(), demands, null, migrationCount);
+    }
+}
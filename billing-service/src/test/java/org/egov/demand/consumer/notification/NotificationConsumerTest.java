@@ -1,5 +1,6 @@
 package org.egov.demand.consumer.notification;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -7,17 +8,24 @@ import static org.mockito.Mockito.when;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.util.ArrayList;
-
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 
 import org.egov.common.contract.request.RequestInfo;
+import org.egov.common.utils.MultiStateInstanceUtil;
 import org.egov.demand.model.Bill;
+import org.egov.demand.model.BillCancelEvent;
+import org.egov.demand.model.BillSearchCriteria;
+import org.egov.demand.repository.BillRepositoryV2;
 
 import org.egov.demand.web.contract.BillRequest;
 import org.egov.demand.web.contract.BillRequestV2;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -40,6 +48,12 @@ class NotificationConsumerTest {
     @MockBean
     private RestTemplate restTemplate;
 
+    @MockBean
+    private BillRepositoryV2 billRepository;
+
+    @MockBean
+    private MultiStateInstanceUtil centralUtil;
+
 
     @Test
     void testListenVonvertValue() throws IllegalArgumentException {
@@ -97,5 +111,19 @@ class NotificationConsumerTest {
         this.notificationConsumer.listen(new HashMap<>(), "Topic");
         verify(this.objectMapper).convertValue((Object) any(), (Class<Object>) any());
     }
-}
 
+    @Test
+    void testListenBulkCancelSearchesTheCancelledBills() throws IllegalArgumentException {
+        BillCancelEvent event = BillCancelEvent.builder().tenantId("pb.amritsar").requestInfo(new RequestInfo())
+                .billIds(Arrays.asList("BILL-1", "BILL-2")).build();
+        when(this.objectMapper.convertValue((Object) any(), (Class<Object>) any())).thenReturn(event);
+        when(this.billRepository.findBill(any())).thenReturn(Collections.emptyList());
+
+        this.notificationConsumer.listen(new HashMap<>(), "${kafka.topics.bulk.cancel.bill.topic.name}");
+
+        ArgumentCaptor<BillSearchCriteria> criteria = ArgumentCaptor.forClass(BillSearchCriteria.class);
+        verify(this.billRepository).findBill(criteria.capture());
+        assertEquals("pb.amritsar", criteria.getValue().getTenantId());
+        assertEquals(new HashSet<>(Arrays.asList("BILL-1", "BILL-2")), criteria.getValue().getBillId());
+    }
+}
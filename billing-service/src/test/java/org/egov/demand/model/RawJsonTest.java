@@ -0,0 +1,66 @@
+package org.egov.demand.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.egov.tracer.model.CustomException;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class RawJsonTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void testTextIsWrittenWithoutParsing() throws Exception {
+        RawJson rawJson = RawJson.of("{\"ward\":\"W1\",\"rebate\":[1,2]}");
+        Demand demand = Demand.builder().id("DMD-1").additionalDetails(rawJson).build();
+
+        JsonNode written = mapper.readTree(mapper.writeValueAsString(demand));
+
+        assertFalse(rawJson.isParsed());
+        assertEquals("W1", written.get("additionalDetails").get("ward").asText());
+        assertEquals(2, written.get("additionalDetails").get("rebate").size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testConversionParsesTheText() {
+        RawJson rawJson = RawJson.of("{\"ward\":\"W1\"}");
+
+        Map<String, Object> converted = mapper.convertValue(rawJson, Map.class);
+        JsonNode node = mapper.convertValue(rawJson, JsonNode.class);
+
+        assertEquals("W1", converted.get("ward"));
+        assertEquals("W1", node.get("ward").asText());
+        assertTrue(rawJson.isParsed());
+    }
+
+    @Test
+    void testNodeIsParsedOnce() {
+        RawJson rawJson = RawJson.of("{\"ward\":\"W1\"}");
+
+        assertTrue(rawJson.getNode() == rawJson.getNode());
+        assertEquals(RawJson.of("{\"ward\":\"W1\"}"), rawJson);
+    }
+
+    @Test
+    void testNullTextHasNoValue() {
+        assertNull(RawJson.of(null));
+    }
+
+    @Test
+    void testMalformedTextFailsOnAccess() {
+        RawJson rawJson = RawJson.of("{\"ward\":");
+
+        CustomException exception = assertThrows(CustomException.class, rawJson::getNode);
+        assertEquals("EG_BS_JSON_EXCEPTION", exception.getCode());
+    }
+}
@@ -0,0 +1,200 @@
+package org.egov.demand.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.model.AuditDetails;
+import org.egov.demand.model.BillV2.BillStatus;
+import org.egov.demand.model.ExpiringBill;
+import org.egov.demand.model.UpdateBillCriteria;
+import org.egov.demand.repository.querybuilder.BillQueryBuilder;
+import org.egov.demand.util.BillingMetrics;
+import org.egov.demand.util.Util;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Runs against a local postgres database which is migrated with the service's
+ * flyway scripts, e.g.
+ * 
+ * mvn test -Dtest=BillRepositoryV2IntegrationTest -Dbs.it.db.url=jdbc:postgresql://localhost:5432/egbs_it
+ *   -Dbs.it.db.username=postgres -Dbs.it.db.password=postgres
+ */
+@EnabledIfSystemProperty(named = "bs.it.db.url", matches = ".+")
+class BillRepositoryV2IntegrationTest {
+
+    private static final String TENANT_ID = "pb.billit";
+
+    private static JdbcTemplate jdbcTemplate;
+
+    private BillRepositoryV2 billRepositoryV2;
+
+    @BeforeAll
+    static void migrate() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(System.getProperty("bs.it.db.url"),
+                System.getProperty("bs.it.db.username", "postgres"), System.getProperty("bs.it.db.password", "postgres"));
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/main").load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MultiStateInstanceUtil centralInstanceUtil = mock(MultiStateInstanceUtil.class);
+        when(centralInstanceUtil.replaceSchemaPlaceholder(anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0, String.class).replace("{schema}.", ""));
+
+        billRepositoryV2 = new BillRepositoryV2();
+        ReflectionTestUtils.setField(billRepositoryV2, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(billRepositoryV2, "centralInstanceUtil", centralInstanceUtil);
+
+        BillQueryBuilder billQueryBuilder = new BillQueryBuilder();
+        ReflectionTestUtils.setField(billQueryBuilder, "centralInstanceUtil", centralInstanceUtil);
+        ReflectionTestUtils.setField(billRepositoryV2, "billQueryBuilder", billQueryBuilder);
+
+        BillingMetrics billingMetrics = new BillingMetrics();
+        ReflectionTestUtils.setField(billingMetrics, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(billRepositoryV2, "billingMetrics", billingMetrics);
+
+        Util util = new Util();
+        ReflectionTestUtils.setField(util, "mapper", new ObjectMapper());
+        ReflectionTestUtils.setField(billRepositoryV2, "util", util);
+
+        jdbcTemplate.update("DELETE FROM egbs_billdetail_v1 WHERE tenantid = ?", TENANT_ID);
+        jdbcTemplate.update("DELETE FROM egbs_bill_v1 WHERE tenantid = ?", TENANT_ID);
+
+        insertBill("BILL-1", "CC-1", "PT", "ACTIVE");
+        insertBill("BILL-2", "CC-2", "PT", "ACTIVE");
+        insertBill("BILL-3", "CC-3", "PT", "PAID");
+        insertBill("BILL-4", "CC-4", "WS", "ACTIVE");
+    }
+
+    @Test
+    void testOnlyActiveBillsOfTheBusinessServiceAreExpired() {
+        List<String> billIds = billRepositoryV2.updateActiveBillStatus(getCriteria("CC-1", "CC-2", "CC-3", "CC-4"));
+
+        assertEquals(new HashSet<>(Arrays.asList("BILL-1", "BILL-2")), new HashSet<>(billIds));
+        assertEquals("EXPIRED", getStatus("BILL-1"));
+        assertEquals("EXPIRED", getStatus("BILL-2"));
+        assertEquals("PAID", getStatus("BILL-3"));
+        assertEquals("ACTIVE", getStatus("BILL-4"));
+    }
+
+    @Test
+    void testExpiredBillsAreNotUpdatedAgain() {
+        billRepositoryV2.updateActiveBillStatus(getCriteria("CC-1"));
+
+        assertTrue(billRepositoryV2.updateActiveBillStatus(getCriteria("CC-1")).isEmpty());
+        assertEquals(1, billRepositoryV2.updateBillStatus(getCriteria("CC-2")));
+    }
+
+    @Test
+    void testActiveBillsOfTheBusinessServiceAreCancelledById() {
+        jdbcTemplate.update("UPDATE egbs_bill_v1 SET additionaldetails = '{\"reason\": \"OLD\", \"ref\": 7}'::jsonb"
+                + " WHERE id = 'BILL-1' AND tenantid = ?", TENANT_ID);
+        List<String> billIds = billRepositoryV2.getActiveBillIds(TENANT_ID, "PT", Arrays.asList("CC-1", "CC-2", "CC-3", "CC-4"));
+        ObjectNode additionalDetails = new ObjectMapper().createObjectNode().put("reason", "TARIFF_CORRECTION")
+                .put("reasonMessage", "tariff corrected");
+
+        Map<String, String> cancelledBills = billRepositoryV2.cancelBills(TENANT_ID, "PT",
+                Arrays.asList("BILL-1", "BILL-2", "BILL-3", "BILL-4"), additionalDetails,
+                AuditDetails.builder().lastModifiedBy("user-1").lastModifiedTime(5L).build());
+
+        assertEquals(new HashSet<>(Arrays.asList("BILL-1", "BILL-2")), new HashSet<>(billIds));
+        assertEquals("CC-1", cancelledBills.get("BILL-1"));
+        assertEquals("CC-2", cancelledBills.get("BILL-2"));
+        assertEquals(2, cancelledBills.size());
+        assertEquals("CANCELLED", getStatus("BILL-1"));
+        assertEquals("PAID", getStatus("BILL-3"));
+        assertEquals("ACTIVE", getStatus("BILL-4"));
+        assertEquals("OLD", jdbcTemplate.queryForObject("SELECT additionaldetails->>'reason' FROM egbs_bill_v1"
+                + " WHERE id = 'BILL-1' AND tenantid = ?", String.class, TENANT_ID));
+        assertEquals("tariff corrected", jdbcTemplate.queryForObject("SELECT additionaldetails->>'reasonMessage'"
+                + " FROM egbs_bill_v1 WHERE id = 'BILL-2' AND tenantid = ?", String.class, TENANT_ID));
+        assertTrue(billRepositoryV2.cancelBills(TENANT_ID, "PT", billIds, additionalDetails,
+                AuditDetails.builder().lastModifiedBy("user-1").lastModifiedTime(6L).build()).isEmpty());
+    }
+
+    @Test
+    void testActiveBillsAreReadInTheOrderOfTheirExpiry() {
+        jdbcTemplate.update("UPDATE egbs_bill_v1 SET expirydate = CASE id WHEN 'BILL-1' THEN 200 WHEN 'BILL-2' THEN 100"
+                + " WHEN 'BILL-3' THEN 50 ELSE 900 END WHERE tenantid = ?", TENANT_ID);
+
+        List<ExpiringBill> firstPage = billRepositoryV2.getExpiringBills(TENANT_ID, 1000, 1, null, 2);
+        List<ExpiringBill> secondPage = billRepositoryV2.getExpiringBills(TENANT_ID, 1000, 1, firstPage.get(1), 2);
+
+        assertEquals(Arrays.asList("BILL-2", "BILL-1"), Arrays.asList(firstPage.get(0).getId(), firstPage.get(1).getId()));
+        assertEquals("PT", firstPage.get(0).getBusinessService());
+        assertEquals("CC-2", firstPage.get(0).getConsumerCode());
+        assertEquals(1, secondPage.size());
+        assertEquals("WS", secondPage.get(0).getBusinessService());
+        assertTrue(billRepositoryV2.getExpiringBills(TENANT_ID, 900, 1, null, 10).stream()
+                .noneMatch(bill -> "BILL-4".equals(bill.getId())));
+        assertTrue(billRepositoryV2.getExpiringBills(TENANT_ID, 1000, 0, null, 10).isEmpty());
+    }
+
+    @Test
+    void testExpirySweepOfATenantRunsOnOneConnectionAtATime() {
+        Optional<String> nestedResult = billRepositoryV2.runWithExpirySweepLock(TENANT_ID,
+                () -> Optional.ofNullable(billRepositoryV2.runWithExpirySweepLock(TENANT_ID, () -> "nested")));
+
+        assertFalse(nestedResult.isPresent());
+        assertEquals("released", billRepositoryV2.runWithExpirySweepLock(TENANT_ID, () -> "released"));
+    }
+
+    @Test
+    void testOnlyBillsPastTheirExpiryAreExpired() {
+        jdbcTemplate.update("UPDATE egbs_bill_v1 SET expirydate = CASE id WHEN 'BILL-1' THEN 100 ELSE 900 END"
+                + " WHERE tenantid = ?", TENANT_ID);
+
+        Set<String> consumerCodes = billRepositoryV2.expirePastExpiryBills(TENANT_ID, "PT",
+                new HashSet<>(Arrays.asList("CC-1", "CC-2", "CC-3", "CC-4")), 500);
+
+        assertEquals(Collections.singleton("CC-1"), consumerCodes);
+        assertEquals("EXPIRED", getStatus("BILL-1"));
+        assertEquals("ACTIVE", getStatus("BILL-2"));
+        assertEquals("ACTIVE", getStatus("BILL-4"));
+        assertTrue(billRepositoryV2.expirePastExpiryBills(TENANT_ID, "PT", consumerCodes, 500).isEmpty());
+    }
+
+    private UpdateBillCriteria getCriteria(String... consumerCodes) {
+        return UpdateBillCriteria.builder().tenantId(TENANT_ID).businessService("PT")
+                .consumerCodes(new HashSet<>(Arrays.asList(consumerCodes))).statusToBeUpdated(BillStatus.EXPIRED).build();
+    }
+
+    private String getStatus(String billId) {
+        return jdbcTemplate.queryForObject("SELECT status FROM egbs_bill_v1 WHERE id = ? AND tenantid = ?", String.class,
+                billId, TENANT_ID);
+    }
+
+    private void insertBill(String billId, String consumerCode, String businessService, String status) {
+        jdbcTemplate.update("INSERT INTO egbs_bill_v1 (id, tenantid, createdby, createddate, status, consumercode)"
+                + " VALUES (?, ?, 'it', 0, ?, ?)", billId, TENANT_ID, status, consumerCode);
+        jdbcTemplate.update("INSERT INTO egbs_billdetail_v1 (id, tenantid, billid, businessservice, billdate, consumercode,"
+                + " createdby, createddate) VALUES (?, ?, ?, ?, 0, ?, 'it', 0)", billId + "-D", TENANT_ID, billId,
+                businessService, consumerCode);
+    }
+}
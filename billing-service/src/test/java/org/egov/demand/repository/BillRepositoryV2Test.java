@@ -14,6 +14,7 @@ import java.util.HashSet;
 import java.util.List;
 
 import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
 import org.egov.demand.model.*;
 
 import org.egov.demand.repository.querybuilder.BillQueryBuilder;
@@ -49,6 +50,12 @@ class BillRepositoryV2Test {
     @MockBean
     private Util util;
 
+    @MockBean
+    private BulkCopyRepository bulkCopyRepository;
+
+    @MockBean
+    private ApplicationProperties applicationProperties;
+
 
     @Test
     void testFindBill() throws DataAccessException {
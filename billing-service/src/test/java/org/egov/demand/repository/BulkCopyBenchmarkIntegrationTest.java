@@ -0,0 +1,171 @@
+package org.egov.demand.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.AuditDetails;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.util.BillingMetrics;
+import org.egov.demand.util.Util;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compares the throughput of the batch insert of DemandRepository with the COPY
+ * of BulkCopyRepository on a local postgres database migrated with the
+ * service's flyway scripts, e.g.
+ *
+ * mvn test -Dtest=BulkCopyBenchmarkIntegrationTest -Dbs.it.db.url=jdbc:postgresql://localhost:5432/egbs_it
+ *   -Dbs.it.db.username=postgres -Dbs.it.db.password=postgres -Dbs.it.bench.demands=20000
+ *
+ * every demand is written with three details, the rows per second of both paths are logged
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "bs.it.db.url", matches = ".+")
+class BulkCopyBenchmarkIntegrationTest {
+
+    private static final String TENANT_ID = "pb.benchit";
+
+    private static final int ROUNDS = 3;
+
+    private static JdbcTemplate jdbcTemplate;
+
+    private DemandRepository demandRepository;
+
+    private BulkCopyRepository bulkCopyRepository;
+
+    @BeforeAll
+    static void migrate() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(System.getProperty("bs.it.db.url"),
+                System.getProperty("bs.it.db.username", "postgres"), System.getProperty("bs.it.db.password", "postgres"));
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/main").load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MultiStateInstanceUtil centralInstanceUtil = mock(MultiStateInstanceUtil.class);
+        when(centralInstanceUtil.replaceSchemaPlaceholder(anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0, String.class).replace("{schema}.", ""));
+
+        ObjectMapper mapper = new ObjectMapper();
+        Util util = new Util();
+        ReflectionTestUtils.setField(util, "mapper", mapper);
+
+        ApplicationProperties appProps = mock(ApplicationProperties.class);
+        when(appProps.getBulkCopyBufferSize()).thenReturn(65536);
+
+        BillingMetrics billingMetrics = new BillingMetrics();
+        ReflectionTestUtils.setField(billingMetrics, "meterRegistry", new SimpleMeterRegistry());
+
+        demandRepository = new DemandRepository();
+        ReflectionTestUtils.setField(demandRepository, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(demandRepository, "centralInstanceUtil", centralInstanceUtil);
+        ReflectionTestUtils.setField(demandRepository, "util", util);
+        ReflectionTestUtils.setField(demandRepository, "billingMetrics", billingMetrics);
+
+        bulkCopyRepository = new BulkCopyRepository();
+        ReflectionTestUtils.setField(bulkCopyRepository, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(bulkCopyRepository, "centralInstanceUtil", centralInstanceUtil);
+        ReflectionTestUtils.setField(bulkCopyRepository, "mapper", mapper);
+        ReflectionTestUtils.setField(bulkCopyRepository, "appProps", appProps);
+        ReflectionTestUtils.setField(bulkCopyRepository, "billingMetrics", billingMetrics);
+
+        clear();
+    }
+
+    @Test
+    void testCopyAgainstBatchInsert() {
+        int demandCount = Integer.getInteger("bs.it.bench.demands", 20000);
+
+        long batchNanos = 0;
+        long copyNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+
+            List<Demand> demands = getDemands(demandCount);
+            List<DemandDetail> details = getDetails(demands);
+            long start = System.nanoTime();
+            demandRepository.insertBatch(demands, details, TENANT_ID);
+            batchNanos += System.nanoTime() - start;
+            assertRowCounts(demandCount);
+            clear();
+
+            demands = getDemands(demandCount);
+            details = getDetails(demands);
+            start = System.nanoTime();
+            bulkCopyRepository.copyDemands(demands, details, TENANT_ID);
+            copyNanos += System.nanoTime() - start;
+            assertRowCounts(demandCount);
+            clear();
+        }
+
+        long rows = (long) ROUNDS * demandCount * 4;
+        log.info("batchUpdate: {} rows/s, COPY: {} rows/s over {} rows", rows * 1_000_000_000L / batchNanos,
+                rows * 1_000_000_000L / copyNanos, rows);
+    }
+
+    private void assertRowCounts(int demandCount) {
+        assertEquals(demandCount, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM egbs_demand_v1 WHERE tenantid = ?", Integer.class, TENANT_ID));
+        assertEquals(demandCount * 3, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM egbs_demanddetail_v1 WHERE tenantid = ?", Integer.class, TENANT_ID));
+    }
+
+    private void clear() {
+        jdbcTemplate.update("DELETE FROM egbs_demanddetail_v1 WHERE tenantid = ?", TENANT_ID);
+        jdbcTemplate.update("DELETE FROM egbs_demand_v1 WHERE tenantid = ?", TENANT_ID);
+    }
+
+    private List<Demand> getDemands(int demandCount) {
+
+        AuditDetails auditDetails = AuditDetails.builder().createdBy("bench").lastModifiedBy("bench")
+                .createdTime(System.currentTimeMillis()).lastModifiedTime(System.currentTimeMillis()).build();
+        List<Demand> demands = new ArrayList<>(demandCount);
+        for (int i = 0; i < demandCount; i++) {
+
+            String demandId = UUID.randomUUID().toString();
+            List<DemandDetail> details = new ArrayList<>();
+            for (String taxHead : Arrays.asList("PT_TAX", "PT_CESS", "PT_PENALTY"))
+                details.add(DemandDetail.builder().id(UUID.randomUUID().toString()).demandId(demandId)
+                        .taxHeadMasterCode(taxHead).taxAmount(new BigDecimal("120.25"))
+                        .collectionAmount(BigDecimal.ZERO).tenantId(TENANT_ID).auditDetails(auditDetails).build());
+
+            demands.add(Demand.builder().id(demandId).tenantId(TENANT_ID).consumerCode("PT-" + i)
+                    .consumerType("PROPERTY").businessService("PT").taxPeriodFrom(1554076800000L)
+                    .taxPeriodTo(1585699199000L).minimumAmountPayable(BigDecimal.ZERO)
+                    .status(Demand.StatusEnum.ACTIVE).billExpiryTime(864000000L).auditDetails(auditDetails)
+                    .demandDetails(details).build());
+        }
+        return demands;
+    }
+
+    private List<DemandDetail> getDetails(List<Demand> demands) {
+        List<DemandDetail> details = new ArrayList<>();
+        for (Demand demand : demands)
+            details.addAll(demand.getDemandDetails());
+        return details;
+    }
+}
@@ -0,0 +1,119 @@
+package org.egov.demand.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.AuditDetails;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.util.BillingMetrics;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Copies demands into a local postgres database migrated with the service's
+ * flyway scripts and reads the rows back, e.g.
+ *
+ * mvn test -Dtest=BulkCopyRepositoryIntegrationTest -Dbs.it.db.url=jdbc:postgresql://localhost:5432/egbs_it
+ */
+@EnabledIfSystemProperty(named = "bs.it.db.url", matches = ".+")
+class BulkCopyRepositoryIntegrationTest {
+
+    private static final String TENANT_ID = "pb.copyit";
+
+    private static JdbcTemplate jdbcTemplate;
+
+    private BulkCopyRepository bulkCopyRepository;
+
+    @BeforeAll
+    static void migrate() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(System.getProperty("bs.it.db.url"),
+                System.getProperty("bs.it.db.username", "postgres"), System.getProperty("bs.it.db.password", "postgres"));
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/main").load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MultiStateInstanceUtil centralInstanceUtil = mock(MultiStateInstanceUtil.class);
+        when(centralInstanceUtil.replaceSchemaPlaceholder(anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0, String.class).replace("{schema}.", ""));
+
+        ApplicationProperties appProps = mock(ApplicationProperties.class);
+        when(appProps.getBulkCopyBufferSize()).thenReturn(65536);
+
+        BillingMetrics billingMetrics = new BillingMetrics();
+        ReflectionTestUtils.setField(billingMetrics, "meterRegistry", new SimpleMeterRegistry());
+
+        bulkCopyRepository = new BulkCopyRepository();
+        ReflectionTestUtils.setField(bulkCopyRepository, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(bulkCopyRepository, "centralInstanceUtil", centralInstanceUtil);
+        ReflectionTestUtils.setField(bulkCopyRepository, "mapper", new ObjectMapper());
+        ReflectionTestUtils.setField(bulkCopyRepository, "appProps", appProps);
+        ReflectionTestUtils.setField(bulkCopyRepository, "billingMetrics", billingMetrics);
+        clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        clear();
+    }
+
+    @Test
+    void testNullAdditionalDetailsAreCopiedAsSqlNull() {
+        Demand withoutDetails = getDemand("DMD-IT-1", null);
+        Demand withDetails = getDemand("DMD-IT-2", Collections.singletonMap("ward", "W1"));
+        List<Demand> demands = Arrays.asList(withoutDetails, withDetails);
+
+        bulkCopyRepository.copyDemands(demands, Arrays.asList(withoutDetails.getDemandDetails().get(0),
+                withDetails.getDemandDetails().get(0)), TENANT_ID);
+
+        assertTrue(jdbcTemplate.queryForObject(
+                "SELECT additionaldetails IS NULL FROM egbs_demand_v1 WHERE id = 'DMD-IT-1'", Boolean.class));
+        assertTrue(jdbcTemplate.queryForObject(
+                "SELECT additionaldetails IS NULL FROM egbs_demanddetail_v1 WHERE demandid = 'DMD-IT-1'", Boolean.class));
+        assertEquals("W1", jdbcTemplate.queryForObject(
+                "SELECT additionaldetails->>'ward' FROM egbs_demand_v1 WHERE id = 'DMD-IT-2'", String.class));
+    }
+
+    private void clear() {
+        jdbcTemplate.update("DELETE FROM egbs_demanddetail_v1 WHERE tenantid = ?", TENANT_ID);
+        jdbcTemplate.update("DELETE FROM egbs_demand_v1 WHERE tenantid = ?", TENANT_ID);
+    }
+
+    private Demand getDemand(String demandId, Object additionalDetails) {
+
+        AuditDetails auditDetails = AuditDetails.builder().createdBy("it").lastModifiedBy("it")
+                .createdTime(System.currentTimeMillis()).lastModifiedTime(System.currentTimeMillis()).build();
+        DemandDetail detail = DemandDetail.builder().id(demandId + "-DD").demandId(demandId)
+                .taxHeadMasterCode("PT_TAX").taxAmount(new BigDecimal("120.25")).collectionAmount(BigDecimal.ZERO)
+                .tenantId(TENANT_ID).additionalDetails(additionalDetails).auditDetails(auditDetails).build();
+
+        return Demand.builder().id(demandId).tenantId(TENANT_ID).consumerCode("PT-" + demandId)
+                .consumerType("PROPERTY").businessService("PT").taxPeriodFrom(1554076800000L)
+                .taxPeriodTo(1585699199000L).minimumAmountPayable(BigDecimal.ZERO).status(Demand.StatusEnum.ACTIVE)
+                .billExpiryTime(864000000L).additionalDetails(additionalDetails).auditDetails(auditDetails)
+                .demandDetails(Collections.singletonList(detail)).build();
+    }
+}
@@ -0,0 +1,239 @@
+package org.egov.demand.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.AuditDetails;
+import org.egov.demand.model.BillAccountDetailV2;
+import org.egov.demand.model.BillDetailV2;
+import org.egov.demand.model.BillV2;
+import org.egov.demand.model.BillV2.BillStatus;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.repository.BulkCopyRepository.CopyTable;
+import org.egov.demand.util.BillingMetrics;
+import org.egov.demand.web.contract.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class BulkCopyRepositoryTest {
+
+    private ApplicationProperties appProps;
+
+    private CopyManager copyManager;
+
+    private BulkCopyRepository bulkCopyRepository;
+
+    /*
+     * csv written to every copy, keyed on the copy query
+     */
+    private Map<String, StringBuilder> copiedCsv;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        appProps = mock(ApplicationProperties.class);
+        when(appProps.getBulkCopyBufferSize()).thenReturn(65536);
+
+        MultiStateInstanceUtil centralInstanceUtil = mock(MultiStateInstanceUtil.class);
+        when(centralInstanceUtil.replaceSchemaPlaceholder(anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0, String.class).replace("{schema}", "pb"));
+
+        Connection connection = mock(Connection.class);
+        PGConnection pgConnection = mock(PGConnection.class);
+        copyManager = mock(CopyManager.class);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+
+        copiedCsv = new HashMap<>();
+        when(copyManager.copyIn(anyString())).thenAnswer(invocation -> getCopyIn(invocation.getArgument(0)));
+
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0, ConnectionCallback.class).doInConnection(connection));
+
+        bulkCopyRepository = new BulkCopyRepository();
+        ReflectionTestUtils.setField(bulkCopyRepository, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(bulkCopyRepository, "centralInstanceUtil", centralInstanceUtil);
+        ReflectionTestUtils.setField(bulkCopyRepository, "mapper", new ObjectMapper());
+        ReflectionTestUtils.setField(bulkCopyRepository, "appProps", appProps);
+
+        BillingMetrics billingMetrics = new BillingMetrics();
+        ReflectionTestUtils.setField(billingMetrics, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(bulkCopyRepository, "billingMetrics", billingMetrics);
+    }
+
+    @Test
+    void testCsvQuotesValuesAndLeavesNullsUnquoted() {
+        StringBuilder csv = new StringBuilder();
+
+        BulkCopyRepository.appendCsvRow(csv, new String[] { "DMD-1", null, "", "say \"hi\", bye" });
+
+        assertEquals("\"DMD-1\",,\"\",\"say \"\"hi\"\", bye\"\n", csv.toString());
+    }
+
+    @Test
+    void testDemandsAreCopiedIntoTheTenantSchema() throws Exception {
+        Demand demand = getDemand("DMD-1");
+
+        bulkCopyRepository.copyDemands(Collections.singletonList(demand), demand.getDemandDetails(), "pb.amritsar");
+
+        String demandCsv = copiedCsv.get(CopyTable.DEMAND.getCopyQuery().replace("{schema}", "pb")).toString();
+        assertEquals("\"DMD-1\",\"CC-1\",\"PROPERTY\",\"PT\",\"user-1\",\"1000\",\"2000\",\"0\",\"creator\",\"modifier\","
+                + "\"10\",\"20\",\"pb.amritsar\",\"ACTIVE\",,\"3600\",\n", demandCsv);
+
+        String detailCsv = copiedCsv.get(CopyTable.DEMAND_DETAIL.getCopyQuery().replace("{schema}", "pb")).toString();
+        assertEquals(2, detailCsv.split("\n").length);
+        assertEquals(CopyTable.DEMAND_DETAIL.getColumns().size(), detailCsv.split("\n")[0].split(",", -1).length);
+    }
+
+    @Test
+    void testAdditionalDetailsAreWrittenAsJsonOrLeftNull() {
+        Demand demand = getDemand("DMD-1");
+        demand.setAdditionalDetails(Collections.singletonMap("ward", "W1"));
+
+        assertEquals("{\"ward\":\"W1\"}", bulkCopyRepository.getDemandValues(demand)[14]);
+        assertEquals(null, bulkCopyRepository.getDemandDetailValues(demand.getDemandDetails().get(0))[10]);
+    }
+
+    @Test
+    void testBillRowsMatchTheCopyColumns() throws Exception {
+        bulkCopyRepository.copyBills(Arrays.asList(getBill("BILL-1"), getBill("BILL-2")), "pb.amritsar");
+
+        assertRows(CopyTable.BILL, 2);
+        assertRows(CopyTable.BILL_DETAIL, 2);
+        assertRows(CopyTable.BILL_ACCOUNT_DETAIL, 4);
+    }
+
+    @Test
+    void testRowsAreStreamedOneBufferAtATime() throws Exception {
+        when(appProps.getBulkCopyBufferSize()).thenReturn(100);
+        List<Demand> demands = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            demands.add(getDemand("DMD-" + i));
+
+        CopyIn copyIn = mock(CopyIn.class);
+        when(copyManager.copyIn(anyString())).thenReturn(copyIn);
+        when(copyIn.endCopy()).thenReturn(10L);
+
+        assertEquals(10L, bulkCopyRepository.copyRows(CopyTable.DEMAND, "pb.amritsar", demands,
+                bulkCopyRepository::getDemandValues));
+        verify(copyIn, times(10)).writeToCopy(any(byte[].class), anyInt(), anyInt());
+        verify(copyIn, never()).cancelCopy();
+    }
+
+    @Test
+    void testFailedCopyIsCancelled() throws Exception {
+        CopyIn copyIn = mock(CopyIn.class);
+        when(copyManager.copyIn(anyString())).thenReturn(copyIn);
+        when(copyIn.isActive()).thenReturn(true);
+        doAnswer(invocation -> {
+            throw new IllegalStateException("connection reset");
+        }).when(copyIn).writeToCopy(any(byte[].class), anyInt(), anyInt());
+
+        assertThrows(IllegalStateException.class, () -> bulkCopyRepository.copyRows(CopyTable.DEMAND, "pb.amritsar",
+                Collections.singletonList(getDemand("DMD-1")), bulkCopyRepository::getDemandValues));
+        verify(copyIn).cancelCopy();
+    }
+
+    private void assertRows(CopyTable table, int rowCount) {
+        String[] rows = copiedCsv.get(table.getCopyQuery().replace("{schema}", "pb")).toString().split("\n");
+        assertEquals(rowCount, rows.length);
+        for (String row : rows)
+            assertEquals(table.getColumns().size(), row.split(",", -1).length);
+    }
+
+    private CopyIn getCopyIn(String copyQuery) throws Exception {
+        StringBuilder csv = copiedCsv.computeIfAbsent(copyQuery, query -> new StringBuilder());
+        CopyIn copyIn = mock(CopyIn.class);
+        doAnswer(invocation -> {
+            csv.append(new String(invocation.getArgument(0, byte[].class), invocation.getArgument(1, Integer.class),
+                    invocation.getArgument(2, Integer.class), StandardCharsets.UTF_8));
+            return null;
+        }).when(copyIn).writeToCopy(any(byte[].class), anyInt(), anyInt());
+        return copyIn;
+    }
+
+    private AuditDetails getAuditDetails() {
+        return AuditDetails.builder().createdBy("creator").lastModifiedBy("modifier").createdTime(10L)
+                .lastModifiedTime(20L).build();
+    }
+
+    private Demand getDemand(String demandId) {
+        Demand demand = new Demand();
+        demand.setId(demandId);
+        demand.setTenantId("pb.amritsar");
+        demand.setConsumerCode("CC-1");
+        demand.setConsumerType("PROPERTY");
+        demand.setBusinessService("PT");
+        demand.setPayer(User.builder().uuid("user-1").build());
+        demand.setTaxPeriodFrom(1000L);
+        demand.setTaxPeriodTo(2000L);
+        demand.setMinimumAmountPayable(BigDecimal.ZERO);
+        demand.setStatus(Demand.StatusEnum.ACTIVE);
+        demand.setBillExpiryTime(3600L);
+        demand.setAuditDetails(getAuditDetails());
+
+        List<DemandDetail> details = new ArrayList<>();
+        for (String taxHead : Arrays.asList("PT_TAX", "PT_CESS")) {
+            DemandDetail detail = new DemandDetail();
+            detail.setId(demandId + "-" + taxHead);
+            detail.setDemandId(demandId);
+            detail.setTaxHeadMasterCode(taxHead);
+            detail.setTaxAmount(new BigDecimal("100.50"));
+            detail.setCollectionAmount(BigDecimal.ZERO);
+            detail.setTenantId("pb.amritsar");
+            detail.setAuditDetails(getAuditDetails());
+            details.add(detail);
+        }
+        demand.setDemandDetails(details);
+        return demand;
+    }
+
+    private BillV2 getBill(String billId) {
+        List<BillAccountDetailV2> accountDetails = new ArrayList<>();
+        for (String taxHead : Arrays.asList("PT_TAX", "PT_CESS"))
+            accountDetails.add(BillAccountDetailV2.builder().id(billId + "-" + taxHead).tenantId("pb.amritsar")
+                    .billDetailId(billId + "-D").demandDetailId("DL-" + taxHead).order(1)
+                    .amount(BigDecimal.TEN).adjustedAmount(BigDecimal.ZERO).taxHeadCode(taxHead).build());
+
+        BillDetailV2 billDetail = BillDetailV2.builder().id(billId + "-D").tenantId("pb.amritsar").billId(billId)
+                .demandId("DMD-1").fromPeriod(1000L).toPeriod(2000L).amount(BigDecimal.valueOf(20)).expiryDate(3000L)
+                .billAccountDetails(accountDetails).build();
+
+        return BillV2.builder().id(billId).tenantId("pb.amritsar").consumerCode("CC-1").businessService("PT")
+                .billNumber("BN-" + billId).billDate(500L).status(BillStatus.ACTIVE).auditDetails(getAuditDetails())
+                .billDetails(new ArrayList<>(Collections.singletonList(billDetail))).build();
+    }
+}
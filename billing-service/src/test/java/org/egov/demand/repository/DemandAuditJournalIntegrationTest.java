@@ -0,0 +1,118 @@
+package org.egov.demand.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.repository.DemandAuditJournal.AuditTable;
+import org.egov.demand.repository.DemandAuditJournal.JournalEntry;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Replays journal rows into a local postgres database migrated with the
+ * service's flyway scripts, e.g.
+ *
+ * mvn test -Dtest=DemandAuditJournalIntegrationTest -Dbs.it.db.url=jdbc:postgresql://localhost:5432/egbs_it
+ */
+@EnabledIfSystemProperty(named = "bs.it.db.url", matches = ".+")
+class DemandAuditJournalIntegrationTest {
+
+    private static final String TENANT_ID = "pb.journalit";
+
+    private static JdbcTemplate jdbcTemplate;
+
+    private static DataSourceTransactionManager transactionManager;
+
+    private DemandAuditJournal journal;
+
+    @BeforeAll
+    static void migrate() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(System.getProperty("bs.it.db.url"),
+                System.getProperty("bs.it.db.username", "postgres"), System.getProperty("bs.it.db.password", "postgres"));
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/main").load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MultiStateInstanceUtil centralInstanceUtil = mock(MultiStateInstanceUtil.class);
+        when(centralInstanceUtil.replaceSchemaPlaceholder(anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0, String.class).replace("{schema}.", ""));
+
+        journal = new DemandAuditJournal();
+        ReflectionTestUtils.setField(journal, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(journal, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(journal, "centralInstanceUtil", centralInstanceUtil);
+        clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        clear();
+    }
+
+    @Test
+    void testOnlyRowsOfMarkedBatchesAreCopied() {
+        insertDemand("DMD-IT-1");
+        insertDemand("DMD-IT-2");
+        journal.markBatch(TENANT_ID, "BATCH-COMMITTED");
+
+        /*
+         * the second batch stands for a transaction cut short by a crash, its demand was updated later by another one
+         */
+        journal.copyEntries(Arrays.asList(getEntry("BATCH-COMMITTED", "DMD-IT-1", "AUDIT-1"),
+                getEntry("BATCH-UNCOMMITTED", "DMD-IT-2", "AUDIT-2")));
+
+        assertEquals(Arrays.asList("DMD-IT-1"), jdbcTemplate.queryForList(
+                "SELECT demandid FROM egbs_demand_v1_audit WHERE tenantid = ?", String.class, TENANT_ID));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM egbs_demand_audit_journal_batch WHERE tenantid = ?", Integer.class, TENANT_ID));
+    }
+
+    @Test
+    void testRowsOfAnotherTenantsDemandAreNotCopied() {
+        insertDemand("DMD-IT-1");
+        journal.markBatch(TENANT_ID, "BATCH-1");
+
+        JournalEntry entry = getEntry("BATCH-1", "DMD-IT-1", "AUDIT-1");
+        entry.getValues().set(10, "pb.other");
+        journal.copyEntries(Arrays.asList(entry));
+
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM egbs_demand_v1_audit WHERE id = 'AUDIT-1'",
+                Integer.class));
+    }
+
+    private void insertDemand(String demandId) {
+        jdbcTemplate.update("INSERT INTO egbs_demand_v1 (id, consumercode, consumertype, businessservice, taxperiodfrom,"
+                + " taxperiodto, minimumamountpayable, createdby, createdtime, tenantid, status)"
+                + " VALUES (?, ?, 'PROPERTY', 'PT', 1, 2, 0, 'it', 1, ?, 'ACTIVE')", demandId, "PT-" + demandId,
+                TENANT_ID);
+    }
+
+    private JournalEntry getEntry(String batchId, String demandId, String auditId) {
+        List<String> values = Arrays.asList(demandId, "PT-" + demandId, "PROPERTY", "PT", null, "1", "2", "0", "it",
+                "1", TENANT_ID, "ACTIVE", null, auditId, null, "false");
+        return new JournalEntry(batchId, AuditTable.DEMAND, TENANT_ID, 1L, values);
+    }
+
+    private void clear() {
+        jdbcTemplate.update("DELETE FROM egbs_demand_v1_audit WHERE demandid LIKE 'DMD-IT-%'");
+        jdbcTemplate.update("DELETE FROM egbs_demand_v1 WHERE tenantid = ?", TENANT_ID);
+        jdbcTemplate.update("DELETE FROM egbs_demand_audit_journal_batch WHERE tenantid = ?", TENANT_ID);
+    }
+}
@@ -0,0 +1,282 @@
+package org.egov.demand.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.AuditDetails;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.repository.DemandAuditJournal.AuditTable;
+import org.egov.demand.repository.DemandAuditJournal.JournalEntry;
+import org.egov.demand.util.BillingMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DemandAuditJournalTest {
+
+    @TempDir
+    Path journalDir;
+
+    private ApplicationProperties appProps;
+
+    private DemandAuditJournal journal;
+
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        appProps = mock(ApplicationProperties.class);
+        when(appProps.getIsDemandAuditJournalEnabled()).thenReturn(true);
+        when(appProps.getDemandAuditJournalDir()).thenReturn(journalDir.toString());
+        when(appProps.getDemandAuditJournalMaxPendingRows()).thenReturn(10L);
+        when(appProps.getDemandAuditJournalFlushInterval()).thenReturn(60000L);
+        journal = openJournal();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.setField(journal, "isShutdown", true);
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void testAppendedRowsAreForcedToTheJournal() throws Exception {
+        assertTrue(journal.append("pb.amritsar", Collections.singletonList(getDemand("DMD-1")),
+                Collections.singletonList(getDemandDetail("DMD-1", "DL-1"))));
+
+        assertEquals(2L, journal.getLag().get("pendingRows"));
+        assertEquals(1, countSegments());
+        verify(journal, never()).copyEntries(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlushCopiesRowsInOrderAndClearsTheJournal() throws Exception {
+        journal.append("pb.amritsar", Collections.singletonList(getDemand("DMD-1")), Collections.emptyList());
+        journal.append("pb.amritsar", Collections.singletonList(getDemand("DMD-2")),
+                Collections.singletonList(getDemandDetail("DMD-2", "DL-2")));
+
+        journal.flush();
+
+        ArgumentCaptor<List<JournalEntry>> captor = ArgumentCaptor.forClass(List.class);
+        verify(journal).copyEntries(captor.capture());
+        List<JournalEntry> entries = captor.getValue();
+        assertEquals(3, entries.size());
+        assertEquals("DMD-1", entries.get(0).getValues().get(0));
+        assertEquals(AuditTable.DEMAND_DETAIL, entries.get(2).getTable());
+        assertEquals("DL-2", entries.get(2).getValues().get(0));
+        assertNull(entries.get(0).getValues().get(12));
+        assertEquals(0L, journal.getLag().get("pendingRows"));
+        assertEquals(0, countSegments());
+    }
+
+    @Test
+    void testFullJournalAsksForSynchronousWrite() {
+        List<Demand> demands = Arrays.asList(getDemand("DMD-1"), getDemand("DMD-2"), getDemand("DMD-3"));
+        List<DemandDetail> demandDetails = Arrays.asList(getDemandDetail("DMD-1", "DL-1"),
+                getDemandDetail("DMD-2", "DL-2"), getDemandDetail("DMD-3", "DL-3"));
+
+        assertTrue(journal.append("pb.amritsar", demands, demandDetails));
+        assertFalse(journal.append("pb.amritsar", demands, demandDetails));
+        assertEquals(6L, journal.getLag().get("pendingRows"));
+    }
+
+    @Test
+    void testFailedCopyKeepsTheSegmentForTheNextFlush() throws Exception {
+        journal.append("pb.amritsar", Collections.singletonList(getDemand("DMD-1")), Collections.emptyList());
+        doThrow(new RuntimeException("database down")).when(journal).copyEntries(any());
+
+        journal.flush();
+
+        assertEquals(1L, journal.getLag().get("failedFlushes"));
+        assertEquals(1L, journal.getLag().get("pendingRows"));
+        assertEquals(1, countSegments());
+    }
+
+    @Test
+    void testRowsLeftByAnEarlierRunAreReplayed() throws Exception {
+        journal.append("pb.amritsar", Collections.singletonList(getDemand("DMD-1")), Collections.emptyList());
+
+        DemandAuditJournal restarted = openJournal();
+        assertEquals(1L, restarted.getLag().get("pendingRows"));
+
+        restarted.append("pb.amritsar", Collections.singletonList(getDemand("DMD-2")), Collections.emptyList());
+        restarted.flush();
+
+        verify(restarted, times(2)).copyEntries(any());
+        assertEquals(0, countSegments());
+        ReflectionTestUtils.setField(restarted, "isShutdown", true);
+    }
+
+    @Test
+    void testRowsOfATransactionAreJournaledBeforeItCommits() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        journal.append("pb.amritsar", Collections.singletonList(getDemand("DMD-1")),
+                Collections.singletonList(getDemandDetail("DMD-1", "DL-1")));
+        TransactionSynchronization synchronization = TransactionSynchronizationManager.getSynchronizations().get(0);
+        assertEquals(0, countSegments());
+
+        verify(journal, never()).markBatch(anyString(), anyString());
+
+        synchronization.beforeCommit(false);
+        assertEquals(1, countSegments());
+
+        journal.flush();
+        verify(journal, never()).copyEntries(any());
+
+        synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        journal.flush();
+        verify(journal).copyEntries(any());
+        assertEquals(0L, journal.getLag().get("pendingRows"));
+        assertEquals(0, countSegments());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchIsMarkedInTheTransactionOfItsRows() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        journal.append("pb.amritsar", Collections.singletonList(getDemand("DMD-1")), Collections.emptyList());
+        TransactionSynchronizationManager.getSynchronizations().get(0).beforeCommit(false);
+        TransactionSynchronizationManager.getSynchronizations().get(0)
+                .afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+
+        journal.flush();
+
+        ArgumentCaptor<List<JournalEntry>> captor = ArgumentCaptor.forClass(List.class);
+        verify(journal).copyEntries(captor.capture());
+        verify(journal).markBatch(eq("pb.amritsar"), eq(captor.getValue().get(0).getBatchId()));
+    }
+
+    @Test
+    void testRowsOfARolledBackTransactionAreNotCopied() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        journal.append("pb.amritsar", Collections.singletonList(getDemand("DMD-1")), Collections.emptyList());
+        TransactionSynchronization synchronization = TransactionSynchronizationManager.getSynchronizations().get(0);
+
+        synchronization.beforeCommit(false);
+        synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        journal.flush();
+
+        verify(journal, never()).copyEntries(any());
+        assertEquals(0L, journal.getLag().get("pendingRows"));
+        assertEquals(0, countSegments());
+    }
+
+    @Test
+    void testRolledBackMarkersAreReadAfterARestart() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        journal.append("pb.amritsar", Collections.singletonList(getDemand("DMD-1")), Collections.emptyList());
+        TransactionSynchronization synchronization = TransactionSynchronizationManager.getSynchronizations().get(0);
+        synchronization.beforeCommit(false);
+        synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        DemandAuditJournal restarted = openJournal();
+        assertEquals(1L, restarted.getLag().get("pendingRows"));
+        restarted.flush();
+
+        verify(restarted, never()).copyEntries(any());
+        assertEquals(0L, restarted.getLag().get("pendingRows"));
+        ReflectionTestUtils.setField(restarted, "isShutdown", true);
+    }
+
+    @Test
+    void testTransactionRolledBackBeforeCommitReleasesItsRows() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        journal.append("pb.amritsar", Collections.singletonList(getDemand("DMD-1")), Collections.emptyList());
+
+        TransactionSynchronizationManager.getSynchronizations().get(0)
+                .afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(0L, journal.getLag().get("pendingRows"));
+        assertEquals(0, countSegments());
+    }
+
+    @Test
+    void testPendingRowsArePublishedAsAGauge() {
+        journal.append("pb.amritsar", Collections.singletonList(getDemand("DMD-1")), Collections.emptyList());
+
+        assertEquals(1.0, meterRegistry.get(BillingMetrics.AUDIT_JOURNAL_PENDING_METRIC).gauge().value());
+        assertTrue(meterRegistry.get(BillingMetrics.AUDIT_JOURNAL_LAG_METRIC).gauge().value() >= 0);
+    }
+
+    private DemandAuditJournal openJournal() {
+        DemandAuditJournal demandAuditJournal = spy(new DemandAuditJournal());
+        ReflectionTestUtils.setField(demandAuditJournal, "appProps", appProps);
+        ReflectionTestUtils.setField(demandAuditJournal, "mapper", new ObjectMapper());
+        BillingMetrics billingMetrics = new BillingMetrics();
+        ReflectionTestUtils.setField(billingMetrics, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(demandAuditJournal, "billingMetrics", billingMetrics);
+        doNothing().when(demandAuditJournal).copyEntries(any());
+        doNothing().when(demandAuditJournal).markBatch(anyString(), anyString());
+        demandAuditJournal.init();
+        return demandAuditJournal;
+    }
+
+    private long countSegments() throws Exception {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files.count();
+        }
+    }
+
+    private Demand getDemand(String demandId) {
+        Demand demand = new Demand();
+        demand.setId(demandId);
+        demand.setTenantId("pb.amritsar");
+        demand.setConsumerCode("CC-" + demandId);
+        demand.setTaxPeriodFrom(1680307200000L);
+        demand.setTaxPeriodTo(1711929599000L);
+        demand.setIsPaymentCompleted(false);
+        demand.setAuditDetails(getAuditDetails());
+        return demand;
+    }
+
+    private DemandDetail getDemandDetail(String demandId, String demandDetailId) {
+        DemandDetail demandDetail = new DemandDetail();
+        demandDetail.setId(demandDetailId);
+        demandDetail.setDemandId(demandId);
+        demandDetail.setTaxAmount(BigDecimal.TEN);
+        demandDetail.setCollectionAmount(BigDecimal.ZERO);
+        demandDetail.setAuditDetails(getAuditDetails());
+        return demandDetail;
+    }
+
+    private AuditDetails getAuditDetails() {
+        return AuditDetails.builder().createdBy("user").lastModifiedBy("user").createdTime(1L).lastModifiedTime(1L)
+                .build();
+    }
+}
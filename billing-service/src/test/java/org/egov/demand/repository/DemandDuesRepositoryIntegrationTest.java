@@ -0,0 +1,189 @@
+package org.egov.demand.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.model.ConsumerDues;
+import org.egov.demand.model.Demand;
+import org.egov.demand.repository.querybuilder.DemandDuesQueryBuilder;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs against a local postgres database which is migrated with the service's
+ * flyway scripts, e.g.
+ * 
+ * mvn test -Dtest=DemandDuesRepositoryIntegrationTest -Dbs.it.db.url=jdbc:postgresql://localhost:5432/egbs_it
+ *   -Dbs.it.db.username=postgres -Dbs.it.db.password=postgres
+ */
+@EnabledIfSystemProperty(named = "bs.it.db.url", matches = ".+")
+class DemandDuesRepositoryIntegrationTest {
+
+    private static final String TENANT_ID = "pb.duesit";
+
+    private static JdbcTemplate jdbcTemplate;
+
+    private DemandDuesRepository demandDuesRepository;
+
+    @BeforeAll
+    static void migrate() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(System.getProperty("bs.it.db.url"),
+                System.getProperty("bs.it.db.username", "postgres"), System.getProperty("bs.it.db.password", "postgres"));
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/main").load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MultiStateInstanceUtil centralInstanceUtil = mock(MultiStateInstanceUtil.class);
+        when(centralInstanceUtil.replaceSchemaPlaceholder(anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0, String.class).replace("{schema}.", ""));
+        when(centralInstanceUtil.isTenantIdStateLevel(anyString())).thenReturn(false);
+
+        DemandDuesQueryBuilder duesQueryBuilder = new DemandDuesQueryBuilder();
+        ReflectionTestUtils.setField(duesQueryBuilder, "centralInstanceUtil", centralInstanceUtil);
+
+        demandDuesRepository = new DemandDuesRepository();
+        ReflectionTestUtils.setField(demandDuesRepository, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(demandDuesRepository, "centralInstanceUtil", centralInstanceUtil);
+        ReflectionTestUtils.setField(demandDuesRepository, "duesQueryBuilder", duesQueryBuilder);
+
+        jdbcTemplate.update("DELETE FROM egbs_demand_dues WHERE tenantid = ?", TENANT_ID);
+        jdbcTemplate.update("DELETE FROM egbs_demanddetail_v1 WHERE tenantid = ?", TENANT_ID);
+        jdbcTemplate.update("DELETE FROM egbs_demand_v1 WHERE tenantid = ?", TENANT_ID);
+
+        insertDemand("DMD-1", "CC-1", 1L, "ACTIVE", "100", "40");
+        insertDemand("DMD-2", "CC-1", 2L, "ACTIVE", "50", "0");
+        insertDemand("DMD-3", "CC-1", 3L, "CANCELLED", "500", "0");
+        insertDemand("DMD-4", "CC-2", 1L, "ACTIVE", "30", "30");
+    }
+
+    @Test
+    void testDuesAreSummedOverActiveDemands() {
+        demandDuesRepository.refreshDues(Arrays.asList(getDemand("CC-1"), getDemand("CC-2")));
+
+        Map<String, ConsumerDues> dues = getDues("CC-1", "CC-2", "CC-3");
+
+        assertEquals(2, dues.size());
+        assertEquals(0, new BigDecimal("150").compareTo(dues.get("CC-1").getTaxAmount()));
+        assertEquals(0, new BigDecimal("110").compareTo(dues.get("CC-1").getBalanceAmount()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(dues.get("CC-2").getBalanceAmount()));
+    }
+
+    @Test
+    void testRefreshFollowsTheDemands() {
+        demandDuesRepository.refreshDues(Collections.singletonList(getDemand("CC-1")));
+        jdbcTemplate.update("UPDATE egbs_demanddetail_v1 SET collectionamount = taxamount WHERE tenantid = ? AND demandid = ?",
+                TENANT_ID, "DMD-2");
+        demandDuesRepository.refreshDues(Collections.singletonList(getDemand("CC-1")));
+
+        assertEquals(0, new BigDecimal("60").compareTo(getDues("CC-1").get("CC-1").getBalanceAmount()));
+    }
+
+    @Test
+    void testReconcileRebuildsDriftedAndMissingDues() {
+        demandDuesRepository.refreshDues(Collections.singletonList(getDemand("CC-1")));
+        jdbcTemplate.update("UPDATE egbs_demand_dues SET taxamount = 0, lastmodifiedtime = 0 WHERE tenantid = ?", TENANT_ID);
+        jdbcTemplate.update("INSERT INTO egbs_demand_dues (tenantid, businessservice, consumercode, taxamount,"
+                + " collectionamount, lastmodifiedtime) VALUES (?, 'PT', 'CC-GONE', 10, 0, 0)", TENANT_ID);
+
+        assertEquals(3, demandDuesRepository.reconcileDues(TENANT_ID));
+
+        Map<String, ConsumerDues> dues = getDues("CC-1", "CC-2", "CC-GONE");
+        assertEquals(2, dues.size());
+        assertEquals(0, new BigDecimal("150").compareTo(dues.get("CC-1").getTaxAmount()));
+        assertTrue(dues.containsKey("CC-2"));
+
+        assertEquals(0, demandDuesRepository.reconcileDues(TENANT_ID));
+    }
+
+    @Test
+    void testConcurrentWritesOfAConsumerLeaveTheFullTotal() throws Exception {
+        demandDuesRepository.refreshDues(Collections.singletonList(getDemand("CC-1")));
+        TransactionTemplate transactionTemplate = new TransactionTemplate(
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        CountDownLatch firstRefreshed = new CountDownLatch(1);
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<?> second = executor.submit(() -> {
+                firstRefreshed.await();
+                transactionTemplate.executeWithoutResult(status -> {
+                    insertDetail("DMD-2", "DMD-2-D3", "20", "0");
+                    secondStarted.countDown();
+                    demandDuesRepository.refreshDues(Collections.singletonList(getDemand("CC-1")));
+                });
+                return null;
+            });
+
+            transactionTemplate.executeWithoutResult(status -> {
+                insertDetail("DMD-1", "DMD-1-D2", "10", "0");
+                demandDuesRepository.refreshDues(Collections.singletonList(getDemand("CC-1")));
+                firstRefreshed.countDown();
+                try {
+                    /*
+                     * the second refresh waits on the lock of the consumer until this commits
+                     */
+                    secondStarted.await();
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            second.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, new BigDecimal("180").compareTo(getDues("CC-1").get("CC-1").getTaxAmount()));
+    }
+
+    private Map<String, ConsumerDues> getDues(String... consumerCodes) {
+        List<ConsumerDues> dues = demandDuesRepository.getDues(TENANT_ID, "PT", Arrays.asList(consumerCodes));
+        return dues.stream().collect(Collectors.toMap(ConsumerDues::getConsumerCode, Function.identity()));
+    }
+
+    private Demand getDemand(String consumerCode) {
+        return Demand.builder().tenantId(TENANT_ID).businessService("PT").consumerCode(consumerCode).build();
+    }
+
+    private void insertDemand(String demandId, String consumerCode, long taxPeriod, String status, String taxAmount,
+            String collectionAmount) {
+        jdbcTemplate.update("INSERT INTO egbs_demand_v1 (id, consumercode, consumertype, businessservice, taxperiodfrom,"
+                + " taxperiodto, createdby, createdtime, tenantid, status) VALUES (?, ?, 'it', 'PT', ?, ?, 'it', 0, ?, ?)",
+                demandId, consumerCode, taxPeriod, taxPeriod, TENANT_ID, status);
+        insertDetail(demandId, demandId + "-D", taxAmount, collectionAmount);
+    }
+
+    private void insertDetail(String demandId, String detailId, String taxAmount, String collectionAmount) {
+        jdbcTemplate.update("INSERT INTO egbs_demanddetail_v1 (id, demandid, taxheadcode, taxamount, collectionamount,"
+                + " createdby, createdtime, tenantid) VALUES (?, ?, 'PT_TAX', ?, ?, 'it', 0, ?)", detailId,
+                demandId, new BigDecimal(taxAmount), new BigDecimal(collectionAmount), TENANT_ID);
+    }
+}
@@ -7,6 +7,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -15,6 +16,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
 
+import org.egov.demand.config.ApplicationProperties;
 import org.egov.demand.model.Demand;
 
 import org.egov.demand.model.DemandCriteria;
@@ -53,6 +55,15 @@ class DemandRepositoryTest {
     @MockBean
     private Util util;
 
+    @MockBean
+    private DemandAuditJournal demandAuditJournal;
+
+    @MockBean
+    private BulkCopyRepository bulkCopyRepository;
+
+    @MockBean
+    private ApplicationProperties applicationProperties;
+
 
     @Test
     void testGetDemands() throws DataAccessException {
@@ -136,9 +147,8 @@ class DemandRepositoryTest {
 
     @Test
     void testUpdate4() throws DataAccessException {
-        when(this.jdbcTemplate.query((String) any(), (Object[]) any(),
-                (org.springframework.jdbc.core.ResultSetExtractor<Object>) any())).thenReturn("Query");
-        when(this.demandQueryBuilder.getDemandQuery((DemandCriteria) any(), (List<Object>) any()))
+        when(this.jdbcTemplate.batchUpdate((String) any(),
+                (org.springframework.jdbc.core.BatchPreparedStatementSetter) any()))
                 .thenThrow(new EmptyResultDataAccessException(3));
 
         ArrayList<Demand> demandList = new ArrayList<>();
@@ -147,7 +157,8 @@ class DemandRepositoryTest {
         when(demandRequest.getDemands()).thenReturn(demandList);
         assertThrows(EmptyResultDataAccessException.class,
                 () -> this.demandRepository.update(demandRequest, new PaymentBackUpdateAudit()));
-        verify(this.demandQueryBuilder).getDemandQuery((DemandCriteria) any(), (List<Object>) any());
+        verify(this.jdbcTemplate).batchUpdate((String) any(),
+                (org.springframework.jdbc.core.BatchPreparedStatementSetter) any());
         verify(demandRequest).getDemands();
     }
 
@@ -171,9 +182,7 @@ class DemandRepositoryTest {
         verify(this.jdbcTemplate).update((String) any(), (org.springframework.jdbc.core.PreparedStatementSetter) any());
         verify(this.jdbcTemplate, atLeast(1)).batchUpdate((String) any(),
                 (org.springframework.jdbc.core.BatchPreparedStatementSetter) any());
-        verify(this.jdbcTemplate).query((String) any(), (Object[]) any(),
-                (org.springframework.jdbc.core.ResultSetExtractor<Object>) any());
-        verify(this.demandQueryBuilder).getDemandQuery((DemandCriteria) any(), (List<Object>) any());
+        verify(this.demandQueryBuilder, never()).getDemandQuery((DemandCriteria) any(), (List<Object>) any());
         verify(demandRequest).getDemands();
     }
 
@@ -201,9 +210,7 @@ class DemandRepositoryTest {
         verify(this.jdbcTemplate).update((String) any(), (org.springframework.jdbc.core.PreparedStatementSetter) any());
         verify(this.jdbcTemplate, atLeast(1)).batchUpdate((String) any(),
                 (org.springframework.jdbc.core.BatchPreparedStatementSetter) any());
-        verify(this.jdbcTemplate).query((String) any(), (Object[]) any(),
-                (org.springframework.jdbc.core.ResultSetExtractor<Object>) any());
-        verify(this.demandQueryBuilder).getDemandQuery((DemandCriteria) any(), (List<Object>) any());
+        verify(this.demandQueryBuilder, never()).getDemandQuery((DemandCriteria) any(), (List<Object>) any());
         verify(demandRequest).getDemands();
     }
 
@@ -226,9 +233,7 @@ class DemandRepositoryTest {
         this.demandRepository.update(demandRequest, null);
         verify(this.jdbcTemplate, atLeast(1)).batchUpdate((String) any(),
                 (org.springframework.jdbc.core.BatchPreparedStatementSetter) any());
-        verify(this.jdbcTemplate).query((String) any(), (Object[]) any(),
-                (org.springframework.jdbc.core.ResultSetExtractor<Object>) any());
-        verify(this.demandQueryBuilder).getDemandQuery((DemandCriteria) any(), (List<Object>) any());
+        verify(this.demandQueryBuilder, never()).getDemandQuery((DemandCriteria) any(), (List<Object>) any());
         verify(demandRequest).getDemands();
     }
 
@@ -257,24 +262,24 @@ class DemandRepositoryTest {
 
 
     @Test
-    void testUpdateBatch() throws DataAccessException {
+    void testUpsertBatch() throws DataAccessException {
         when(this.jdbcTemplate.batchUpdate((String) any(),
                 (org.springframework.jdbc.core.BatchPreparedStatementSetter) any())).thenReturn(new int[]{1, 1, 1, 1});
         ArrayList<Demand> oldDemands = new ArrayList<>();
-        this.demandRepository.updateBatch(oldDemands, new ArrayList<>());
+        this.demandRepository.upsertBatch(oldDemands, new ArrayList<>(), "pb.amritsar");
         verify(this.jdbcTemplate, atLeast(1)).batchUpdate((String) any(),
                 (org.springframework.jdbc.core.BatchPreparedStatementSetter) any());
     }
 
 
     @Test
-    void testUpdateBatch2() throws DataAccessException {
+    void testUpsertBatch2() throws DataAccessException {
         when(this.jdbcTemplate.batchUpdate((String) any(),
                 (org.springframework.jdbc.core.BatchPreparedStatementSetter) any()))
                 .thenThrow(new EmptyResultDataAccessException(3));
         ArrayList<Demand> oldDemands = new ArrayList<>();
         assertThrows(EmptyResultDataAccessException.class,
-                () -> this.demandRepository.updateBatch(oldDemands, new ArrayList<>()));
+                () -> this.demandRepository.upsertBatch(oldDemands, new ArrayList<>(), "pb.amritsar"));
         verify(this.jdbcTemplate).batchUpdate((String) any(),
                 (org.springframework.jdbc.core.BatchPreparedStatementSetter) any());
     }
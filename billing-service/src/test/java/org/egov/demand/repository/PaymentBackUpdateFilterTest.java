@@ -0,0 +1,155 @@
+package org.egov.demand.repository;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.repository.querybuilder.DemandQueryBuilder;
+import org.egov.demand.util.BillingMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+public class PaymentBackUpdateFilterTest {
+
+    private static final String TENANT_ID = "pb.amritsar";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MultiStateInstanceUtil centralInstanceUtil;
+
+    @Mock
+    private ApplicationProperties appProps;
+
+    @Mock
+    private BillingMetrics billingMetrics;
+
+    @InjectMocks
+    private PaymentBackUpdateFilter paymentBackUpdateFilter;
+
+    /*
+     * successful back updates in the audit table, payment id and receipt cancellation
+     */
+    private final List<Object[]> auditRows = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        when(appProps.getIsPaymentBackUpdateFilterEnabled()).thenReturn(true);
+        when(appProps.getPaymentBackUpdateFilterTenantIds()).thenReturn(Collections.singletonList("pb"));
+        when(appProps.getPaymentBackUpdateFilterExpectedPayments()).thenReturn(1000L);
+        when(appProps.getPaymentBackUpdateFilterFalsePositiveRate()).thenReturn(0.01);
+        when(centralInstanceUtil.getStateLevelTenant(anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0, String.class).split("\\.")[0]);
+        when(centralInstanceUtil.replaceSchemaPlaceholder(anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0, String.class).replace("{schema}.", ""));
+
+        when(jdbcTemplate.queryForObject(eq(getQuery(DemandQueryBuilder.PAYMENT_BACKUPDATE_AUDIT_COUNT_QUERY)),
+                eq(Long.class), eq(true))).thenAnswer(invocation -> (long) auditRows.size());
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (Object[] row : new ArrayList<>(auditRows)) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString(1)).thenReturn((String) row[0]);
+                when(rs.getBoolean(2)).thenReturn((Boolean) row[1]);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(eq(getQuery(DemandQueryBuilder.PAYMENT_BACKUPDATE_AUDIT_FILTER_QUERY)),
+                any(RowCallbackHandler.class), eq(true));
+    }
+
+    @Test
+    public void testPaymentsInTheTableAtStartupMightBeBackUpdated() {
+        auditRows.add(new Object[] { "PAY-1", false });
+        auditRows.add(new Object[] { "PAY-2", true });
+        paymentBackUpdateFilter.init();
+
+        assertTrue(paymentBackUpdateFilter.mightBeBackUpdated(TENANT_ID, "PAY-1", false));
+        assertTrue(paymentBackUpdateFilter.mightBeBackUpdated(TENANT_ID, "PAY-2", true));
+        assertFalse(paymentBackUpdateFilter.mightBeBackUpdated(TENANT_ID, "PAY-2", false));
+        assertFalse(paymentBackUpdateFilter.mightBeBackUpdated(TENANT_ID, "PAY-3", false));
+    }
+
+    @Test
+    public void testNewPaymentsAreRarelySearched() {
+        for (int i = 0; i < 1000; i++)
+            auditRows.add(new Object[] { UUID.randomUUID().toString(), false });
+        paymentBackUpdateFilter.init();
+
+        int searched = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (paymentBackUpdateFilter.mightBeBackUpdated(TENANT_ID, UUID.randomUUID().toString(), false))
+                searched++;
+        }
+        assertTrue(searched < 300, searched + " of 10000 new payments searched");
+    }
+
+    @Test
+    public void testAddedPaymentsSurviveARebuildOfTheFullFilter() {
+        paymentBackUpdateFilter.init();
+
+        List<String> paymentIds = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            String paymentId = "PAY-" + i;
+            paymentIds.add(paymentId);
+            paymentBackUpdateFilter.addBackUpdated(TENANT_ID, Collections.singletonList(paymentId), false);
+            /*
+             * the back update commits after the payment is added
+             */
+            auditRows.add(new Object[] { paymentId, false });
+        }
+
+        verify(jdbcTemplate, times(2)).query(eq(getQuery(DemandQueryBuilder.PAYMENT_BACKUPDATE_AUDIT_FILTER_QUERY)),
+                any(RowCallbackHandler.class), eq(true));
+        for (String paymentId : paymentIds)
+            assertTrue(paymentBackUpdateFilter.mightBeBackUpdated(TENANT_ID, paymentId, false));
+    }
+
+    @Test
+    public void testStateWhoseFilterCouldNotBeLoadedIsSearched() {
+        when(jdbcTemplate.queryForObject(eq(getQuery(DemandQueryBuilder.PAYMENT_BACKUPDATE_AUDIT_COUNT_QUERY)),
+                eq(Long.class), eq(true))).thenThrow(new DataAccessResourceFailureException("connection refused"));
+        paymentBackUpdateFilter.init();
+
+        assertTrue(paymentBackUpdateFilter.mightBeBackUpdated(TENANT_ID, "PAY-1", false));
+        assertTrue(paymentBackUpdateFilter.mightBeBackUpdated("od.cuttack", "PAY-1", false));
+        paymentBackUpdateFilter.addBackUpdated(TENANT_ID, Arrays.asList("PAY-2"), false);
+    }
+
+    @Test
+    public void testDisabledFilterSearchesEveryPayment() {
+        when(appProps.getIsPaymentBackUpdateFilterEnabled()).thenReturn(false);
+        paymentBackUpdateFilter.init();
+
+        assertTrue(paymentBackUpdateFilter.mightBeBackUpdated(TENANT_ID, "PAY-1", false));
+        verify(jdbcTemplate, times(0)).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    private static String getQuery(String query) {
+        return query.replace("{schema}.", "");
+    }
+}
@@ -1,16 +1,23 @@
 package org.egov.demand.repository.querybuilder;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
 
 import com.fasterxml.jackson.databind.node.MissingNode;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.egov.common.utils.MultiStateInstanceUtil;
 
 import org.egov.demand.model.BillSearchCriteria;
 import org.egov.demand.model.BillV2;
 import org.egov.demand.model.UpdateBillCriteria;
 import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
 
 class BillQueryBuilderTest {
 
@@ -343,5 +350,30 @@ class BillQueryBuilderTest {
         assertEquals("UPDATE egbs_bill_v1 SET status=?  WHERE status='ACTIVE' AND tenantId = ?  AND id IN (  ?, ?)",
                 billQueryBuilder.getBillStatusUpdateQuery(updateBillCriteria, new ArrayList<>()));
     }
-}
 
+    @Test
+    void testStatementTextDoesNotDependOnListSizes() {
+        BillQueryBuilder billQueryBuilder = new BillQueryBuilder();
+        ReflectionTestUtils.setField(billQueryBuilder, "centralInstanceUtil", mock(MultiStateInstanceUtil.class));
+        Set<String> searchStatements = new HashSet<>();
+        Set<String> updateStatements = new HashSet<>();
+
+        for (int size = 1; size <= 40; size++) {
+            Set<String> values = IntStream.rangeClosed(1, size).mapToObj(i -> "V-" + i).collect(Collectors.toSet());
+            BillSearchCriteria billSearchCriteria = BillSearchCriteria.builder().tenantId("pb.amritsar").billId(values)
+                    .consumerCode(values).build();
+            ArrayList<Object> objectList = new ArrayList<>();
+            searchStatements.add(billQueryBuilder.getBillQuery(billSearchCriteria, objectList));
+            assertEquals(3, objectList.size());
+
+            UpdateBillCriteria updateBillCriteria = UpdateBillCriteria.builder().tenantId("pb.amritsar").billIds(values)
+                    .statusToBeUpdated(BillV2.BillStatus.EXPIRED).build();
+            objectList = new ArrayList<>();
+            updateStatements.add(billQueryBuilder.getBillStatusUpdateQuery(updateBillCriteria, objectList));
+            assertEquals(3, objectList.size());
+        }
+
+        assertEquals(1, searchStatements.size());
+        assertEquals(1, updateStatements.size());
+    }
+}
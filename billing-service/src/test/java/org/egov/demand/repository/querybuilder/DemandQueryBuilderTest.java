@@ -1,21 +1,32 @@
 package org.egov.demand.repository.querybuilder;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import org.egov.common.utils.MultiStateInstanceUtil;
 import org.egov.demand.model.DemandCriteria;
 import org.egov.demand.model.enums.Type;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.support.SqlArrayValue;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 
 class DemandQueryBuilderTest {
@@ -157,7 +168,7 @@ class DemandQueryBuilderTest {
         BigDecimal demandFrom = BigDecimal.valueOf(42L);
         DemandCriteria demandCriteria = new DemandCriteria("42", demandId, payer, consumerCode,
                 DemandQueryBuilder.BASE_DEMAND_QUERY, demandFrom, BigDecimal.valueOf(42L), 1L, 1L, Type.ARREARS, "42",
-                "jane.doe@example.org", DemandQueryBuilder.BASE_DEMAND_QUERY, true, true);
+                "jane.doe@example.org", DemandQueryBuilder.BASE_DEMAND_QUERY, true, true, null, null, null);
 
         ArrayList<Object> objectList = new ArrayList<>();
         assertEquals(
@@ -173,7 +184,7 @@ class DemandQueryBuilderTest {
                         + " dllastModifiedtime,dmdl.tenantid AS dltenantid,dmdl.additionaldetails as detailadditionaldetails FROM"
                         + " egbs_demand_v1 dmd INNER JOIN egbs_demanddetail_v1 dmdl ON dmd.id=dmdl.demandid AND dmd.tenantid=dmdl"
                         + ".tenantid WHERE  dmd.tenantid LIKE ?  AND dmd.status=? AND dmd.businessservice=? AND dmd.ispaymentcompleted"
-                        + " = ? AND dmd.taxPeriodFrom >= ? AND dmd.taxPeriodTo <= ? ORDER BY dmd.taxperiodfrom",
+                        + " = ? AND dmd.taxPeriodFrom >= ? AND dmd.taxPeriodTo <= ? ORDER BY dmd.taxperiodfrom, dmd.id",
                 actualDemandQueryBuilder.getDemandQuery(demandCriteria, objectList));
         assertEquals(6, objectList.size());
     }
@@ -199,7 +210,7 @@ class DemandQueryBuilderTest {
                         + ",dmdl.lastModifiedby AS dllastModifiedby,dmdl.createdtime AS dlcreatedtime,dmdl.lastModifiedtime AS"
                         + " dllastModifiedtime,dmdl.tenantid AS dltenantid,dmdl.additionaldetails as detailadditionaldetails FROM"
                         + " egbs_demand_v1 dmd INNER JOIN egbs_demanddetail_v1 dmdl ON dmd.id=dmdl.demandid AND dmd.tenantid=dmdl"
-                        + ".tenantid WHERE  dmd.tenantid LIKE ?  ORDER BY dmd.taxperiodfrom",
+                        + ".tenantid WHERE  dmd.tenantid LIKE ?  ORDER BY dmd.taxperiodfrom, dmd.id",
                 actualDemandQueryBuilder.getDemandQuery(demandCriteria, objectList));
         assertEquals(1, objectList.size());
     }
@@ -214,7 +225,7 @@ class DemandQueryBuilderTest {
         BigDecimal demandFrom = BigDecimal.valueOf(42L);
         DemandCriteria demandCriteria = new DemandCriteria(DemandQueryBuilder.BASE_DEMAND_QUERY, demandId, payer,
                 consumerCode, DemandQueryBuilder.BASE_DEMAND_QUERY, demandFrom, BigDecimal.valueOf(42L), 1L, 1L, Type.ARREARS,
-                "42", "jane.doe@example.org", DemandQueryBuilder.BASE_DEMAND_QUERY, true, true);
+                "42", "jane.doe@example.org", DemandQueryBuilder.BASE_DEMAND_QUERY, true, true, null, null, null);
 
         ArrayList<Object> objectList = new ArrayList<>();
         assertEquals(
@@ -230,7 +241,7 @@ class DemandQueryBuilderTest {
                         + " dllastModifiedtime,dmdl.tenantid AS dltenantid,dmdl.additionaldetails as detailadditionaldetails FROM"
                         + " egbs_demand_v1 dmd INNER JOIN egbs_demanddetail_v1 dmdl ON dmd.id=dmdl.demandid AND dmd.tenantid=dmdl"
                         + ".tenantid WHERE  dmd.tenantid = ?  AND dmd.status=? AND dmd.businessservice=? AND dmd.ispaymentcompleted"
-                        + " = ? AND dmd.taxPeriodFrom >= ? AND dmd.taxPeriodTo <= ? ORDER BY dmd.taxperiodfrom",
+                        + " = ? AND dmd.taxPeriodFrom >= ? AND dmd.taxPeriodTo <= ? ORDER BY dmd.taxperiodfrom, dmd.id",
                 actualDemandQueryBuilder.getDemandQuery(demandCriteria, objectList));
         assertEquals(6, objectList.size());
     }
@@ -245,7 +256,7 @@ class DemandQueryBuilderTest {
         BigDecimal demandFrom = BigDecimal.valueOf(42L);
         DemandCriteria demandCriteria = new DemandCriteria("42", stringSet, payer, consumerCode,
                 DemandQueryBuilder.BASE_DEMAND_QUERY, demandFrom, BigDecimal.valueOf(42L), 1L, 1L, Type.ARREARS, "42",
-                "jane.doe@example.org", DemandQueryBuilder.BASE_DEMAND_QUERY, true, true);
+                "jane.doe@example.org", DemandQueryBuilder.BASE_DEMAND_QUERY, true, true, null, null, null);
 
         ArrayList<Object> objectList = new ArrayList<>();
         assertEquals(
@@ -262,7 +273,7 @@ class DemandQueryBuilderTest {
                         + " egbs_demand_v1 dmd INNER JOIN egbs_demanddetail_v1 dmdl ON dmd.id=dmdl.demandid AND dmd.tenantid=dmdl"
                         + ".tenantid WHERE  dmd.tenantid LIKE ?  AND dmd.status=? AND dmd.id IN ( ? ) AND dmd.businessservice=?"
                         + " AND dmd.ispaymentcompleted = ? AND dmd.taxPeriodFrom >= ? AND dmd.taxPeriodTo <= ? ORDER BY"
-                        + " dmd.taxperiodfrom",
+                        + " dmd.taxperiodfrom, dmd.id",
                 actualDemandQueryBuilder.getDemandQuery(demandCriteria, objectList));
         assertEquals(7, objectList.size());
     }
@@ -279,7 +290,7 @@ class DemandQueryBuilderTest {
         BigDecimal demandFrom = BigDecimal.valueOf(42L);
         DemandCriteria demandCriteria = new DemandCriteria("42", stringSet, payer, consumerCode,
                 DemandQueryBuilder.BASE_DEMAND_QUERY, demandFrom, BigDecimal.valueOf(42L), 1L, 1L, Type.ARREARS, "42",
-                "jane.doe@example.org", DemandQueryBuilder.BASE_DEMAND_QUERY, true, true);
+                "jane.doe@example.org", DemandQueryBuilder.BASE_DEMAND_QUERY, true, true, null, null, null);
 
         ArrayList<Object> objectList = new ArrayList<>();
         assertEquals(
@@ -296,7 +307,7 @@ class DemandQueryBuilderTest {
                         + " egbs_demand_v1 dmd INNER JOIN egbs_demanddetail_v1 dmdl ON dmd.id=dmdl.demandid AND dmd.tenantid=dmdl"
                         + ".tenantid WHERE  dmd.tenantid LIKE ?  AND dmd.status=? AND dmd.id IN ( ? , ? ) AND dmd.businessservice=?"
                         + " AND dmd.ispaymentcompleted = ? AND dmd.taxPeriodFrom >= ? AND dmd.taxPeriodTo <= ? ORDER BY"
-                        + " dmd.taxperiodfrom",
+                        + " dmd.taxperiodfrom, dmd.id",
                 actualDemandQueryBuilder.getDemandQuery(demandCriteria, objectList));
         assertEquals(8, objectList.size());
     }
@@ -312,7 +323,7 @@ class DemandQueryBuilderTest {
         BigDecimal demandFrom = BigDecimal.valueOf(42L);
         DemandCriteria demandCriteria = new DemandCriteria("42", demandId, stringSet, consumerCode,
                 DemandQueryBuilder.BASE_DEMAND_QUERY, demandFrom, BigDecimal.valueOf(42L), 1L, 1L, Type.ARREARS, "42",
-                "jane.doe@example.org", DemandQueryBuilder.BASE_DEMAND_QUERY, true, true);
+                "jane.doe@example.org", DemandQueryBuilder.BASE_DEMAND_QUERY, true, true, null, null, null);
 
         ArrayList<Object> objectList = new ArrayList<>();
         assertEquals(
@@ -329,7 +340,7 @@ class DemandQueryBuilderTest {
                         + " egbs_demand_v1 dmd INNER JOIN egbs_demanddetail_v1 dmdl ON dmd.id=dmdl.demandid AND dmd.tenantid=dmdl"
                         + ".tenantid WHERE  dmd.tenantid LIKE ?  AND dmd.status=? AND dmd.payer IN ( ? ) AND dmd.businessservice=?"
                         + " AND dmd.ispaymentcompleted = ? AND dmd.taxPeriodFrom >= ? AND dmd.taxPeriodTo <= ? ORDER BY"
-                        + " dmd.taxperiodfrom",
+                        + " dmd.taxperiodfrom, dmd.id",
                 actualDemandQueryBuilder.getDemandQuery(demandCriteria, objectList));
         assertEquals(7, objectList.size());
     }
@@ -345,7 +356,7 @@ class DemandQueryBuilderTest {
         BigDecimal demandFrom = BigDecimal.valueOf(42L);
         DemandCriteria demandCriteria = new DemandCriteria("42", demandId, payer, stringSet,
                 DemandQueryBuilder.BASE_DEMAND_QUERY, demandFrom, BigDecimal.valueOf(42L), 1L, 1L, Type.ARREARS, "42",
-                "jane.doe@example.org", DemandQueryBuilder.BASE_DEMAND_QUERY, true, true);
+                "jane.doe@example.org", DemandQueryBuilder.BASE_DEMAND_QUERY, true, true, null, null, null);
 
         ArrayList<Object> objectList = new ArrayList<>();
         assertEquals(
@@ -362,9 +373,73 @@ class DemandQueryBuilderTest {
                         + " egbs_demand_v1 dmd INNER JOIN egbs_demanddetail_v1 dmdl ON dmd.id=dmdl.demandid AND dmd.tenantid=dmdl"
                         + ".tenantid WHERE  dmd.tenantid LIKE ?  AND dmd.status=? AND dmd.businessservice=? AND dmd.ispaymentcompleted"
                         + " = ? AND dmd.taxPeriodFrom >= ? AND dmd.taxPeriodTo <= ? AND dmd.consumercode IN ( ? ) ORDER BY"
-                        + " dmd.taxperiodfrom",
+                        + " dmd.taxperiodfrom, dmd.id",
                 actualDemandQueryBuilder.getDemandQuery(demandCriteria, objectList));
         assertEquals(7, objectList.size());
     }
-}
 
+    @Test
+    void testGetDemandQueryWithLimitPagesOnDemands() {
+        DemandQueryBuilder demandQueryBuilder = getDemandQueryBuilder();
+        DemandCriteria demandCriteria = DemandCriteria.builder().tenantId("pb.amritsar").businessService("PT")
+                .limit(50).build();
+
+        ArrayList<Object> objectList = new ArrayList<>();
+        String query = demandQueryBuilder.getDemandQuery(demandCriteria, objectList);
+
+        assertTrue(query.endsWith("WHERE dmd.id IN (SELECT dmd.id FROM {schema}.egbs_demand_v1 dmd WHERE  dmd.tenantid = ? "
+                + " AND dmd.businessservice=? ORDER BY dmd.taxperiodfrom, dmd.id LIMIT ?) ORDER BY dmd.taxperiodfrom, dmd.id"));
+        assertEquals(Arrays.asList("pb.amritsar", "PT", 50), objectList);
+    }
+
+    @Test
+    void testGetDemandQueryWithPageKeyResumesAfterKey() {
+        DemandQueryBuilder demandQueryBuilder = getDemandQueryBuilder();
+        DemandCriteria demandCriteria = DemandCriteria.builder().tenantId("pb.amritsar")
+                .consumerCode(Collections.singleton("CC-1")).limit(10).pageKeyTaxPeriodFrom(1680307200000L)
+                .pageKeyDemandId("DMD-9").build();
+
+        ArrayList<Object> objectList = new ArrayList<>();
+        String query = demandQueryBuilder.getDemandQuery(demandCriteria, objectList);
+
+        assertTrue(query.contains("AND dmd.consumercode = ANY(?::text[]) AND (dmd.taxperiodfrom, dmd.id) > (?, ?)"
+                + " ORDER BY dmd.taxperiodfrom, dmd.id LIMIT ?)"));
+        assertEquals(5, objectList.size());
+        assertTrue(objectList.get(1) instanceof SqlArrayValue);
+        assertEquals(Arrays.asList(1680307200000L, "DMD-9", 10), objectList.subList(2, 5));
+    }
+
+    @Test
+    void testStatementTextDoesNotDependOnListSizes() {
+        DemandQueryBuilder demandQueryBuilder = getDemandQueryBuilder();
+        Set<String> searchStatements = new HashSet<>();
+        Set<String> consumerCodeStatements = new HashSet<>();
+
+        for (int size = 1; size <= 40; size++) {
+            Set<String> codes = IntStream.rangeClosed(1, size).mapToObj(i -> "CC-" + i).collect(Collectors.toSet());
+            DemandCriteria demandCriteria = DemandCriteria.builder().tenantId("pb.amritsar").consumerCode(codes)
+                    .demandId(codes).payer(codes).build();
+            ArrayList<Object> objectList = new ArrayList<>();
+            searchStatements.add(demandQueryBuilder.getDemandQuery(demandCriteria, objectList));
+            assertEquals(4, objectList.size());
+
+            Map<String, Set<String>> businessConsumerCodes = new HashMap<>();
+            for (int service = 1; service <= 1 + size % 5; service++)
+                businessConsumerCodes.put("BS-" + service, codes);
+            objectList = new ArrayList<>();
+            consumerCodeStatements.add(
+                    demandQueryBuilder.getDemandQueryForConsumerCodes(businessConsumerCodes, objectList, "pb.amritsar"));
+            assertEquals(3, objectList.size());
+        }
+
+        assertEquals(1, searchStatements.size());
+        assertEquals(1, consumerCodeStatements.size());
+        assertFalse(consumerCodeStatements.iterator().next().contains("BS-"));
+    }
+
+    private DemandQueryBuilder getDemandQueryBuilder() {
+        DemandQueryBuilder demandQueryBuilder = new DemandQueryBuilder();
+        ReflectionTestUtils.setField(demandQueryBuilder, "centralInstaceUtil", mock(MultiStateInstanceUtil.class));
+        return demandQueryBuilder;
+    }
+}
@@ -0,0 +1,100 @@
+package org.egov.demand.repository.rowmapper;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mocked result set of the demand search which only answers by column index,
+ * the way DemandRowMapper reads it
+ */
+class DemandResultSetFixture {
+
+    static final List<String> COLUMNS = Arrays.asList("did", "dconsumercode", "dconsumertype", "dbusinessservice",
+            "payer", "dbillexpirytime", "dtaxperiodfrom", "dtaxperiodto", "dminimumamountpayable", "dcreatedby",
+            "dlastmodifiedby", "dcreatedtime", "dlastmodifiedtime", "dtenantid", "status", "demandadditionaldetails",
+            "ispaymentcompleted", "dlid", "dldemandid", "dltaxheadcode", "dltaxamount", "dlcollectionamount",
+            "dlcreatedby", "dllastmodifiedby", "dlcreatedtime", "dllastmodifiedtime", "dltenantid",
+            "detailadditionaldetails");
+
+    private final List<String> columns;
+
+    private final List<Map<String, Object>> rows = new ArrayList<>();
+
+    DemandResultSetFixture() {
+        this(COLUMNS);
+    }
+
+    DemandResultSetFixture(List<String> columns) {
+        this.columns = columns;
+    }
+
+    /*
+     * new string instances on every row, the way the driver returns them
+     */
+    DemandResultSetFixture addRow(String demandId, String detailId, String taxHeadCode, String additionalDetails) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("did", demandId);
+        row.put("dconsumercode", "CC-" + demandId);
+        row.put("dconsumertype", new String("PROPERTY"));
+        row.put("dbusinessservice", new String("PT"));
+        row.put("payer", "user-1");
+        row.put("dbillexpirytime", 3600L);
+        row.put("dtaxperiodfrom", 1000L);
+        row.put("dtaxperiodto", 2000L);
+        row.put("dminimumamountpayable", BigDecimal.ZERO);
+        row.put("dtenantid", new String("pb.amritsar"));
+        row.put("status", "ACTIVE");
+        row.put("demandadditionaldetails", additionalDetails);
+        row.put("ispaymentcompleted", false);
+        row.put("dlid", detailId);
+        row.put("dldemandid", demandId);
+        row.put("dltaxheadcode", new String(taxHeadCode));
+        row.put("dltaxamount", BigDecimal.TEN);
+        row.put("dlcollectionamount", BigDecimal.ZERO);
+        row.put("dltenantid", new String("pb.amritsar"));
+        row.put("detailadditionaldetails", additionalDetails);
+        rows.add(row);
+        return this;
+    }
+
+    ResultSet build() throws SQLException {
+
+        ResultSet rs = mock(ResultSet.class);
+        int[] cursor = { -1 };
+
+        when(rs.next()).thenAnswer(invocation -> ++cursor[0] < rows.size());
+        when(rs.findColumn(anyString())).thenAnswer(invocation -> {
+            int index = columns.indexOf(invocation.getArgument(0, String.class));
+            if (index < 0)
+                throw new SQLException("The column name " + invocation.getArgument(0) + " was not found");
+            return index + 1;
+        });
+        when(rs.getString(anyInt())).thenAnswer(invocation -> (String) getValue(cursor[0], invocation.getArgument(0)));
+        when(rs.getBigDecimal(anyInt()))
+                .thenAnswer(invocation -> (BigDecimal) getValue(cursor[0], invocation.getArgument(0)));
+        when(rs.getLong(anyInt())).thenAnswer(invocation -> {
+            Object value = getValue(cursor[0], invocation.getArgument(0));
+            return null == value ? 0L : (Long) value;
+        });
+        when(rs.getBoolean(anyInt())).thenAnswer(invocation -> {
+            Object value = getValue(cursor[0], invocation.getArgument(0));
+            return null != value && (Boolean) value;
+        });
+        return rs;
+    }
+
+    private Object getValue(int rowIndex, int columnIndex) {
+        return rows.get(rowIndex).get(columns.get(columnIndex - 1));
+    }
+}
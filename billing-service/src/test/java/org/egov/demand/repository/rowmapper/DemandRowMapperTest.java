@@ -1,75 +1,126 @@
 package org.egov.demand.repository.rowmapper;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.mockito.Mockito.any;
-import static org.mockito.Mockito.atLeast;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import com.fasterxml.jackson.databind.node.MissingNode;
-
-import java.math.BigDecimal;
-
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
-import org.egov.demand.util.Util;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.RawJson;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.postgresql.util.PGInterval;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.test.context.ContextConfiguration;
-import org.springframework.test.context.junit.jupiter.SpringExtension;
 
-@ContextConfiguration(classes = {DemandRowMapper.class})
-@ExtendWith(SpringExtension.class)
 class DemandRowMapperTest {
-    @Autowired
-    private DemandRowMapper demandRowMapper;
 
-    @MockBean
-    private Util util;
+    private final DemandRowMapper demandRowMapper = new DemandRowMapper();
+
+    @Test
+    void testExtractDataGroupsTheDetailsOfADemand() throws SQLException {
+        ResultSet rs = new DemandResultSetFixture()
+                .addRow("DMD-1", "DL-1", "PT_TAX", "{\"ward\":\"W1\"}")
+                .addRow("DMD-1", "DL-2", "PT_CESS", "{\"ward\":\"W1\"}")
+                .addRow("DMD-2", "DL-3", "PT_TAX", null)
+                .build();
+
+        List<Demand> demands = demandRowMapper.extractData(rs);
+
+        assertEquals(2, demands.size());
+        assertEquals(2, demands.get(0).getDemandDetails().size());
+        assertEquals("CC-DMD-1", demands.get(0).getConsumerCode());
+        assertEquals(Demand.StatusEnum.ACTIVE, demands.get(0).getStatus());
+        assertEquals("user-1", demands.get(0).getPayer().getUuid());
+        assertEquals(1000L, demands.get(0).getTaxPeriodFrom());
+        assertEquals("DL-3", demands.get(1).getDemandDetails().get(0).getId());
+        assertNull(demands.get(1).getAdditionalDetails());
+    }
+
+    @Test
+    void testColumnsAreResolvedOncePerResultSet() throws SQLException {
+        ResultSet rs = new DemandResultSetFixture()
+                .addRow("DMD-1", "DL-1", "PT_TAX", null)
+                .addRow("DMD-1", "DL-2", "PT_CESS", null)
+                .build();
+
+        demandRowMapper.extractData(rs);
+
+        verify(rs, times(1)).findColumn("did");
+        verify(rs, times(1)).findColumn("dltaxheadcode");
+        verify(rs, never()).getString(anyString());
+        verify(rs, never()).getObject(anyString());
+    }
+
+    @Test
+    void testRepeatedValuesAreSharedAcrossRows() throws SQLException {
+        ResultSet rs = new DemandResultSetFixture()
+                .addRow("DMD-1", "DL-1", "PT_TAX", null)
+                .addRow("DMD-2", "DL-2", "PT_TAX", null)
+                .build();
+
+        List<Demand> demands = demandRowMapper.extractData(rs);
+
+        assertSame(demands.get(0).getTenantId(), demands.get(1).getTenantId());
+        assertSame(demands.get(0).getTenantId(), demands.get(1).getDemandDetails().get(0).getTenantId());
+        assertSame(demands.get(0).getBusinessService(), demands.get(1).getBusinessService());
+        assertSame(demands.get(0).getDemandDetails().get(0).getTaxHeadMasterCode(),
+                demands.get(1).getDemandDetails().get(0).getTaxHeadMasterCode());
+    }
 
+    @Test
+    void testAdditionalDetailsAreKeptAsText() throws SQLException {
+        ResultSet rs = new DemandResultSetFixture().addRow("DMD-1", "DL-1", "PT_TAX", "{\"ward\":\"W1\"}").build();
+
+        Demand demand = demandRowMapper.extractData(rs).get(0);
+
+        RawJson additionalDetails = (RawJson) demand.getAdditionalDetails();
+        assertFalse(additionalDetails.isParsed());
+        assertEquals("{\"ward\":\"W1\"}", additionalDetails.getJson());
+        assertEquals("W1", additionalDetails.getNode().get("ward").asText());
+        assertEquals(additionalDetails, demand.getDemandDetails().get(0).getAdditionalDetails());
+    }
 
     @Test
-    void testExtractData() throws SQLException, DataAccessException {
-        when(this.util.getJsonValue((org.postgresql.util.PGobject) any())).thenReturn(MissingNode.getInstance());
-        ResultSet resultSet = mock(ResultSet.class);
-        when(resultSet.getBoolean((String) any())).thenThrow(new EmptyResultDataAccessException(3));
-        when(resultSet.getObject((String) any())).thenThrow(new EmptyResultDataAccessException(3));
-        when(resultSet.getString((String) any())).thenThrow(new EmptyResultDataAccessException(3));
-        when(resultSet.getBigDecimal((String) any())).thenThrow(new EmptyResultDataAccessException(3));
-        when(resultSet.getLong((String) any())).thenThrow(new EmptyResultDataAccessException(3));
-        when(resultSet.next()).thenReturn(true).thenReturn(true).thenReturn(false);
-        assertThrows(EmptyResultDataAccessException.class, () -> this.demandRowMapper.extractData(resultSet));
-        verify(resultSet).next();
-        verify(resultSet).getString((String) any());
+    void testOptionalColumnsMayBeMissing() throws SQLException {
+        List<String> columns = new ArrayList<>(DemandResultSetFixture.COLUMNS);
+        columns.remove("demandadditionaldetails");
+        columns.remove("detailadditionaldetails");
+        columns.remove("ispaymentcompleted");
+        ResultSet rs = new DemandResultSetFixture(columns).addRow("DMD-1", "DL-1", "PT_TAX", "{}").build();
+
+        Demand demand = demandRowMapper.extractData(rs).get(0);
+
+        assertNull(demand.getAdditionalDetails());
+        assertFalse(demand.getIsPaymentCompleted());
+        assertNull(demand.getDemandDetails().get(0).getAdditionalDetails());
     }
 
+    @Test
+    void testMissingRequiredColumnFails() throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true).thenReturn(false);
+        when(rs.findColumn(anyString())).thenThrow(new SQLException("The column name did was not found"));
+
+        assertThrows(SQLException.class, () -> demandRowMapper.extractData(rs));
+    }
 
     @Test
-    void testExtractData2() throws SQLException, DataAccessException {
-        when(this.util.getJsonValue((org.postgresql.util.PGobject) any())).thenReturn(MissingNode.getInstance());
-        ResultSet resultSet = mock(ResultSet.class);
-        when(resultSet.getBoolean((String) any())).thenReturn(true);
-        when(resultSet.getObject((String) any())).thenReturn(new PGInterval());
-        when(resultSet.getString((String) any())).thenReturn("String");
-        when(resultSet.getBigDecimal((String) any())).thenReturn(BigDecimal.valueOf(42L));
-        when(resultSet.getLong((String) any())).thenReturn(1L);
-        when(resultSet.next()).thenReturn(true).thenReturn(true).thenReturn(false);
-        assertEquals(1, this.demandRowMapper.extractData(resultSet).size());
-        verify(this.util).getJsonValue((org.postgresql.util.PGobject) any());
-        verify(resultSet).getBoolean((String) any());
-        verify(resultSet, atLeast(1)).next();
-        verify(resultSet).getObject((String) any());
-        verify(resultSet, atLeast(1)).getString((String) any());
-        verify(resultSet, atLeast(1)).getBigDecimal((String) any());
-        verify(resultSet, atLeast(1)).getLong((String) any());
+    void testReadFailureIsPropagated() throws SQLException {
+        ResultSet rs = new DemandResultSetFixture().addRow("DMD-1", "DL-1", "PT_TAX", null).build();
+        doThrow(new EmptyResultDataAccessException(3)).when(rs)
+                .getBigDecimal(DemandResultSetFixture.COLUMNS.indexOf("dminimumamountpayable") + 1);
+
+        assertThrows(EmptyResultDataAccessException.class, () -> demandRowMapper.extractData(rs));
     }
 }
-
@@ -0,0 +1,253 @@
+package org.egov.demand.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.amendment.model.Amendment;
+import org.egov.demand.amendment.model.AmendmentBulkUpdateRequest;
+import org.egov.demand.amendment.model.AmendmentCriteria;
+import org.egov.demand.amendment.model.AmendmentUpdate;
+import org.egov.demand.amendment.model.ProcessInstance;
+import org.egov.demand.amendment.model.State;
+import org.egov.demand.amendment.model.enums.AmendmentReason;
+import org.egov.demand.amendment.model.enums.AmendmentStatus;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.AuditDetails;
+import org.egov.demand.model.BillV2.BillStatus;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.model.UpdateBillCriteria;
+import org.egov.demand.repository.AmendmentRepository;
+import org.egov.demand.repository.BillRepositoryV2;
+import org.egov.demand.repository.DemandRepository;
+import org.egov.demand.util.Util;
+import org.egov.demand.web.contract.DemandRequest;
+import org.egov.demand.web.validator.AmendmentValidator;
+import org.egov.tracer.model.CustomException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+public class AmendmentServiceBulkUpdateTest {
+
+    private static final String TENANT_ID = "pb.amritsar";
+
+    private static final String BUSINESS_SERVICE = "WS";
+
+    @Mock
+    private Util util;
+
+    @Mock
+    private ApplicationProperties props;
+
+    @Mock
+    private DemandService demandService;
+
+    @Mock
+    private BillRepositoryV2 billRepositoryV2;
+
+    @Mock
+    private AmendmentValidator amendmentValidator;
+
+    @Mock
+    private AmendmentRepository amendmentRepository;
+
+    @Mock
+    private DemandRepository demandRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private AmendmentService amendmentService;
+
+    /*
+     * application status returned by workflow for each amendment id
+     */
+    private final Map<String, String> applicationStatuses = new HashMap<>();
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(props.getAmendmentBulkWorkflowBatchSize()).thenReturn(2);
+        when(util.getAuditDetail(any())).thenReturn(AuditDetails.builder().lastModifiedBy("user").build());
+        when(util.callWorkFlow(anyList(), any(RequestInfo.class))).thenAnswer(invocation -> {
+            List<ProcessInstance> workflows = invocation.getArgument(0);
+            Map<String, State> states = new HashMap<>();
+            for (ProcessInstance workflow : workflows)
+                states.put(workflow.getBusinessId(),
+                        State.builder().applicationStatus(applicationStatuses.get(workflow.getBusinessId())).build());
+            return states;
+        });
+    }
+
+    @Test
+    public void testActiveAmendmentsAreAppliedToTheLatestUnpaidDemandsInOneQuery() {
+        Amendment first = getAmendment("AMD-1", "CC-1");
+        Amendment second = getAmendment("AMD-2", "CC-1");
+        Amendment withoutDemand = getAmendment("AMD-3", "CC-2");
+        Demand olderDemand = getDemand("D-1", "CC-1", 1L, false);
+        Demand latestDemand = getDemand("D-2", "CC-1", 2L, false);
+        Demand paidDemand = getDemand("D-3", "CC-1", 3L, true);
+        when(demandRepository.getDemandsByConsumerCodes(eq(TENANT_ID), any()))
+                .thenReturn(Arrays.asList(olderDemand, latestDemand, paidDemand));
+
+        amendmentService.updateDemandsWithAmendmentTax(new RequestInfo(), Arrays.asList(first, second, withoutDemand));
+
+        verify(demandRepository, times(1)).getDemandsByConsumerCodes(eq(TENANT_ID), any());
+        ArgumentCaptor<DemandRequest> demandCaptor = ArgumentCaptor.forClass(DemandRequest.class);
+        verify(demandService, times(1)).update(demandCaptor.capture(), isNull());
+        assertEquals(Collections.singletonList(latestDemand), demandCaptor.getValue().getDemands());
+        assertEquals(2, latestDemand.getDemandDetails().size());
+        assertTrue(latestDemand.getDemandDetails().stream().allMatch(detail -> "D-2".equals(detail.getDemandId())));
+
+        List<AmendmentUpdate> consumedUpdates = getAmendmentUpdates().get(0);
+        assertEquals(Arrays.asList("AMD-1", "AMD-2"), getAmendmentIds(consumedUpdates));
+        assertTrue(consumedUpdates.stream().allMatch(update -> AmendmentStatus.CONSUMED.equals(update.getStatus())
+                && "D-2".equals(update.getAmendedDemandId())));
+
+        ArgumentCaptor<UpdateBillCriteria> billCaptor = ArgumentCaptor.forClass(UpdateBillCriteria.class);
+        verify(billRepositoryV2, times(1)).updateBillStatus(billCaptor.capture());
+        assertEquals(BillStatus.EXPIRED, billCaptor.getValue().getStatusToBeUpdated());
+        assertEquals(Collections.singleton("CC-1"), billCaptor.getValue().getConsumerCodes());
+    }
+
+    @Test
+    public void testWorkflowTransitionsAreSentInBatches() {
+        List<Amendment> amendments = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            amendments.add(getAmendment("AMD-" + i, "CC-" + i));
+            applicationStatuses.put("AMD-" + i, i % 2 == 0 ? "ACTIVE" : "INWORKFLOW");
+        }
+        AmendmentBulkUpdateRequest request = getBulkUpdateRequest(amendments);
+        when(demandRepository.getDemandsByConsumerCodes(eq(TENANT_ID), any())).thenAnswer(invocation -> {
+            Collection<String> consumerCodes = invocation.getArgument(1);
+            return consumerCodes.stream().map(code -> getDemand("D-" + code, code, 1L, false)).collect(Collectors.toList());
+        });
+
+        amendmentService.bulkUpdateAmendments(request);
+
+        verify(util, times(3)).callWorkFlow(anyList(), any(RequestInfo.class));
+        List<List<AmendmentUpdate>> amendmentUpdates = getAmendmentUpdates();
+        assertEquals(Arrays.asList("AMD-1", "AMD-2", "AMD-3", "AMD-4", "AMD-5"), getAmendmentIds(amendmentUpdates.get(0)));
+        assertEquals(Arrays.asList("AMD-2", "AMD-4"), getAmendmentIds(amendmentUpdates.get(1)));
+        verify(demandRepository, times(1)).getDemandsByConsumerCodes(eq(TENANT_ID),
+                eq(new HashSet<>(Arrays.asList("CC-2", "CC-4"))));
+
+        ArgumentCaptor<AmendmentCriteria> criteriaCaptor = ArgumentCaptor.forClass(AmendmentCriteria.class);
+        verify(amendmentRepository).getAmendments(criteriaCaptor.capture());
+        assertEquals(5, criteriaCaptor.getValue().getAmendmentIds().size());
+    }
+
+    @Test
+    public void testAmendmentsTransitionedBeforeAWorkflowFailureAreUpdated() {
+        List<Amendment> amendments = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            amendments.add(getAmendment("AMD-" + i, "CC-" + i));
+            applicationStatuses.put("AMD-" + i, "INWORKFLOW");
+        }
+        AmendmentBulkUpdateRequest request = getBulkUpdateRequest(amendments);
+        when(util.callWorkFlow(anyList(), any(RequestInfo.class))).thenAnswer(invocation -> {
+            List<ProcessInstance> workflows = invocation.getArgument(0);
+            if ("AMD-3".equals(workflows.get(0).getBusinessId()))
+                throw new CustomException("EG_BS_WORKFLOW_ERROR", "workflow is down");
+            Map<String, State> states = new HashMap<>();
+            workflows.forEach(workflow -> states.put(workflow.getBusinessId(),
+                    State.builder().applicationStatus("INWORKFLOW").build()));
+            return states;
+        });
+
+        assertThrows(CustomException.class, () -> amendmentService.bulkUpdateAmendments(request));
+
+        verify(util, times(2)).callWorkFlow(anyList(), any(RequestInfo.class));
+        assertEquals(Arrays.asList("AMD-1", "AMD-2"), getAmendmentIds(getAmendmentUpdates().get(0)));
+        verify(demandService, never()).update(any(), any());
+    }
+
+    private AmendmentBulkUpdateRequest getBulkUpdateRequest(List<Amendment> amendments) {
+
+        List<AmendmentUpdate> amendmentUpdates = new ArrayList<>();
+        Map<String, Amendment> amendmentsFromSearch = new HashMap<>();
+        for (Amendment amendment : amendments) {
+            amendmentUpdates.add(AmendmentUpdate.builder()
+                    .amendmentId(amendment.getAmendmentId())
+                    .tenantId(TENANT_ID)
+                    .amendmentReason(AmendmentReason.OTHERS)
+                    .workflow(ProcessInstance.builder().businessId(amendment.getAmendmentId()).action("APPROVE").build())
+                    .build());
+            amendmentsFromSearch.put(amendment.getAmendmentId(), amendment);
+        }
+        AmendmentBulkUpdateRequest request = new AmendmentBulkUpdateRequest(new RequestInfo(), amendmentUpdates);
+        when(amendmentValidator.validateAndEnrichAmendmentsForBulkUpdate(request)).thenReturn(amendmentsFromSearch);
+        return request;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<AmendmentUpdate>> getAmendmentUpdates() {
+
+        ArgumentCaptor<List<AmendmentUpdate>> captor = ArgumentCaptor.forClass(List.class);
+        verify(amendmentRepository, atLeastOnce()).updateAmendment(captor.capture(), eq(TENANT_ID));
+        return captor.getAllValues();
+    }
+
+    private static List<String> getAmendmentIds(List<AmendmentUpdate> amendmentUpdates) {
+        return amendmentUpdates.stream().map(AmendmentUpdate::getAmendmentId).collect(Collectors.toList());
+    }
+
+    private static Amendment getAmendment(String amendmentId, String consumerCode) {
+
+        DemandDetail detail = DemandDetail.builder()
+                .id(amendmentId + "-DETAIL")
+                .taxHeadMasterCode("WS_TIME_ADJUSTMENT")
+                .taxAmount(BigDecimal.TEN)
+                .build();
+        return Amendment.builder()
+                .amendmentId(amendmentId)
+                .tenantId(TENANT_ID)
+                .businessService(BUSINESS_SERVICE)
+                .consumerCode(consumerCode)
+                .amendmentReason(AmendmentReason.OTHERS)
+                .demandDetails(new ArrayList<>(Collections.singletonList(detail)))
+                .build();
+    }
+
+    private static Demand getDemand(String id, String consumerCode, Long taxPeriodFrom, boolean isPaymentCompleted) {
+
+        return Demand.builder()
+                .id(id)
+                .tenantId(TENANT_ID)
+                .businessService(BUSINESS_SERVICE)
+                .consumerCode(consumerCode)
+                .taxPeriodFrom(taxPeriodFrom)
+                .taxPeriodTo(taxPeriodFrom + 1)
+                .demandDetails(new ArrayList<>())
+                .isPaymentCompleted(isPaymentCompleted)
+                .build();
+    }
+}
@@ -0,0 +1,125 @@
+package org.egov.demand.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.function.Supplier;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.ExpiringBill;
+import org.egov.demand.repository.BillRepositoryV2;
+import org.egov.demand.util.BillingMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class BillExpirySweeperTest {
+
+    private static final String TENANT_ID = "pb";
+
+    @Mock
+    private BillRepositoryV2 billRepository;
+
+    @Mock
+    private BillServicev2 billService;
+
+    @Mock
+    private BillingMetrics billingMetrics;
+
+    @Mock
+    private ApplicationProperties appProps;
+
+    @InjectMocks
+    private BillExpirySweeper billExpirySweeper;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(appProps.getBillExpirySweepChunkSize()).thenReturn(3);
+        when(appProps.getBillExpirySweepUserUuid()).thenReturn("system-uuid");
+        when(billRepository.runWithExpirySweepLock(eq(TENANT_ID), any()))
+                .thenAnswer(invocation -> invocation.getArgument(1, Supplier.class).get());
+    }
+
+    @Test
+    public void testTenantLockedByAnotherInstanceIsSkipped() {
+        when(billRepository.runWithExpirySweepLock(eq(TENANT_ID), any())).thenReturn(null);
+
+        assertEquals(0, billExpirySweeper.sweep(TENANT_ID));
+        verify(billRepository, never()).getExpiringBills(any(), anyLong(), anyLong(), any(), anyInt());
+        verify(billService, never()).renewBills(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testChunksAreReadAfterTheLastBillOfThePreviousChunk() {
+        ExpiringBill lastBill = getBill("BILL-3", "pb.amritsar", "PT", "CC-3");
+        when(billRepository.getExpiringBills(eq(TENANT_ID), anyLong(), anyLong(), isNull(), eq(3)))
+                .thenReturn(Arrays.asList(getBill("BILL-1", "pb.amritsar", "PT", "CC-1"),
+                        getBill("BILL-2", "pb.jalandhar", "PT", "CC-2"), lastBill));
+        when(billRepository.getExpiringBills(eq(TENANT_ID), anyLong(), anyLong(), eq(lastBill), eq(3)))
+                .thenReturn(Arrays.asList(getBill("BILL-4", "pb.amritsar", "WS", "CC-4")));
+
+        long renewedCount = billExpirySweeper.sweep(TENANT_ID);
+
+        assertEquals(4, renewedCount);
+        verify(billService).renewBills(eq("pb.amritsar"), eq("PT"),
+                eq(new LinkedHashSet<>(Arrays.asList("CC-1", "CC-3"))), any());
+        verify(billService).renewBills(eq("pb.jalandhar"), eq("PT"), eq(new LinkedHashSet<>(Arrays.asList("CC-2"))),
+                any());
+        verify(billService).renewBills(eq("pb.amritsar"), eq("WS"), eq(new LinkedHashSet<>(Arrays.asList("CC-4"))),
+                any());
+    }
+
+    @Test
+    public void testOnlyExpiredBillsAreReadAndRenewedBillsAreNotReadAgain() {
+        when(billRepository.getExpiringBills(eq(TENANT_ID), anyLong(), anyLong(), any(), eq(3)))
+                .thenReturn(new ArrayList<>());
+
+        billExpirySweeper.sweep(TENANT_ID);
+
+        ArgumentCaptor<Long> expiryBefore = ArgumentCaptor.forClass(Long.class);
+        ArgumentCaptor<Long> createdBefore = ArgumentCaptor.forClass(Long.class);
+        verify(billRepository).getExpiringBills(eq(TENANT_ID), expiryBefore.capture(), createdBefore.capture(),
+                isNull(), eq(3));
+        assertEquals(createdBefore.getValue(), expiryBefore.getValue());
+        verify(billService, never()).renewBills(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testFailedRenewalDoesNotStopTheOthers() {
+        when(billRepository.getExpiringBills(eq(TENANT_ID), anyLong(), anyLong(), isNull(), eq(3)))
+                .thenReturn(Arrays.asList(getBill("BILL-1", "pb.amritsar", "PT", "CC-1"),
+                        getBill("BILL-2", "pb.amritsar", "WS", "CC-2"), getBill("BILL-3", "pb.amritsar", null, "CC-3")));
+        when(billService.renewBills(eq("pb.amritsar"), eq("PT"), any(), any()))
+                .thenThrow(new RuntimeException("calculator unavailable"));
+
+        long renewedCount = billExpirySweeper.sweep(TENANT_ID);
+
+        assertEquals(1, renewedCount);
+        ArgumentCaptor<RequestInfo> requestInfo = ArgumentCaptor.forClass(RequestInfo.class);
+        verify(billService).renewBills(eq("pb.amritsar"), eq("WS"), eq(new LinkedHashSet<>(Arrays.asList("CC-2"))),
+                requestInfo.capture());
+        assertEquals("system-uuid", requestInfo.getValue().getUserInfo().getUuid());
+        verify(billingMetrics).countSweptBills("pb.amritsar", "PT", false, 1);
+        verify(billingMetrics).countSweptBills("pb.amritsar", "WS", true, 1);
+    }
+
+    private static ExpiringBill getBill(String id, String tenantId, String businessService, String consumerCode) {
+        return ExpiringBill.builder().id(id).tenantId(tenantId).businessService(businessService)
+                .consumerCode(consumerCode).expiryDate(100L).build();
+    }
+}
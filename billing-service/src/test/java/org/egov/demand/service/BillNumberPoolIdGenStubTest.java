@@ -0,0 +1,186 @@
+package org.egov.demand.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.repository.IdGenRepo;
+import org.egov.demand.repository.querybuilder.BillQueryBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the bill number pool through the real idgen repository against a local
+ * stub idgen server which hands out sequential numbers and records the number
+ * of ids asked for in every call
+ */
+public class BillNumberPoolIdGenStubTest {
+
+    private static final String TENANT_ID = "pb.amritsar";
+
+    private static final String FORMAT = "BILLNO-PT-[SEQ_egbs_billnumber]";
+
+    private static final int BLOCK_SIZE = 10;
+
+    private static final int LOW_WATER_MARK = 3;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    /*
+     * count of ids requested in each idgen call, in arrival order
+     */
+    private final List<Integer> idGenCalls = new CopyOnWriteArrayList<>();
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private BillNumberPool billNumberPool;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/egov-idgen/id/_generate", this::generate);
+        server.start();
+
+        ApplicationProperties appProps = mock(ApplicationProperties.class);
+        when(appProps.getIdGenHost()).thenReturn("http://localhost:" + server.getAddress().getPort());
+        when(appProps.getIdGenUrl()).thenReturn("/egov-idgen/id/_generate");
+        when(appProps.getIsBillNumberPoolEnabled()).thenReturn(true);
+        when(appProps.getBillNumberPoolBlockSize()).thenReturn(BLOCK_SIZE);
+        when(appProps.getBillNumberPoolLowWaterMark()).thenReturn(LOW_WATER_MARK);
+        when(appProps.getBillNumberPoolShutdownTimeout()).thenReturn(1000L);
+
+        IdGenRepo idGenRepo = new IdGenRepo();
+        ReflectionTestUtils.setField(idGenRepo, "appProps", appProps);
+        ReflectionTestUtils.setField(idGenRepo, "rest", new RestTemplate());
+
+        MultiStateInstanceUtil centralInstanceUtil = mock(MultiStateInstanceUtil.class);
+        when(centralInstanceUtil.replaceSchemaPlaceholder(anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForList(eq(BillQueryBuilder.BILLNUMBER_LEASE_RECLAIM_QUERY), eq(String.class), any(Object[].class)))
+                .thenReturn(Collections.emptyList());
+
+        billNumberPool = new BillNumberPool();
+        ReflectionTestUtils.setField(billNumberPool, "appProps", appProps);
+        ReflectionTestUtils.setField(billNumberPool, "idGenRepo", idGenRepo);
+        ReflectionTestUtils.setField(billNumberPool, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(billNumberPool, "centralInstanceUtil", centralInstanceUtil);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        billNumberPool.shutdown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testShortfallIsLeasedWithABlockInOneCall() {
+        List<String> first = billNumberPool.getBillNumbers(new RequestInfo(), TENANT_ID, FORMAT, 2);
+        List<String> second = billNumberPool.getBillNumbers(new RequestInfo(), TENANT_ID, FORMAT, 5);
+
+        assertEquals(Arrays.asList("BILLNO-PT-1", "BILLNO-PT-2"), first);
+        assertEquals(Arrays.asList("BILLNO-PT-3", "BILLNO-PT-4", "BILLNO-PT-5", "BILLNO-PT-6", "BILLNO-PT-7"), second);
+        assertEquals(Collections.singletonList(2 + BLOCK_SIZE), idGenCalls);
+    }
+
+    @Test
+    public void testPoolIsRefilledInTheBackgroundBelowLowWaterMark() throws InterruptedException {
+        billNumberPool.getBillNumbers(new RequestInfo(), TENANT_ID, FORMAT, 2);
+        billNumberPool.getBillNumbers(new RequestInfo(), TENANT_ID, FORMAT, BLOCK_SIZE - LOW_WATER_MARK + 1);
+        awaitIdGenCalls(2);
+
+        List<String> billNumbers = billNumberPool.getBillNumbers(new RequestInfo(), TENANT_ID, FORMAT, LOW_WATER_MARK + 1);
+
+        assertEquals(Arrays.asList(2 + BLOCK_SIZE, BLOCK_SIZE), idGenCalls);
+        assertEquals(Arrays.asList("BILLNO-PT-11", "BILLNO-PT-12", "BILLNO-PT-13", "BILLNO-PT-14"), billNumbers);
+    }
+
+    @Test
+    public void testConcurrentCallersNeverShareANumber() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++)
+                futures.add(callers.submit(() -> billNumberPool.getBillNumbers(new RequestInfo(), TENANT_ID, FORMAT, 7)));
+
+            List<String> billNumbers = new ArrayList<>();
+            for (Future<List<String>> future : futures)
+                billNumbers.addAll(future.get(10, TimeUnit.SECONDS));
+
+            assertEquals(140, billNumbers.size());
+            assertEquals(140, new HashSet<>(billNumbers).size());
+            assertTrue(idGenCalls.size() < 20, "idgen was called for every request : " + idGenCalls);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private void awaitIdGenCalls(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (idGenCalls.size() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(count, idGenCalls.size());
+        /*
+         * the stub has answered, giving the refill thread time to add the block
+         */
+        Thread.sleep(100);
+    }
+
+    private void generate(HttpExchange exchange) throws IOException {
+        JsonNode request = mapper.readTree(exchange.getRequestBody());
+        int count = request.get("idRequests").size();
+        idGenCalls.add(count);
+
+        ObjectNode response = mapper.createObjectNode();
+        ArrayNode idResponses = response.putArray("idResponses");
+        for (int i = 0; i < count; i++)
+            idResponses.addObject().put("id", "BILLNO-PT-" + sequence.incrementAndGet());
+
+        byte[] bytes = mapper.writeValueAsBytes(response);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
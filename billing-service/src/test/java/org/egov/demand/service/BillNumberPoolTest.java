@@ -0,0 +1,132 @@
+package org.egov.demand.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.common.utils.MultiStateInstanceUtil;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.repository.IdGenRepo;
+import org.egov.demand.repository.querybuilder.BillQueryBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class BillNumberPoolTest {
+
+    private static final String TENANT_ID = "pb.amritsar";
+
+    private static final String FORMAT = "BILLNO-PT-[SEQ_egbs_billnumber]";
+
+    @Mock
+    private ApplicationProperties appProps;
+
+    @Mock
+    private IdGenRepo idGenRepo;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MultiStateInstanceUtil centralInstanceUtil;
+
+    @InjectMocks
+    private BillNumberPool billNumberPool;
+
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        when(appProps.getIsBillNumberPoolEnabled()).thenReturn(true);
+        when(appProps.getBillNumberPoolBlockSize()).thenReturn(10);
+        when(appProps.getBillNumberPoolLowWaterMark()).thenReturn(3);
+        when(appProps.getBillNumberPoolShutdownTimeout()).thenReturn(1000L);
+        when(centralInstanceUtil.replaceSchemaPlaceholder(anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(jdbcTemplate.queryForList(eq(BillQueryBuilder.BILLNUMBER_LEASE_RECLAIM_QUERY), eq(String.class), any(Object[].class)))
+                .thenReturn(Collections.emptyList());
+        when(idGenRepo.getId(any(), anyString(), anyString(), anyString(), anyInt())).thenAnswer(invocation -> {
+            int count = invocation.getArgument(4);
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < count; i++)
+                ids.add("BILLNO-PT-" + sequence.incrementAndGet());
+            return ids;
+        });
+    }
+
+    @AfterEach
+    public void tearDown() {
+        billNumberPool.shutdown();
+    }
+
+    @Test
+    public void testLeasedBlockServesSubsequentRequests() {
+        List<String> first = billNumberPool.getBillNumbers(new RequestInfo(), TENANT_ID, FORMAT, 2);
+        List<String> second = billNumberPool.getBillNumbers(new RequestInfo(), TENANT_ID, FORMAT, 3);
+
+        assertEquals(Arrays.asList("BILLNO-PT-1", "BILLNO-PT-2"), first);
+        assertEquals(Arrays.asList("BILLNO-PT-3", "BILLNO-PT-4", "BILLNO-PT-5"), second);
+        verify(idGenRepo, times(1)).getId(any(), eq(TENANT_ID), eq("billnumberid"), eq(FORMAT), eq(12));
+    }
+
+    @Test
+    public void testRefillIsTriggeredBelowLowWaterMark() {
+        billNumberPool.getBillNumbers(new RequestInfo(), TENANT_ID, FORMAT, 2);
+        billNumberPool.getBillNumbers(new RequestInfo(), TENANT_ID, FORMAT, 8);
+
+        verify(idGenRepo, timeout(1000)).getId(any(), eq(TENANT_ID), eq("billnumberid"), eq(FORMAT), eq(10));
+    }
+
+    @Test
+    public void testUnusedNumbersArePersistedOnShutdown() {
+        billNumberPool.getBillNumbers(new RequestInfo(), TENANT_ID, FORMAT, 1);
+        billNumberPool.shutdown();
+
+        verify(jdbcTemplate).batchUpdate(eq(BillQueryBuilder.BILLNUMBER_LEASE_INSERT_QUERY),
+                any(BatchPreparedStatementSetter.class));
+    }
+
+    @Test
+    public void testReclaimedNumbersAreUsedFirst() {
+        when(jdbcTemplate.queryForList(eq(BillQueryBuilder.BILLNUMBER_LEASE_RECLAIM_QUERY), eq(String.class), any(Object[].class)))
+                .thenReturn(new ArrayList<>(Arrays.asList("BILLNO-PT-OLD1", "BILLNO-PT-OLD2")));
+
+        List<String> billNumbers = billNumberPool.getBillNumbers(new RequestInfo(), TENANT_ID, FORMAT, 3);
+
+        assertEquals("BILLNO-PT-OLD1", billNumbers.get(0));
+        assertEquals("BILLNO-PT-OLD2", billNumbers.get(1));
+        assertTrue(billNumbers.get(2).startsWith("BILLNO-PT-"));
+    }
+
+    @Test
+    public void testPoolDisabledCallsIdGenDirectly() {
+        when(appProps.getIsBillNumberPoolEnabled()).thenReturn(false);
+
+        List<String> billNumbers = billNumberPool.getBillNumbers(new RequestInfo(), TENANT_ID, FORMAT, 2);
+
+        assertEquals(2, billNumbers.size());
+        verify(idGenRepo).getId(any(), eq(TENANT_ID), eq("billnumberid"), eq(FORMAT), eq(2));
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(String.class), any(Object[].class));
+    }
+}
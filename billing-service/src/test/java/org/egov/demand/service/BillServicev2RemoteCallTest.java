@@ -0,0 +1,339 @@
+package org.egov.demand.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.config.ReplicaRouting;
+import org.egov.demand.model.BillDetailV2;
+import org.egov.demand.model.BillSearchCriteria;
+import org.egov.demand.model.BillV2;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandCriteria;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.model.GenerateBillCriteria;
+import org.egov.demand.repository.BillRepositoryV2;
+import org.egov.demand.repository.ServiceRequestRepository;
+import org.egov.demand.util.BillingMetrics;
+import org.egov.demand.util.Util;
+import org.egov.demand.web.contract.BillRequestV2;
+import org.egov.demand.web.contract.BillResponseV2;
+import org.egov.demand.web.contract.RequestInfoWrapper;
+import org.egov.demand.web.contract.User;
+import org.egov.demand.web.validator.BillValidator;
+import org.egov.tracer.model.ServiceCallException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Runs bill generation against local stub user, mdms and calculator servers
+ * which answer after a fixed latency, idgen is stubbed through the bill number
+ * pool with the same latency
+ */
+public class BillServicev2RemoteCallTest {
+
+    private static final long LATENCY_MS = 500;
+
+    private static final String TENANT_ID = "pb.amritsar";
+
+    private static final String USER_RESPONSE = "{\"user\":[{\"uuid\":\"payer-1\",\"name\":\"Ravi\","
+            + "\"mobileNumber\":\"9999999999\",\"permanentAddress\":\"Ward 1\"}]}";
+
+    private static final String MDMS_RESPONSE = "{\"MdmsRes\":{\"BillingService\":{"
+            + "\"TaxHeadMaster\":[{\"code\":\"PT_TAX\",\"service\":\"PT\",\"category\":\"TAX\",\"order\":1}],"
+            + "\"BusinessService\":[{\"code\":\"PT\",\"businessService\":\"PT\"}],\"TaxPeriod\":[]}}}";
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private final Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+
+    private volatile int userStatus = 200;
+
+    private ApplicationProperties appProps;
+
+    private BillRepositoryV2 billRepository;
+
+    private DemandService demandService;
+
+    private BillNumberPool billNumberPool;
+
+    private RemoteCallExecutor remoteCallExecutor;
+
+    private BillServicev2 billService;
+
+    private final RequestInfo requestInfo = RequestInfo.builder()
+            .userInfo(org.egov.common.contract.request.User.builder().uuid("employee-1").build()).build();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/user/_search", exchange -> respond(exchange, "user", userStatus, USER_RESPONSE));
+        server.createContext("/egov-mdms-service/v1/_search", exchange -> respond(exchange, "mdms", 200, MDMS_RESPONSE));
+        server.createContext("/pt-calculator-v2/propertytax/_updatedemand",
+                exchange -> respond(exchange, "calculator", 200, "{}"));
+        server.start();
+        String host = "http://localhost:" + server.getAddress().getPort();
+
+        appProps = mock(ApplicationProperties.class);
+        when(appProps.getUserServiceHostName()).thenReturn(host);
+        when(appProps.getUserServiceSearchPath()).thenReturn("/user/_search");
+        when(appProps.getMdmsHost()).thenReturn(host);
+        when(appProps.getMdmsEndpoint()).thenReturn("/egov-mdms-service/v1/_search");
+        when(appProps.getMasterDataCacheTtl()).thenReturn(900000L);
+        when(appProps.getBusinessCodeAndDemandUpdateUrlMap())
+                .thenReturn(Collections.singletonMap("PT", host + "/pt-calculator-v2/propertytax/_updatedemand"));
+        when(appProps.getBillNumberFormat()).thenReturn("BILLNO-{module}-[SEQ_egbs_billnumber{tenantid}]");
+        when(appProps.getModuleReplaceStirng()).thenReturn("{module}");
+        when(appProps.getTenantIdReplaceString()).thenReturn("{tenantid}");
+        when(appProps.getIsTenantLevelBillNumberingEnabled()).thenReturn(false);
+        when(appProps.getRemoteCallPoolSize()).thenReturn(8);
+        when(appProps.getRemoteCallQueueSize()).thenReturn(16);
+        when(appProps.getRemoteCallTimeout()).thenReturn(10000L);
+        when(appProps.getCalculatorChunkSize()).thenReturn(50);
+        when(appProps.getCalculatorTimeout()).thenReturn(10000L);
+        when(appProps.getCalculatorCircuitFailureThreshold()).thenReturn(5);
+        when(appProps.getCalculatorCircuitOpenDuration()).thenReturn(30000L);
+
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+        ServiceRequestRepository restRepository = new ServiceRequestRepository();
+        ReflectionTestUtils.setField(restRepository, "mapper", mapper);
+        ReflectionTestUtils.setField(restRepository, "restTemplate", new RestTemplate());
+
+        Util util = new Util();
+        ReflectionTestUtils.setField(util, "appProps", appProps);
+        ReflectionTestUtils.setField(util, "mapper", mapper);
+        ReflectionTestUtils.setField(util, "serviceRequestRepository", restRepository);
+
+        MasterDataService masterDataService = new MasterDataService();
+        ReflectionTestUtils.setField(masterDataService, "util", util);
+        ReflectionTestUtils.setField(masterDataService, "mapper", mapper);
+        ReflectionTestUtils.setField(masterDataService, "appProps", appProps);
+
+        remoteCallExecutor = new RemoteCallExecutor();
+        ReflectionTestUtils.setField(remoteCallExecutor, "appProps", appProps);
+        remoteCallExecutor.init();
+
+        CalculatorClient calculatorClient = new CalculatorClient();
+        ReflectionTestUtils.setField(calculatorClient, "restRepository", restRepository);
+        ReflectionTestUtils.setField(calculatorClient, "remoteCallExecutor", remoteCallExecutor);
+        ReflectionTestUtils.setField(calculatorClient, "appProps", appProps);
+
+        billRepository = mock(BillRepositoryV2.class);
+        demandService = mock(DemandService.class);
+        billNumberPool = mock(BillNumberPool.class);
+        when(billNumberPool.getBillNumbers(any(), anyString(), anyString(), anyInt())).thenAnswer(invocation -> {
+            hits.computeIfAbsent("idgen", key -> new AtomicInteger()).incrementAndGet();
+            Thread.sleep(LATENCY_MS);
+            List<String> billNumbers = new ArrayList<>();
+            for (int i = 0; i < invocation.getArgument(3, Integer.class); i++)
+                billNumbers.add("BILLNO-PT-" + i);
+            return billNumbers;
+        });
+
+        billService = new BillServicev2();
+        ReflectionTestUtils.setField(billService, "appProps", appProps);
+        ReflectionTestUtils.setField(billService, "billRepository", billRepository);
+        ReflectionTestUtils.setField(billService, "demandService", demandService);
+        ReflectionTestUtils.setField(billService, "masterDataService", masterDataService);
+        ReflectionTestUtils.setField(billService, "util", util);
+        ReflectionTestUtils.setField(billService, "restRepository", restRepository);
+        ReflectionTestUtils.setField(billService, "billNumberPool", billNumberPool);
+        ReflectionTestUtils.setField(billService, "billValidator", mock(BillValidator.class));
+        ReflectionTestUtils.setField(billService, "responseFactory",
+                mock(org.egov.demand.web.contract.factory.ResponseFactory.class));
+        ReflectionTestUtils.setField(billService, "mapper", mapper);
+        ReflectionTestUtils.setField(billService, "remoteCallExecutor", remoteCallExecutor);
+        ReflectionTestUtils.setField(billService, "calculatorClient", calculatorClient);
+
+        BillingMetrics billingMetrics = new BillingMetrics();
+        ReflectionTestUtils.setField(billingMetrics, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(billService, "billingMetrics", billingMetrics);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        remoteCallExecutor.shutdown();
+    }
+
+    @Test
+    public void testGenerateBillFetchesPayerMasterDataAndBillNumbersTogether() {
+        when(demandService.getDemands(any(DemandCriteria.class), any())).thenReturn(getDemands());
+
+        long start = System.nanoTime();
+        BillResponseV2 response = billService.generateBill(getCriteria(), requestInfo);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        BillV2 bill = response.getBill().get(0);
+        assertEquals("Ravi", bill.getPayerName());
+        assertEquals("BILLNO-PT-0", bill.getBillNumber());
+        assertEquals(new BigDecimal("100"), bill.getTotalAmount());
+        assertEquals(1, hits.get("user").get());
+        assertEquals(1, hits.get("mdms").get());
+        assertEquals(1, hits.get("idgen").get());
+        assertTrue(elapsedMillis < 3 * LATENCY_MS - LATENCY_MS / 2, "generateBill took " + elapsedMillis + " ms");
+        verify(billRepository).saveBill(any(BillRequestV2.class));
+    }
+
+    @Test
+    public void testFetchBillLoadsMasterDataWhileDemandsAreUpdated() {
+        when(billRepository.findBill(any(BillSearchCriteria.class))).thenReturn(getExpiredBills());
+        when(demandService.getDemands(any(DemandCriteria.class), any())).thenReturn(getDemands());
+
+        long start = System.nanoTime();
+        BillResponseV2 response = billService.fetchBill(getCriteria(), new RequestInfoWrapper(requestInfo));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(1, response.getBill().size());
+        assertEquals(1, hits.get("calculator").get());
+        assertEquals(1, hits.get("mdms").get());
+        /*
+         * calculator with mdms, then user with idgen
+         */
+        assertTrue(elapsedMillis < 4 * LATENCY_MS - LATENCY_MS, "fetchBill took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    public void testFetchBillReadsTheExistingBillsFromThePrimary() {
+        List<Boolean> replicaPreferred = new ArrayList<>();
+        when(billRepository.findBill(any(BillSearchCriteria.class))).thenAnswer(invocation -> {
+            replicaPreferred.add(ReplicaRouting.isReplicaPreferred());
+            return getBills(System.currentTimeMillis() + 60000);
+        });
+
+        BillResponseV2 response = billService.fetchBill(getCriteria(), new RequestInfoWrapper(requestInfo));
+
+        assertEquals("B-1", response.getBill().get(0).getId());
+        assertEquals(Collections.singletonList(false), replicaPreferred);
+        assertTrue(hits.isEmpty());
+    }
+
+    @Test
+    public void testFetchBillCompletesOnASingleThreadPool() {
+        remoteCallExecutor.shutdown();
+        when(appProps.getRemoteCallPoolSize()).thenReturn(1);
+        when(appProps.getRemoteCallTimeout()).thenReturn(5 * LATENCY_MS);
+        when(appProps.getCalculatorTimeout()).thenReturn(5 * LATENCY_MS);
+        remoteCallExecutor.init();
+        when(billRepository.findBill(any(BillSearchCriteria.class))).thenReturn(getExpiredBills());
+        when(demandService.getDemands(any(DemandCriteria.class), any())).thenReturn(getDemands());
+
+        /*
+         * the calculator chunks are not queued behind a pool thread waiting on them
+         */
+        BillResponseV2 response = billService.fetchBill(getCriteria(), new RequestInfoWrapper(requestInfo));
+
+        assertEquals(1, response.getBill().size());
+        assertEquals(1, hits.get("calculator").get());
+    }
+
+    @Test
+    public void testFailedUserSearchCancelsOtherCalls() throws Exception {
+        userStatus = 400;
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(demandService.getDemands(any(DemandCriteria.class), any())).thenReturn(getDemands());
+        when(billNumberPool.getBillNumbers(any(), anyString(), anyString(), anyInt())).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(10 * LATENCY_MS);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return Collections.singletonList("BILLNO-PT-0");
+        });
+
+        long start = System.nanoTime();
+        assertThrows(ServiceCallException.class, () -> billService.generateBill(getCriteria(), requestInfo));
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5 * LATENCY_MS);
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        verify(billRepository, never()).saveBill(any(BillRequestV2.class));
+    }
+
+    private void respond(HttpExchange exchange, String name, int status, String body) throws IOException {
+        hits.computeIfAbsent(name, key -> new AtomicInteger()).incrementAndGet();
+        try {
+            Thread.sleep(LATENCY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.getRequestBody().readAllBytes();
+        byte[] bytes = (200 == status ? body : "{\"Errors\":[{\"code\":\"InvalidAccessTokenException\"}]}")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private GenerateBillCriteria getCriteria() {
+        return GenerateBillCriteria.builder().tenantId(TENANT_ID).businessService("PT")
+                .consumerCode(new HashSet<>(Collections.singleton("PT-1"))).build();
+    }
+
+    private List<Demand> getDemands() {
+        DemandDetail detail = DemandDetail.builder().id("DD-1").demandId("D-1").taxHeadMasterCode("PT_TAX")
+                .taxAmount(new BigDecimal("100")).collectionAmount(BigDecimal.ZERO).tenantId(TENANT_ID).build();
+        List<DemandDetail> details = new ArrayList<>();
+        details.add(detail);
+        return Collections.singletonList(Demand.builder().id("D-1").tenantId(TENANT_ID).consumerCode("PT-1")
+                .businessService("PT").taxPeriodFrom(1554076800000L).taxPeriodTo(1585699199000L)
+                .minimumAmountPayable(BigDecimal.ZERO).billExpiryTime(864000000L)
+                .payer(User.builder().uuid("payer-1").build()).demandDetails(details).build());
+    }
+
+    private List<BillV2> getExpiredBills() {
+        return getBills(System.currentTimeMillis() - 1000);
+    }
+
+    private List<BillV2> getBills(long expiryDate) {
+        BillDetailV2 billDetail = BillDetailV2.builder().id("BD-1").expiryDate(expiryDate).build();
+        List<BillV2> bills = new ArrayList<>();
+        bills.add(BillV2.builder().id("B-1").consumerCode("PT-1").tenantId(TENANT_ID)
+                .billDetails(Collections.singletonList(billDetail)).build());
+        return bills;
+    }
+}
@@ -0,0 +1,215 @@
+package org.egov.demand.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.AuditDetails;
+import org.egov.demand.model.BillCancelEvent;
+import org.egov.demand.model.BillCancelJob;
+import org.egov.demand.model.BillCancelJob.JobStatus;
+import org.egov.demand.model.BulkCancelBillCriteria;
+import org.egov.demand.model.BulkCancelBillRequest;
+import org.egov.demand.producer.Producer;
+import org.egov.demand.repository.BillCancelJobRepository;
+import org.egov.demand.repository.BillRepositoryV2;
+import org.egov.demand.util.Util;
+import org.egov.demand.web.validator.BillValidator;
+import org.egov.tracer.model.CustomException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class BulkBillCancelServiceTest {
+
+    private static final String TENANT_ID = "pb.amritsar";
+
+    private static final String TOPIC = "bill-bulk-cancel-topic-name";
+
+    @Mock
+    private BillRepositoryV2 billRepository;
+
+    @Mock
+    private BillCancelJobRepository billCancelJobRepository;
+
+    @Mock
+    private BillValidator billValidator;
+
+    @Mock
+    private Producer producer;
+
+    @Mock
+    private Util util;
+
+    @Mock
+    private ApplicationProperties appProps;
+
+    @InjectMocks
+    private BulkBillCancelService bulkBillCancelService;
+
+    /*
+     * statuses and counts of the job as written by every update
+     */
+    private final List<String> jobUpdates = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(appProps.getBulkCancelChunkSize()).thenReturn(2);
+        when(appProps.getBulkCancelMaxSize()).thenReturn(100);
+        when(appProps.getBulkCancelQueueSize()).thenReturn(1);
+        when(appProps.getBulkCancelBillTopic()).thenReturn(TOPIC);
+        when(util.getAuditDetail(any())).thenReturn(AuditDetails.builder().createdBy("user-1").createdTime(1L)
+                .lastModifiedBy("user-1").lastModifiedTime(1L).build());
+        doAnswer(invocation -> {
+            BillCancelJob job = invocation.getArgument(0);
+            jobUpdates.add(job.getStatus() + ":" + job.getProcessedCount() + ":" + job.getCancelledCount());
+            return null;
+        }).when(billCancelJobRepository).updateJob(any());
+        bulkBillCancelService.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        bulkBillCancelService.shutdown();
+    }
+
+    @Test
+    public void testConsumerCodesAndBillIdsAreCancelledInChunks() {
+        BulkCancelBillCriteria criteria = getCriteria("CC-1", "CC-2", "CC-3");
+        criteria.setBillIds(new LinkedHashSet<>(Arrays.asList("BILL-9")));
+        when(billRepository.getActiveBillIds(TENANT_ID, "PT", Arrays.asList("CC-1", "CC-2")))
+                .thenReturn(Arrays.asList("BILL-1", "BILL-2"));
+        when(billRepository.getActiveBillIds(TENANT_ID, "PT", Arrays.asList("CC-3"))).thenReturn(new ArrayList<>());
+        when(billRepository.cancelBills(eq(TENANT_ID), eq("PT"), anyCollection(), any(), any()))
+                .thenAnswer(invocation -> getCancelledBills(invocation.getArgument(2)));
+
+        bulkBillCancelService.run(getJob(4), criteria, new RequestInfo());
+
+        verify(billRepository).cancelBills(eq(TENANT_ID), eq("PT"), eq(Arrays.asList("BILL-1", "BILL-2")),
+                eq(criteria.getAdditionalDetails()), any());
+        verify(billRepository).cancelBills(eq(TENANT_ID), eq("PT"), eq(Arrays.asList()), any(), any());
+        verify(billRepository).cancelBills(eq(TENANT_ID), eq("PT"), eq(Arrays.asList("BILL-9")), any(), any());
+        assertEquals(Arrays.asList("RUNNING:0:0", "RUNNING:2:2", "RUNNING:3:2", "RUNNING:4:3", "COMPLETED:4:3"),
+                jobUpdates);
+    }
+
+    @Test
+    public void testOneEventIsPublishedPerChunkWithCancelledBills() {
+        BulkCancelBillCriteria criteria = getCriteria("CC-1", "CC-2", "CC-3");
+        when(billRepository.getActiveBillIds(eq(TENANT_ID), eq("PT"), any()))
+                .thenReturn(Arrays.asList("BILL-1", "BILL-2")).thenReturn(new ArrayList<>());
+        when(billRepository.cancelBills(eq(TENANT_ID), eq("PT"), anyCollection(), any(), any()))
+                .thenAnswer(invocation -> getCancelledBills(invocation.getArgument(2)));
+
+        bulkBillCancelService.run(getJob(3), criteria, new RequestInfo());
+
+        ArgumentCaptor<BillCancelEvent> event = ArgumentCaptor.forClass(BillCancelEvent.class);
+        verify(producer, times(1)).push(eq(TENANT_ID), eq(TOPIC), event.capture());
+        assertEquals("JOB-1", event.getValue().getJobId());
+        assertEquals(Arrays.asList("BILL-1", "BILL-2"), event.getValue().getBillIds());
+        assertEquals(Arrays.asList("CC-BILL-1", "CC-BILL-2"), event.getValue().getConsumerCodes());
+        assertEquals("user-1", event.getValue().getAuditDetails().getLastModifiedBy());
+    }
+
+    @Test
+    public void testFailedChunkFailsTheJobWithItsProgress() {
+        BulkCancelBillCriteria criteria = getCriteria("CC-1", "CC-2", "CC-3");
+        when(billRepository.getActiveBillIds(eq(TENANT_ID), eq("PT"), any()))
+                .thenReturn(Arrays.asList("BILL-1")).thenThrow(new RuntimeException("connection refused"));
+        when(billRepository.cancelBills(eq(TENANT_ID), eq("PT"), anyCollection(), any(), any()))
+                .thenAnswer(invocation -> getCancelledBills(invocation.getArgument(2)));
+        BillCancelJob job = getJob(3);
+
+        bulkBillCancelService.run(job, criteria, new RequestInfo());
+
+        assertEquals("FAILED:2:1", jobUpdates.get(jobUpdates.size() - 1));
+        assertEquals("connection refused", job.getErrorMessage());
+    }
+
+    @Test
+    public void testConsumerCodesOfTheFileAreAddedToTheCriteria() {
+        BulkCancelBillRequest request = BulkCancelBillRequest.builder().requestInfo(new RequestInfo())
+                .bulkCancelBillCriteria(getCriteria("CC-1")).build();
+        String file = "CC-1,first\n\nCC-2\n  CC-3 ,third\n";
+
+        BillCancelJob job = bulkBillCancelService.submit(request,
+                new ByteArrayInputStream(file.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(new LinkedHashSet<>(Arrays.asList("CC-1", "CC-2", "CC-3")),
+                request.getBulkCancelBillCriteria().getConsumerCodes());
+        assertEquals(JobStatus.QUEUED, job.getStatus());
+        assertEquals(3, job.getTotalCount());
+        verify(billValidator).validateBulkCancelRequest(request.getBulkCancelBillCriteria(), request.getRequestInfo(), 100);
+        verify(billCancelJobRepository).saveJob(job);
+    }
+
+    @Test
+    public void testJobIsRunInTheBackgroundOnACopy() throws Exception {
+        when(billRepository.cancelBills(eq(TENANT_ID), eq("PT"), anyCollection(), any(), any()))
+                .thenReturn(new LinkedHashMap<>());
+
+        BillCancelJob job = bulkBillCancelService.submit(BulkCancelBillRequest.builder().requestInfo(new RequestInfo())
+                .bulkCancelBillCriteria(getCriteria("CC-1")).build(), null);
+        for (int i = 0; i < 250 && !jobUpdates.contains("COMPLETED:1:0"); i++)
+            Thread.sleep(20);
+
+        assertEquals(Arrays.asList("RUNNING:0:0", "RUNNING:1:0", "COMPLETED:1:0"), jobUpdates);
+        assertEquals(JobStatus.QUEUED, job.getStatus());
+        assertEquals(0, job.getProcessedCount());
+    }
+
+    @Test
+    public void testUnknownJobThrows() {
+        when(billCancelJobRepository.getJob(anyString(), anyString())).thenReturn(null);
+
+        assertThrows(CustomException.class, () -> bulkBillCancelService.getJob(TENANT_ID, "JOB-1"));
+    }
+
+    private static Map<String, String> getCancelledBills(Collection<String> billIds) {
+        Map<String, String> cancelledBills = new LinkedHashMap<>();
+        billIds.forEach(billId -> cancelledBills.put(billId, "CC-" + billId));
+        return cancelledBills;
+    }
+
+    private static BillCancelJob getJob(int totalCount) {
+        return BillCancelJob.builder().id("JOB-1").tenantId(TENANT_ID).businessService("PT")
+                .status(JobStatus.QUEUED).totalCount(totalCount).processedCount(0).cancelledCount(0)
+                .auditDetails(AuditDetails.builder().createdBy("user-1").createdTime(1L).build()).build();
+    }
+
+    private static BulkCancelBillCriteria getCriteria(String... consumerCodes) {
+        ObjectNode additionalDetails = new ObjectMapper().createObjectNode().put("reason", "TARIFF_CORRECTION")
+                .put("reasonMessage", "tariff corrected");
+        return BulkCancelBillCriteria.builder().tenantId(TENANT_ID).businessService("PT")
+                .consumerCodes(new LinkedHashSet<>(Arrays.asList(consumerCodes))).additionalDetails(additionalDetails)
+                .build();
+    }
+}
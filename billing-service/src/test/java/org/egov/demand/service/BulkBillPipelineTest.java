@@ -0,0 +1,306 @@
+package org.egov.demand.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.BulkBillGenerator;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.GenerateBillCriteria;
+import org.egov.demand.model.MigrationCount;
+import org.egov.demand.service.BulkBillPipeline.MessageAudit;
+import org.egov.demand.service.BulkBillPipeline.MessagePart;
+import org.egov.demand.web.contract.DemandRequest;
+import org.egov.tracer.kafka.CustomKafkaTemplate;
+import org.egov.tracer.model.CustomException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class BulkBillPipelineTest {
+
+    private static final String TENANT_ID = "pb.amritsar";
+
+    private static final String AUDIT_TOPIC = "bulk-bill-generation-audit";
+
+    @Mock
+    private DemandService demandService;
+
+    @Mock
+    private BillServicev2 billService;
+
+    @Mock
+    private CustomKafkaTemplate<String, Object> kafkaTemplate;
+
+    @Mock
+    private ApplicationProperties appProps;
+
+    @InjectMocks
+    private BulkBillPipeline bulkBillPipeline;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(appProps.getBulkBillPipelineWorkers()).thenReturn(4);
+        when(appProps.getBulkBillPipelineBatchSize()).thenReturn(10);
+        when(appProps.getBulkBillPipelineQueueSize()).thenReturn(10);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        bulkBillPipeline.shutdown();
+    }
+
+    @Test
+    public void testConsumerCodesStayOnOneWorkerAndAreProcessedOnReturn() {
+        Map<String, Set<String>> threadsByConsumerCode = new ConcurrentHashMap<>();
+        doAnswer(invocation -> {
+            DemandRequest request = invocation.getArgument(0);
+            for (Demand demand : request.getDemands())
+                threadsByConsumerCode.computeIfAbsent(demand.getConsumerCode(), key -> ConcurrentHashMap.newKeySet())
+                        .add(Thread.currentThread().getName());
+            return null;
+        }).when(demandService).create(any(DemandRequest.class), eq(true));
+        bulkBillPipeline.init();
+
+        List<BulkBillGenerator> messages = new ArrayList<>();
+        for (int i = 0; i < 6; i++)
+            messages.add(getMessage(i * 100L, "PT-1", "PT-2", "PT-3", "PT-4", "PT-5", "PT-" + (10 + i)));
+
+        bulkBillPipeline.process(messages);
+
+        assertEquals(11, threadsByConsumerCode.size());
+        for (Set<String> threads : threadsByConsumerCode.values())
+            assertEquals(1, threads.size());
+
+        ArgumentCaptor<GenerateBillCriteria> criteriaCaptor = ArgumentCaptor.forClass(GenerateBillCriteria.class);
+        verify(billService, atLeastOnce()).generateBill(criteriaCaptor.capture(), any(RequestInfo.class), eq(true));
+        Set<String> billedConsumerCodes = new HashSet<>();
+        criteriaCaptor.getAllValues().forEach(criteria -> billedConsumerCodes.addAll(criteria.getConsumerCode()));
+        assertEquals(threadsByConsumerCode.keySet(), billedConsumerCodes);
+    }
+
+    @Test
+    public void testContiguousMessagesOfABatchAreAuditedTogether() {
+        bulkBillPipeline.init();
+        BulkBillGenerator first = getMessage(0L, "PT-1", "PT-2", "PT-3", "PT-4", "PT-5", "PT-6", "PT-7", "PT-8");
+        BulkBillGenerator second = getMessage(100L, "PT-9", "PT-10", "PT-11", "PT-12");
+
+        bulkBillPipeline.process(Arrays.asList(first, second));
+
+        ArgumentCaptor<MigrationCount> auditCaptor = ArgumentCaptor.forClass(MigrationCount.class);
+        verify(kafkaTemplate, times(1)).send(eq(AUDIT_TOPIC), auditCaptor.capture());
+        MigrationCount audit = auditCaptor.getValue();
+        assertEquals("0", audit.getId());
+        assertEquals(0L, audit.getOffset());
+        assertEquals(200L, audit.getLimit());
+        assertEquals(12L, audit.getRecordCount());
+        assertEquals(BulkBillPipeline.SUCCESS_MESSAGE, audit.getMessage());
+    }
+
+    @Test
+    public void testAuditsAreSplitOnAGapInOffsetsAndOnTheOutcome() {
+        when(demandService.create(any(DemandRequest.class), anyBoolean())).thenAnswer(invocation -> {
+            DemandRequest request = invocation.getArgument(0);
+            if ("PT-2".equals(request.getDemands().get(0).getConsumerCode()))
+                throw new CustomException("EG_BS_DEMAND_ERROR", "demand insert failed");
+            return null;
+        });
+        bulkBillPipeline.init();
+        BulkBillGenerator first = getMessage(0L, "PT-1");
+        BulkBillGenerator failed = getMessage(100L, "PT-2");
+        BulkBillGenerator afterFailure = getMessage(200L, "PT-3");
+        BulkBillGenerator afterGap = getMessage(400L, "PT-4");
+        BulkBillGenerator empty = new BulkBillGenerator(new RequestInfo(), null, null,
+                MigrationCount.builder().id("500").offset(500L).limit(100L).tenantid(TENANT_ID).businessService("PT")
+                        .recordCount(0L).auditTopic(AUDIT_TOPIC).build());
+
+        bulkBillPipeline.process(Arrays.asList(first, failed, afterFailure, afterGap, empty));
+
+        ArgumentCaptor<MigrationCount> auditCaptor = ArgumentCaptor.forClass(MigrationCount.class);
+        verify(kafkaTemplate, times(4)).send(eq(AUDIT_TOPIC), auditCaptor.capture());
+        List<MigrationCount> audits = auditCaptor.getAllValues();
+        assertEquals(Arrays.asList(0L, 100L, 200L, 400L),
+                audits.stream().map(MigrationCount::getOffset).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(100L, 100L, 100L, 200L),
+                audits.stream().map(MigrationCount::getLimit).collect(Collectors.toList()));
+        assertEquals("prcoess failed in billing service during  Demand creation with error message : demand insert failed",
+                audits.get(1).getMessage());
+        assertEquals(BulkBillPipeline.SUCCESS_MESSAGE, audits.get(3).getMessage());
+        assertEquals(1L, audits.get(3).getRecordCount());
+    }
+
+    @Test
+    public void testBillOfAPartIsGeneratedAfterItsDemandsAreWritten() {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            DemandRequest request = invocation.getArgument(0);
+            request.getDemands().forEach(demand -> events.add("demand:" + demand.getConsumerCode()));
+            return null;
+        }).when(demandService).create(any(DemandRequest.class), eq(true));
+        doAnswer(invocation -> {
+            GenerateBillCriteria criteria = invocation.getArgument(0);
+            criteria.getConsumerCode().forEach(consumerCode -> events.add("bill:" + consumerCode));
+            return null;
+        }).when(billService).generateBill(any(GenerateBillCriteria.class), any(RequestInfo.class), eq(true));
+        bulkBillPipeline.init();
+
+        List<BulkBillGenerator> messages = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            messages.add(getMessage(i * 100L, "PT-" + i, "PT-" + (i + 10)));
+        bulkBillPipeline.process(messages);
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(events.contains("bill:PT-" + i));
+            assertTrue(events.indexOf("demand:PT-" + i) < events.indexOf("bill:PT-" + i));
+        }
+    }
+
+    @Test
+    public void testDemandStageKeepsTheOrderOfAConsumerCode() {
+        BulkBillGenerator first = getMessage(0L, "PT-1");
+        BulkBillGenerator second = getMessage(100L, "PT-2");
+        second.setUpdateDemands(Collections.singletonList(getDemand("PT-1")));
+
+        bulkBillPipeline.writeDemands(Arrays.asList(getPart(first), getPart(second)));
+
+        InOrder inOrder = inOrder(demandService);
+        ArgumentCaptor<DemandRequest> createCaptor = ArgumentCaptor.forClass(DemandRequest.class);
+        inOrder.verify(demandService, times(2)).create(createCaptor.capture(), eq(true));
+        inOrder.verify(demandService).updateAsync(any(DemandRequest.class), any());
+        assertEquals("PT-1", createCaptor.getAllValues().get(0).getDemands().get(0).getConsumerCode());
+        assertEquals("PT-2", createCaptor.getAllValues().get(1).getDemands().get(0).getConsumerCode());
+    }
+
+    @Test
+    public void testStagesRunOncePerRunOfABatch() {
+        BulkBillGenerator first = getMessage(0L, "PT-1", "PT-2");
+        first.setUpdateDemands(Collections.singletonList(getDemand("PT-9")));
+        BulkBillGenerator second = getMessage(200L, "PT-3");
+        BulkBillGenerator other = getMessage(100L, "WS-1");
+        other.getCreateDemands().get(0).setBusinessService("WS");
+        List<MessagePart> batch = Arrays.asList(getPart(first), getPart(second), getPart(other));
+
+        bulkBillPipeline.writeDemands(batch);
+        bulkBillPipeline.generateBills(batch);
+
+        ArgumentCaptor<DemandRequest> createCaptor = ArgumentCaptor.forClass(DemandRequest.class);
+        verify(demandService, times(2)).create(createCaptor.capture(), eq(true));
+        assertEquals(3, createCaptor.getAllValues().get(0).getDemands().size());
+        assertEquals(1, createCaptor.getAllValues().get(1).getDemands().size());
+        verify(demandService, times(1)).updateAsync(any(DemandRequest.class), any());
+
+        ArgumentCaptor<GenerateBillCriteria> criteriaCaptor = ArgumentCaptor.forClass(GenerateBillCriteria.class);
+        verify(billService, times(2)).generateBill(criteriaCaptor.capture(), any(RequestInfo.class), eq(true));
+        assertEquals(new HashSet<>(Arrays.asList("PT-1", "PT-2", "PT-3")),
+                criteriaCaptor.getAllValues().get(0).getConsumerCode());
+        assertEquals("PT", criteriaCaptor.getAllValues().get(0).getBusinessService());
+        assertEquals("WS", criteriaCaptor.getAllValues().get(1).getBusinessService());
+        verify(kafkaTemplate, never()).send(anyString(), any());
+    }
+
+    @Test
+    public void testFailedStageIsAuditedAndLaterStagesStillRun() {
+        when(demandService.create(any(DemandRequest.class), anyBoolean()))
+                .thenThrow(new CustomException("EG_BS_DEMAND_ERROR", "demand insert failed"));
+        bulkBillPipeline.init();
+
+        bulkBillPipeline.process(Collections.singletonList(getMessage(0L, "PT-1")));
+
+        verify(billService).generateBill(any(GenerateBillCriteria.class), any(RequestInfo.class), eq(true));
+        ArgumentCaptor<MigrationCount> auditCaptor = ArgumentCaptor.forClass(MigrationCount.class);
+        verify(kafkaTemplate).send(eq(AUDIT_TOPIC), auditCaptor.capture());
+        assertEquals("prcoess failed in billing service during  Demand creation with error message : demand insert failed",
+                auditCaptor.getValue().getMessage());
+    }
+
+    @Test
+    public void testFullQueueBlocksTheCaller() throws InterruptedException {
+        when(appProps.getBulkBillPipelineWorkers()).thenReturn(1);
+        when(appProps.getBulkBillPipelineBatchSize()).thenReturn(1);
+        when(appProps.getBulkBillPipelineQueueSize()).thenReturn(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        }).when(demandService).create(any(DemandRequest.class), eq(true));
+        bulkBillPipeline.init();
+
+        Thread caller = new Thread(() -> bulkBillPipeline.process(Arrays.asList(getMessage(0L, "PT-1"),
+                getMessage(100L, "PT-2"), getMessage(200L, "PT-3"))));
+        caller.start();
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!isPutBlocked(caller) && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(isPutBlocked(caller));
+        verify(kafkaTemplate, never()).send(anyString(), any());
+
+        release.countDown();
+        caller.join(5000);
+        assertEquals(Thread.State.TERMINATED, caller.getState());
+        verify(demandService, times(3)).create(any(DemandRequest.class), eq(true));
+        verify(kafkaTemplate, times(1)).send(eq(AUDIT_TOPIC), any(MigrationCount.class));
+    }
+
+    private static boolean isPutBlocked(Thread thread) {
+        return Thread.State.WAITING == thread.getState() && Arrays.stream(thread.getStackTrace())
+                .anyMatch(element -> "put".equals(element.getMethodName()));
+    }
+
+    private static MessagePart getPart(BulkBillGenerator message) {
+        Demand demand = message.getCreateDemands().get(0);
+        MessagePart part = new MessagePart(new MessageAudit(message), demand.getTenantId(),
+                demand.getBusinessService());
+        part.getCreateDemands().addAll(message.getCreateDemands());
+        if (null != message.getUpdateDemands())
+            part.getUpdateDemands().addAll(message.getUpdateDemands());
+        return part;
+    }
+
+    private static BulkBillGenerator getMessage(Long offset, String... consumerCodes) {
+        List<Demand> demands = new ArrayList<>();
+        for (String consumerCode : consumerCodes)
+            demands.add(getDemand(consumerCode));
+        MigrationCount migrationCount = MigrationCount.builder().id(String.valueOf(offset)).offset(offset)
+                .limit(100L).createdTime(offset).tenantid(TENANT_ID).businessService("PT")
+                .recordCount((long) demands.size()).auditTopic(AUDIT_TOPIC).build();
+        return new BulkBillGenerator(new RequestInfo(), demands, null, migrationCount);
+    }
+
+    private static Demand getDemand(String consumerCode) {
+        return Demand.builder().consumerCode(consumerCode).tenantId(TENANT_ID).businessService("PT").build();
+    }
+}
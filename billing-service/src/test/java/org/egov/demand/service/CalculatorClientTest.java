@@ -0,0 +1,241 @@
+package org.egov.demand.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.repository.ServiceRequestRepository;
+import org.egov.demand.util.CircuitBreaker;
+import org.egov.demand.util.CircuitBreaker.State;
+import org.egov.demand.web.contract.RequestInfoWrapper;
+import org.egov.tracer.model.CustomException;
+import org.egov.tracer.model.ServiceCallException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the calculator client against a local stub calculator
+ */
+public class CalculatorClientTest {
+
+    private static final long LATENCY_MS = 300;
+
+    private static final String TENANT_ID = "pb.amritsar";
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    /*
+     * query strings of the requests received by the stub
+     */
+    private final List<String> queries = new CopyOnWriteArrayList<>();
+
+    private volatile int calculatorStatus = 200;
+
+    private volatile long slowConsumerCodeLatency = LATENCY_MS;
+
+    private ApplicationProperties appProps;
+
+    private RemoteCallExecutor remoteCallExecutor;
+
+    private CalculatorClient calculatorClient;
+
+    private final RequestInfoWrapper requestInfoWrapper = new RequestInfoWrapper(new RequestInfo());
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/pt-calculator-v2/propertytax/_updatedemand", this::respond);
+        server.start();
+        String host = "http://localhost:" + server.getAddress().getPort();
+
+        Map<String, String> urls = new HashMap<>();
+        urls.put("PT", host + "/pt-calculator-v2/propertytax/_updatedemand");
+        urls.put("TL", "");
+
+        appProps = mock(ApplicationProperties.class);
+        when(appProps.getBusinessCodeAndDemandUpdateUrlMap()).thenReturn(urls);
+        when(appProps.getRemoteCallPoolSize()).thenReturn(8);
+        when(appProps.getRemoteCallQueueSize()).thenReturn(16);
+        when(appProps.getRemoteCallTimeout()).thenReturn(10000L);
+        when(appProps.getCalculatorChunkSize()).thenReturn(2);
+        when(appProps.getCalculatorTimeout()).thenReturn(5000L);
+        when(appProps.getCalculatorCircuitFailureThreshold()).thenReturn(2);
+        when(appProps.getCalculatorCircuitOpenDuration()).thenReturn(2 * LATENCY_MS);
+
+        ServiceRequestRepository restRepository = new ServiceRequestRepository();
+        ReflectionTestUtils.setField(restRepository, "mapper", new ObjectMapper());
+        ReflectionTestUtils.setField(restRepository, "restTemplate", new RestTemplate());
+
+        remoteCallExecutor = new RemoteCallExecutor();
+        ReflectionTestUtils.setField(remoteCallExecutor, "appProps", appProps);
+        remoteCallExecutor.init();
+
+        calculatorClient = new CalculatorClient();
+        ReflectionTestUtils.setField(calculatorClient, "restRepository", restRepository);
+        ReflectionTestUtils.setField(calculatorClient, "remoteCallExecutor", remoteCallExecutor);
+        ReflectionTestUtils.setField(calculatorClient, "appProps", appProps);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        remoteCallExecutor.shutdown();
+    }
+
+    @Test
+    public void testConsumerCodesAreSentInConcurrentChunks() {
+        long start = System.nanoTime();
+        calculatorClient.updateDemands(TENANT_ID, "PT", Arrays.asList("PT-1", "PT-2", "PT-3", "PT-4", "PT-5"),
+                requestInfoWrapper);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(3, queries.size());
+        List<String> consumerCodes = new ArrayList<>();
+        for (String query : queries) {
+            Map<String, String> params = getParams(query);
+            assertEquals(TENANT_ID, params.get("tenantId"));
+            assertEquals("PT", params.get("businessService"));
+            List<String> chunk = Arrays.asList(params.get("consumerCodes").split(", "));
+            assertTrue(chunk.size() <= 2);
+            consumerCodes.addAll(chunk);
+        }
+        Collections.sort(consumerCodes);
+        assertEquals(Arrays.asList("PT-1", "PT-2", "PT-3", "PT-4", "PT-5"), consumerCodes);
+        assertTrue(elapsedMillis < 2 * LATENCY_MS, "updateDemands took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    public void testSlowChunkTimesOut() {
+        when(appProps.getCalculatorTimeout()).thenReturn(LATENCY_MS * 2);
+        slowConsumerCodeLatency = LATENCY_MS * 10;
+
+        long start = System.nanoTime();
+        CustomException exception = assertThrows(CustomException.class, () -> calculatorClient.updateDemands(
+                TENANT_ID, "PT", Arrays.asList("PT-1", "PT-2", "PT-SLOW"), requestInfoWrapper));
+
+        assertEquals(RemoteCallExecutor.REMOTE_CALL_TIMEOUT_KEY, exception.getCode());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < LATENCY_MS * 5);
+    }
+
+    @Test
+    public void testCircuitOpensAfterConsecutiveFailuresAndClosesAfterATrial() throws InterruptedException {
+        calculatorStatus = 500;
+        for (int i = 0; i < 2; i++)
+            assertThrows(RuntimeException.class,
+                    () -> calculatorClient.updateDemands(TENANT_ID, "PT", Arrays.asList("PT-1"), requestInfoWrapper));
+
+        CustomException exception = assertThrows(CustomException.class,
+                () -> calculatorClient.updateDemands(TENANT_ID, "PT", Arrays.asList("PT-1"), requestInfoWrapper));
+        assertEquals(CalculatorClient.CALCULATOR_UNAVAILABLE_KEY, exception.getCode());
+        assertEquals(2, queries.size());
+
+        Thread.sleep(2 * LATENCY_MS);
+        calculatorStatus = 200;
+        calculatorClient.updateDemands(TENANT_ID, "PT", Arrays.asList("PT-1"), requestInfoWrapper);
+
+        assertEquals(3, queries.size());
+        assertEquals(State.CLOSED, calculatorClient.getCircuitBreaker("PT").getState());
+    }
+
+    @Test
+    public void testRejectedRequestsDoNotOpenTheCircuit() {
+        calculatorStatus = 400;
+        for (int i = 0; i < 3; i++)
+            assertThrows(ServiceCallException.class,
+                    () -> calculatorClient.updateDemands(TENANT_ID, "PT", Arrays.asList("PT-1"), requestInfoWrapper));
+
+        assertEquals(3, queries.size());
+        assertEquals(State.CLOSED, calculatorClient.getCircuitBreaker("PT").getState());
+    }
+
+    @Test
+    public void testBusinessServiceWithoutCalculatorIsSkipped() {
+        calculatorClient.updateDemands(TENANT_ID, "TL", Arrays.asList("TL-1"), requestInfoWrapper);
+        calculatorClient.updateDemands(TENANT_ID, "WS", Arrays.asList("WS-1"), requestInfoWrapper);
+
+        assertTrue(queries.isEmpty());
+    }
+
+    @Test
+    public void testHalfOpenCircuitLetsASingleTrialThrough() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker circuitBreaker = new CircuitBreaker("calculator PT", 1, 1000, now::get);
+
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.recordFailure();
+        assertFalse(circuitBreaker.tryAcquire());
+
+        now.set(1000);
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.tryAcquire());
+        circuitBreaker.recordFailure();
+        assertEquals(State.OPEN, circuitBreaker.getState());
+
+        now.set(2000);
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.recordSuccess();
+        assertTrue(circuitBreaker.tryAcquire());
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        queries.add(query);
+        try {
+            Thread.sleep(query.contains("PT-SLOW") ? slowConsumerCodeLatency : LATENCY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.getRequestBody().readAllBytes();
+        byte[] bytes = (200 == calculatorStatus ? "{}" : "{\"Errors\":[{\"code\":\"CALCULATOR_ERROR\"}]}")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(calculatorStatus, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> getParams(String query) {
+        Map<String, String> params = new HashMap<>();
+        for (String param : query.split("&")) {
+            String[] keyValue = param.split("=", 2);
+            params.put(keyValue[0], URLDecoder.decode(keyValue[1], StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+}
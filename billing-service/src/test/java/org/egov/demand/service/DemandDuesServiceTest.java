@@ -0,0 +1,106 @@
+package org.egov.demand.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.ConsumerDues;
+import org.egov.demand.model.DemandDueCriteria;
+import org.egov.demand.repository.DemandDuesRepository;
+import org.egov.demand.web.validator.DemandValidatorV1;
+import org.egov.tracer.model.CustomException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class DemandDuesServiceTest {
+
+    private static final String TENANT_ID = "pb.amritsar";
+
+    @Mock
+    private DemandDuesRepository demandDuesRepository;
+
+    @Mock
+    private DemandValidatorV1 demandValidatorV1;
+
+    @Mock
+    private ApplicationProperties appProps;
+
+    @InjectMocks
+    private DemandDuesService demandDuesService;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void testDuesAreReadFromTheReadModel() {
+        DemandDueCriteria criteria = getCriteria("CC-1", "CC-2");
+        when(demandDuesRepository.getDues(TENANT_ID, "PT", criteria.getConsumerCode()))
+                .thenReturn(Arrays.asList(getDues("CC-1"), getDues("CC-2")));
+
+        List<ConsumerDues> dues = demandDuesService.getDues(criteria, new RequestInfo());
+
+        assertEquals(2, dues.size());
+        verify(demandValidatorV1).validateDemandDueCriteria(eq(criteria), any());
+        verify(demandDuesRepository, never()).refreshDues(anyString(), anyString(), any());
+    }
+
+    @Test
+    public void testMissingDuesAreComputedOnRead() {
+        DemandDueCriteria criteria = getCriteria("CC-1", "CC-2", "CC-3");
+        Set<String> missing = new HashSet<>(Arrays.asList("CC-2", "CC-3"));
+        when(demandDuesRepository.getDues(TENANT_ID, "PT", criteria.getConsumerCode()))
+                .thenReturn(Collections.singletonList(getDues("CC-1")));
+        when(demandDuesRepository.getDues(TENANT_ID, "PT", missing))
+                .thenReturn(Collections.singletonList(getDues("CC-2")));
+
+        List<ConsumerDues> dues = demandDuesService.getDues(criteria, new RequestInfo());
+
+        verify(demandDuesRepository).refreshDues(TENANT_ID, "PT", missing);
+        assertEquals(new HashSet<>(Arrays.asList("CC-1", "CC-2")),
+                dues.stream().map(ConsumerDues::getConsumerCode).collect(Collectors.toSet()));
+    }
+
+    @Test
+    public void testScheduledReconciliationContinuesPastFailingTenant() {
+        when(appProps.getDemandDuesReconciliationTenantIds()).thenReturn(Arrays.asList("pb", "od"));
+        doThrow(new CustomException("EG_BS_TENANTID_ERROR", "invalid tenant")).when(demandDuesRepository)
+                .reconcileDues("pb");
+
+        ReflectionTestUtils.invokeMethod(demandDuesService, "reconcile");
+
+        verify(demandDuesRepository).reconcileDues("pb");
+        verify(demandDuesRepository).reconcileDues("od");
+    }
+
+    private DemandDueCriteria getCriteria(String... consumerCodes) {
+        return DemandDueCriteria.builder().tenantId(TENANT_ID).businessService("PT")
+                .consumerCode(new HashSet<>(Arrays.asList(consumerCodes))).build();
+    }
+
+    private ConsumerDues getDues(String consumerCode) {
+        return ConsumerDues.builder().tenantId(TENANT_ID).businessService("PT").consumerCode(consumerCode)
+                .taxAmount(BigDecimal.TEN).collectionAmount(BigDecimal.ZERO).balanceAmount(BigDecimal.TEN)
+                .lastModifiedTime(0L).build();
+    }
+}
@@ -0,0 +1,189 @@
+package org.egov.demand.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.model.ApportionDemandResponse;
+import org.egov.demand.model.BillingMasterData;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandApportionRequest;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.model.TaxHeadMaster;
+import org.egov.demand.model.enums.Category;
+import org.egov.demand.repository.DemandRepository;
+import org.egov.demand.repository.ServiceRequestRepository;
+import org.egov.demand.util.Util;
+import org.egov.demand.web.contract.DemandRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class DemandServiceAdvanceApportionTest {
+
+    private static final String TENANT_ID = "pb.amritsar";
+
+    private static final String ADVANCE_TAXHEAD = "PT_ADVANCE_CARRYFORWARD";
+
+    @Mock
+    private DemandRepository demandRepository;
+
+    @Mock
+    private ServiceRequestRepository serviceRequestRepository;
+
+    @Mock
+    private Util util;
+
+    @Spy
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @InjectMocks
+    private DemandService demandService;
+
+    private BillingMasterData masterData;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(util.getApportionURL()).thenReturn("http://localhost/apportion-service/v2/demand/_apportion");
+        when(serviceRequestRepository.fetchResult(anyString(), any())).thenAnswer(invocation -> {
+            DemandApportionRequest request = invocation.getArgument(1);
+            return mapper.convertValue(ApportionDemandResponse.builder().demands(request.getDemands()).build(), Map.class);
+        });
+
+        TaxHeadMaster advanceTaxHead = new TaxHeadMaster();
+        advanceTaxHead.setCode(ADVANCE_TAXHEAD);
+        advanceTaxHead.setService("PT");
+        advanceTaxHead.setCategory(Category.ADVANCE_COLLECTION);
+        masterData = new BillingMasterData(TENANT_ID, Collections.singletonList(advanceTaxHead),
+                Collections.emptyList(), Collections.emptyList(), System.currentTimeMillis());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAdvanceIsSearchedOnceAndApportionedPerConsumerCode() {
+        List<Demand> newDemands = Arrays.asList(getDemand("D-1", "CC-1", "PT_TAX", "100", "0"),
+                getDemand("D-2", "CC-2", "PT_TAX", "100", "0"), getDemand("D-3", "CC-3", "PT_TAX", "100", "0"),
+                getDemand("D-4", "CC-4", "PT_TAX", "100", "0"));
+        when(demandRepository.getDemandsByConsumerCodes(eq(TENANT_ID), any())).thenReturn(Arrays.asList(
+                getDemand("ADV-1", "CC-1", ADVANCE_TAXHEAD, "-50", "0"),
+                getDemand("OLD-3", "CC-3", "PT_TAX", "100", "100"),
+                getDemand("ADV-4", "CC-4", ADVANCE_TAXHEAD, "-20", "0")));
+
+        List<Demand> demandsToBeCreated = new ArrayList<>();
+        List<Demand> demandsToBeUpdated = new ArrayList<>();
+        apportion(newDemands, demandsToBeCreated, demandsToBeUpdated);
+
+        ArgumentCaptor<Collection<String>> consumerCodes = ArgumentCaptor.forClass(Collection.class);
+        verify(demandRepository).getDemandsByConsumerCodes(eq(TENANT_ID), consumerCodes.capture());
+        assertEquals(new HashSet<>(Arrays.asList("CC-1", "CC-2", "CC-3", "CC-4")), new HashSet<>(consumerCodes.getValue()));
+
+        ArgumentCaptor<DemandApportionRequest> apportionRequest = ArgumentCaptor.forClass(DemandApportionRequest.class);
+        verify(serviceRequestRepository, times(2)).fetchResult(anyString(), apportionRequest.capture());
+        assertEquals(new HashSet<>(Arrays.asList("ADV-1", "D-1")), getIds(apportionRequest.getAllValues().get(0).getDemands()));
+        assertEquals(new HashSet<>(Arrays.asList("ADV-4", "D-4")), getIds(apportionRequest.getAllValues().get(1).getDemands()));
+
+        assertEquals(new HashSet<>(Arrays.asList("D-1", "D-2", "D-3", "D-4")), getIds(demandsToBeCreated));
+        assertEquals(new HashSet<>(Arrays.asList("ADV-1", "ADV-4")), getIds(demandsToBeUpdated));
+    }
+
+    @Test
+    public void testAdvanceOfConsumerCodeIsSentOnceForSeveralDemands() {
+        List<Demand> newDemands = Arrays.asList(getDemand("D-1", "CC-1", "PT_TAX", "100", "0"),
+                getDemand("D-2", "CC-1", "PT_TAX", "80", "0"));
+        when(demandRepository.getDemandsByConsumerCodes(eq(TENANT_ID), any()))
+                .thenReturn(Collections.singletonList(getDemand("ADV-1", "CC-1", ADVANCE_TAXHEAD, "-50", "0")));
+
+        List<Demand> demandsToBeCreated = new ArrayList<>();
+        List<Demand> demandsToBeUpdated = new ArrayList<>();
+        apportion(newDemands, demandsToBeCreated, demandsToBeUpdated);
+
+        ArgumentCaptor<DemandApportionRequest> apportionRequest = ArgumentCaptor.forClass(DemandApportionRequest.class);
+        verify(serviceRequestRepository).fetchResult(anyString(), apportionRequest.capture());
+        assertEquals(3, apportionRequest.getValue().getDemands().size());
+        assertEquals(new HashSet<>(Arrays.asList("D-1", "D-2")), getIds(demandsToBeCreated));
+        assertEquals(Collections.singleton("ADV-1"), getIds(demandsToBeUpdated));
+    }
+
+    @Test
+    public void testAdvanceIsNotAppliedToAnotherConsumerCode() {
+        List<Demand> newDemands = Arrays.asList(getDemand("D-1", "CC-1", "PT_TAX", "100", "0"),
+                getDemand("D-2", "CC-2", "PT_TAX", "100", "0"));
+        when(demandRepository.getDemandsByConsumerCodes(eq(TENANT_ID), any())).thenReturn(Arrays.asList(
+                getDemand("ADV-1", "CC-1", ADVANCE_TAXHEAD, "-50", "0"),
+                getDemand("OLD-2", "CC-2", "PT_TAX", "100", "100")));
+
+        List<Demand> demandsToBeCreated = new ArrayList<>();
+        List<Demand> demandsToBeUpdated = new ArrayList<>();
+        apportion(newDemands, demandsToBeCreated, demandsToBeUpdated);
+
+        ArgumentCaptor<DemandApportionRequest> apportionRequest = ArgumentCaptor.forClass(DemandApportionRequest.class);
+        verify(serviceRequestRepository, times(1)).fetchResult(anyString(), apportionRequest.capture());
+        List<Demand> apportionedDemands = apportionRequest.getValue().getDemands();
+        assertEquals(new HashSet<>(Arrays.asList("ADV-1", "D-1")), getIds(apportionedDemands));
+        assertTrue(apportionedDemands.stream().allMatch(demand -> "CC-1".equals(demand.getConsumerCode())));
+        assertEquals(new HashSet<>(Arrays.asList("D-1", "D-2")), getIds(demandsToBeCreated));
+        assertEquals(Collections.singleton("ADV-1"), getIds(demandsToBeUpdated));
+    }
+
+    @Test
+    public void testNoApportionCallWithoutAdvance() {
+        List<Demand> newDemands = Arrays.asList(getDemand("D-1", "CC-1", "PT_TAX", "100", "0"));
+        when(demandRepository.getDemandsByConsumerCodes(eq(TENANT_ID), any())).thenReturn(Collections.emptyList());
+
+        List<Demand> demandsToBeCreated = new ArrayList<>();
+        List<Demand> demandsToBeUpdated = new ArrayList<>();
+        apportion(newDemands, demandsToBeCreated, demandsToBeUpdated);
+
+        verify(serviceRequestRepository, never()).fetchResult(anyString(), any());
+        assertEquals(newDemands, demandsToBeCreated);
+        assertEquals(0, demandsToBeUpdated.size());
+    }
+
+    private void apportion(List<Demand> demands, List<Demand> demandsToBeCreated, List<Demand> demandsToBeUpdated) {
+        DemandRequest demandRequest = new DemandRequest(new RequestInfo(), demands);
+        ReflectionTestUtils.invokeMethod(demandService, "apportionAdvanceIfExist", demandRequest, masterData,
+                demandsToBeCreated, demandsToBeUpdated);
+    }
+
+    private Set<String> getIds(List<Demand> demands) {
+        return demands.stream().map(Demand::getId).collect(Collectors.toSet());
+    }
+
+    private Demand getDemand(String id, String consumerCode, String taxHeadCode, String taxAmount,
+            String collectionAmount) {
+        DemandDetail detail = DemandDetail.builder().id(id + "-DD").demandId(id).taxHeadMasterCode(taxHeadCode)
+                .taxAmount(new BigDecimal(taxAmount)).collectionAmount(new BigDecimal(collectionAmount))
+                .tenantId(TENANT_ID).build();
+        List<DemandDetail> details = new ArrayList<>();
+        details.add(detail);
+        return Demand.builder().id(id).tenantId(TENANT_ID).consumerCode(consumerCode).businessService("PT")
+                .taxPeriodFrom(1554076800000L).taxPeriodTo(1585699199000L).minimumAmountPayable(BigDecimal.ZERO)
+                .demandDetails(details).build();
+    }
+}
@@ -0,0 +1,114 @@
+package org.egov.demand.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandCriteria;
+import org.egov.demand.repository.DemandRepository;
+import org.egov.demand.util.DemandEnrichmentUtil;
+import org.egov.demand.web.contract.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class DemandServiceStreamTest {
+
+    private static final String TENANT_ID = "pb.amritsar";
+
+    @Mock
+    private DemandRepository demandRepository;
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+
+    @Mock
+    private DemandEnrichmentUtil demandEnrichmentUtil;
+
+    @Mock
+    private PayerCache payerCache;
+
+    @InjectMocks
+    private DemandService demandService;
+
+    private final List<Demand> storedDemands = new ArrayList<>();
+
+    /*
+     * limit and page key of every page read, in the form limit:taxPeriodFrom:demandId
+     */
+    private final List<String> pagesRead = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(applicationProperties.getUserServiceHostName()).thenReturn("http://localhost");
+        when(applicationProperties.getUserServiceSearchPath()).thenReturn("/user/_search");
+        when(applicationProperties.getDemandStreamFetchSize()).thenReturn(2);
+        when(payerCache.getPayers(anyCollection(), any())).thenReturn(Collections.singletonList(new User()));
+        when(demandEnrichmentUtil.enrichPayer(anyList(), anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        for (int i = 1; i <= 5; i++)
+            storedDemands.add(Demand.builder().id("D-" + i).tenantId(TENANT_ID).taxPeriodFrom(100L * i)
+                    .payer(User.builder().uuid("payer-" + i).build()).build());
+        when(demandRepository.getDemandPage(any())).thenAnswer(invocation -> getPage(invocation.getArgument(0)));
+    }
+
+    @Test
+    public void testDemandsAreReadInKeysetPagesAndPayersResolvedPerPage() {
+        List<Demand> streamed = new ArrayList<>();
+
+        long count = demandService.streamDemands(getCriteria(null), new RequestInfo(), streamed::add);
+
+        assertEquals(5, count);
+        assertEquals(Arrays.asList("D-1", "D-2", "D-3", "D-4", "D-5"),
+                streamed.stream().map(Demand::getId).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("2:null:null", "2:200:D-2", "2:400:D-4"), pagesRead);
+
+        InOrder inOrder = inOrder(demandRepository, payerCache);
+        for (int i = 0; i < 3; i++) {
+            inOrder.verify(demandRepository).getDemandPage(any());
+            inOrder.verify(payerCache).getPayers(anyCollection(), any());
+        }
+    }
+
+    @Test
+    public void testLimitCapsTheStream() {
+        List<Demand> streamed = new ArrayList<>();
+
+        long count = demandService.streamDemands(getCriteria(3), new RequestInfo(), streamed::add);
+
+        assertEquals(3, count);
+        assertEquals(3, streamed.size());
+        assertEquals(Arrays.asList("2:null:null", "1:200:D-2"), pagesRead);
+    }
+
+    private DemandCriteria getCriteria(Integer limit) {
+        DemandCriteria criteria = new DemandCriteria();
+        criteria.setTenantId(TENANT_ID);
+        criteria.setLimit(limit);
+        return criteria;
+    }
+
+    private List<Demand> getPage(DemandCriteria criteria) {
+        pagesRead.add(criteria.getLimit() + ":" + criteria.getPageKeyTaxPeriodFrom() + ":" + criteria.getPageKeyDemandId());
+        return storedDemands.stream()
+                .filter(demand -> null == criteria.getPageKeyTaxPeriodFrom()
+                        || demand.getTaxPeriodFrom() > criteria.getPageKeyTaxPeriodFrom())
+                .limit(criteria.getLimit()).collect(Collectors.toCollection(ArrayList::new));
+    }
+}
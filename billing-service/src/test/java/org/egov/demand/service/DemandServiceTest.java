@@ -2,6 +2,7 @@ package org.egov.demand.service;
 
 import com.jayway.jsonpath.DocumentContext;
 import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.model.BillingMasterData;
 import org.egov.demand.model.Demand;
 import org.egov.demand.model.DemandCriteria;
 import org.egov.demand.model.PaymentBackUpdateAudit;
@@ -56,6 +57,9 @@ public class DemandServiceTest {
     @MockBean
     private DemandEnrichmentUtil demandEnrichmentUtil;
 
+    @MockBean
+    private MasterDataService masterDataService;
+
     @Test
     @DisplayName("Should return a response with the demands when the demands are valid")
     public void testCreateWhenDemandsAreValidThenReturnResponseWithDemands() {
@@ -74,13 +78,13 @@ public class DemandServiceTest {
     public void testCreateWhenDemandsAreInvalidThenThrowException() {
         DemandRequest demandRequest = DemandRequest.builder().build();
         RequestInfo requestInfo = new RequestInfo();
-        DocumentContext mdmsData = util.getMDMSData(requestInfo , "1");
+        BillingMasterData masterData = masterDataService.getMasterData(requestInfo, "1");
 
-        when(util.getMDMSData(requestInfo , "1")).thenReturn(mdmsData);
+        when(masterDataService.getMasterData(requestInfo, "1")).thenReturn(masterData);
 
         doThrow(new CustomException("INVALID_DEMAND", "Invalid demand"))
                 .when(demandValidatorV1)
-                .validatedemandForCreate(demandRequest, true, mdmsData);
+                .validatedemandForCreate(demandRequest, true, masterData);
 
 
     }
@@ -99,11 +103,11 @@ public class DemandServiceTest {
     public void testUpdateWhenDemandIsNotFoundThenThrowsException() {
         DemandRequest demandRequest = DemandRequest.builder().build();
         RequestInfo requestInfo = new RequestInfo();
-        DocumentContext mdmsData = util.getMDMSData(requestInfo , "1");
+        BillingMasterData masterData = masterDataService.getMasterData(requestInfo, "1");
 
         PaymentBackUpdateAudit paymentBackUpdateAudit = PaymentBackUpdateAudit.builder().build();
 
-        demandValidatorV1.validateForUpdate(demandRequest,mdmsData);
+        demandValidatorV1.validateForUpdate(demandRequest,masterData);
         when(demandRepository.getDemands(any(DemandCriteria.class)))
                 .thenReturn(Collections.emptyList());
 
@@ -0,0 +1,102 @@
+package org.egov.demand.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.model.BillingMasterData;
+import org.egov.demand.util.Util;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
+
+public class MasterDataServiceTest {
+
+    private static final String MDMS_RESPONSE = "{\"MdmsRes\":{\"BillingService\":{"
+            + "\"TaxHeadMaster\":["
+            + "{\"code\":\"PT_TAX\",\"service\":\"PT\",\"category\":\"TAX\",\"isDebit\":false},"
+            + "{\"code\":\"PT_ADVANCE_CARRYFORWARD\",\"service\":\"PT\",\"category\":\"ADVANCE_COLLECTION\",\"isDebit\":true},"
+            + "{\"code\":\"WS_CHARGE\",\"service\":\"WS\",\"category\":\"CHARGES\",\"isDebit\":false}],"
+            + "\"BusinessService\":["
+            + "{\"code\":\"PT\",\"businessService\":\"Property Tax\",\"isAdvanceAllowed\":true},"
+            + "{\"code\":\"WS\",\"businessService\":\"Water\",\"isAdvanceAllowed\":false}],"
+            + "\"TaxPeriod\":["
+            + "{\"code\":\"PTAN2023\",\"service\":\"PT\",\"fromDate\":1680307200000,\"toDate\":1711929599000,\"periodCycle\":\"ANNUAL\"}]"
+            + "}}}";
+
+    @Mock
+    private Util util;
+
+    @Mock
+    private ApplicationProperties appProps;
+
+    @Spy
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @InjectMocks
+    private MasterDataService masterDataService;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(appProps.getMasterDataCacheTtl()).thenReturn(60000L);
+        when(util.getAttributeValues(any())).thenAnswer(invocation -> JsonPath.parse(MDMS_RESPONSE));
+    }
+
+    @Test
+    public void testMasterDataIsIndexedByCodeAndService() {
+        BillingMasterData masterData = masterDataService.getMasterData(new RequestInfo(), "pb.amritsar");
+
+        assertEquals(2, masterData.getTaxHeadsForService("PT").size());
+        assertEquals("WS", masterData.getTaxHead("WS_CHARGE").getService());
+        assertTrue(masterData.isBusinessServicePresent("WS"));
+        assertFalse(masterData.isBusinessServicePresent("TL"));
+        assertTrue(masterData.getBusinessService("PT").getIsAdvanceAllowed());
+        assertEquals("PT_ADVANCE_CARRYFORWARD", masterData.getAdvanceTaxHeadCode("PT"));
+        assertNull(masterData.getAdvanceTaxHeadCode("WS"));
+        assertEquals(1, masterData.getTaxPeriodsByService().get("PT").size());
+    }
+
+    @Test
+    public void testMasterDataIsServedFromCacheWithinTtl() {
+        BillingMasterData first = masterDataService.getMasterData(new RequestInfo(), "pb.amritsar");
+        BillingMasterData second = masterDataService.getMasterData(new RequestInfo(), "pb.amritsar");
+
+        assertSame(first, second);
+        verify(util, times(1)).getAttributeValues(any());
+    }
+
+    @Test
+    public void testMasterDataIsReloadedAfterTtl() {
+        when(appProps.getMasterDataCacheTtl()).thenReturn(0L);
+
+        masterDataService.getMasterData(new RequestInfo(), "pb.amritsar");
+        masterDataService.getMasterData(new RequestInfo(), "pb.amritsar");
+
+        verify(util, times(2)).getAttributeValues(any());
+    }
+
+    @Test
+    public void testRefreshDropsCachedTenant() {
+        masterDataService.getMasterData(new RequestInfo(), "pb.amritsar");
+        masterDataService.refresh("pb.amritsar");
+        masterDataService.getMasterData(new RequestInfo(), "pb.amritsar");
+
+        verify(util, times(2)).prepareMdMsRequest(eq("pb.amritsar"), any(), any(), any(), any());
+    }
+}
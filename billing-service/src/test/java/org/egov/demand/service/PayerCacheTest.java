@@ -0,0 +1,241 @@
+package org.egov.demand.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.egov.common.contract.request.PlainAccessRequest;
+import org.egov.common.contract.request.RequestInfo;
+import org.egov.common.contract.request.Role;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.repository.ServiceRequestRepository;
+import org.egov.demand.util.BillingMetrics;
+import org.egov.demand.web.contract.User;
+import org.egov.demand.web.contract.UserSearchRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class PayerCacheTest {
+
+    @Mock
+    private ServiceRequestRepository serviceRequestRepository;
+
+    @Mock
+    private ApplicationProperties appProps;
+
+    @Spy
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @Spy
+    private BillingMetrics billingMetrics = new BillingMetrics();
+
+    @InjectMocks
+    private PayerCache payerCache;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /*
+     * uuids of every user search received
+     */
+    private final List<Set<String>> searches = new CopyOnWriteArrayList<>();
+
+    private volatile CountDownLatch searchRelease;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(billingMetrics, "meterRegistry", meterRegistry);
+        when(appProps.getIsPayerCacheEnabled()).thenReturn(true);
+        when(appProps.getPayerCacheMaxSize()).thenReturn(100);
+        when(appProps.getPayerCacheTtl()).thenReturn(60000L);
+        when(appProps.getUserServiceHostName()).thenReturn("http://egov-user:8080/");
+        when(appProps.getUserServiceSearchPath()).thenReturn("user/_search");
+        when(serviceRequestRepository.fetchResult(anyString(), any(UserSearchRequest.class))).thenAnswer(invocation -> {
+            UserSearchRequest request = invocation.getArgument(1);
+            searches.add(new HashSet<>(request.getUuid()));
+            if (null != searchRelease)
+                searchRelease.await(5, TimeUnit.SECONDS);
+            return getUserResponse(request.getUuid());
+        });
+        payerCache.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCachedPayersAreNotSearchedAgain() {
+        payerCache.getPayers(Arrays.asList("U-1", "U-2"), new RequestInfo());
+        List<User> users = payerCache.getPayers(Arrays.asList("U-1", "U-2"), new RequestInfo());
+
+        assertEquals(1, searches.size());
+        assertEquals(new HashSet<>(Arrays.asList("U-1", "U-2")), getUuids(users));
+        assertEquals(0.5, meterRegistry.get(BillingMetrics.PAYER_CACHE_HIT_RATIO_METRIC).gauge().value());
+        assertEquals(2, meterRegistry.get(BillingMetrics.PAYER_CACHE_METRIC).tag(BillingMetrics.OUTCOME_TAG, "hit")
+                .counter().count());
+    }
+
+    @Test
+    public void testMissingPayersAreSearchedInOneCall() {
+        payerCache.getPayers(Arrays.asList("U-1", "U-2"), new RequestInfo());
+        List<User> users = payerCache.getPayers(Arrays.asList("U-1", "U-2", "U-3", "U-4", "U-5"), new RequestInfo());
+
+        assertEquals(2, searches.size());
+        assertEquals(new HashSet<>(Arrays.asList("U-3", "U-4", "U-5")), searches.get(1));
+        assertEquals(5, users.size());
+    }
+
+    @Test
+    public void testConcurrentLookupsShareASearch() throws Exception {
+        searchRelease = new CountDownLatch(1);
+        Future<List<User>> first = executor.submit(() -> payerCache.getPayers(Arrays.asList("U-1", "U-2"), new RequestInfo()));
+        waitForSearches(1);
+        Future<List<User>> second = executor.submit(() -> payerCache.getPayers(Arrays.asList("U-2", "U-3"), new RequestInfo()));
+        waitForSearches(2);
+
+        searchRelease.countDown();
+
+        assertEquals(new HashSet<>(Arrays.asList("U-1", "U-2")), getUuids(first.get(5, TimeUnit.SECONDS)));
+        assertEquals(new HashSet<>(Arrays.asList("U-2", "U-3")), getUuids(second.get(5, TimeUnit.SECONDS)));
+        assertEquals(Arrays.asList(new HashSet<>(Arrays.asList("U-1", "U-2")), Collections.singleton("U-3")), searches);
+    }
+
+    @Test
+    public void testUpdatedPayersAreSearchedAgain() {
+        payerCache.getPayers(Arrays.asList("U-1", "U-2"), new RequestInfo());
+        payerCache.invalidate(Collections.singleton("U-1"));
+        payerCache.getPayers(Arrays.asList("U-1", "U-2"), new RequestInfo());
+
+        assertEquals(Collections.singleton("U-1"), searches.get(1));
+    }
+
+    @Test
+    public void testSearchRunningDuringAnUpdateIsNotCached() throws Exception {
+        searchRelease = new CountDownLatch(1);
+        Future<List<User>> lookup = executor.submit(() -> payerCache.getPayers(Arrays.asList("U-1"), new RequestInfo()));
+        waitForSearches(1);
+        payerCache.invalidate(Collections.singleton("U-1"));
+        searchRelease.countDown();
+        lookup.get(5, TimeUnit.SECONDS);
+
+        searchRelease = null;
+        payerCache.getPayers(Arrays.asList("U-1"), new RequestInfo());
+        assertEquals(2, searches.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPayersAreEvicted() {
+        when(appProps.getPayerCacheMaxSize()).thenReturn(2);
+        payerCache.init();
+
+        payerCache.getPayers(Arrays.asList("U-1", "U-2"), new RequestInfo());
+        payerCache.getPayers(Arrays.asList("U-1"), new RequestInfo());
+        payerCache.getPayers(Arrays.asList("U-3"), new RequestInfo());
+        payerCache.getPayers(Arrays.asList("U-1", "U-2"), new RequestInfo());
+
+        assertEquals(Collections.singleton("U-2"), searches.get(2));
+    }
+
+    @Test
+    public void testPayersAreCachedPerMaskingContext() {
+        RequestInfo employee = getRequestInfo("EMP-1", "EMPLOYEE");
+        RequestInfo otherEmployee = getRequestInfo("EMP-2", "EMPLOYEE");
+        RequestInfo plainAccess = getRequestInfo("EMP-1", "EMPLOYEE");
+        plainAccess.setPlainAccessRequest(new PlainAccessRequest("U-1", Arrays.asList("mobileNumber")));
+
+        payerCache.getPayers(Arrays.asList("U-1"), employee);
+        payerCache.getPayers(Arrays.asList("U-1"), plainAccess);
+        payerCache.getPayers(Arrays.asList("U-1"), getRequestInfo("EMP-1", "SUPERUSER"));
+        payerCache.getPayers(Arrays.asList("U-1"), otherEmployee);
+
+        assertEquals(3, searches.size());
+    }
+
+    @Test
+    public void testOwnRecordOfTheCallerIsNotCached() {
+        RequestInfo citizen = getRequestInfo("U-1", "CITIZEN");
+
+        payerCache.getPayers(Arrays.asList("U-1", "U-2"), citizen);
+        payerCache.getPayers(Arrays.asList("U-1", "U-2"), citizen);
+        payerCache.getPayers(Arrays.asList("U-1"), getRequestInfo("U-3", "CITIZEN"));
+
+        assertEquals(Arrays.asList(new HashSet<>(Arrays.asList("U-1", "U-2")), Collections.singleton("U-1"),
+                Collections.singleton("U-1")), searches);
+    }
+
+    @Test
+    public void testDisabledCacheSearchesEveryLookup() {
+        when(appProps.getIsPayerCacheEnabled()).thenReturn(false);
+
+        payerCache.getPayers(Arrays.asList("U-1"), new RequestInfo());
+        payerCache.getPayers(Arrays.asList("U-1"), new RequestInfo());
+
+        ArgumentCaptor<UserSearchRequest> captor = ArgumentCaptor.forClass(UserSearchRequest.class);
+        verify(serviceRequestRepository, times(2)).fetchResult(anyString(), captor.capture());
+    }
+
+    private static RequestInfo getRequestInfo(String uuid, String roleCode) {
+        org.egov.common.contract.request.User userInfo = new org.egov.common.contract.request.User();
+        userInfo.setUuid(uuid);
+        userInfo.setRoles(Collections.singletonList(new Role(roleCode, roleCode, "pb")));
+        RequestInfo requestInfo = new RequestInfo();
+        requestInfo.setUserInfo(userInfo);
+        return requestInfo;
+    }
+
+    private void waitForSearches(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (searches.size() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(count, searches.size());
+    }
+
+    private static Map<String, Object> getUserResponse(Set<String> uuids) {
+        List<Map<String, Object>> users = new ArrayList<>();
+        for (String uuid : uuids) {
+            Map<String, Object> user = new HashMap<>();
+            user.put("uuid", uuid);
+            user.put("name", "Payer " + uuid);
+            users.add(user);
+        }
+        return Collections.singletonMap("user", users);
+    }
+
+    private static Set<String> getUuids(List<User> users) {
+        return users.stream().map(User::getUuid).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,141 @@
+package org.egov.demand.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.tracer.model.CustomException;
+import org.egov.tracer.model.ServiceCallException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.MDC;
+
+public class RemoteCallExecutorTest {
+
+    @Mock
+    private ApplicationProperties appProps;
+
+    @InjectMocks
+    private RemoteCallExecutor remoteCallExecutor;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(appProps.getRemoteCallPoolSize()).thenReturn(4);
+        when(appProps.getRemoteCallQueueSize()).thenReturn(4);
+        when(appProps.getRemoteCallTimeout()).thenReturn(2000L);
+        remoteCallExecutor.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        remoteCallExecutor.shutdown();
+        MDC.clear();
+    }
+
+    @Test
+    public void testCallsRunConcurrently() {
+        RemoteCallExecutor.Calls calls = remoteCallExecutor.start();
+
+        long start = System.nanoTime();
+        RemoteCallExecutor.Call<String> first = calls.submit(() -> sleepAndReturn(300, "first"));
+        RemoteCallExecutor.Call<String> second = calls.submit(() -> sleepAndReturn(300, "second"));
+        RemoteCallExecutor.Call<String> third = calls.submit(() -> sleepAndReturn(300, "third"));
+        calls.await();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("first", first.getResult());
+        assertEquals("second", second.getResult());
+        assertEquals("third", third.getResult());
+        assertTrue(elapsedMillis < 800, "calls took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    public void testFirstFailureCancelsOtherCalls() throws Exception {
+        RemoteCallExecutor.Calls calls = remoteCallExecutor.start();
+        CountDownLatch interrupted = new CountDownLatch(1);
+        ServiceCallException failure = new ServiceCallException("{\"Errors\":[{\"code\":\"INVALID_USER\"}]}");
+
+        calls.submit(() -> {
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        });
+        calls.submit(() -> {
+            throw failure;
+        });
+
+        long start = System.nanoTime();
+        ServiceCallException exception = assertThrows(ServiceCallException.class, calls::await);
+
+        assertSame(failure, exception);
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+    }
+
+    @Test
+    public void testCustomExceptionCodeIsKept() {
+        RemoteCallExecutor.Calls calls = remoteCallExecutor.start();
+        calls.submit(() -> {
+            throw new CustomException("EG_BS_TAXHEADCODE_EMPTY", "No taxhead masters found for the given codes");
+        });
+
+        CustomException exception = assertThrows(CustomException.class, calls::await);
+        assertEquals("EG_BS_TAXHEADCODE_EMPTY", exception.getCode());
+    }
+
+    @Test
+    public void testCheckedExceptionIsWrapped() {
+        RemoteCallExecutor.Calls calls = remoteCallExecutor.start();
+        calls.submit(() -> {
+            throw new IOException("connection reset");
+        });
+
+        CustomException exception = assertThrows(CustomException.class, calls::await);
+        assertEquals(RemoteCallExecutor.REMOTE_CALL_ERROR_KEY, exception.getCode());
+    }
+
+    @Test
+    public void testCallPastDeadlineTimesOut() {
+        when(appProps.getRemoteCallTimeout()).thenReturn(200L);
+        RemoteCallExecutor.Calls calls = remoteCallExecutor.start();
+        RemoteCallExecutor.Call<String> slowCall = calls.submit(() -> sleepAndReturn(5000, "late"));
+
+        long start = System.nanoTime();
+        CustomException exception = assertThrows(CustomException.class, calls::await);
+
+        assertEquals(RemoteCallExecutor.REMOTE_CALL_TIMEOUT_KEY, exception.getCode());
+        assertTrue(slowCall.isCancelled());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+    }
+
+    @Test
+    public void testContextIsCarriedToPoolThread() {
+        MDC.put("TENANTID", "pb.amritsar");
+        RemoteCallExecutor.Calls calls = remoteCallExecutor.start();
+        RemoteCallExecutor.Call<String> call = calls.submit(() -> MDC.get("TENANTID"));
+        calls.await();
+
+        assertEquals("pb.amritsar", call.getResult());
+        assertEquals("pb.amritsar", MDC.get("TENANTID"));
+    }
+
+    private String sleepAndReturn(long millis, String value) throws InterruptedException {
+        Thread.sleep(millis);
+        return value;
+    }
+}
@@ -0,0 +1,114 @@
+package org.egov.demand.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.egov.demand.consumer.ConsumerMetricsInterceptor;
+import org.egov.demand.model.Demand;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class BillingMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private BillingMetrics billingMetrics;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        billingMetrics = new BillingMetrics();
+        ReflectionTestUtils.setField(billingMetrics, "meterRegistry", meterRegistry);
+    }
+
+    @Test
+    public void testBillStageIsTimedPerTenantAndBusinessService() {
+        String result = billingMetrics.timeBillStage(BillingMetrics.STAGE_SEARCH, "pb.amritsar", "PT", () -> "bills");
+        billingMetrics.timeBillStage(BillingMetrics.STAGE_SAVE, null, null, () -> {});
+
+        assertEquals("bills", result);
+        Timer search = meterRegistry.find(BillingMetrics.BILL_STAGE_METRIC)
+                .tags(BillingMetrics.STAGE_TAG, BillingMetrics.STAGE_SEARCH, BillingMetrics.TENANTID_TAG, "pb.amritsar",
+                        BillingMetrics.BUSINESS_SERVICE_TAG, "PT")
+                .timer();
+        Timer save = meterRegistry.find(BillingMetrics.BILL_STAGE_METRIC)
+                .tags(BillingMetrics.STAGE_TAG, BillingMetrics.STAGE_SAVE, BillingMetrics.TENANTID_TAG,
+                        BillingMetrics.NOT_AVAILABLE_TAG_VALUE)
+                .timer();
+        assertEquals(1, search.count());
+        assertEquals(1, save.count());
+    }
+
+    @Test
+    public void testDemandWritesAreTimedAndCounted() {
+        Demand demand = Demand.builder().tenantId("pb.amritsar").businessService("PT").build();
+
+        billingMetrics.timeDemands(BillingMetrics.DEMAND_CREATE_METRIC, Arrays.asList(demand, demand), () -> null);
+        billingMetrics.timeDemands(BillingMetrics.DEMAND_CREATE_METRIC, Collections.singletonList(demand), () -> null);
+
+        assertEquals(2, meterRegistry.find(BillingMetrics.DEMAND_CREATE_METRIC).tags(BillingMetrics.TENANTID_TAG,
+                "pb.amritsar").timer().count());
+        assertEquals(3, meterRegistry.find(BillingMetrics.DEMAND_COUNT_METRIC)
+                .tags(BillingMetrics.OPERATION_TAG, BillingMetrics.DEMAND_CREATE_METRIC).counter().count());
+        assertNull(meterRegistry.find(BillingMetrics.DEMAND_UPDATE_METRIC).timer());
+    }
+
+    @Test
+    public void testConsumedRecordsAreCountedWithTheirLag() {
+        long producedAt = System.currentTimeMillis() - 5000;
+
+        billingMetrics.recordConsumed("egov.collection.payment-create", producedAt);
+        billingMetrics.recordConsumed("egov.collection.payment-create", -1);
+
+        assertEquals(2, meterRegistry.find(BillingMetrics.CONSUMER_RECORDS_METRIC)
+                .tags(BillingMetrics.TOPIC_TAG, "egov.collection.payment-create").counter().count());
+        Timer lag = meterRegistry.find(BillingMetrics.CONSUMER_LAG_METRIC).timer();
+        assertEquals(1, lag.count());
+        assertTrue(lag.totalTime(TimeUnit.MILLISECONDS) >= 5000);
+    }
+
+    @Test
+    public void testBatchSizesAreRecordedPerStatement() {
+        billingMetrics.recordBatchSize("demand.insert", 500);
+        billingMetrics.recordBatchSize("demand.insert", 100);
+        billingMetrics.recordBatchSize("demanddetail.insert", 0);
+
+        DistributionSummary demandInsert = meterRegistry.find(BillingMetrics.JDBC_BATCH_SIZE_METRIC)
+                .tags(BillingMetrics.STATEMENT_TAG, "demand.insert").summary();
+        assertEquals(2, demandInsert.count());
+        assertEquals(600, demandInsert.totalAmount());
+        assertEquals(500, demandInsert.max());
+    }
+
+    @Test
+    public void testInterceptorRecordsEveryRecordOfABatch() {
+        ConsumerMetricsInterceptor interceptor = new ConsumerMetricsInterceptor();
+        ReflectionTestUtils.setField(interceptor, "billingMetrics", billingMetrics);
+
+        TopicPartition partition = new TopicPartition("egov.collection.payment-create", 0);
+        ConsumerRecords<Object, Object> records = new ConsumerRecords<>(Collections.singletonMap(partition,
+                Arrays.asList(new ConsumerRecord<Object, Object>(partition.topic(), 0, 0, "key", "value"),
+                        new ConsumerRecord<Object, Object>(partition.topic(), 0, 1, "key", "value"))));
+
+        assertEquals(records, interceptor.intercept(records, null));
+        interceptor.intercept(new ConsumerRecord<Object, Object>("egov.demand.update", 0, 0, "key", "value"), null);
+
+        assertEquals(2, meterRegistry.find(BillingMetrics.CONSUMER_RECORDS_METRIC)
+                .tags(BillingMetrics.TOPIC_TAG, "egov.collection.payment-create").counter().count());
+        assertEquals(1, meterRegistry.find(BillingMetrics.CONSUMER_RECORDS_METRIC)
+                .tags(BillingMetrics.TOPIC_TAG, "egov.demand.update").counter().count());
+    }
+}
@@ -0,0 +1,221 @@
+package org.egov.demand.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.egov.demand.model.BillAccountDetailV2;
+import org.egov.demand.model.BillDetailV2;
+import org.egov.demand.model.Demand;
+import org.egov.demand.model.DemandDetail;
+import org.egov.demand.model.TaxHeadMaster;
+import org.egov.demand.service.BillServicev2;
+import org.egov.demand.service.ReceiptServiceV2;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Checks Money against BigDecimal over random amounts of up to two decimals,
+ * the amounts the amount columns hold, both for the arithmetic and for the
+ * loops of the bill preparation and the payment back-update using it
+ */
+public class MoneyTest {
+
+    private static final int RUNS = 2000;
+
+    private static final List<String> TAX_HEADS = List.of("PT_TAX", "PT_FIRE_CESS", "PT_ROUNDOFF", "PT_ADVANCE_CARRYFORWARD");
+
+    private final Random random = new Random(20240517L);
+
+    @Test
+    public void testArithmeticEqualsBigDecimalWithScale() {
+        for (int i = 0; i < RUNS; i++) {
+            BigDecimal first = randomAmount();
+            BigDecimal second = randomAmount();
+
+            assertEquals(first, Money.of(first).toBigDecimal());
+            assertEquals(first.add(second), Money.of(first).plus(Money.of(second)).toBigDecimal());
+            assertEquals(first.subtract(second), Money.of(first).minus(Money.of(second)).toBigDecimal());
+            assertEquals(first.compareTo(second), Money.of(first).compareTo(Money.of(second)));
+            assertEquals(first.signum(), Money.of(first).signum());
+        }
+    }
+
+    @Test
+    public void testAmountsWithMoreDecimalsAreRoundedHalfUp() {
+        assertEquals(new BigDecimal("10.01"), Money.of(new BigDecimal("10.005")).toBigDecimal());
+        assertEquals(new BigDecimal("-10.01"), Money.of(new BigDecimal("-10.005")).toBigDecimal());
+        assertEquals(new BigDecimal("10.00"), Money.of(new BigDecimal("10.0049")).toBigDecimal());
+        assertEquals(new BigDecimal("1200"), Money.of(new BigDecimal("1.2E+3")).toBigDecimal());
+    }
+
+    @Test
+    public void testAmountsAroundTheDoubleLimitAreExact() {
+        for (String amount : new String[] { "99999999999.99", "-99999999999.99", "100000000000.01", "0.01",
+                "123456789012.34", "9007199254740.99", "-9007199254740.99" })
+            assertEquals(new BigDecimal(amount), Money.of(new BigDecimal(amount)).toBigDecimal());
+
+        for (int i = 0; i < RUNS; i++) {
+            BigDecimal amount = BigDecimal.valueOf((long) (random.nextDouble() * 10_000_000_000_000L), Money.SCALE);
+            assertEquals(amount.unscaledValue().longValue(), Money.of(amount).getMinorUnits());
+        }
+    }
+
+    @Test
+    public void testOverflowThrows() {
+        Money max = Money.of(BigDecimal.valueOf(Long.MAX_VALUE, Money.SCALE));
+
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("92233720368547758.08")));
+        assertThrows(ArithmeticException.class, () -> max.plus(Money.of(new BigDecimal("0.01"))));
+        assertThrows(ArithmeticException.class, () -> Money.ZERO.minus(max).minus(Money.of(new BigDecimal("0.02"))));
+    }
+
+    @Test
+    public void testBillDetailOfDemandEqualsBigDecimalPath() {
+        BillServicev2 billService = new BillServicev2();
+        Map<String, TaxHeadMaster> taxHeadMap = new HashMap<>();
+        for (int i = 0; i < TAX_HEADS.size(); i++) {
+            TaxHeadMaster taxHead = new TaxHeadMaster();
+            taxHead.setCode(TAX_HEADS.get(i));
+            taxHead.setOrder(i);
+            taxHeadMap.put(taxHead.getCode(), taxHead);
+        }
+
+        for (int i = 0; i < RUNS; i++) {
+            Demand demand = Demand.builder().id(UUID.randomUUID().toString()).tenantId("pb.amritsar")
+                    .demandDetails(randomDetails()).build();
+
+            BillDetailV2 billDetail = ReflectionTestUtils.invokeMethod(billService, "getBillDetailForDemand", demand,
+                    taxHeadMap, "BD-1");
+
+            BigDecimal totalAmount = BigDecimal.ZERO;
+            Map<String, BigDecimal> taxHeadAmounts = new HashMap<>();
+            for (DemandDetail detail : demand.getDemandDetails()) {
+                BigDecimal amount = detail.getTaxAmount().subtract(detail.getCollectionAmount());
+                taxHeadAmounts.merge(detail.getTaxHeadMasterCode(), amount, BigDecimal::add);
+                totalAmount = totalAmount.add(amount);
+            }
+
+            assertEquals(totalAmount, billDetail.getAmount());
+            assertEquals(taxHeadAmounts.size(), billDetail.getBillAccountDetails().size());
+            for (BillAccountDetailV2 accountDetail : billDetail.getBillAccountDetails())
+                assertEquals(taxHeadAmounts.get(accountDetail.getTaxHeadCode()), accountDetail.getAmount());
+        }
+    }
+
+    @Test
+    public void testPaymentAndCancellationEqualBigDecimalPath() {
+        ReceiptServiceV2 receiptService = new ReceiptServiceV2();
+
+        for (int i = 0; i < RUNS; i++) {
+            List<DemandDetail> details = randomDetails();
+            List<DemandDetail> expected = copy(details);
+            BigDecimal amountPaid = randomAmount().abs();
+
+            ReflectionTestUtils.invokeMethod(receiptService, "updateDetailsForPayment", details, amountPaid);
+            updateDetailsForPayment(expected, amountPaid);
+            assertCollections(expected, details);
+
+            ReflectionTestUtils.invokeMethod(receiptService, "updateDetailsForCancellation", details, amountPaid);
+            updateDetailsForCancellation(expected, amountPaid);
+            assertCollections(expected, details);
+        }
+    }
+
+    /*
+     * the BigDecimal loops of ReceiptServiceV2 as they were before Money
+     */
+    private static void updateDetailsForPayment(List<DemandDetail> demandDetails, BigDecimal amountPaid) {
+        for (DemandDetail detail : demandDetails) {
+            if (detail.getTaxAmount().compareTo(detail.getCollectionAmount()) == 0
+                    || detail.getTaxAmount().compareTo(BigDecimal.ZERO) == 0)
+                continue;
+            BigDecimal difference = detail.getTaxAmount().subtract(detail.getCollectionAmount());
+            if (detail.getTaxAmount().compareTo(BigDecimal.ZERO) > 0 && difference.compareTo(amountPaid) >= 0) {
+                detail.setCollectionAmount(detail.getCollectionAmount().add(amountPaid));
+                amountPaid = BigDecimal.ZERO;
+            } else {
+                detail.setCollectionAmount(detail.getCollectionAmount().add(difference));
+                amountPaid = amountPaid.subtract(difference);
+            }
+        }
+    }
+
+    private static void updateDetailsForCancellation(List<DemandDetail> demandDetails, BigDecimal amtPaid) {
+        if (amtPaid.compareTo(BigDecimal.ZERO) == 0)
+            return;
+        for (DemandDetail detail : demandDetails) {
+            if (detail.getTaxAmount().compareTo(BigDecimal.ZERO) == 0)
+                continue;
+            BigDecimal collection = detail.getCollectionAmount();
+            if (detail.getTaxAmount().compareTo(BigDecimal.ZERO) > 0 && collection.compareTo(amtPaid) >= 0) {
+                detail.setCollectionAmount(collection.subtract(amtPaid));
+                amtPaid = BigDecimal.ZERO;
+            } else {
+                detail.setCollectionAmount(BigDecimal.ZERO);
+                amtPaid = amtPaid.subtract(collection);
+            }
+        }
+    }
+
+    private static void assertCollections(List<DemandDetail> expected, List<DemandDetail> actual) {
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(expected.get(i).getCollectionAmount(), actual.get(i).getCollectionAmount());
+    }
+
+    private static List<DemandDetail> copy(List<DemandDetail> details) {
+        List<DemandDetail> copies = new ArrayList<>();
+        details.forEach(detail -> copies.add(DemandDetail.builder().taxHeadMasterCode(detail.getTaxHeadMasterCode())
+                .taxAmount(detail.getTaxAmount()).collectionAmount(detail.getCollectionAmount()).build()));
+        return copies;
+    }
+
+    /*
+     * details of random tax heads, a few of them negative, zero or fully paid
+     */
+    private List<DemandDetail> randomDetails() {
+        List<DemandDetail> details = new ArrayList<>();
+        int count = 1 + random.nextInt(8);
+        for (int i = 0; i < count; i++) {
+            BigDecimal tax = randomAmount();
+            BigDecimal collection;
+            switch (random.nextInt(4)) {
+            case 0:
+                collection = tax;
+                break;
+            case 1:
+                collection = BigDecimal.ZERO.setScale(random.nextInt(3));
+                break;
+            default:
+                collection = tax.signum() > 0 ? randomAmountUpTo(tax) : BigDecimal.ZERO;
+            }
+            details.add(DemandDetail.builder().id(UUID.randomUUID().toString()).tenantId("pb.amritsar")
+                    .taxHeadMasterCode(TAX_HEADS.get(random.nextInt(TAX_HEADS.size()))).taxAmount(tax)
+                    .collectionAmount(collection).build());
+        }
+        return details;
+    }
+
+    /*
+     * amount of numeric(14,2) with a scale of zero to two, one in ten zero
+     */
+    private BigDecimal randomAmount() {
+        int scale = random.nextInt(3);
+        if (random.nextInt(10) == 0)
+            return BigDecimal.ZERO.setScale(scale);
+        long bound = 1_000_000_000_000L / (scale == 2 ? 1 : scale == 1 ? 10 : 100);
+        long unscaled = (long) (random.nextDouble() * bound);
+        return BigDecimal.valueOf(random.nextInt(5) == 0 ? -unscaled : unscaled, scale);
+    }
+
+    private BigDecimal randomAmountUpTo(BigDecimal amount) {
+        return BigDecimal.valueOf((long) (random.nextDouble() * amount.unscaledValue().longValue()), amount.scale());
+    }
+}
@@ -4,36 +4,82 @@ import org.egov.demand.model.Demand;
 import org.egov.demand.model.DemandDetail;
 import org.egov.demand.repository.DemandRepository;
 import org.egov.demand.repository.rowmapper.DemandRowMapper;
-import org.junit.jupiter.api.Disabled;
+import org.egov.demand.util.migration.DemandMigration.MigrationRange;
+import org.egov.demand.web.contract.DemandRequest;
+import org.egov.tracer.model.CustomException;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.boot.test.mock.mockito.MockBean;
+import org.mockito.MockitoAnnotations;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.test.context.ContextConfiguration;
-import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 
-@SpringBootTest
 public class DemandMigrationTest {
 
-    @Autowired
-    private DemandMigration demandMigration;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DemandRowMapper demandRowMapper;
 
     @Mock
-    private DemandMigration demandMigration1;
+    private DemandRepository demandRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private DemandMigration demandMigration;
+
+    /*
+     * keys of the legacy demands in key order, an id repeated across tenants
+     */
+    private final List<String[]> legacyKeys = new ArrayList<>();
+
+    private final Map<Integer, MigrationRange> checkpoints = Collections.synchronizedMap(new TreeMap<>());
+
+    private final List<String> savedDemandIds = new CopyOnWriteArrayList<>();
 
+    private volatile String failingDemandId;
 
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(demandMigration, "batchSize", 100);
+        ReflectionTestUtils.setField(demandMigration, "threadCount", 4);
+
+        for (int i = 0; i < 10; i++)
+            legacyKeys.add(new String[] { "D-0" + i, "pb.amritsar" });
+        legacyKeys.add(4, new String[] { "D-03", "pb.jalandhar" });
+        mockLegacyTables();
+    }
 
     @Test
     @DisplayName("Should apportion the demand details when the tax amount is negative")
@@ -96,41 +142,173 @@ public class DemandMigrationTest {
     }
 
     @Test
-    @DisplayName("Should create a comparator with the given order")
-    public void testCreateDemadDetailComparatorShouldCreateComparatorWithGivenOrder() {
+    @DisplayName("Should put the details in the rank order of their tax heads")
+    public void testSortByTaxHeadRankShouldOrderDetailsByRank() {
 
+        List<DemandDetail> demandDetails = new ArrayList<>();
+        for (String taxHead : new String[] { "PT_TAX", "PT_FIRE_CESS", "PT_ROUNDOFF", "PT_TIME_PENALTY",
+                "PT_TIME_REBATE", "PT_TIME_INTEREST", "PT_CANCER_CESS", "PT_ADHOC_PENALTY", "PT_OWNER_EXEMPTION",
+                "PT_ADVANCE_CARRYFORWARD" })
+            demandDetails.add(DemandDetail.builder().taxHeadMasterCode(taxHead).build());
 
-        demandMigration.createDemadDetailComparator();
+        List<DemandDetail> sortedDetails = DemandMigration.sortByTaxHeadRank(demandDetails);
 
-        List<DemandDetail> demandDetails = new ArrayList<>();
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("PT_DECIMAL_CEILING_CREDIT").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("PT_DECIMAL_CEILING_DEBIT").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("PT_ROUNDOFF").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("PT_TAX").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("PT_TIME_INTEREST").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("PT_TIME_PENALTY").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("PT_ADHOC_PENALTY").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("PT_FIRE_CESS").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("PT_CANCER_CESS").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("PT_TIME_REBATE").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("PT_ADHOC_REBATE").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("PT_OWNER_EXEMPTION").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("PT_ADVANCE_CARRYFORWARD").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("PT_UNIT_USAGE_EXEMPTION").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("TL_TAX").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("TL_ROUNDOFF").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("TL_ADHOC_REBATE").build());
-        demandDetails.add(DemandDetail.builder().taxHeadMasterCode("TL_ADHOC_PENALTY").build());
-
-
-        assertEquals("PT_DECIMAL_CEILING_CREDIT", demandDetails.get(0).getTaxHeadMasterCode());
-        assertEquals("PT_DECIMAL_CEILING_DEBIT", demandDetails.get(1).getTaxHeadMasterCode());
-        assertEquals("PT_ROUNDOFF", demandDetails.get(2).getTaxHeadMasterCode());
-        assertEquals("PT_TAX", demandDetails.get(3).getTaxHeadMasterCode());
-
-        assertEquals("PT_TIME_INTEREST", demandDetails.get(4).getTaxHeadMasterCode());
-        assertEquals("PT_TIME_PENALTY", demandDetails.get(5).getTaxHeadMasterCode());
-        assertEquals("PT_ADHOC_PENALTY", demandDetails.get(6).getTaxHeadMasterCode());
+        assertEquals(Arrays.asList("PT_TIME_REBATE", "PT_OWNER_EXEMPTION", "PT_ADVANCE_CARRYFORWARD", "PT_ROUNDOFF",
+                "PT_TIME_INTEREST", "PT_TIME_PENALTY", "PT_ADHOC_PENALTY", "PT_FIRE_CESS", "PT_CANCER_CESS", "PT_TAX"),
+                sortedDetails.stream().map(DemandDetail::getTaxHeadMasterCode).collect(Collectors.toList()));
+        assertThrows(CustomException.class, () -> DemandMigration
+                .sortByTaxHeadRank(Arrays.asList(DemandDetail.builder().taxHeadMasterCode("PT_UNKNOWN").build())));
     }
-}
 
+    @Test
+    @DisplayName("Should migrate every demand once over ranges planned on the first run")
+    public void testMigrateToV1ShouldMigrateEveryRangeOnce() {
+
+        Map<String, String> result = demandMigration.migrateToV1(3, 2);
+
+        assertEquals(3, checkpoints.size());
+        assertEquals("SUCCESS, 4 demands migrated", result.get("range 0"));
+        assertEquals("SUCCESS, 4 demands migrated", result.get("range 1"));
+        assertEquals("SUCCESS, 3 demands migrated", result.get("range 2"));
+        assertEquals(getAllDemandIds(), sorted(savedDemandIds));
+
+        assertEquals(result, demandMigration.migrateToV1(2, 5));
+        assertEquals(11, savedDemandIds.size());
+    }
+
+    @Test
+    @DisplayName("Should resume a failed range from its checkpoint")
+    public void testMigrateToV1ShouldResumeFromCheckpoint() {
+
+        failingDemandId = "D-05";
+        Map<String, String> result = demandMigration.migrateToV1(1, 3);
+
+        assertTrue(result.get("range 0").startsWith("FAILED after the demand D-04 of pb.amritsar"));
+        assertEquals(Arrays.asList("D-00", "D-01", "D-02", "D-03", "D-03", "D-04"), sorted(savedDemandIds));
+
+        failingDemandId = null;
+        result = demandMigration.migrateToV1(4, 3);
+
+        assertEquals(1, checkpoints.size());
+        assertEquals("SUCCESS, 11 demands migrated", result.get("range 0"));
+        assertEquals(getAllDemandIds(), sorted(savedDemandIds));
+    }
+
+    @Test
+    @DisplayName("Should write the range plan in one transaction")
+    public void testMigrateToV1ShouldRollBackAPartialPlan() {
+
+        when(jdbcTemplate.update(eq(DemandMigration.CHECKPOINT_INSERT_QUERY), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    if (Integer.valueOf(1).equals(invocation.getArgument(1)))
+                        throw new IllegalStateException("connection lost");
+                    return 1;
+                });
+
+        assertThrows(IllegalStateException.class, () -> demandMigration.migrateToV1(3, 2));
+
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        assertTrue(savedDemandIds.isEmpty());
+    }
+
+    /*
+     * answers the queries of the migration from the legacy keys and the checkpoints held here
+     */
+    @SuppressWarnings("unchecked")
+    private void mockLegacyTables() {
+
+        when(jdbcTemplate.query(eq(DemandMigration.CHECKPOINT_SEARCH_QUERY), any(RowMapper.class)))
+                .thenAnswer(invocation -> {
+                    List<MigrationRange> ranges = new ArrayList<>();
+                    checkpoints.values().forEach(range -> ranges.add(new MigrationRange(range.getRangeNo(),
+                            range.getUpperId(), range.getUpperTenantId(), range.getLastId(), range.getLastTenantId(),
+                            range.getMigratedCount(), range.isCompleted())));
+                    return ranges;
+                });
+
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation -> {
+            String query = invocation.getArgument(0);
+            Object[] args = Arrays.copyOfRange(invocation.getArguments(), 2, invocation.getArguments().length);
+            if (DemandMigration.RANGE_QUERY.equals(query))
+                return getUpperKeys((Integer) args[0]);
+
+            List<String[]> keys = getKeys(args);
+            return keys.subList(0, Math.min(keys.size(), (Integer) args[4]));
+        });
+
+        when(jdbcTemplate.query(eq(DemandMigration.SELECT_QUERY), any(ResultSetExtractor.class), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    List<Demand> demands = new ArrayList<>();
+                    for (String[] key : getKeys(Arrays.copyOfRange(invocation.getArguments(), 2, 6)))
+                        demands.add(Demand.builder().id(key[0]).tenantId(key[1])
+                                .demandDetails(new ArrayList<>(Arrays.asList(DemandDetail.builder()
+                                        .taxHeadMasterCode("PT_TAX").taxAmount(BigDecimal.TEN)
+                                        .collectionAmount(BigDecimal.ZERO).build())))
+                                .build());
+                    return demands;
+                });
+
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            Object[] args = Arrays.copyOfRange(invocation.getArguments(), 1, invocation.getArguments().length);
+            if (DemandMigration.CHECKPOINT_INSERT_QUERY.equals(invocation.getArgument(0))) {
+                checkpoints.put((Integer) args[0], new MigrationRange((Integer) args[0], (String) args[1],
+                        (String) args[2], (String) args[3], (String) args[4], 0, false));
+            } else {
+                MigrationRange range = checkpoints.get((Integer) args[5]);
+                range.setLastId((String) args[0]);
+                range.setLastTenantId((String) args[1]);
+                range.setMigratedCount((Long) args[2]);
+                range.setCompleted((Boolean) args[3]);
+            }
+            return 1;
+        });
+
+        doAnswer(invocation -> {
+            DemandRequest request = invocation.getArgument(0);
+            List<String> demandIds = request.getDemands().stream().map(Demand::getId).collect(Collectors.toList());
+            if (demandIds.contains(failingDemandId))
+                throw new IllegalStateException("copy failed");
+            savedDemandIds.addAll(demandIds);
+            return null;
+        }).when(demandRepository).saveInBulk(any());
+    }
+
+    /*
+     * keys after the first key of the arguments up to the second one, both given as id and tenant
+     */
+    private List<String[]> getKeys(Object[] args) {
+        String[] lowerKey = { (String) args[0], (String) args[1] };
+        String[] upperKey = { (String) args[2], (String) args[3] };
+        return legacyKeys.stream().filter(key -> compare(key, lowerKey) > 0 && compare(key, upperKey) <= 0)
+                .collect(Collectors.toList());
+    }
+
+    /*
+     * last keys of ntile(count), the first tiles taking one key more when the keys do not divide evenly
+     */
+    private List<String[]> getUpperKeys(int count) {
+        List<String[]> upperKeys = new ArrayList<>();
+        int end = 0;
+        for (int tile = 0; tile < count && end < legacyKeys.size(); tile++) {
+            end += legacyKeys.size() / count + (tile < legacyKeys.size() % count ? 1 : 0);
+            upperKeys.add(legacyKeys.get(end - 1));
+        }
+        return upperKeys;
+    }
+
+    private static int compare(String[] key, String[] otherKey) {
+        int idComparison = key[0].compareTo(otherKey[0]);
+        return 0 != idComparison ? idComparison : key[1].compareTo(otherKey[1]);
+    }
+
+    private List<String> getAllDemandIds() {
+        return sorted(legacyKeys.stream().map(key -> key[0]).collect(Collectors.toList()));
+    }
+
+    private static List<String> sorted(List<String> values) {
+        List<String> sortedValues = new ArrayList<>(values);
+        Collections.sort(sortedValues);
+        return sortedValues;
+    }
+}
@@ -13,10 +13,14 @@ import java.util.HashSet;
 
 import org.egov.common.contract.request.RequestInfo;
 import org.egov.demand.helper.BillHelperV2;
+import org.egov.demand.model.BillCancelJob;
 import org.egov.demand.model.BillV2;
+import org.egov.demand.model.BulkCancelBillCriteria;
+import org.egov.demand.model.BulkCancelBillRequest;
 import org.egov.demand.model.UpdateBillCriteria;
 import org.egov.demand.model.UpdateBillRequest;
 import org.egov.demand.service.BillServicev2;
+import org.egov.demand.service.BulkBillCancelService;
 import org.egov.demand.web.contract.BillRequestV2;
 import org.egov.demand.web.contract.BillResponseV2;
 import org.egov.demand.web.contract.RequestInfoWrapper;
@@ -50,6 +54,9 @@ class BillControllerv2Test {
     @MockBean
     private BillValidator billValidator;
 
+    @MockBean
+    private BulkBillCancelService bulkBillCancelService;
+
     @Test
     void testCancelBillFail() throws Exception {
         UpdateBillRequest updateBillRequest = new UpdateBillRequest();
@@ -243,5 +250,44 @@ class BillControllerv2Test {
                 .perform(requestBuilder);
         actualPerformResult.andExpect(MockMvcResultMatchers.status().is(400));
     }
-}
 
+    @Test
+    void testBulkCancelBillIsAccepted() throws Exception {
+        when(this.bulkBillCancelService.submit(any(), any()))
+                .thenReturn(BillCancelJob.builder().id("JOB-1").status(BillCancelJob.JobStatus.QUEUED).build());
+
+        BulkCancelBillRequest bulkCancelRequest = BulkCancelBillRequest.builder().requestInfo(new RequestInfo())
+                .bulkCancelBillCriteria(BulkCancelBillCriteria.builder().tenantId("pb.amritsar").businessService("PT")
+                        .additionalDetails(MissingNode.getInstance()).build())
+                .build();
+        MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders.post("/bill/v2/_bulkcancel")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content((new ObjectMapper()).writeValueAsString(bulkCancelRequest));
+        MockMvcBuilders.standaloneSetup(this.billControllerv2)
+                .build()
+                .perform(requestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isAccepted())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.BillCancelJob.id").value("JOB-1"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.BillCancelJob.status").value("QUEUED"));
+    }
+
+    @Test
+    void testBulkCancelStatus() throws Exception {
+        when(this.bulkBillCancelService.getJob("pb.amritsar", "JOB-1")).thenReturn(BillCancelJob.builder().id("JOB-1")
+                .status(BillCancelJob.JobStatus.RUNNING).totalCount(10).processedCount(4).cancelledCount(3).build());
+
+        RequestInfoWrapper requestInfoWrapper = new RequestInfoWrapper();
+        requestInfoWrapper.setRequestInfo(new RequestInfo());
+        MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders.post("/bill/v2/_bulkcancel/_status")
+                .param("tenantId", "pb.amritsar")
+                .param("jobId", "JOB-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content((new ObjectMapper()).writeValueAsString(requestInfoWrapper));
+        MockMvcBuilders.standaloneSetup(this.billControllerv2)
+                .build()
+                .perform(requestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.BillCancelJob.processedCount").value(4))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.BillCancelJob.cancelledCount").value(3));
+    }
+}
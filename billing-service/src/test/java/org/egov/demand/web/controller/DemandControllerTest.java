@@ -9,12 +9,15 @@ import java.util.ArrayList;
 import java.util.HashMap;
 
 import org.egov.common.contract.request.RequestInfo;
+import org.egov.demand.config.ApplicationProperties;
+import org.egov.demand.service.DemandDuesService;
 import org.egov.demand.service.DemandService;
 import org.egov.demand.util.migration.DemandMigration;
 import org.egov.demand.web.contract.DemandRequest;
 import org.egov.demand.web.contract.DemandResponse;
 import org.egov.demand.web.contract.RequestInfoWrapper;
 import org.egov.demand.web.contract.factory.ResponseFactory;
+import org.egov.demand.web.validator.DemandValidatorV1;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -40,6 +43,18 @@ class DemandControllerTest {
     @MockBean
     private DemandService demandService;
 
+    @MockBean
+    private DemandValidatorV1 demandValidatorV1;
+
+    @MockBean
+    private DemandDuesService demandDuesService;
+
+    @MockBean
+    private ObjectMapper mapper;
+
+    @MockBean
+    private ApplicationProperties appProps;
+
 
     @Test
     void testCreate() throws Exception {
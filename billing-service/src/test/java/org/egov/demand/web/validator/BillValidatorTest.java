@@ -8,13 +8,16 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.util.HashSet;
 
 import org.egov.common.contract.request.RequestInfo;
 import org.egov.demand.model.BillSearchCriteria;
 import org.egov.demand.model.BillV2;
+import org.egov.demand.model.BulkCancelBillCriteria;
 import org.egov.demand.model.GenerateBillCriteria;
 import org.egov.demand.model.UpdateBillCriteria;
 import org.egov.demand.util.Util;
@@ -176,5 +179,25 @@ class BillValidatorTest {
         verify(updateBillCriteria).getAdditionalDetails();
         verify(updateBillCriteria).setStatusToBeUpdated((BillV2.BillStatus) any());
     }
-}
 
+    @Test
+    void testValidateBulkCancelRequest() {
+        ObjectNode additionalDetails = new ObjectMapper().createObjectNode().put("reason", "TARIFF_CORRECTION")
+                .put("reasonMessage", "tariff corrected");
+        BulkCancelBillCriteria criteria = BulkCancelBillCriteria.builder().tenantId("pb.amritsar").businessService("PT")
+                .additionalDetails(additionalDetails).build();
+
+        assertThrows(CustomException.class,
+                () -> this.billValidator.validateBulkCancelRequest(criteria, new RequestInfo(), 2));
+        criteria.getConsumerCodes().add("CC-1");
+        criteria.getBillIds().add("BILL-1");
+        this.billValidator.validateBulkCancelRequest(criteria, new RequestInfo(), 2);
+        criteria.getBillIds().add("BILL-2");
+        assertThrows(CustomException.class,
+                () -> this.billValidator.validateBulkCancelRequest(criteria, new RequestInfo(), 2));
+        criteria.getBillIds().remove("BILL-2");
+        criteria.setAdditionalDetails(MissingNode.getInstance());
+        assertThrows(CustomException.class,
+                () -> this.billValidator.validateBulkCancelRequest(criteria, new RequestInfo(), 2));
+    }
+}
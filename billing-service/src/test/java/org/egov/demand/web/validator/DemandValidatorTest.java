@@ -87,7 +87,7 @@ class DemandValidatorTest {
         BigDecimal valueOfResult = BigDecimal.valueOf(42L);
         DemandCriteria demandCriteria = new DemandCriteria("42", demandId, payer, consumerCode, "businessService",
                 valueOfResult, BigDecimal.valueOf(42L), 1L, 1L, Type.ARREARS, "42", "jane.doe@example.org", "businessService",
-                true, true);
+                true, true, null, null, null);
 
         BindingResult bindingResult = mock(BindingResult.class);
         doNothing().when(bindingResult).rejectValue((String) any(), (String) any(), (String) any());